@@ -0,0 +1,157 @@
+package edu.cmu.ml.rtw.generic.bench;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.data.annotation.Datum;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLP;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.TokenSpan;
+
+/**
+ * BenchmarkDatum is a labeled token span used by the benchmarks.
+ * Its tools provide a 'TokenSpan' token span extractor and string
+ * extractor for features to reference.  Datums are serialized
+ * to JSON with their token spans referencing documents by name, so
+ * the documents must be added to the tools (see Tools.addDocuments)
+ * before datums can be deserialized.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class BenchmarkDatum<L> extends Datum<L> {
+	private TokenSpan tokenSpan;
+
+	public BenchmarkDatum(int id, TokenSpan tokenSpan, L label) {
+		this.id = id;
+		this.tokenSpan = tokenSpan;
+		this.label = label;
+	}
+
+	public TokenSpan getTokenSpan() {
+		return this.tokenSpan;
+	}
+
+	public static Tools<String> getStringTools(DataTools dataTools) {
+		return new Tools<String>(dataTools) {
+			@Override
+			public String labelFromString(String str) {
+				return str;
+			}
+		};
+	}
+
+	public static Tools<Boolean> getBooleanTools(DataTools dataTools) {
+		return new Tools<Boolean>(dataTools) {
+			@Override
+			public Boolean labelFromString(String str) {
+				if (str == null)
+					return null;
+				return str.toLowerCase().equals("true") || str.equals("1");
+			}
+		};
+	}
+
+	public static abstract class Tools<L> extends Datum.Tools<BenchmarkDatum<L>, L> {
+		private Map<String, DocumentNLP> documents = new HashMap<String, DocumentNLP>();
+
+		public Tools(DataTools dataTools) {
+			super(dataTools);
+
+			this.addStringExtractor(new StringExtractor<BenchmarkDatum<L>, L>() {
+				@Override
+				public String toString() {
+					return "TokenSpan";
+				}
+
+				@Override
+				public String[] extract(BenchmarkDatum<L> datum) {
+					return new String[] { datum.tokenSpan.toString() };
+				}
+			});
+
+			this.addTokenSpanExtractor(new TokenSpanExtractor<BenchmarkDatum<L>, L>() {
+				@Override
+				public String toString() {
+					return "TokenSpan";
+				}
+
+				@Override
+				public TokenSpan[] extract(BenchmarkDatum<L> datum) {
+					return new TokenSpan[] { datum.tokenSpan };
+				}
+			});
+		}
+
+		/**
+		 * @param documents documents that datumFromJSON can look up by
+		 * name when it deserializes token spans
+		 */
+		public void addDocuments(Collection<DocumentNLP> documents) {
+			for (DocumentNLP document : documents)
+				this.documents.put(document.getName(), document);
+		}
+
+		/**
+		 * @return the datum, or null if the JSON is malformed or references
+		 * a document that hasn't been added to the tools
+		 */
+		@Override
+		public BenchmarkDatum<L> datumFromJSON(JSONObject json) {
+			try {
+				JSONObject tokenSpanJson = json.getJSONObject("tokenSpan");
+				DocumentNLP document = this.documents.get(tokenSpanJson.getString("document"));
+				if (document == null)
+					return null;
+
+				TokenSpan tokenSpan = TokenSpan.fromJSON(tokenSpanJson, document);
+				if (tokenSpan == null)
+					return null;
+
+				L label = (json.has("label")) ? labelFromString(json.getString("label")) : null;
+				return new BenchmarkDatum<L>(json.getInt("id"), tokenSpan, label);
+			} catch (JSONException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public JSONObject datumToJSON(BenchmarkDatum<L> datum) {
+			JSONObject json = new JSONObject();
+
+			try {
+				json.put("id", datum.getId());
+				json.put("tokenSpan", datum.getTokenSpan().toJSON(true));
+				if (datum.getLabel() != null)
+					json.put("label", datum.getLabel().toString());
+			} catch (JSONException e) {
+				return null;
+			}
+
+			return json;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T extends Datum<Boolean>> T makeBinaryDatum(BenchmarkDatum<L> datum, LabelIndicator<L> labelIndicator) {
+			BenchmarkDatum<Boolean> binaryDatum = new BenchmarkDatum<Boolean>(datum.getId(), datum.getTokenSpan(), (labelIndicator == null || datum.getLabel() == null) ? null : labelIndicator.indicator(datum.getLabel()));
+
+			if (labelIndicator != null && datum.getLabel() != null)
+				binaryDatum.setLabelWeight(true, labelIndicator.weight(datum.getLabel()));
+
+			return (T)binaryDatum;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T extends Datum<Boolean>> Datum.Tools<T, Boolean> makeBinaryDatumTools(LabelIndicator<L> labelIndicator) {
+			Tools<Boolean> binaryTools = BenchmarkDatum.getBooleanTools(this.dataTools);
+			binaryTools.documents = this.documents;
+			return (Datum.Tools<T, Boolean>)binaryTools;
+		}
+	}
+}
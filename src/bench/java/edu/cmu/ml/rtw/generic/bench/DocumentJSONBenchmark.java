@@ -0,0 +1,72 @@
+package edu.cmu.ml.rtw.generic.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLP;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLPInMemory;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
+
+/**
+ * DocumentJSONBenchmark measures JSON serialization and
+ * deserialization of DocumentNLPInMemory documents with tokens,
+ * PoS tags, and dependency and constituency parses.  Scores are
+ * per document.
+ *
+ * @author Bill McDowell
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DocumentJSONBenchmark {
+	@Param({ "10", "100" })
+	public int sentenceCount;
+
+	private DataTools dataTools;
+	private DocumentNLP document;
+	private JSONObject json;
+	private String jsonStr;
+
+	@Setup
+	public void setup() {
+		this.dataTools = new DataTools(new OutputWriter());
+		SyntheticDocuments synthetic = new SyntheticDocuments(this.dataTools, 1, 5000);
+		this.document = synthetic.makeDocument("jsonBenchmark", this.sentenceCount, 25);
+		this.json = this.document.toJSON();
+		this.jsonStr = this.json.toString();
+	}
+
+	@Benchmark
+	public JSONObject toJSON() {
+		return this.document.toJSON();
+	}
+
+	@Benchmark
+	public DocumentNLP fromJSON() {
+		return new DocumentNLPInMemory(this.dataTools, this.json);
+	}
+
+	@Benchmark
+	public String roundTrip() throws JSONException {
+		DocumentNLP document = new DocumentNLPInMemory(this.dataTools, new JSONObject(this.jsonStr));
+		return document.toJSON().toString();
+	}
+}
@@ -0,0 +1,109 @@
+package edu.cmu.ml.rtw.generic.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cmu.ml.rtw.generic.data.Context;
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.data.Gazetteer;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLP;
+import edu.cmu.ml.rtw.generic.data.feature.Feature;
+import edu.cmu.ml.rtw.generic.data.feature.FeaturizedDataSet;
+import edu.cmu.ml.rtw.generic.parse.Obj;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
+
+/**
+ * FeatureBenchmark measures Feature.computeVector for n-gram,
+ * gazetteer edit distance, and token span function vocabulary
+ * features over synthetic datums.  Scores are per datum.
+ *
+ * @author Bill McDowell
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FeatureBenchmark {
+	public static final int DATUM_COUNT = 1000;
+	public static final String GAZETTEER_NAME = "BenchmarkGazetteer";
+
+	private List<BenchmarkDatum<String>> datums;
+	private Feature<BenchmarkDatum<String>, String> ngramFeature;
+	private Feature<BenchmarkDatum<String>, String> gazetteerFeature;
+	private Feature<BenchmarkDatum<String>, String> vocabFeature;
+
+	@Setup
+	public void setup() throws IOException {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		SyntheticDocuments synthetic = new SyntheticDocuments(dataTools, 1, 5000);
+
+		File gazetteerFile = File.createTempFile("benchmarkGazetteer", ".txt");
+		gazetteerFile.deleteOnExit();
+		synthetic.writeGazetteer(gazetteerFile, 20000);
+		dataTools.addGazetteer(new Gazetteer(GAZETTEER_NAME, gazetteerFile.getAbsolutePath(), dataTools.getCleanFn("DefaultCleanFn")));
+
+		List<DocumentNLP> documents = synthetic.makeDocuments(50, 20, 25);
+		this.datums = synthetic.makeDatums(documents, DATUM_COUNT, 3, new String[] { "A", "B", "C" });
+
+		BenchmarkDatum.Tools<String> datumTools = BenchmarkDatum.getStringTools(dataTools);
+		datumTools.addDocuments(documents);
+		Context<BenchmarkDatum<String>, String> context = Context.deserialize(datumTools,
+				"ts_fn ins1=NGramInside(n=\"1\", noHead=\"false\");\n" +
+				"ts_str_fn str=String(cleanFn=\"DefaultCleanFn\");\n" +
+				"feature fngram=NGramSentence(minFeatureOccurrence=\"2\", cleanFn=\"DefaultCleanFn\", tokenExtractor=\"TokenSpan\", scale=\"INDICATOR\", clusterer=\"None\", n=\"2\", noTokenSpan=\"false\");\n" +
+				"feature fgaz=GazetteerEditDistance(gazetteer=\"" + GAZETTEER_NAME + "\", stringExtractor=\"TokenSpan\", includeIds=\"true\", includeWeights=\"false\", weightThreshold=\"0\");\n" +
+				"feature fvocab=TokenSpanFnDataVocab(scale=\"INDICATOR\", minFeatureOccurrence=\"2\", tokenExtractor=\"TokenSpan\", fn=(${str} o ${ins1}));\n");
+
+		FeaturizedDataSet<BenchmarkDatum<String>, String> data = new FeaturizedDataSet<BenchmarkDatum<String>, String>("benchmark", 1, datumTools, null);
+		data.addAll(this.datums);
+
+		this.ngramFeature = context.getMatchFeature(Obj.curlyBracedValue("fngram"));
+		this.gazetteerFeature = context.getMatchFeature(Obj.curlyBracedValue("fgaz"));
+		this.vocabFeature = context.getMatchFeature(Obj.curlyBracedValue("fvocab"));
+		this.ngramFeature.init(data);
+		this.gazetteerFeature.init(data);
+		this.vocabFeature.init(data);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DATUM_COUNT)
+	public void ngramSentence(Blackhole blackhole) {
+		computeVectors(this.ngramFeature, blackhole);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DATUM_COUNT)
+	public void gazetteerEditDistance(Blackhole blackhole) {
+		computeVectors(this.gazetteerFeature, blackhole);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DATUM_COUNT)
+	public void tokenSpanFnDataVocab(Blackhole blackhole) {
+		computeVectors(this.vocabFeature, blackhole);
+	}
+
+	private void computeVectors(Feature<BenchmarkDatum<String>, String> feature, Blackhole blackhole) {
+		for (BenchmarkDatum<String> datum : this.datums)
+			blackhole.consume(feature.computeVector(datum, 0, new HashMap<Integer, Double>()));
+	}
+}
@@ -0,0 +1,84 @@
+package edu.cmu.ml.rtw.generic.bench;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cmu.ml.rtw.generic.data.Context;
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLP;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.TokenSpan;
+import edu.cmu.ml.rtw.generic.data.feature.fn.Fn;
+import edu.cmu.ml.rtw.generic.parse.Obj;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
+
+/**
+ * FnBenchmark measures Fn.listCompute and Fn.setCompute for a
+ * composite sentence n-gram function with the function cache on and
+ * off.  Each invocation computes the function for every datum, so with
+ * the cache on, the first invocation fills the cache and later
+ * invocations measure lookups.  Scores are per datum.
+ *
+ * @author Bill McDowell
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FnBenchmark {
+	public static final int DATUM_COUNT = 1000;
+
+	@Param({ "ON", "OFF" })
+	public String cacheMode;
+
+	private List<BenchmarkDatum<String>> datums;
+	private Fn<TokenSpan, String> fn;
+	private Fn.CacheMode fnCacheMode;
+
+	@Setup
+	public void setup() {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		SyntheticDocuments synthetic = new SyntheticDocuments(dataTools, 1, 5000);
+		List<DocumentNLP> documents = synthetic.makeDocuments(50, 20, 25);
+		this.datums = synthetic.makeDatums(documents, DATUM_COUNT, 3, new String[] { "A", "B", "C" });
+
+		Context<BenchmarkDatum<String>, String> context = Context.deserialize(BenchmarkDatum.getStringTools(dataTools),
+				"ts_fn sent2=NGramSentence(n=\"2\", noSpan=\"true\");\n" +
+				"ts_str_fn str=String(cleanFn=\"DefaultCleanFn\");\n" +
+				"ts_str_fn strSent2=(${str} o ${sent2});\n");
+
+		this.fn = context.getMatchTokenSpanStrFn(Obj.curlyBracedValue("strSent2"));
+		this.fnCacheMode = Fn.CacheMode.valueOf(this.cacheMode);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DATUM_COUNT)
+	public void listCompute(Blackhole blackhole) {
+		for (BenchmarkDatum<String> datum : this.datums)
+			blackhole.consume(this.fn.listCompute(Arrays.asList(datum.getTokenSpan()), "TokenSpan" + datum.getId(), this.fnCacheMode));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(DATUM_COUNT)
+	public void setCompute(Blackhole blackhole) {
+		for (BenchmarkDatum<String> datum : this.datums)
+			blackhole.consume(this.fn.setCompute(Arrays.asList(datum.getTokenSpan()), "TokenSpan" + datum.getId(), this.fnCacheMode));
+	}
+}
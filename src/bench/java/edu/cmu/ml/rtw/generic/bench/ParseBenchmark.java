@@ -0,0 +1,98 @@
+package edu.cmu.ml.rtw.generic.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.ConstituencyParse;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DependencyParse;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLP;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
+
+/**
+ * ParseBenchmark measures DependencyParse.fromString and path queries
+ * over dependency and constituency parses of synthetic sentences.
+ * Parsing scores are per sentence, and path scores are per query.
+ *
+ * @author Bill McDowell
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ParseBenchmark {
+	public static final int SENTENCE_COUNT = 100;
+	public static final int QUERY_COUNT = 1000;
+
+	@Param({ "10", "40" })
+	public int sentenceLength;
+
+	private DocumentNLP document;
+	private String[] dependencyParseStrs;
+	private String[] constituencyParseStrs;
+	private int[][] queries; // sentence index, source token index, target token index
+
+	@Setup
+	public void setup() {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		SyntheticDocuments synthetic = new SyntheticDocuments(dataTools, 1, 5000);
+		this.document = synthetic.makeDocument("parseBenchmark", SENTENCE_COUNT, this.sentenceLength);
+
+		this.dependencyParseStrs = new String[SENTENCE_COUNT];
+		this.constituencyParseStrs = new String[SENTENCE_COUNT];
+		for (int i = 0; i < SENTENCE_COUNT; i++) {
+			this.dependencyParseStrs[i] = this.document.getDependencyParse(i).toString();
+			this.constituencyParseStrs[i] = this.document.getConstituencyParse(i).toString();
+		}
+
+		Random random = new Random(1);
+		this.queries = new int[QUERY_COUNT][];
+		for (int i = 0; i < QUERY_COUNT; i++)
+			this.queries[i] = new int[] { random.nextInt(SENTENCE_COUNT), random.nextInt(this.sentenceLength), random.nextInt(this.sentenceLength) };
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SENTENCE_COUNT)
+	public void dependencyParseFromString(Blackhole blackhole) {
+		for (int i = 0; i < SENTENCE_COUNT; i++)
+			blackhole.consume(DependencyParse.fromString(this.dependencyParseStrs[i], this.document, i));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SENTENCE_COUNT)
+	public void constituencyParseFromString(Blackhole blackhole) {
+		for (int i = 0; i < SENTENCE_COUNT; i++)
+			blackhole.consume(ConstituencyParse.fromString(this.constituencyParseStrs[i], this.document, i));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERY_COUNT)
+	public void dependencyPath(Blackhole blackhole) {
+		for (int[] query : this.queries)
+			blackhole.consume(this.document.getDependencyParse(query[0]).getPath(query[1], query[2]));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERY_COUNT)
+	public void constituencyPath(Blackhole blackhole) {
+		for (int[] query : this.queries)
+			blackhole.consume(this.document.getConstituencyParse(query[0]).getPath(query[1], query[2]));
+	}
+}
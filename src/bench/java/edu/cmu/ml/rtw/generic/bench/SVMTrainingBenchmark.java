@@ -0,0 +1,100 @@
+package edu.cmu.ml.rtw.generic.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cmu.ml.rtw.generic.data.Context;
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLP;
+import edu.cmu.ml.rtw.generic.data.feature.FeaturizedDataSet;
+import edu.cmu.ml.rtw.generic.model.SupervisedModel;
+import edu.cmu.ml.rtw.generic.model.evaluation.metric.SupervisedModelEvaluation;
+import edu.cmu.ml.rtw.generic.parse.Obj;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
+
+/**
+ * SVMTrainingBenchmark measures single training epochs of
+ * SupervisedModelSVM over precomputed synthetic feature vectors,
+ * with sequential and Hogwild training and with sparse and dense
+ * weight stores.  A fresh model is cloned before each epoch, and
+ * the evaluation set is empty so that only the epoch is measured.
+ *
+ * @author Bill McDowell
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class SVMTrainingBenchmark {
+	@Param({ "1", "4" })
+	public int trainingThreads;
+
+	@Param({ "Sparse", "Dense" })
+	public String weightStore;
+
+	private FeaturizedDataSet<BenchmarkDatum<String>, String> data;
+	private FeaturizedDataSet<BenchmarkDatum<String>, String> testData;
+	private SupervisedModel<BenchmarkDatum<String>, String> modelGeneric;
+	private SupervisedModel<BenchmarkDatum<String>, String> model;
+
+	@Setup(Level.Trial)
+	public void setupTrial() {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		SyntheticDocuments synthetic = new SyntheticDocuments(dataTools, 1, 5000);
+		List<DocumentNLP> documents = synthetic.makeDocuments(200, 20, 25);
+
+		BenchmarkDatum.Tools<String> datumTools = BenchmarkDatum.getStringTools(dataTools);
+		datumTools.addDocuments(documents);
+		Context<BenchmarkDatum<String>, String> context = Context.deserialize(datumTools,
+				"ts_fn ins1=NGramInside(n=\"1\", noHead=\"false\");\n" +
+				"ts_fn ctxb1=NGramContext(n=\"1\", type=\"BEFORE\");\n" +
+				"ts_fn ctxa1=NGramContext(n=\"1\", type=\"AFTER\");\n" +
+				"ts_str_fn str=String(cleanFn=\"DefaultCleanFn\");\n" +
+				"feature fins=TokenSpanFnDataVocab(scale=\"INDICATOR\", minFeatureOccurrence=\"2\", tokenExtractor=\"TokenSpan\", fn=(${str} o ${ins1}));\n" +
+				"feature fctxb=TokenSpanFnDataVocab(scale=\"INDICATOR\", minFeatureOccurrence=\"2\", tokenExtractor=\"TokenSpan\", fn=(${str} o ${ctxb1}));\n" +
+				"feature fctxa=TokenSpanFnDataVocab(scale=\"INDICATOR\", minFeatureOccurrence=\"2\", tokenExtractor=\"TokenSpan\", fn=(${str} o ${ctxa1}));\n" +
+				"feature fsent=NGramSentence(minFeatureOccurrence=\"2\", cleanFn=\"DefaultCleanFn\", tokenExtractor=\"TokenSpan\", scale=\"INDICATOR\", clusterer=\"None\", n=\"1\", noTokenSpan=\"false\");\n" +
+				"model svm=SVM(l2=\"0.0001\") {\n" +
+				"array validLabels=(\"A\", \"B\", \"C\");\n" +
+				"value trainingIterations=\"1\";\n" +
+				"value earlyStopIfNoLabelChange=\"false\";\n" +
+				"value weightStore=\"" + this.weightStore + "\";\n" +
+				"value trainingThreads=\"" + this.trainingThreads + "\";\n" +
+				"};\n");
+
+		this.data = new FeaturizedDataSet<BenchmarkDatum<String>, String>("train", 1, datumTools, null);
+		this.data.addAll(synthetic.makeDatums(documents, 20000, 3, new String[] { "A", "B", "C" }));
+		this.data.addFeatures(context.getFeatures(), true);
+		this.data.precomputeFeatures();
+
+		this.testData = new FeaturizedDataSet<BenchmarkDatum<String>, String>("test", context.getFeatures(), 1, datumTools, null);
+		this.modelGeneric = context.getMatchModel(Obj.curlyBracedValue("svm"));
+	}
+
+	@Setup(Level.Invocation)
+	public void setupInvocation() {
+		this.model = this.modelGeneric.clone();
+	}
+
+	@Benchmark
+	public boolean trainEpoch() {
+		return this.model.train(this.data, this.testData, new ArrayList<SupervisedModelEvaluation<BenchmarkDatum<String>, String>>());
+	}
+}
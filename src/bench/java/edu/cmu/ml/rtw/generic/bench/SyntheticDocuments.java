@@ -0,0 +1,236 @@
+package edu.cmu.ml.rtw.generic.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLP;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLPInMemory;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.Language;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.PoSTag;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.TokenSpan;
+
+/**
+ * SyntheticDocuments generates random NLP documents with tokens,
+ * PoS tags, dependency parses, and constituency parses so that
+ * the benchmarks can exercise the annotation code without running
+ * an NLP pipeline.  Token strings are drawn from a Zipfian
+ * distribution over a random vocabulary so that n-gram and
+ * vocabulary features see a realistic mix of frequent and rare
+ * terms.  Generation is deterministic given the seed.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class SyntheticDocuments {
+	private static final PoSTag[] POS_TAGS = { PoSTag.DT, PoSTag.NN, PoSTag.NNS, PoSTag.JJ, PoSTag.VB, PoSTag.VBD, PoSTag.IN, PoSTag.RB, PoSTag.PRP, PoSTag.CC };
+	private static final String[] DEPENDENCY_TYPES = { "nsubj", "dobj", "amod", "det", "nmod", "case", "advmod", "conj", "cc" };
+	private static final String[] CONSTITUENT_LABELS = { "NP", "VP", "PP", "S", "SBAR", "ADJP" };
+
+	private DataTools dataTools;
+	private Random random;
+	private String[] vocabulary;
+	private double[] cumulativeWeights;
+
+	public SyntheticDocuments(DataTools dataTools, long seed, int vocabularySize) {
+		this.dataTools = dataTools;
+		this.random = new Random(seed);
+		this.vocabulary = new String[vocabularySize];
+		this.cumulativeWeights = new double[vocabularySize];
+
+		double totalWeight = 0.0;
+		for (int i = 0; i < vocabularySize; i++) {
+			this.vocabulary[i] = makeWord(2 + this.random.nextInt(8));
+			totalWeight += 1.0 / (i + 1);
+			this.cumulativeWeights[i] = totalWeight;
+		}
+	}
+
+	public String[] getVocabulary() {
+		return this.vocabulary;
+	}
+
+	public DocumentNLP makeDocument(String name, int sentenceCount, int sentenceLength) {
+		return new DocumentNLPInMemory(this.dataTools, makeDocumentJSON(name, sentenceCount, sentenceLength));
+	}
+
+	public List<DocumentNLP> makeDocuments(int documentCount, int sentenceCount, int sentenceLength) {
+		List<DocumentNLP> documents = new ArrayList<DocumentNLP>(documentCount);
+		for (int i = 0; i < documentCount; i++)
+			documents.add(makeDocument("synthetic" + i, sentenceCount, sentenceLength));
+		return documents;
+	}
+
+	/**
+	 * @param name
+	 * @param sentenceCount
+	 * @param sentenceLength
+	 * @return a JSON document in the format read by DocumentNLPInMemory.fromJSON
+	 */
+	public JSONObject makeDocumentJSON(String name, int sentenceCount, int sentenceLength) {
+		JSONObject json = new JSONObject();
+		StringBuilder text = new StringBuilder();
+		JSONArray sentencesJson = new JSONArray();
+
+		try {
+			for (int i = 0; i < sentenceCount; i++) {
+				String[] tokens = new String[sentenceLength];
+				PoSTag[] posTags = new PoSTag[sentenceLength];
+				JSONArray tokensJson = new JSONArray();
+				JSONArray posTagsJson = new JSONArray();
+				for (int j = 0; j < sentenceLength; j++) {
+					tokens[j] = sampleWord();
+					posTags[j] = POS_TAGS[this.random.nextInt(POS_TAGS.length)];
+					tokensJson.put(tokens[j]);
+					posTagsJson.put(posTags[j].toString());
+					text.append(tokens[j]).append(" ");
+				}
+
+				JSONObject sentenceJson = new JSONObject();
+				sentenceJson.put("tokens", tokensJson);
+				sentenceJson.put("posTags", posTagsJson);
+				sentenceJson.put("dependencyParse", makeDependencyParseString(tokens));
+				sentenceJson.put("constituencyParse", makeConstituencyParseString(tokens, posTags));
+				sentencesJson.put(sentenceJson);
+			}
+
+			json.put("name", name);
+			json.put("text", text.toString().trim());
+			json.put("language", Language.English.toString());
+			json.put("sentences", sentencesJson);
+		} catch (JSONException e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		return json;
+	}
+
+	/**
+	 * @return a random tree over the tokens in the format read by
+	 * DependencyParse.fromString.  The first token is governed by the root,
+	 * and each other token is governed by a random earlier token.
+	 */
+	public String makeDependencyParseString(String[] tokens) {
+		StringBuilder str = new StringBuilder();
+		str.append("root(ROOT-0, ").append(tokens[0]).append("-1)\n");
+		for (int i = 1; i < tokens.length; i++) {
+			int governor = this.random.nextInt(i);
+			str.append(DEPENDENCY_TYPES[this.random.nextInt(DEPENDENCY_TYPES.length)])
+			   .append("(").append(tokens[governor]).append("-").append(governor + 1)
+			   .append(", ").append(tokens[i]).append("-").append(i + 1).append(")\n");
+		}
+		return str.toString();
+	}
+
+	/**
+	 * @return a random tree over the tokens in the format read by
+	 * ConstituencyParse.fromString
+	 */
+	public String makeConstituencyParseString(String[] tokens, PoSTag[] posTags) {
+		StringBuilder str = new StringBuilder();
+		str.append("(ROOT ");
+		appendConstituent(str, tokens, posTags, 0, tokens.length, 0);
+		str.append(")");
+		return str.toString();
+	}
+
+	private void appendConstituent(StringBuilder str, String[] tokens, PoSTag[] posTags, int start, int end, int depth) {
+		if (end - start == 1) {
+			str.append("(").append(posTags[start].toString()).append(" ").append(tokens[start]).append(")");
+			return;
+		}
+
+		str.append("(").append((depth == 0) ? "S" : CONSTITUENT_LABELS[this.random.nextInt(CONSTITUENT_LABELS.length)]);
+		int childCount = Math.min(end - start, 2 + this.random.nextInt(2));
+		int childStart = start;
+		for (int i = 0; i < childCount; i++) {
+			int remaining = childCount - i - 1;
+			int childEnd = (remaining == 0) ? end : childStart + 1 + this.random.nextInt(end - childStart - remaining);
+			str.append(" ");
+			appendConstituent(str, tokens, posTags, childStart, childEnd, depth + 1);
+			childStart = childEnd;
+		}
+		str.append(")");
+	}
+
+	/**
+	 * @param documents
+	 * @param datumCount
+	 * @param maxSpanLength
+	 * @param labels
+	 * @return datums for random token spans within the documents.  Each
+	 * datum's label is determined by its span's first token, so that models
+	 * have something to learn.
+	 */
+	public List<BenchmarkDatum<String>> makeDatums(List<DocumentNLP> documents, int datumCount, int maxSpanLength, String[] labels) {
+		List<BenchmarkDatum<String>> datums = new ArrayList<BenchmarkDatum<String>>(datumCount);
+		for (int i = 0; i < datumCount; i++) {
+			DocumentNLP document = documents.get(this.random.nextInt(documents.size()));
+			int sentenceIndex = this.random.nextInt(document.getSentenceCount());
+			int tokenCount = document.getSentenceTokenCount(sentenceIndex);
+			int start = this.random.nextInt(tokenCount);
+			int end = Math.min(tokenCount, start + 1 + this.random.nextInt(maxSpanLength));
+			TokenSpan tokenSpan = new TokenSpan(document, sentenceIndex, start, end);
+			String label = labels[Math.abs(document.getTokenStr(sentenceIndex, start).hashCode() % labels.length)];
+			datums.add(new BenchmarkDatum<String>(i, tokenSpan, label));
+		}
+		return datums;
+	}
+
+	/**
+	 * Writes a gazetteer file of entryCount entries, each of which is a
+	 * one to three word phrase from the vocabulary
+	 *
+	 * @param file
+	 * @param entryCount
+	 * @return true if the file was written
+	 */
+	public boolean writeGazetteer(File file, int entryCount) {
+		try {
+			BufferedWriter w = new BufferedWriter(new FileWriter(file));
+			for (int i = 0; i < entryCount; i++) {
+				int length = 1 + this.random.nextInt(3);
+				StringBuilder value = new StringBuilder();
+				for (int j = 0; j < length; j++)
+					value.append(sampleWord()).append(" ");
+				w.write("e" + i + "\t" + value.toString().trim() + "\n");
+			}
+			w.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	private String sampleWord() {
+		double r = this.random.nextDouble() * this.cumulativeWeights[this.cumulativeWeights.length - 1];
+		int low = 0;
+		int high = this.cumulativeWeights.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.cumulativeWeights[mid] < r)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return this.vocabulary[low];
+	}
+
+	private String makeWord(int length) {
+		char[] word = new char[length];
+		for (int i = 0; i < length; i++)
+			word[i] = (char)('a' + this.random.nextInt(26));
+		return new String(word);
+	}
+}
@@ -5,6 +5,7 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Random;
 
+import edu.cmu.ml.rtw.generic.util.EditDistance;
 import edu.cmu.ml.rtw.generic.util.OutputWriter;
 import edu.cmu.ml.rtw.generic.util.StringUtil;
 import edu.cmu.ml.rtw.generic.util.Timer;
@@ -57,11 +58,27 @@ public class DataTools {
 	
 	/**
 	 * Interface for a function that maps a pair of strings to a real number--
-	 * for example, as a measure of their similarity.
+	 * for example, as a measure of their similarity.  Measures are 
+	 * registered under their toString names.
 	 *
 	 */
 	public interface StringPairMeasure {
 		double compute(String str1, String str2);
+		String toString();
+	}
+	
+	/**
+	 * Interface for a StringPairMeasure that is computed from the 
+	 * Levenshtein distance between two strings and their lengths.  The 
+	 * measure must not decrease as the distance increases, and must not 
+	 * increase as the length of the second string increases.  Gazetteers 
+	 * use these properties to answer min and max queries for these 
+	 * measures through an EditDistanceIndex rather than by comparing 
+	 * against every entry.
+	 *
+	 */
+	public interface EditDistanceMeasure extends StringPairMeasure {
+		double computeFromDistance(int distance, int length1, int length2);
 	}
 	
 	/**
@@ -101,6 +118,7 @@ public class DataTools {
 	protected Map<String, Gazetteer> gazetteers;
 	protected Map<String, DataTools.StringTransform> cleanFns;
 	protected Map<String, DataTools.StringCollectionTransform> collectionFns;
+	protected Map<String, DataTools.StringPairMeasure> stringPairMeasures;
 	protected Map<String, Clusterer<String>> stringClusterers;
 	protected Map<String, Clusterer<TokenSpan>> tokenSpanClusterers;
 	protected Map<String, Path> paths;
@@ -111,6 +129,7 @@ public class DataTools {
 	protected Random globalRandom;
 	protected OutputWriter outputWriter;
 	protected Timer timer;
+	protected boolean compactDocuments;
 	
 	public DataTools() {
 		this(new OutputWriter());
@@ -120,6 +139,7 @@ public class DataTools {
 		this.gazetteers = new HashMap<String, Gazetteer>();
 		this.cleanFns = new HashMap<String, DataTools.StringTransform>();
 		this.collectionFns = new HashMap<String, DataTools.StringCollectionTransform>();
+		this.stringPairMeasures = new HashMap<String, DataTools.StringPairMeasure>();
 		this.stringClusterers = new HashMap<String, Clusterer<String>>();
 		this.tokenSpanClusterers = new HashMap<String, Clusterer<TokenSpan>>();
 		this.paths = new HashMap<String, Path>();
@@ -147,6 +167,34 @@ public class DataTools {
 			}
 		});
 		
+		this.stringPairMeasures.put("Levenshtein", new DataTools.EditDistanceMeasure() {
+			public String toString() {
+				return "Levenshtein";
+			}
+			
+			public double compute(String str1, String str2) {
+				return EditDistance.levenshtein(str1, str2);
+			}
+			
+			public double computeFromDistance(int distance, int length1, int length2) {
+				return distance;
+			}
+		});
+		
+		this.stringPairMeasures.put("NormalizedLevenshtein", new DataTools.EditDistanceMeasure() {
+			public String toString() {
+				return "NormalizedLevenshtein";
+			}
+			
+			public double compute(String str1, String str2) {
+				return computeFromDistance(EditDistance.levenshtein(str1, str2), str1.length(), str2.length());
+			}
+			
+			public double computeFromDistance(int distance, int length1, int length2) {
+				return distance/((double)(length1+length2));
+			}
+		});
+		
 		this.addTokenSpanClusterer(new ClustererTokenSpanPoSTag());
 		
 		this.collectionFns.put("None", null);
@@ -154,6 +202,7 @@ public class DataTools {
 		this.tokenSpanClusterers.put("None", null);
 		this.globalRandom = new Random();
 		this.timer = new Timer();
+		this.compactDocuments = false;
 		
 		this.addAnnotationTypeNLP(AnnotationTypeNLP.ORIGINAL_TEXT);
 		this.addAnnotationTypeNLP(AnnotationTypeNLP.LANGUAGE);
@@ -179,6 +228,10 @@ public class DataTools {
 		return this.collectionFns.get(name);
 	}
 	
+	public DataTools.StringPairMeasure getStringPairMeasure(String name) {
+		return this.stringPairMeasures.get(name);
+	}
+	
 	public Clusterer<String> getStringClusterer(String name) {
 		return this.stringClusterers.get(name);
 	}
@@ -264,6 +317,11 @@ public class DataTools {
 		return true;
 	}
 	
+	public boolean addStringPairMeasure(DataTools.StringPairMeasure measure) {
+		this.stringPairMeasures.put(measure.toString(), measure);
+		return true;
+	}
+	
 	public boolean addStringClusterer(ClustererString clusterer) {
 		this.stringClusterers.put(clusterer.getName(), clusterer);
 		return true;
@@ -289,4 +347,18 @@ public class DataTools {
 		this.globalRandom.setSeed(this.randomSeed);
 		return true;
 	}
+	
+	/**
+	 * @param compactDocuments indicates whether documents constructed
+	 * with these tools should be made compact (see 
+	 * DocumentNLPInMemory.compact) once they are loaded or annotated
+	 */
+	public boolean setCompactDocuments(boolean compactDocuments) {
+		this.compactDocuments = compactDocuments;
+		return true;
+	}
+	
+	public boolean getCompactDocuments() {
+		return this.compactDocuments;
+	}
 }
@@ -0,0 +1,78 @@
+package edu.cmu.ml.rtw.generic.data;
+
+import java.util.Collection;
+
+import edu.cmu.ml.rtw.generic.util.Pair;
+
+/**
+ * EditDistanceIndex indexes a set of strings so that the string
+ * which minimizes or maximizes a DataTools.EditDistanceMeasure
+ * with respect to a query string can be found without computing the
+ * Levenshtein distance from the query to every indexed string.
+ *
+ * Implementations only rely on the monotonicity properties of the
+ * measure documented by DataTools.EditDistanceMeasure to prune their
+ * searches, so they return the same extreme values as a linear scan
+ * over the indexed strings (ties might be broken differently).
+ *
+ * @author Bill McDowell
+ *
+ */
+public abstract class EditDistanceIndex {
+	public enum Type {
+		NONE,
+		BK_TREE,
+		TRIE
+	}
+
+	/**
+	 * @param type
+	 * @param strs
+	 * @return an index of the given type over strs, or null if the type is
+	 * NONE
+	 */
+	public static EditDistanceIndex build(Type type, Collection<String> strs) {
+		if (type == Type.BK_TREE)
+			return new EditDistanceIndexBKTree(strs);
+		else if (type == Type.TRIE)
+			return new EditDistanceIndexTrie(strs);
+		else
+			return null;
+	}
+
+	/**
+	 * @param str
+	 * @param measure
+	 * @return the indexed string s minimizing measure(str, s), paired with
+	 * the minimum value, or a null string paired with positive infinity if
+	 * the index is empty
+	 */
+	public abstract Pair<String, Double> min(String str, DataTools.EditDistanceMeasure measure);
+
+	/**
+	 * @param str
+	 * @param measure
+	 * @return the indexed string s maximizing measure(str, s), paired with
+	 * the maximum value, or a null string paired with negative infinity if
+	 * the index is empty
+	 */
+	public abstract Pair<String, Double> max(String str, DataTools.EditDistanceMeasure measure);
+
+	public abstract int size();
+
+	/**
+	 * @param length1
+	 * @param minLength2
+	 * @param maxLength2
+	 * @return a lower bound on the Levenshtein distance between a string
+	 * of length length1 and any string with length in [minLength2, maxLength2]
+	 */
+	protected static int lengthDistanceLowerBound(int length1, int minLength2, int maxLength2) {
+		if (length1 < minLength2)
+			return minLength2 - length1;
+		else if (length1 > maxLength2)
+			return length1 - maxLength2;
+		else
+			return 0;
+	}
+}
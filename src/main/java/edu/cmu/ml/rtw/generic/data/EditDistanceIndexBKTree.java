@@ -0,0 +1,230 @@
+package edu.cmu.ml.rtw.generic.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import edu.cmu.ml.rtw.generic.util.Pair;
+import edu.cmu.ml.rtw.generic.util.StringUtil;
+
+/**
+ * EditDistanceIndexBKTree is a Burkhard-Keller tree over Levenshtein
+ * distance.  Each child subtree of a node contains the strings at one
+ * particular distance k from the node's string, so by the triangle
+ * inequality, the distance from a query q to any string in that subtree
+ * is in [|d(q, node) - k|, d(q, node) + k].  These bounds are combined with
+ * the minimum and maximum string lengths in each subtree to bound the
+ * measure over the subtree and prune the search.
+ *
+ * Minimum queries compute bounded distances: a node's distance is only
+ * needed exactly if it is small enough for the node or one of its
+ * children to improve on the current minimum, so the computation stops
+ * early for distant strings.  Building the tree and maximum queries need
+ * exact distances.
+ *
+ * The tree takes roughly one Levenshtein computation per level per
+ * string to build, so it's slower to build than EditDistanceIndexTrie,
+ * but it takes much less memory.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class EditDistanceIndexBKTree extends EditDistanceIndex {
+	private static class Node {
+		private String str;
+		private int[] childDistances;
+		private Node[] children;
+		private int childCount;
+		private int maxChildDistance;
+		private int minLength;
+		private int maxLength;
+
+		public Node(String str) {
+			this.str = str;
+			this.minLength = str.length();
+			this.maxLength = str.length();
+		}
+
+		public Node getChild(int distance) {
+			for (int i = 0; i < this.childCount; i++)
+				if (this.childDistances[i] == distance)
+					return this.children[i];
+			return null;
+		}
+
+		public void addChild(int distance, Node child) {
+			if (this.children == null) {
+				this.childDistances = new int[2];
+				this.children = new Node[2];
+			} else if (this.childCount == this.children.length) {
+				int[] childDistances = new int[this.childCount*2];
+				Node[] children = new Node[this.childCount*2];
+				System.arraycopy(this.childDistances, 0, childDistances, 0, this.childCount);
+				System.arraycopy(this.children, 0, children, 0, this.childCount);
+				this.childDistances = childDistances;
+				this.children = children;
+			}
+
+			this.maxChildDistance = Math.max(this.maxChildDistance, distance);
+			this.childDistances[this.childCount] = distance;
+			this.children[this.childCount] = child;
+			this.childCount++;
+		}
+	}
+
+	private Node root;
+	private int size;
+
+	public EditDistanceIndexBKTree(Collection<String> strs) {
+		for (String str : strs)
+			add(str);
+	}
+
+	private void add(String str) {
+		if (this.root == null) {
+			this.root = new Node(str);
+			this.size++;
+			return;
+		}
+
+		Node node = this.root;
+		while (true) {
+			int distance = StringUtil.levenshteinDistance(str, node.str);
+			if (distance == 0)
+				return;
+
+			node.minLength = Math.min(node.minLength, str.length());
+			node.maxLength = Math.max(node.maxLength, str.length());
+
+			Node child = node.getChild(distance);
+			if (child == null) {
+				node.addChild(distance, new Node(str));
+				this.size++;
+				return;
+			}
+
+			node = child;
+		}
+	}
+
+	@Override
+	public Pair<String, Double> min(String str, DataTools.EditDistanceMeasure measure) {
+		double min = Double.POSITIVE_INFINITY;
+		String minStr = null;
+		if (this.root == null)
+			return new Pair<String, Double>(minStr, min);
+
+		int length = str.length();
+		List<Node> nodes = new ArrayList<Node>();
+		List<Double> bounds = new ArrayList<Double>();
+		nodes.add(this.root);
+		bounds.add(Double.NEGATIVE_INFINITY);
+
+		while (!nodes.isEmpty()) {
+			Node node = nodes.remove(nodes.size() - 1);
+			double bound = bounds.remove(bounds.size() - 1);
+			if (bound >= min)
+				continue;
+
+			// Past maxDistance, neither the node nor its subtree can improve on
+			// the minimum, and past maxDistance + maxChildDistance, neither can
+			// any of its children by the triangle inequality
+			int maxDistance = getMaxImprovingDistance(measure, length, node.maxLength, min);
+			if (maxDistance < 0)
+				continue;
+			int distanceBound = maxDistance + node.maxChildDistance;
+			int distance = StringUtil.levenshteinDistance(str, node.str, distanceBound);
+			if (distance > distanceBound)
+				continue;
+
+			double value = measure.computeFromDistance(distance, length, node.str.length());
+			if (value < min) {
+				min = value;
+				minStr = node.str;
+			}
+
+			for (int i = 0; i < node.childCount; i++) {
+				Node child = node.children[i];
+				int childDistance = Math.max(Math.abs(distance - node.childDistances[i]),
+											 lengthDistanceLowerBound(length, child.minLength, child.maxLength));
+				double childBound = measure.computeFromDistance(childDistance, length, child.maxLength);
+				if (childBound < min) {
+					nodes.add(child);
+					bounds.add(childBound);
+				}
+			}
+		}
+
+		return new Pair<String, Double>(minStr, min);
+	}
+
+	/**
+	 * @return the largest distance at which the measure between a string
+	 * of length length and a string of length maxLength is less than min,
+	 * or -1 if there isn't one.  Since the measure doesn't increase with
+	 * the second length, no string of at most maxLength characters that
+	 * is further than this distance can have a measure less than min.
+	 */
+	private int getMaxImprovingDistance(DataTools.EditDistanceMeasure measure, int length, int maxLength, double min) {
+		int high = Math.max(length, maxLength); // Largest possible distance
+		if (measure.computeFromDistance(high, length, maxLength) < min)
+			return high;
+
+		int low = -1;
+		while (high - low > 1) {
+			int mid = (low + high) >>> 1;
+			if (measure.computeFromDistance(mid, length, maxLength) < min)
+				low = mid;
+			else
+				high = mid;
+		}
+
+		return low;
+	}
+
+	@Override
+	public Pair<String, Double> max(String str, DataTools.EditDistanceMeasure measure) {
+		double max = Double.NEGATIVE_INFINITY;
+		String maxStr = null;
+		if (this.root == null)
+			return new Pair<String, Double>(maxStr, max);
+
+		int length = str.length();
+		List<Node> nodes = new ArrayList<Node>();
+		List<Double> bounds = new ArrayList<Double>();
+		nodes.add(this.root);
+		bounds.add(Double.POSITIVE_INFINITY);
+
+		while (!nodes.isEmpty()) {
+			Node node = nodes.remove(nodes.size() - 1);
+			double bound = bounds.remove(bounds.size() - 1);
+			if (bound <= max)
+				continue;
+
+			int distance = StringUtil.levenshteinDistance(str, node.str);
+			double value = measure.computeFromDistance(distance, length, node.str.length());
+			if (value > max) {
+				max = value;
+				maxStr = node.str;
+			}
+
+			for (int i = 0; i < node.childCount; i++) {
+				Node child = node.children[i];
+				int childDistance = Math.min(distance + node.childDistances[i],
+											 Math.max(length, child.maxLength));
+				double childBound = measure.computeFromDistance(childDistance, length, child.minLength);
+				if (childBound > max) {
+					nodes.add(child);
+					bounds.add(childBound);
+				}
+			}
+		}
+
+		return new Pair<String, Double>(maxStr, max);
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+}
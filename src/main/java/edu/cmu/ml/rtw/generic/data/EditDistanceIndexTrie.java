@@ -0,0 +1,207 @@
+package edu.cmu.ml.rtw.generic.data;
+
+import java.util.Collection;
+
+import edu.cmu.ml.rtw.generic.util.Pair;
+
+/**
+ * EditDistanceIndexTrie is a character trie over a set of strings which
+ * is searched depth-first while computing one row of the Levenshtein
+ * dynamic program per trie edge, so that the rows for a shared prefix are
+ * only computed once (this simulates running a Levenshtein automaton for
+ * the query over the trie).  The minimum value in a row is a lower bound
+ * on the distance from the query to every string below the node, and
+ * this is combined with the minimum and maximum string lengths below
+ * each node to bound the measure and prune subtrees.
+ *
+ * The trie is cheap to build, but takes more memory than
+ * EditDistanceIndexBKTree.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class EditDistanceIndexTrie extends EditDistanceIndex {
+	private static class Node {
+		private char[] childChars;
+		private Node[] children;
+		private int childCount;
+		private String str; // Non-null if a string ends at this node
+		private int minLength = Integer.MAX_VALUE;
+		private int maxLength = 0;
+
+		public Node getOrAddChild(char c) {
+			int index = findChild(c);
+			if (index >= 0)
+				return this.children[index];
+
+			index = -(index + 1);
+			if (this.children == null) {
+				this.childChars = new char[2];
+				this.children = new Node[2];
+			} else if (this.childCount == this.children.length) {
+				char[] childChars = new char[this.childCount*2];
+				Node[] children = new Node[this.childCount*2];
+				System.arraycopy(this.childChars, 0, childChars, 0, this.childCount);
+				System.arraycopy(this.children, 0, children, 0, this.childCount);
+				this.childChars = childChars;
+				this.children = children;
+			}
+
+			System.arraycopy(this.childChars, index, this.childChars, index + 1, this.childCount - index);
+			System.arraycopy(this.children, index, this.children, index + 1, this.childCount - index);
+			Node child = new Node();
+			this.childChars[index] = c;
+			this.children[index] = child;
+			this.childCount++;
+			return child;
+		}
+
+		private int findChild(char c) {
+			int low = 0;
+			int high = this.childCount - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (this.childChars[mid] < c)
+					low = mid + 1;
+				else if (this.childChars[mid] > c)
+					high = mid - 1;
+				else
+					return mid;
+			}
+			return -(low + 1);
+		}
+	}
+
+	/**
+	 * Search holds the state of a single min or max query, so that
+	 * concurrent queries don't share DP rows.
+	 */
+	private static class Search {
+		private String query;
+		private DataTools.EditDistanceMeasure measure;
+		private int[][] rows; // DP row for each trie depth
+		private double best;
+		private String bestStr;
+
+		public Search(String query, DataTools.EditDistanceMeasure measure, int maxDepth, double best) {
+			this.query = query;
+			this.measure = measure;
+			this.rows = new int[maxDepth + 1][query.length() + 1];
+			this.best = best;
+			for (int i = 0; i <= query.length(); i++)
+				this.rows[0][i] = i;
+		}
+
+		/**
+		 * Fills the DP row for the edge into depth with character c
+		 *
+		 * @return the minimum value in the row
+		 */
+		public int computeRow(int depth, char c) {
+			int[] prevRow = this.rows[depth - 1];
+			int[] row = this.rows[depth];
+			row[0] = depth;
+			int rowMin = row[0];
+			for (int i = 1; i < row.length; i++) {
+				int substitution = prevRow[i - 1] + ((this.query.charAt(i - 1) == c) ? 0 : 1);
+				row[i] = Math.min(substitution, Math.min(prevRow[i], row[i - 1]) + 1);
+				if (row[i] < rowMin)
+					rowMin = row[i];
+			}
+			return rowMin;
+		}
+	}
+
+	private Node root;
+	private int size;
+
+	public EditDistanceIndexTrie(Collection<String> strs) {
+		this.root = new Node();
+		for (String str : strs)
+			add(str);
+	}
+
+	private void add(String str) {
+		int length = str.length();
+		Node node = this.root;
+		for (int i = 0; i <= length; i++) {
+			node.minLength = Math.min(node.minLength, length);
+			node.maxLength = Math.max(node.maxLength, length);
+			if (i < length)
+				node = node.getOrAddChild(str.charAt(i));
+		}
+
+		if (node.str == null) {
+			node.str = str;
+			this.size++;
+		}
+	}
+
+	@Override
+	public Pair<String, Double> min(String str, DataTools.EditDistanceMeasure measure) {
+		if (this.size == 0)
+			return new Pair<String, Double>(null, Double.POSITIVE_INFINITY);
+
+		Search search = new Search(str, measure, this.root.maxLength, Double.POSITIVE_INFINITY);
+		searchMin(search, this.root, 0);
+		return new Pair<String, Double>(search.bestStr, search.best);
+	}
+
+	private void searchMin(Search search, Node node, int depth) {
+		int length = search.query.length();
+		int[] row = search.rows[depth];
+		if (node.str != null) {
+			double value = search.measure.computeFromDistance(row[length], length, depth);
+			if (value < search.best) {
+				search.best = value;
+				search.bestStr = node.str;
+			}
+		}
+
+		for (int i = 0; i < node.childCount; i++) {
+			Node child = node.children[i];
+			int rowMin = search.computeRow(depth + 1, node.childChars[i]);
+			int childDistance = Math.max(rowMin, lengthDistanceLowerBound(length, child.minLength, child.maxLength));
+			if (search.measure.computeFromDistance(childDistance, length, child.maxLength) < search.best)
+				searchMin(search, child, depth + 1);
+		}
+	}
+
+	@Override
+	public Pair<String, Double> max(String str, DataTools.EditDistanceMeasure measure) {
+		if (this.size == 0)
+			return new Pair<String, Double>(null, Double.NEGATIVE_INFINITY);
+
+		Search search = new Search(str, measure, this.root.maxLength, Double.NEGATIVE_INFINITY);
+		searchMax(search, this.root, 0);
+		return new Pair<String, Double>(search.bestStr, search.best);
+	}
+
+	private void searchMax(Search search, Node node, int depth) {
+		int length = search.query.length();
+		int[] row = search.rows[depth];
+		if (node.str != null) {
+			double value = search.measure.computeFromDistance(row[length], length, depth);
+			if (value > search.best) {
+				search.best = value;
+				search.bestStr = node.str;
+			}
+		}
+
+		for (int i = 0; i < node.childCount; i++) {
+			Node child = node.children[i];
+			search.computeRow(depth + 1, node.childChars[i]);
+			// Any string below the child is the child's prefix plus at most
+			// (maxLength - depth - 1) more characters
+			int childDistance = Math.min(search.rows[depth + 1][length] + child.maxLength - depth - 1,
+										 Math.max(length, child.maxLength));
+			if (search.measure.computeFromDistance(childDistance, length, child.minLength) > search.best)
+				searchMax(search, child, depth + 1);
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+}
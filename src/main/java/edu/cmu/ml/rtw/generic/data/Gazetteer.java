@@ -25,6 +25,12 @@ import edu.cmu.ml.rtw.generic.util.Pair;
  * that each string should be assigned to the given ID, but
  * these are optional.
  * 
+ * The strings are also indexed by an EditDistanceIndex (a trie
+ * by default) when they are loaded, so that min and max queries for 
+ * DataTools.EditDistanceMeasures don't need to compare against every 
+ * string in the gazetteer.  Other measures are computed by a 
+ * linear scan.
+ * 
  * @authors Lingpeng Kong, Bill McDowell
  *
  */
@@ -32,6 +38,7 @@ public class Gazetteer {
 	private HashMap<String, List<Pair<String, Double>>> gazetteer;
 	private String name;
 	private DataTools.StringTransform cleanFn;
+	private EditDistanceIndex editDistanceIndex;
 	
 	public Gazetteer(String name, String sourceFilePath) {
 		this(name, sourceFilePath, null);
@@ -42,6 +49,10 @@ public class Gazetteer {
 	}
 	
 	public Gazetteer(String name, String sourceFilePath, DataTools.StringTransform cleanFn, boolean hasWeights) {
+		this(name, sourceFilePath, cleanFn, hasWeights, EditDistanceIndex.Type.TRIE);
+	}
+	
+	public Gazetteer(String name, String sourceFilePath, DataTools.StringTransform cleanFn, boolean hasWeights, EditDistanceIndex.Type editDistanceIndexType) {
 		this.cleanFn = cleanFn;
 		this.gazetteer = new HashMap<String, List<Pair<String, Double>>>();
 		this.name = name;
@@ -94,6 +105,8 @@ public class Gazetteer {
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		
+		this.editDistanceIndex = EditDistanceIndex.build(editDistanceIndexType, this.gazetteer.keySet());
 	}
 
 	public String getName() {
@@ -134,6 +147,12 @@ public class Gazetteer {
 	}
 	
 	public Pair<List<Pair<String,Double>>, Double> min(String str, DataTools.StringPairMeasure fn) {
+		if (this.editDistanceIndex != null && fn instanceof DataTools.EditDistanceMeasure) {
+			Pair<String, Double> minStr = this.editDistanceIndex.min(cleanString(str), (DataTools.EditDistanceMeasure)fn);
+			List<Pair<String, Double>> minIds = (minStr.getFirst() == null) ? null : this.gazetteer.get(minStr.getFirst());
+			return new Pair<List<Pair<String,Double>>, Double>(minIds, minStr.getSecond());
+		}
+		
 		double min = Double.POSITIVE_INFINITY;
 		List<Pair<String, Double>> minIds = null;
 		String cleanStr = cleanString(str);
@@ -148,6 +167,12 @@ public class Gazetteer {
 	}
 	
 	public Pair<List<Pair<String,Double>>, Double> max(String str, DataTools.StringPairMeasure fn) {
+		if (this.editDistanceIndex != null && fn instanceof DataTools.EditDistanceMeasure) {
+			Pair<String, Double> maxStr = this.editDistanceIndex.max(cleanString(str), (DataTools.EditDistanceMeasure)fn);
+			List<Pair<String, Double>> maxIds = (maxStr.getFirst() == null) ? null : this.gazetteer.get(maxStr.getFirst());
+			return new Pair<List<Pair<String,Double>>, Double>(maxIds, maxStr.getSecond());
+		}
+		
 		double max = Double.NEGATIVE_INFINITY;
 		List<Pair<String, Double>> maxIds = null;
 		String cleanStr = cleanString(str);
@@ -26,6 +26,7 @@ import edu.cmu.ml.rtw.generic.data.annotation.Datum.Tools.LabelIndicator;
 import edu.cmu.ml.rtw.generic.util.MathUtil;
 import edu.cmu.ml.rtw.generic.util.Pair;
 import edu.cmu.ml.rtw.generic.util.ThreadMapper;
+import edu.cmu.ml.rtw.generic.util.ThreadPool;
 
 /**
  * DataSet represents a collection of labeled and/or unlabeled 'datums'
@@ -393,29 +394,26 @@ public class DataSet<D extends Datum<L>, L> implements Collection<D> {
 		return new Pair<L, Integer>(maxLabel, maxLabelCount);
 	}
 	
+	/**
+	 * @param fn
+	 * @param maxThreads
+	 * @return the results of applying fn to each datum, in order by datum
+	 * id, or null if fn failed on some datum.  The data is mapped over in 
+	 * chunks by the shared ThreadPool directly from the underlying map, 
+	 * without copying it into per-thread partitions.
+	 */
 	public <T> List<T> map(final ThreadMapper.Fn<D, T> fn, int maxThreads) {
-		List<DataSet<D, L>> threadDataPartition  = this.makePartition(maxThreads, this.datumTools.getDataTools().getGlobalRandom());
-		
-		ThreadMapper<DataSet<D, L>, List<T>> threadMapper 
-		= new ThreadMapper<DataSet<D, L>, List<T>>(new ThreadMapper.Fn<DataSet<D, L>, List<T>>() {
-			@Override
-			public List<T> apply(DataSet<D, L> dataSet) {
-				List<T> results = new ArrayList<T>(dataSet.size());
-				for (D datum : dataSet) {
-					T result = fn.apply(datum);
-					results.add(result);
-				}
-				
-				return results;
-			}
-		});
+		return startMap(fn, maxThreads).get();
+	}
 	
-		List<List<T>> threadResults = threadMapper.run(threadDataPartition, maxThreads);
-		List<T> results = new ArrayList<T>(size());
-		for (List<T> threadResult : threadResults)
-			results.addAll(threadResult);
-		
-		return results;
+	/**
+	 * @param fn
+	 * @param maxThreads
+	 * @return a handle to the started mapping, which can be used to wait
+	 * for the results, cancel the mapping, or retrieve per-datum failures
+	 */
+	public <T> ThreadPool.Mapping<D, T> startMap(final ThreadMapper.Fn<D, T> fn, int maxThreads) {
+		return ThreadPool.getShared().map(this.data.values(), this.data.size(), fn, maxThreads);
 	}
 	
 	public boolean deserialize(BufferedReader reader, int idOffset) throws IOException {		
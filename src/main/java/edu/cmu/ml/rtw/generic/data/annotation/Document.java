@@ -50,6 +50,10 @@ public abstract class Document implements JSONSerializable {
 		return this.name;
 	}
 	
+	public DataTools getDataTools() {
+		return this.dataTools;
+	}
+	
 	public boolean saveToJSONFile(String path) {
 		try {
 			BufferedWriter w = new BufferedWriter(new FileWriter(path));
@@ -0,0 +1,295 @@
+package edu.cmu.ml.rtw.generic.data.annotation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DocumentCache is a bounded cache of the documents in
+ * DocumentSets that are loaded lazily from files.  The cache holds
+ * at most a given number of documents, and at most a given total
+ * weight of documents (where weights are estimated by a Weigher,
+ * for example, from the number of tokens in each document).
+ *
+ * Documents are evicted with the CLOCK (second chance) policy: the
+ * documents are kept in a queue in the order that they were loaded,
+ * and each document is marked when it is requested.  When the cache
+ * is over its limits, documents are taken from the front of the queue,
+ * and marked documents are unmarked and moved to the back instead of
+ * being evicted.  Documents that are pinned (see DocumentSet.pinDocumentByName)
+ * are never evicted until they are unpinned, so the cache can temporarily
+ * exceed its limits if too many documents are pinned.
+ *
+ * Each document is loaded by only one thread at a time.  Other threads
+ * that request the document while it is loading wait for it.  The cache
+ * keeps hit, miss, eviction and load time statistics.
+ *
+ * @author Bill McDowell
+ *
+ * @param <D> document type
+ */
+public class DocumentCache<D extends Document> {
+	public interface Weigher<D> {
+		int weigh(D document);
+	}
+
+	private class Entry {
+		private D document;
+		private boolean loading;
+		private boolean referenced;
+		private int pins;
+		private int weight;
+	}
+
+	private long maxSize;
+	private long maxWeight;
+	private Weigher<? super D> weigher;
+
+	// Entries in CLOCK order (front is the next eviction candidate)
+	private LinkedHashMap<String, Entry> entries;
+	private long weight;
+
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+	private long loadCount;
+	private long loadFailureCount;
+	private long loadTime;
+
+	/**
+	 * @param maxSize maximum number of documents to keep in memory
+	 */
+	public DocumentCache(long maxSize) {
+		this(maxSize, Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * @param maxSize maximum number of documents to keep in memory
+	 * @param maxWeight maximum total weight of documents to keep in memory
+	 * @param weigher estimates the weight of each document (or null to
+	 * give each document weight 1)
+	 */
+	public DocumentCache(long maxSize, long maxWeight, Weigher<? super D> weigher) {
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.entries = new LinkedHashMap<String, Entry>();
+	}
+
+	/**
+	 * @param fileName
+	 * @param loader
+	 * @param pin indicates whether to pin the document in the cache
+	 * @return the document stored in fileName, loaded by loader if it
+	 * isn't in the cache, or null if it couldn't be loaded
+	 */
+	D get(String fileName, DocumentSet.DocumentLoader<D> loader, boolean pin) {
+		Entry entry = null;
+		boolean load = false;
+		synchronized (this) {
+			entry = this.entries.get(fileName);
+			if (entry != null) {
+				this.hitCount++;
+				entry.referenced = true;
+			} else {
+				this.missCount++;
+				entry = new Entry();
+				entry.loading = true;
+				this.entries.put(fileName, entry);
+				load = true;
+			}
+
+			if (pin)
+				entry.pins++;
+		}
+
+		if (load)
+			return load(fileName, entry, loader);
+
+		synchronized (entry) {
+			while (entry.loading) {
+				try {
+					entry.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+
+			return entry.document;
+		}
+	}
+
+	private D load(String fileName, Entry entry, DocumentSet.DocumentLoader<D> loader) {
+		long startTime = System.nanoTime();
+		D document = null;
+		try {
+			document = loader.load(fileName);
+		} finally {
+			synchronized (entry) {
+				entry.document = document;
+				entry.loading = false;
+				entry.notifyAll();
+			}
+
+			synchronized (this) {
+				this.loadCount++;
+				this.loadTime += System.nanoTime() - startTime;
+				if (document == null) {
+					this.loadFailureCount++;
+					this.entries.remove(fileName);
+				} else {
+					entry.weight = (this.weigher == null) ? 1 : this.weigher.weigh(document);
+					this.weight += entry.weight;
+					evict();
+				}
+			}
+		}
+
+		return document;
+	}
+
+	/**
+	 * @param fileName
+	 * @return true if the document stored in fileName was pinned, and
+	 * has been unpinned
+	 */
+	synchronized boolean unpin(String fileName) {
+		Entry entry = this.entries.get(fileName);
+		if (entry == null || entry.pins == 0)
+			return false;
+
+		entry.pins--;
+		if (entry.pins == 0)
+			evict();
+		return true;
+	}
+
+	/**
+	 * @param fileName
+	 * @return true if the document stored in fileName has been
+	 * removed from the cache
+	 */
+	public synchronized boolean remove(String fileName) {
+		Entry entry = this.entries.get(fileName);
+		if (entry == null || entry.loading)
+			return false;
+
+		this.entries.remove(fileName);
+		this.weight -= entry.weight;
+		return true;
+	}
+
+	public synchronized void clear() {
+		Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if (entry.loading)
+				continue;
+			this.weight -= entry.weight;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Evicts unpinned documents until the cache is within its limits, or
+	 * until every remaining document has been given a second chance
+	 */
+	private void evict() {
+		int remainingChecks = 2*this.entries.size();
+		while ((this.entries.size() > this.maxSize || this.weight > this.maxWeight) && remainingChecks > 0) {
+			Map.Entry<String, Entry> first = this.entries.entrySet().iterator().next();
+			String fileName = first.getKey();
+			Entry entry = first.getValue();
+
+			this.entries.remove(fileName);
+			if (entry.loading || entry.pins > 0 || entry.referenced) {
+				entry.referenced = false;
+				this.entries.put(fileName, entry);
+			} else {
+				this.weight -= entry.weight;
+				this.evictionCount++;
+			}
+
+			remainingChecks--;
+		}
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return this.weight;
+	}
+
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
+	public long getMaxWeight() {
+		return this.maxWeight;
+	}
+
+	public synchronized int getPinnedCount() {
+		int pinnedCount = 0;
+		for (Entry entry : this.entries.values())
+			if (entry.pins > 0)
+				pinnedCount++;
+		return pinnedCount;
+	}
+
+	public synchronized long getHitCount() {
+		return this.hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return this.missCount;
+	}
+
+	public synchronized double getHitRate() {
+		long requestCount = this.hitCount + this.missCount;
+		if (requestCount == 0)
+			return 0.0;
+		return this.hitCount/(double)requestCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return this.evictionCount;
+	}
+
+	public synchronized long getLoadCount() {
+		return this.loadCount;
+	}
+
+	public synchronized long getLoadFailureCount() {
+		return this.loadFailureCount;
+	}
+
+	/**
+	 * @return average time in milliseconds taken to load a document
+	 */
+	public synchronized double getAverageLoadTime() {
+		if (this.loadCount == 0)
+			return 0.0;
+		return this.loadTime/(this.loadCount*1000000.0);
+	}
+
+	public synchronized void resetStatistics() {
+		this.hitCount = 0;
+		this.missCount = 0;
+		this.evictionCount = 0;
+		this.loadCount = 0;
+		this.loadFailureCount = 0;
+		this.loadTime = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "DocumentCache(size=" + this.entries.size() + "/" + this.maxSize
+				+ ", weight=" + this.weight + "/" + this.maxWeight
+				+ ", hitRate=" + getHitRate()
+				+ ", evictions=" + this.evictionCount
+				+ ", averageLoadTime=" + getAverageLoadTime() + "ms)";
+	}
+}
@@ -1,6 +1,7 @@
 package edu.cmu.ml.rtw.generic.data.annotation;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -13,12 +14,36 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import edu.cmu.ml.rtw.generic.util.MathUtil;
 import edu.cmu.ml.rtw.generic.util.Pair;
+import edu.cmu.ml.rtw.generic.util.ThreadMapper;
+import edu.cmu.ml.rtw.generic.util.ThreadPool;
 
 /**
+ * DocumentSet is a named collection of documents that are either
+ * held in memory, or loaded lazily from files by a DocumentLoader.
+ * 
+ * By default, lazily loaded documents that are retrieved with
+ * keepInMemory stay in memory for the life of the set.  If a 
+ * DocumentCache is set through setDocumentCache, then lazily loaded
+ * documents are held by the cache instead, which evicts them when it
+ * reaches its size or memory limits.  Documents that are in use 
+ * can be pinned in the cache with pinDocumentByName, and released 
+ * with unpinDocumentByName.
+ * 
+ * The documents can be streamed through iterator, spliterator, and
+ * the Collection stream methods in order of their names.  Streams load
+ * a bounded number of upcoming documents in the background on the 
+ * shared ThreadPool, and don't keep the documents in memory after they
+ * have been returned (except in the DocumentCache), so documents sets 
+ * that don't fit in memory can be processed at the speed that their
+ * files can be read.  Parallel streams split the names into ranges that
+ * are each read ahead separately.
  * 
  * @author Bill McDowell
  *
@@ -29,12 +54,87 @@ public abstract class DocumentSet<D extends Document> implements Collection<D> {
 		D load(String documentFileName);
 	}
 	
+	public static final int DEFAULT_READ_AHEAD = 8;
+	
+	/**
+	 * DocumentSpliterator returns the documents with names in a range 
+	 * of a sorted array of names, while loading up to readAhead of the
+	 * following documents in the background.  It splits off the half of 
+	 * its range that hasn't started loading yet.
+	 */
+	private class DocumentSpliterator implements Spliterator<D> {
+		private String[] names;
+		private int nextIndex; // Next document to return
+		private int prefetchIndex; // Next document to start loading
+		private int endIndex;
+		private int readAhead;
+		private ArrayDeque<ThreadPool.Mapping<String, D>> prefetched;
+		
+		public DocumentSpliterator(String[] names, int startIndex, int endIndex, int readAhead) {
+			this.names = names;
+			this.nextIndex = startIndex;
+			this.prefetchIndex = startIndex;
+			this.endIndex = endIndex;
+			this.readAhead = Math.max(1, readAhead);
+			this.prefetched = new ArrayDeque<ThreadPool.Mapping<String, D>>();
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super D> action) {
+			while (this.nextIndex < this.endIndex) {
+				while (this.prefetchIndex < this.endIndex && this.prefetchIndex - this.nextIndex < this.readAhead) {
+					this.prefetched.add(ThreadPool.getShared().map(
+							Collections.singletonList(this.names[this.prefetchIndex]).iterator(), 1, DocumentSet.this.streamLoadFn, 1, 1));
+					this.prefetchIndex++;
+				}
+				
+				List<D> document = this.prefetched.poll().get();
+				this.nextIndex++;
+				if (document != null && document.get(0) != null) {
+					action.accept(document.get(0));
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+		@Override
+		public Spliterator<D> trySplit() {
+			int splitIndex = this.prefetchIndex + (this.endIndex - this.prefetchIndex) / 2;
+			if (splitIndex <= this.prefetchIndex || splitIndex >= this.endIndex)
+				return null;
+			
+			DocumentSpliterator split = new DocumentSpliterator(this.names, splitIndex, this.endIndex, this.readAhead);
+			this.endIndex = splitIndex;
+			return split;
+		}
+		
+		@Override
+		public long estimateSize() {
+			return this.endIndex - this.nextIndex;
+		}
+		
+		@Override
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT;
+		}
+	}
+	
+	private final ThreadMapper.Fn<String, D> streamLoadFn = new ThreadMapper.Fn<String, D>() {
+		@Override
+		public D apply(String name) {
+			return getDocumentByName(name, false);
+		}
+	};
+	
 	private String name;
 	
 	protected DocumentLoader<D> documentLoader;
 	protected String directoryPath;
 	
 	protected Map<String, Pair<String, D>> fileNamesAndDocuments;
+	protected DocumentCache<D> documentCache;
 	
 	public DocumentSet(String name) {
 		this.name = name;
@@ -53,7 +153,9 @@ public abstract class DocumentSet<D extends Document> implements Collection<D> {
 		if (this.fileNamesAndDocuments.containsKey(name)) {
 			Pair<String, D> fileNameAndDocument = this.fileNamesAndDocuments.get(name);
 			
-			if (keepInMemory) {
+			if (this.documentCache != null && fileNameAndDocument.getFirst() != null && fileNameAndDocument.getSecond() == null) {
+				return this.documentCache.get(fileNameAndDocument.getFirst(), this.documentLoader, false);
+			} else if (keepInMemory) {
 				synchronized (fileNameAndDocument) {
 					if (fileNameAndDocument.getSecond() == null)
 						fileNameAndDocument.setSecond(this.documentLoader.load(fileNameAndDocument.getFirst()));
@@ -72,6 +174,47 @@ public abstract class DocumentSet<D extends Document> implements Collection<D> {
 		}
 	}
 	
+	/**
+	 * @param name
+	 * @return the named document, which is kept in the document cache 
+	 * until it is unpinned by unpinDocumentByName.  If there is no
+	 * cache, then this is the same as getDocumentByName. 
+	 */
+	public D pinDocumentByName(String name) {
+		Pair<String, D> fileNameAndDocument = this.fileNamesAndDocuments.get(name);
+		if (fileNameAndDocument == null)
+			return null;
+		if (this.documentCache == null || fileNameAndDocument.getFirst() == null || fileNameAndDocument.getSecond() != null)
+			return getDocumentByName(name);
+		return this.documentCache.get(fileNameAndDocument.getFirst(), this.documentLoader, true);
+	}
+	
+	/**
+	 * @param name
+	 * @return true if the named document was pinned in the cache by
+	 * pinDocumentByName, and has been unpinned.
+	 */
+	public boolean unpinDocumentByName(String name) {
+		Pair<String, D> fileNameAndDocument = this.fileNamesAndDocuments.get(name);
+		if (this.documentCache == null || fileNameAndDocument == null || fileNameAndDocument.getFirst() == null)
+			return false;
+		return this.documentCache.unpin(fileNameAndDocument.getFirst());
+	}
+	
+	/**
+	 * @param documentCache cache to hold lazily loaded documents, 
+	 * or null to keep them in memory once they've been loaded (with
+	 * keepInMemory).  The cache can be shared by several document sets
+	 * that load documents from the same directory.
+	 */
+	public void setDocumentCache(DocumentCache<D> documentCache) {
+		this.documentCache = documentCache;
+	}
+	
+	public DocumentCache<D> getDocumentCache() {
+		return this.documentCache;
+	}
+	
 	public Set<String> getDocumentNames() {
 		return this.fileNamesAndDocuments.keySet();
 	}
@@ -120,6 +263,7 @@ public abstract class DocumentSet<D extends Document> implements Collection<D> {
 			part.name = names[i];
 			part.directoryPath = this.directoryPath;
 			part.documentLoader = this.documentLoader;
+			part.documentCache = this.documentCache;
 			
 			for (int j = offset; j < offset + partSize; j++) {
 				Entry<String, Pair<String, D>> entry = documentList.get(documentPermutation.get(j));
@@ -230,9 +374,38 @@ public abstract class DocumentSet<D extends Document> implements Collection<D> {
 		return this.fileNamesAndDocuments.isEmpty();
 	}
 
+	/**
+	 * @return an iterator over the documents in order of their names, 
+	 * which loads the next DEFAULT_READ_AHEAD documents in the background
+	 */
 	@Override
 	public Iterator<D> iterator() {
-		throw new UnsupportedOperationException();
+		return iterator(DEFAULT_READ_AHEAD);
+	}
+	
+	/**
+	 * @param readAhead maximum number of upcoming documents to load in 
+	 * the background
+	 * @return an iterator over the documents in order of their names
+	 */
+	public Iterator<D> iterator(int readAhead) {
+		return Spliterators.iterator(spliterator(readAhead));
+	}
+	
+	@Override
+	public Spliterator<D> spliterator() {
+		return spliterator(DEFAULT_READ_AHEAD);
+	}
+	
+	/**
+	 * @param readAhead maximum number of upcoming documents that each 
+	 * part of the split spliterator loads in the background
+	 * @return a spliterator over the documents in order of their names
+	 */
+	public Spliterator<D> spliterator(int readAhead) {
+		String[] names = this.fileNamesAndDocuments.keySet().toArray(new String[0]);
+		Arrays.sort(names);
+		return new DocumentSpliterator(names, 0, names.length, readAhead);
 	}
 
 	@Override
@@ -0,0 +1,159 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompactTokens stores the tokens and PoS tags of a
+ * DocumentNLPInMemory in flat primitive arrays instead of
+ * arrays of Token objects.  Each distinct token string is
+ * kept once in a string table for the document, each token
+ * is stored as an index into the table along with its
+ * character offsets, and each PoS tag is stored as a byte
+ * index into a table of the tags that occur in the document
+ * (so the encoding doesn't depend on the order or number of
+ * PoSTag values).  Token objects are only constructed when 
+ * they are requested.
+ *
+ * @author Bill McDowell
+ *
+ */
+class CompactTokens {
+	private static final byte NO_POS_TAG = -1;
+	
+	private String[] strs;
+	private PoSTag[] posTagTable;
+	// Index of the first token of each sentence, followed by the token count
+	private int[] sentenceStarts;
+	private int[] strIndices;
+	// Start and end character offsets of each token
+	private int[] charSpans;
+	private byte[] posTags;
+	
+	public CompactTokens(Token[][] tokens, PoSTag[][] posTags) {
+		this.sentenceStarts = new int[tokens.length + 1];
+		for (int i = 0; i < tokens.length; i++)
+			this.sentenceStarts[i + 1] = this.sentenceStarts[i] + tokens[i].length;
+		
+		int tokenCount = this.sentenceStarts[tokens.length];
+		Map<String, Integer> strIndices = new HashMap<String, Integer>();
+		List<String> strs = new ArrayList<String>();
+		Map<PoSTag, Byte> posTagIndices = new HashMap<PoSTag, Byte>();
+		List<PoSTag> posTagTable = new ArrayList<PoSTag>();
+		this.strIndices = new int[tokenCount];
+		this.charSpans = new int[2*tokenCount];
+		if (posTags != null)
+			this.posTags = new byte[tokenCount];
+		
+		int index = 0;
+		for (int i = 0; i < tokens.length; i++) {
+			for (int j = 0; j < tokens[i].length; j++) {
+				String str = tokens[i][j].getStr();
+				Integer strIndex = strIndices.get(str);
+				if (strIndex == null) {
+					strIndex = strs.size();
+					strIndices.put(str, strIndex);
+					strs.add(str);
+				}
+				
+				this.strIndices[index] = strIndex;
+				this.charSpans[2*index] = tokens[i][j].getCharSpanStart();
+				this.charSpans[2*index + 1] = tokens[i][j].getCharSpanEnd();
+				if (this.posTags != null) {
+					PoSTag posTag = (posTags[i] != null) ? posTags[i][j] : null;
+					Byte posTagIndex = NO_POS_TAG;
+					if (posTag != null) {
+						posTagIndex = posTagIndices.get(posTag);
+						if (posTagIndex == null) {
+							if (posTagTable.size() > Byte.MAX_VALUE)
+								throw new IllegalStateException("Too many distinct PoS tags for a byte index");
+							posTagIndex = (byte)posTagTable.size();
+							posTagIndices.put(posTag, posTagIndex);
+							posTagTable.add(posTag);
+						}
+					}
+					this.posTags[index] = posTagIndex;
+				}
+				
+				index++;
+			}
+		}
+		
+		this.strs = strs.toArray(new String[strs.size()]);
+		this.posTagTable = posTagTable.toArray(new PoSTag[posTagTable.size()]);
+	}
+	
+	public int getSentenceCount() {
+		return this.sentenceStarts.length - 1;
+	}
+	
+	public int getSentenceTokenCount(int sentenceIndex) {
+		return this.sentenceStarts[sentenceIndex + 1] - this.sentenceStarts[sentenceIndex];
+	}
+	
+	public int getTokenCount() {
+		return this.strIndices.length;
+	}
+	
+	public int getStrCount() {
+		return this.strs.length;
+	}
+	
+	public String getStr(int sentenceIndex, int tokenIndex) {
+		return this.strs[this.strIndices[getIndex(sentenceIndex, tokenIndex)]];
+	}
+	
+	public int getCharSpanStart(int sentenceIndex, int tokenIndex) {
+		return this.charSpans[2*getIndex(sentenceIndex, tokenIndex)];
+	}
+	
+	public int getCharSpanEnd(int sentenceIndex, int tokenIndex) {
+		return this.charSpans[2*getIndex(sentenceIndex, tokenIndex) + 1];
+	}
+	
+	public Token getToken(DocumentNLP document, int sentenceIndex, int tokenIndex) {
+		int index = getIndex(sentenceIndex, tokenIndex);
+		return new Token(document, this.strs[this.strIndices[index]], this.charSpans[2*index], this.charSpans[2*index + 1]);
+	}
+	
+	public boolean hasPoSTags() {
+		return this.posTags != null;
+	}
+	
+	public PoSTag getPoSTag(int sentenceIndex, int tokenIndex) {
+		byte posTag = this.posTags[getIndex(sentenceIndex, tokenIndex)];
+		return (posTag == NO_POS_TAG) ? null : this.posTagTable[posTag];
+	}
+	
+	public Token[][] toTokens(DocumentNLP document) {
+		Token[][] tokens = new Token[getSentenceCount()][];
+		for (int i = 0; i < tokens.length; i++) {
+			tokens[i] = new Token[getSentenceTokenCount(i)];
+			for (int j = 0; j < tokens[i].length; j++)
+				tokens[i][j] = getToken(document, i, j);
+		}
+		return tokens;
+	}
+	
+	public PoSTag[][] toPoSTags() {
+		if (this.posTags == null)
+			return null;
+		
+		PoSTag[][] posTags = new PoSTag[getSentenceCount()][];
+		for (int i = 0; i < posTags.length; i++) {
+			posTags[i] = new PoSTag[getSentenceTokenCount(i)];
+			for (int j = 0; j < posTags[i].length; j++)
+				posTags[i][j] = getPoSTag(i, j);
+		}
+		return posTags;
+	}
+	
+	private int getIndex(int sentenceIndex, int tokenIndex) {
+		int index = this.sentenceStarts[sentenceIndex] + tokenIndex;
+		if (tokenIndex < 0 || index >= this.sentenceStarts[sentenceIndex + 1])
+			throw new ArrayIndexOutOfBoundsException(tokenIndex);
+		return index;
+	}
+}
@@ -138,9 +138,133 @@ public class ConstituencyParse implements StringSerializable {
 		}
 	}
 
+	/**
+	 * ConstituentIndex numbers the constituents of a parse in depth-first
+	 * order, and stores each constituent's parent and depth, the range of
+	 * numbers in its subtree (its Euler tour interval), and the leaf
+	 * constituent at the start of each token.  Ancestor checks are then 
+	 * interval comparisons, and paths are found by climbing from both 
+	 * ends to their lowest common ancestor.
+	 * 
+	 * @author Bill McDowell
+	 *
+	 */
+	private class ConstituentIndex {
+		private Constituent[] constituents;
+		private Map<Constituent, Integer> numbers;
+		private int[] parents;
+		private int[] depths;
+		private int[] subtreeEnds;
+		private Constituent[] tokenConstituents;
+		
+		public ConstituentIndex() {
+			List<Constituent> constituents = new ArrayList<Constituent>();
+			List<Integer> parents = new ArrayList<Integer>();
+			this.numbers = new HashMap<Constituent, Integer>();
+			List<Constituent> tokenConstituents = new ArrayList<Constituent>();
+			
+			// Same traversal order as the search that getTokenConstituent used to
+			// run, so that the same leaf is found for each token
+			Stack<Pair<Constituent, Integer>> toVisit = new Stack<Pair<Constituent, Integer>>();
+			if (root != null)
+				toVisit.push(new Pair<Constituent, Integer>(root, -1));
+			while (!toVisit.isEmpty()) {
+				Pair<Constituent, Integer> current = toVisit.pop();
+				Constituent constituent = current.getFirst();
+				if (this.numbers.containsKey(constituent))
+					continue;
+				
+				int number = constituents.size();
+				constituents.add(constituent);
+				parents.add(current.getSecond());
+				this.numbers.put(constituent, number);
+				
+				if (constituent.isLeaf()) {
+					if (constituent.tokenSpan == null)
+						continue;
+					int tokenIndex = constituent.tokenSpan.getStartTokenIndex();
+					while (tokenConstituents.size() <= tokenIndex)
+						tokenConstituents.add(null);
+					if (tokenIndex >= 0 && tokenConstituents.get(tokenIndex) == null)
+						tokenConstituents.set(tokenIndex, constituent);
+				} else {
+					for (Constituent child : constituent.getChildren())
+						toVisit.push(new Pair<Constituent, Integer>(child, number));
+				}
+			}
+			
+			this.constituents = constituents.toArray(new Constituent[0]);
+			this.tokenConstituents = tokenConstituents.toArray(new Constituent[0]);
+			this.parents = new int[this.constituents.length];
+			this.depths = new int[this.constituents.length];
+			this.subtreeEnds = new int[this.constituents.length];
+			
+			// Parents are numbered before their children
+			for (int i = 0; i < this.constituents.length; i++) {
+				this.parents[i] = parents.get(i);
+				this.depths[i] = (this.parents[i] < 0) ? 0 : this.depths[this.parents[i]] + 1;
+				this.subtreeEnds[i] = i;
+			}
+			
+			for (int i = this.constituents.length - 1; i > 0; i--)
+				if (this.parents[i] >= 0)
+					this.subtreeEnds[this.parents[i]] = Math.max(this.subtreeEnds[this.parents[i]], this.subtreeEnds[i]);
+		}
+		
+		public Constituent getTokenConstituent(int tokenIndex) {
+			if (tokenIndex < 0 || tokenIndex >= this.tokenConstituents.length)
+				return null;
+			return this.tokenConstituents[tokenIndex];
+		}
+		
+		/**
+		 * @return the number of the constituent, or -1 if it's not in the parse
+		 */
+		public int getNumber(Constituent constituent) {
+			Integer number = this.numbers.get(constituent);
+			return (number == null) ? -1 : number;
+		}
+		
+		public boolean isAncestor(int ancestor, int descendant) {
+			return ancestor < descendant && descendant <= this.subtreeEnds[ancestor];
+		}
+		
+		public int getLowestCommonAncestor(int number1, int number2) {
+			while (this.depths[number1] > this.depths[number2])
+				number1 = this.parents[number1];
+			while (this.depths[number2] > this.depths[number1])
+				number2 = this.parents[number2];
+			while (number1 != number2) {
+				number1 = this.parents[number1];
+				number2 = this.parents[number2];
+			}
+			return number1;
+		}
+		
+		public int getPathLength(int source, int target) {
+			int ancestor = getLowestCommonAncestor(source, target);
+			return this.depths[source] + this.depths[target] - 2 * this.depths[ancestor] + 1;
+		}
+		
+		public List<Constituent> getPath(int source, int target) {
+			int ancestor = getLowestCommonAncestor(source, target);
+			List<Constituent> path = new ArrayList<Constituent>(getPathLength(source, target));
+			for (int current = source; current != ancestor; current = this.parents[current])
+				path.add(this.constituents[current]);
+			
+			int pathAncestorIndex = path.size();
+			for (int current = target; current != ancestor; current = this.parents[current])
+				path.add(pathAncestorIndex, this.constituents[current]);
+			path.add(pathAncestorIndex, this.constituents[ancestor]);
+			
+			return path;
+		}
+	}
+
 	private DocumentNLP document;
 	private int sentenceIndex;
 	private Constituent root;
+	private volatile ConstituentIndex index;
 	
 	public ConstituencyParse(DocumentNLP document, int sentenceIndex, Constituent root) {
 		this.document = document;
@@ -164,39 +288,110 @@ public class ConstituencyParse implements StringSerializable {
 		return this.root;
 	}
 	
+	private ConstituentIndex getIndex() {
+		ConstituentIndex index = this.index;
+		if (index == null) {
+			index = new ConstituentIndex();
+			this.index = index;
+		}
+		return index;
+	}
+	
 	/**
 	 * @param tokenIndex
 	 * @return the constituent immediately containing the token
 	 * at tokenIndex
 	 */
 	public Constituent getTokenConstituent(int tokenIndex) {
-		Stack<Constituent> toVisit = new Stack<Constituent>();
-		toVisit.add(this.root);
-		while (!toVisit.isEmpty()) {
-			Constituent current = toVisit.pop();
-			if (current.isLeaf()) {
-				TokenSpan tokenSpan = current.getTokenSpan();
-				if (tokenSpan.getStartTokenIndex() == tokenIndex)
-					return current;
-			} else {
-				Constituent[] children = current.getChildren();
-				for (Constituent child : children)
-					toVisit.push(child);
-			}
-		}
-		
-		return null;
-		
+		return getIndex().getTokenConstituent(tokenIndex);
+	}
+	
+	/**
+	 * @param constituent
+	 * @return the depth of the constituent below the root (0 for the root), 
+	 * or -1 if the constituent is not in the parse
+	 */
+	public int getDepth(Constituent constituent) {
+		ConstituentIndex index = getIndex();
+		int number = index.getNumber(constituent);
+		return (number < 0) ? -1 : index.depths[number];
+	}
+	
+	/**
+	 * @param constituent1
+	 * @param constituent2
+	 * @return the lowest constituent that contains both constituents, or 
+	 * null if they are not both in the parse
+	 */
+	public Constituent getLowestCommonAncestor(Constituent constituent1, Constituent constituent2) {
+		ConstituentIndex index = getIndex();
+		int number1 = index.getNumber(constituent1);
+		int number2 = index.getNumber(constituent2);
+		if (number1 < 0 || number2 < 0)
+			return null;
+		return index.constituents[index.getLowestCommonAncestor(number1, number2)];
+	}
+	
+	/**
+	 * @param sourceTokenIndex
+	 * @param targetTokenIndex
+	 * @return the number of constituents on the path between the constituents
+	 * of the source and target tokens, or -1 if there is no path
+	 */
+	public int getPathLength(int sourceTokenIndex, int targetTokenIndex) {
+		ConstituentIndex index = getIndex();
+		int source = index.getNumber(index.getTokenConstituent(sourceTokenIndex));
+		int target = index.getNumber(index.getTokenConstituent(targetTokenIndex));
+		if (source < 0 || target < 0)
+			return -1;
+		return index.getPathLength(source, target);
 	}
 	
 	public ConstituentPath getPath(int sourceTokenIndex, int targetTokenIndex) {
 		return getPath(getTokenConstituent(sourceTokenIndex), getTokenConstituent(targetTokenIndex));
 	}
 	
+	/**
+	 * @return the shortest path between the constituents of a token in 
+	 * [sourceStartTokenIndex, sourceEndTokenIndex) and a token in 
+	 * [targetStartTokenIndex, targetEndTokenIndex), or null if none of
+	 * the tokens have constituents.  The first of several shortest paths 
+	 * is returned, in order of source and then target token index.  Path 
+	 * lengths are compared through the constituent index, and only the 
+	 * shortest path is built.
+	 */
+	public ConstituentPath getShortestPath(int sourceStartTokenIndex, int sourceEndTokenIndex, int targetStartTokenIndex, int targetEndTokenIndex) {
+		int shortestLength = -1;
+		int shortestSource = -1;
+		int shortestTarget = -1;
+		for (int i = sourceStartTokenIndex; i < sourceEndTokenIndex; i++){
+			for (int j = targetStartTokenIndex; j < targetEndTokenIndex; j++){
+				int length = getPathLength(i, j);
+				if (length >= 0 && (shortestLength < 0 || length < shortestLength)) {
+					shortestLength = length;
+					shortestSource = i;
+					shortestTarget = j;
+				}
+			}
+		}
+
+		if (shortestLength < 0)
+			return null;
+		return getPath(shortestSource, shortestTarget);
+	}
+	
 	public ConstituentPath getPath(Constituent source, Constituent target) {
 		if (source == null || target == null)
 			return null;
 		
+		ConstituentIndex index = getIndex();
+		int sourceNumber = index.getNumber(source);
+		int targetNumber = index.getNumber(target);
+		if (sourceNumber >= 0 && targetNumber >= 0)
+			return new ConstituentPath(index.getPath(sourceNumber, targetNumber));
+		
+		// Constituents from outside of this parse are searched through their
+		// parent pointers
 		Stack<Constituent> toVisit = new Stack<Constituent>();
 		toVisit.push(target);
 		Map<Constituent, Constituent> paths = new HashMap<Constituent, Constituent>();
@@ -233,6 +428,9 @@ public class ConstituencyParse implements StringSerializable {
 		return null;
 	}
 	
+	/**
+	 * @return true if source is a proper ancestor of target
+	 */
 	public boolean isAbove(Constituent source, Constituent target) {
 		if (source == null || target == null)
 			return false;
@@ -240,6 +438,12 @@ public class ConstituencyParse implements StringSerializable {
 		if (source.equals(target))
 			return false;
 		
+		ConstituentIndex index = getIndex();
+		int sourceNumber = index.getNumber(source);
+		int targetNumber = index.getNumber(target);
+		if (sourceNumber >= 0 && targetNumber >= 0)
+			return index.isAncestor(sourceNumber, targetNumber);
+		
 		ConstituentPath constituentPath = getPath(source, target);
 		if (constituentPath == null)
 			return false;
@@ -252,6 +456,9 @@ public class ConstituencyParse implements StringSerializable {
 		return true;
 	}
 	
+	/**
+	 * @return true if source is a proper descendant of target
+	 */
 	public boolean isBelow(Constituent source, Constituent target) {
 		if (source == null || target == null)
 			return false;
@@ -259,6 +466,12 @@ public class ConstituencyParse implements StringSerializable {
 		if (source.equals(target))
 			return false;
 		
+		ConstituentIndex index = getIndex();
+		int sourceNumber = index.getNumber(source);
+		int targetNumber = index.getNumber(target);
+		if (sourceNumber >= 0 && targetNumber >= 0)
+			return index.isAncestor(targetNumber, sourceNumber);
+		
 		ConstituentPath constituentPath = getPath(source, target);
 		if (constituentPath == null)
 			return false;
@@ -354,8 +567,10 @@ public class ConstituencyParse implements StringSerializable {
 					constituent = this.new Constituent(constituentParts.getFirst(), constituentParts.getSecond().toArray(new Constituent[0]));
 				}
 				
-				if (constituents.isEmpty())
+				if (constituents.isEmpty()) {
 					this.root = constituent;
+					this.index = null;
+				}
 				else
 					constituents.peek().getSecond().add(constituent);
 			} else {
@@ -204,10 +204,203 @@ public class DependencyParse implements StringSerializable {
 		}
 	}
 
+	/**
+	 * PathIndex answers path queries over a parse without searching
+	 * it.  Nodes are numbered by slot, where the root is slot 0 and
+	 * the node for token i is in slot i + 1.  If the parse is a tree
+	 * (every token node has a single governor and is reachable from the
+	 * root), then the index holds the governor and depth of each slot,
+	 * and paths are found by climbing from both ends to their lowest 
+	 * common ancestor.  Otherwise, paths are read from depth-first 
+	 * search trees that are built once for each target and memoized, 
+	 * so that they match the paths found by the search in getPath.
+	 * 
+	 * @author Bill McDowell
+	 *
+	 */
+	private class PathIndex {
+		private Node[] nodes;
+		private boolean tree;
+		private int[] governors;
+		private int[] depths;
+		private int[][] searchTrees;
+		
+		public PathIndex() {
+			int slotCount = (tokenNodes == null) ? 1 : tokenNodes.length + 1;
+			this.nodes = new Node[slotCount];
+			this.nodes[0] = root;
+			for (int i = 1; i < slotCount; i++)
+				this.nodes[i] = tokenNodes[i - 1];
+			
+			this.governors = new int[slotCount];
+			this.depths = new int[slotCount];
+			Arrays.fill(this.governors, -1);
+			Arrays.fill(this.depths, -1);
+			
+			this.tree = true;
+			int nodeCount = 0;
+			for (int i = 1; i < slotCount; i++) {
+				if (this.nodes[i] == null)
+					continue;
+				nodeCount++;
+				if (this.nodes[i].getGovernors().length != 1)
+					this.tree = false;
+			}
+			
+			// Breadth-first from the root to fill governors and depths
+			int[] queue = new int[slotCount];
+			int queueStart = 0, queueEnd = 0;
+			queue[queueEnd++] = 0;
+			this.depths[0] = 0;
+			int reachedCount = 0;
+			while (this.tree && queueStart < queueEnd) {
+				int slot = queue[queueStart++];
+				for (Dependency dependent : this.nodes[slot].getDependents()) {
+					int dependentSlot = dependent.getDependentTokenIndex() + 1;
+					if (dependentSlot <= 0 || dependentSlot >= slotCount || this.depths[dependentSlot] >= 0) {
+						this.tree = false;
+						break;
+					}
+					
+					this.governors[dependentSlot] = slot;
+					this.depths[dependentSlot] = this.depths[slot] + 1;
+					queue[queueEnd++] = dependentSlot;
+					reachedCount++;
+				}
+			}
+			
+			if (reachedCount != nodeCount)
+				this.tree = false;
+			
+			if (!this.tree)
+				this.searchTrees = new int[slotCount][];
+		}
+		
+		public boolean isTree() {
+			return this.tree;
+		}
+		
+		public int getSlot(int tokenIndex) {
+			if (tokenIndex >= this.nodes.length - 1)
+				return -1;
+			int slot = (tokenIndex < 0 || this.nodes.length == 1) ? 0 : tokenIndex + 1;
+			return (this.nodes[slot] == null) ? -1 : slot;
+		}
+		
+		public int getLowestCommonAncestorSlot(int sourceSlot, int targetSlot) {
+			while (this.depths[sourceSlot] > this.depths[targetSlot])
+				sourceSlot = this.governors[sourceSlot];
+			while (this.depths[targetSlot] > this.depths[sourceSlot])
+				targetSlot = this.governors[targetSlot];
+			while (sourceSlot != targetSlot) {
+				sourceSlot = this.governors[sourceSlot];
+				targetSlot = this.governors[targetSlot];
+			}
+			return sourceSlot;
+		}
+		
+		/**
+		 * @return slots on the path from source to target, or null if 
+		 * there is no path
+		 */
+		public int[] getPathSlots(int sourceSlot, int targetSlot) {
+			if (this.tree) {
+				int ancestorSlot = getLowestCommonAncestorSlot(sourceSlot, targetSlot);
+				int sourceLength = this.depths[sourceSlot] - this.depths[ancestorSlot];
+				int targetLength = this.depths[targetSlot] - this.depths[ancestorSlot];
+				int[] path = new int[sourceLength + targetLength + 1];
+				
+				int slot = sourceSlot;
+				for (int i = 0; i <= sourceLength; i++) {
+					path[i] = slot;
+					slot = this.governors[slot];
+				}
+				
+				slot = targetSlot;
+				for (int i = path.length - 1; i > sourceLength; i--) {
+					path[i] = slot;
+					slot = this.governors[slot];
+				}
+				
+				return path;
+			}
+			
+			int[] searchTree = getSearchTree(targetSlot);
+			if (sourceSlot != targetSlot && searchTree[sourceSlot] < 0)
+				return null;
+			
+			int length = 1;
+			for (int slot = sourceSlot; slot != targetSlot; slot = searchTree[slot])
+				length++;
+			
+			int[] path = new int[length];
+			int slot = sourceSlot;
+			for (int i = 0; i < length; i++) {
+				path[i] = slot;
+				slot = searchTree[slot];
+			}
+			
+			return path;
+		}
+		
+		/**
+		 * @return the parent of each slot in a depth-first search from the
+		 * target slot over governors and dependents.  This is the same search
+		 * that getPath used to run for each pair of tokens, but run to 
+		 * completion once for each target.  A slot's parent is fixed when 
+		 * the slot is first reached, so the paths are the same as the paths
+		 * found by stopping the search at each source.
+		 */
+		private int[] getSearchTree(int targetSlot) {
+			synchronized (this.searchTrees) {
+				if (this.searchTrees[targetSlot] != null)
+					return this.searchTrees[targetSlot];
+			}
+			
+			int[] parents = new int[this.nodes.length];
+			boolean[] reached = new boolean[this.nodes.length];
+			Arrays.fill(parents, -1);
+			
+			int[] stack = new int[this.nodes.length];
+			int stackSize = 0;
+			stack[stackSize++] = targetSlot;
+			reached[targetSlot] = true;
+			while (stackSize > 0) {
+				int slot = stack[--stackSize];
+				Node current = this.nodes[slot];
+				
+				for (Dependency governor : current.getGovernors()) {
+					int governorSlot = getSlot(governor.getGoverningTokenIndex());
+					if (governorSlot < 0 || reached[governorSlot])
+						continue;
+					stack[stackSize++] = governorSlot;
+					reached[governorSlot] = true;
+					parents[governorSlot] = slot;
+				}
+				
+				for (Dependency dependent : current.getDependents()) {
+					int dependentSlot = getSlot(dependent.getDependentTokenIndex());
+					if (dependentSlot < 0 || reached[dependentSlot])
+						continue;
+					stack[stackSize++] = dependentSlot;
+					reached[dependentSlot] = true;
+					parents[dependentSlot] = slot;
+				}
+			}
+			
+			synchronized (this.searchTrees) {
+				this.searchTrees[targetSlot] = parents;
+			}
+			
+			return parents;
+		}
+	}
+
 	private DocumentNLP document;
 	private int sentenceIndex;
 	private Node root;
 	private Node[] tokenNodes;
+	private volatile PathIndex pathIndex;
 	
 	public DependencyParse(DocumentNLP document, int sentenceIndex, Node root, Node[] tokenNodes) {
 		this.document = document;
@@ -248,52 +441,121 @@ public class DependencyParse implements StringSerializable {
 		return null;
 	}
 	
-	public DependencyPath getPath(int sourceTokenIndex, int targetTokenIndex) {
-		
-		Node source = getNode(sourceTokenIndex);
-		Node target = getNode(targetTokenIndex);;
+	private PathIndex getPathIndex() {
+		PathIndex pathIndex = this.pathIndex;
+		if (pathIndex == null) {
+			pathIndex = new PathIndex();
+			this.pathIndex = pathIndex;
+		}
+		return pathIndex;
+	}
+	
+	/**
+	 * @return true if every token in the parse has a single governor and
+	 * is reachable from the root
+	 */
+	public boolean isTree() {
+		return getPathIndex().isTree();
+	}
+	
+	/**
+	 * @param tokenIndex1
+	 * @param tokenIndex2
+	 * @return the index of the lowest token that governs both tokens 
+	 * (directly or indirectly, with -1 for the root), or -2 if the parse
+	 * isn't a tree or one of the tokens isn't in it
+	 */
+	public int getLowestCommonAncestor(int tokenIndex1, int tokenIndex2) {
+		PathIndex pathIndex = getPathIndex();
+		int slot1 = pathIndex.getSlot(tokenIndex1);
+		int slot2 = pathIndex.getSlot(tokenIndex2);
+		if (!pathIndex.isTree() || slot1 < 0 || slot2 < 0)
+			return -2;
+		return pathIndex.getLowestCommonAncestorSlot(slot1, slot2) - 1;
+	}
+	
+	/**
+	 * @param sourceTokenIndex
+	 * @param targetTokenIndex
+	 * @return the indices of the tokens on the path from the source token
+	 * to the target token (with -1 for the root), or null if there is no
+	 * path.  This is the same path as the one returned by getPath.
+	 */
+	public int[] getPathTokenIndices(int sourceTokenIndex, int targetTokenIndex) {
+		PathIndex pathIndex = getPathIndex();
+		int sourceSlot = pathIndex.getSlot(sourceTokenIndex);
+		int targetSlot = pathIndex.getSlot(targetTokenIndex);
 		// this can happen when the ccompressed path compresses a node into an arc, and i'm trying to find the path to that node.
-		if (source == null || target == null)
+		if (sourceSlot < 0 || targetSlot < 0)
 			return null;
 		
-		Stack<Node> toVisit = new Stack<Node>();
-		Map<Node, Node> paths = new HashMap<Node, Node>();
+		int[] path = pathIndex.getPathSlots(sourceSlot, targetSlot);
+		if (path == null)
+			return null;
+		for (int i = 0; i < path.length; i++)
+			path[i]--;
+		return path;
+	}
+	
+	/**
+	 * @param sourceTokenIndex
+	 * @param targetTokenIndex
+	 * @return the number of tokens on the path from the source token to the
+	 * target token, or -1 if there is no path
+	 */
+	public int getPathTokenLength(int sourceTokenIndex, int targetTokenIndex) {
+		PathIndex pathIndex = getPathIndex();
+		int sourceSlot = pathIndex.getSlot(sourceTokenIndex);
+		int targetSlot = pathIndex.getSlot(targetTokenIndex);
+		if (sourceSlot < 0 || targetSlot < 0)
+			return -1;
+		
+		if (pathIndex.isTree()) {
+			int ancestorSlot = pathIndex.getLowestCommonAncestorSlot(sourceSlot, targetSlot);
+			return pathIndex.depths[sourceSlot] + pathIndex.depths[targetSlot] - 2 * pathIndex.depths[ancestorSlot] + 1;
+		}
 		
-		toVisit.push(target);
-		paths.put(target, null);
-		while (!toVisit.isEmpty()) {
-			Node current = toVisit.pop();
+		int[] path = pathIndex.getPathSlots(sourceSlot, targetSlot);
+		return (path == null) ? -1 : path.length;
+	}
+	
+	public DependencyPath getPath(int sourceTokenIndex, int targetTokenIndex) {
+		int[] path = getPathTokenIndices(sourceTokenIndex, targetTokenIndex);
+		if (path == null)
+			return null;
 		
-			if (current.equals(source)) {
-				List<Node> path = new ArrayList<Node>();
-				Node pathCurrent = current;
-				while (pathCurrent != null) {
-					path.add(pathCurrent);
-					pathCurrent = paths.get(pathCurrent);
+		List<Node> nodes = new ArrayList<Node>(path.length);
+		for (int i = 0; i < path.length; i++)
+			nodes.add(getNode(path[i]));
+		return new DependencyPath(nodes);
+	}
+	
+	/**
+	 * @return the shortest path from a token in [sourceStartTokenIndex, 
+	 * sourceEndTokenIndex) to a token in [targetStartTokenIndex, 
+	 * targetEndTokenIndex), or null if there is no such path.  The first
+	 * of several shortest paths is returned, in order of source and then
+	 * target token index.  Path lengths are compared through the path 
+	 * index, and only the shortest path is built.
+	 */
+	public DependencyPath getShortestPath(int sourceStartTokenIndex, int sourceEndTokenIndex, int targetStartTokenIndex, int targetEndTokenIndex) {
+		int shortestLength = -1;
+		int shortestSource = -1;
+		int shortestTarget = -1;
+		for (int i = sourceStartTokenIndex; i < sourceEndTokenIndex; i++){
+			for (int j = targetStartTokenIndex; j < targetEndTokenIndex; j++){
+				int length = getPathTokenLength(i, j);
+				if (length >= 0 && (shortestLength < 0 || length < shortestLength)) {
+					shortestLength = length;
+					shortestSource = i;
+					shortestTarget = j;
 				}
-				return new DependencyPath(path);
-			}
-			
-			Dependency[] governors = current.getGovernors();
-			for (Dependency governor : governors) {
-				Node governorNode = getNode(governor.getGoverningTokenIndex());
-				if (paths.containsKey(governorNode))
-					continue;
-				toVisit.push(governorNode);
-				paths.put(governorNode, current);
-			}
-			
-			Dependency[] dependents = current.getDependents();
-			for (Dependency dependent : dependents){
-				Node dependentNode = getNode(dependent.getDependentTokenIndex());
-				if (paths.containsKey(dependentNode))
-					continue;
-				toVisit.push(dependentNode);
-				paths.put(dependentNode, current);
 			}
 		}
-		
-		return null;
+
+		if (shortestLength < 0)
+			return null;
+		return getPath(shortestSource, shortestTarget);
 	}
 	
 	public List<Dependency> getGoverningDependencies(int index) {
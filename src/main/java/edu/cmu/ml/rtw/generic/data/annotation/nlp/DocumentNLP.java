@@ -3,6 +3,7 @@ package edu.cmu.ml.rtw.generic.data.annotation.nlp;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -37,8 +38,143 @@ import edu.cmu.ml.rtw.generic.util.Triple;
  *
  */
 public abstract class DocumentNLP extends Document {
+	/**
+	 * RootToken is the token at index -1 of each sentence (the root of
+	 * dependency parses).  It can't be changed through fromJSON, so a
+	 * single instance is shared by all of the sentences in a document.
+	 */
+	private static class RootToken extends Token {
+		public RootToken(Document document) {
+			super(document, "ROOT");
+		}
+		
+		@Override
+		public boolean fromJSON(JSONObject json) {
+			return false;
+		}
+	}
+	
+	/**
+	 * SentenceView is a CharSequence over the tokens of a sentence
+	 * separated by single spaces, which reads characters directly from
+	 * the token strings rather than copying them into a new string.  Its
+	 * characters are the same as those of getSentence for tokens that
+	 * don't begin or end with whitespace.
+	 * 
+	 * A view doesn't change after it is constructed, so documents can
+	 * share one view of each sentence between threads.
+	 */
+	public static class SentenceView implements CharSequence {
+		private final DocumentNLP document;
+		private final int sentenceIndex;
+		// Index of the first character of each token in the view
+		private final int[] tokenStarts;
+		private final int length;
+		
+		public SentenceView(DocumentNLP document, int sentenceIndex) {
+			this.document = document;
+			this.sentenceIndex = sentenceIndex;
+			this.tokenStarts = new int[document.getSentenceTokenCount(sentenceIndex)];
+			
+			int start = 0;
+			for (int i = 0; i < this.tokenStarts.length; i++) {
+				this.tokenStarts[i] = start;
+				start += document.getTokenStr(sentenceIndex, i).length() + 1;
+			}
+			
+			this.length = Math.max(0, start - 1);
+		}
+		
+		public DocumentNLP getDocument() {
+			return this.document;
+		}
+		
+		public int getSentenceIndex() {
+			return this.sentenceIndex;
+		}
+		
+		/**
+		 * @param index
+		 * @return the index of the token containing the character at index,
+		 * or of the token preceding it if the character is a space
+		 */
+		public int getTokenIndex(int index) {
+			if (index < 0 || index >= this.length)
+				throw new IndexOutOfBoundsException(String.valueOf(index));
+			
+			int tokenIndex = Arrays.binarySearch(this.tokenStarts, index);
+			return (tokenIndex >= 0) ? tokenIndex : -tokenIndex - 2;
+		}
+		
+		/**
+		 * @param tokenIndex
+		 * @return the index of the first character of the token in the view
+		 */
+		public int getTokenStart(int tokenIndex) {
+			return this.tokenStarts[tokenIndex];
+		}
+		
+		/**
+		 * @param tokenIndex
+		 * @return the index after the last character of the token in the view
+		 */
+		public int getTokenEnd(int tokenIndex) {
+			return this.tokenStarts[tokenIndex] + this.document.getTokenStr(this.sentenceIndex, tokenIndex).length();
+		}
+		
+		@Override
+		public int length() {
+			return this.length;
+		}
+		
+		@Override
+		public char charAt(int index) {
+			int tokenIndex = getTokenIndex(index);
+			String tokenStr = this.document.getTokenStr(this.sentenceIndex, tokenIndex);
+			int tokenOffset = index - this.tokenStarts[tokenIndex];
+			return (tokenOffset < tokenStr.length()) ? tokenStr.charAt(tokenOffset) : ' ';
+		}
+		
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > this.length || start > end)
+				throw new IndexOutOfBoundsException(start + ", " + end);
+			
+			StringBuilder str = new StringBuilder(end - start);
+			if (start == end)
+				return str.toString();
+			
+			// Copy the part of each token in the range, followed by its separator
+			int index = start;
+			for (int tokenIndex = getTokenIndex(start); index < end; tokenIndex++) {
+				String tokenStr = this.document.getTokenStr(this.sentenceIndex, tokenIndex);
+				int tokenStart = this.tokenStarts[tokenIndex];
+				if (index - tokenStart < tokenStr.length()) {
+					int tokenEnd = Math.min(tokenStr.length(), end - tokenStart);
+					str.append(tokenStr, index - tokenStart, tokenEnd);
+					index = tokenStart + tokenEnd;
+				}
+				
+				if (index < end) {
+					str.append(' ');
+					index++;
+				}
+			}
+			
+			return str.toString();
+		}
+		
+		@Override
+		public String toString() {
+			return subSequence(0, this.length).toString();
+		}
+	}
+	
+	private final Token rootToken;
+	
 	public DocumentNLP(DataTools dataTools) {
 		super(dataTools);
+		this.rootToken = new RootToken(this);
 	}
 	
 	public DocumentNLP(DataTools dataTools, JSONObject json) {
@@ -94,6 +230,31 @@ public abstract class DocumentNLP extends Document {
 		return getToken(sentenceIndex, tokenIndex).getStr();
 	}
 	
+	/**
+	 * @param sentenceIndex
+	 * @return a view of the sentence at sentenceIndex that reads from
+	 * the tokens without copying them (see SentenceView)
+	 */
+	public SentenceView getSentenceView(int sentenceIndex) {
+		return new SentenceView(this, sentenceIndex);
+	}
+	
+	/**
+	 * @return true if getSentenceView returns memoized views rather than
+	 * building a new view over the whole sentence on each call
+	 */
+	protected boolean memoizesSentenceViews() {
+		return false;
+	}
+	
+	/**
+	 * @return the ROOT token returned by getToken for token index -1.
+	 * The same token is returned by every call.
+	 */
+	protected Token getRootToken() {
+		return this.rootToken;
+	}
+	
 	public List<Pair<TokenSpan, String>> getNer(TokenSpan tokenSpan) {
 		return getNer(tokenSpan, TokenSpan.ANY_SHARING_RELATION);
 	}
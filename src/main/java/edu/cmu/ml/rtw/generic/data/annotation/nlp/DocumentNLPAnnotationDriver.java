@@ -0,0 +1,510 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.cmu.ml.rtw.generic.model.annotator.nlp.PipelineNLP;
+import edu.cmu.ml.rtw.generic.util.FileUtil;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
+
+/**
+ * DocumentNLPAnnotationDriver runs a directory of text files through
+ * an NLP pipeline in parallel, and saves the annotated documents to an
+ * output directory as JSON files (which can be loaded lazily with
+ * DocumentSet.loadFromJSONDirectory).
+ *
+ * The work is split into three stages that are connected by bounded
+ * queues, so that only a limited number of documents are held in
+ * memory at once: a single thread reads the text files, several
+ * threads annotate the documents (each with its own pipeline
+ * constructed by a PipelineFactory, since pipelines hold the document
+ * that they are annotating), and a single thread writes the annotated
+ * documents.
+ *
+ * Each document is first written to a temporary file in a directory
+ * next to the output directory (so that DocumentSet.loadFromJSONDirectory
+ * never sees partially written documents), and the temporary file is
+ * moved to the output directory once it is complete.  Text files that
+ * already have output files are skipped, so a run that is interrupted
+ * can be resumed by running the driver again with the same output
+ * directory.
+ *
+ * A document that fails to be read, annotated, or written is counted
+ * as a failure, and the remaining documents are still processed.  If a
+ * stage fails entirely (for example, if a pipeline can't be constructed),
+ * then the run is aborted, and the other stages stop waiting for it.
+ *
+ * The driver counts the documents processed by each stage, and the time
+ * spent processing them, from which it computes each stage's average
+ * latency and throughput.
+ *
+ * @author Bill McDowell
+ *
+ * @param <D> document type
+ */
+public class DocumentNLPAnnotationDriver<D extends DocumentNLP> {
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+	private static final String OUTPUT_FILE_EXTENSION = ".json";
+	private static final String TEMP_FILE_EXTENSION = ".tmp";
+	private static final long QUEUE_TIMEOUT = 100; // Milliseconds
+	
+	public interface PipelineFactory {
+		PipelineNLP makePipeline();
+	}
+	
+	/**
+	 * StageCounters counts the documents processed by a stage, and
+	 * the time that the stage spent processing them.
+	 */
+	public static class StageCounters {
+		private String name;
+		private AtomicLong count;
+		private AtomicLong failureCount;
+		private AtomicLong totalTime; // Nanoseconds
+		private AtomicLong maxTime; // Nanoseconds
+		private volatile long startTime;
+		private volatile long endTime;
+		
+		public StageCounters(String name) {
+			this.name = name;
+			this.count = new AtomicLong();
+			this.failureCount = new AtomicLong();
+			this.totalTime = new AtomicLong();
+			this.maxTime = new AtomicLong();
+		}
+		
+		private void start() {
+			this.startTime = System.nanoTime();
+			this.endTime = 0;
+		}
+		
+		private void stop() {
+			this.endTime = System.nanoTime();
+		}
+		
+		private void add(long time, boolean success) {
+			if (success)
+				this.count.incrementAndGet();
+			else
+				this.failureCount.incrementAndGet();
+			
+			this.totalTime.addAndGet(time);
+			long maxTime = this.maxTime.get();
+			while (time > maxTime && !this.maxTime.compareAndSet(maxTime, time))
+				maxTime = this.maxTime.get();
+		}
+		
+		public String getName() {
+			return this.name;
+		}
+		
+		public long getCount() {
+			return this.count.get();
+		}
+		
+		public long getFailureCount() {
+			return this.failureCount.get();
+		}
+		
+		/**
+		 * @return average milliseconds spent on each document
+		 */
+		public double getAverageLatency() {
+			long count = this.count.get() + this.failureCount.get();
+			if (count == 0)
+				return 0.0;
+			return this.totalTime.get()/(count*1000000.0);
+		}
+		
+		/**
+		 * @return maximum milliseconds spent on a document
+		 */
+		public double getMaxLatency() {
+			return this.maxTime.get()/1000000.0;
+		}
+		
+		/**
+		 * @return documents processed per second since the stage started
+		 */
+		public double getThroughput() {
+			long endTime = (this.endTime == 0) ? System.nanoTime() : this.endTime;
+			if (endTime <= this.startTime)
+				return 0.0;
+			return this.count.get()/((endTime - this.startTime)/1000000000.0);
+		}
+		
+		@Override
+		public String toString() {
+			return this.name + ": " + getCount() + " documents (" + getFailureCount() + " failed), "
+					+ getAverageLatency() + " ms average latency, "
+					+ getMaxLatency() + " ms max latency, "
+					+ getThroughput() + " documents/s";
+		}
+	}
+	
+	private static class Item<D> {
+		private String fileName;
+		private String text;
+		private D document;
+		private long startTime;
+		
+		public Item(String fileName, String text, long startTime) {
+			this.fileName = fileName;
+			this.text = text;
+			this.startTime = startTime;
+		}
+	}
+	
+	private D genericDocument;
+	private Language language;
+	private PipelineFactory pipelineFactory;
+	private Collection<AnnotationTypeNLP<?>> skipAnnotators;
+	private int maxThreads;
+	private int queueCapacity;
+	
+	private StageCounters readCounters;
+	private StageCounters annotateCounters;
+	private StageCounters writeCounters;
+	private StageCounters totalCounters;
+	private long skippedCount;
+	
+	public DocumentNLPAnnotationDriver(D genericDocument, Language language, PipelineFactory pipelineFactory, Collection<AnnotationTypeNLP<?>> skipAnnotators, int maxThreads) {
+		this(genericDocument, language, pipelineFactory, skipAnnotators, maxThreads, DEFAULT_QUEUE_CAPACITY);
+	}
+	
+	/**
+	 * @param genericDocument
+	 * @param language
+	 * @param pipelineFactory constructs a pipeline for each annotation thread
+	 * @param skipAnnotators
+	 * @param maxThreads number of annotation threads
+	 * @param queueCapacity maximum number of documents waiting between
+	 * each pair of stages
+	 */
+	public DocumentNLPAnnotationDriver(D genericDocument, Language language, PipelineFactory pipelineFactory, Collection<AnnotationTypeNLP<?>> skipAnnotators, int maxThreads, int queueCapacity) {
+		this.genericDocument = genericDocument;
+		this.language = language;
+		this.pipelineFactory = pipelineFactory;
+		this.skipAnnotators = skipAnnotators;
+		this.maxThreads = Math.max(1, maxThreads);
+		this.queueCapacity = Math.max(1, queueCapacity);
+		
+		this.readCounters = new StageCounters("Read");
+		this.annotateCounters = new StageCounters("Annotate");
+		this.writeCounters = new StageCounters("Write");
+		this.totalCounters = new StageCounters("Total");
+	}
+	
+	/**
+	 * @param inputPath text file or directory of text files
+	 * @param outputPath directory in which to save annotated documents
+	 * @return true if every text file that didn't already have an output
+	 * file has been annotated and saved
+	 */
+	public boolean run(String inputPath, String outputPath) {
+		OutputWriter output = this.genericDocument.getDataTools().getOutputWriter();
+		File outputDirectory = new File(outputPath);
+		if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
+			output.debugWriteln("ERROR: Failed to create annotation output directory " + outputPath);
+			return false;
+		}
+		
+		final File tempDirectory = getTempDirectory(outputDirectory);
+		if (!tempDirectory.exists() && !tempDirectory.mkdirs()) {
+			output.debugWriteln("ERROR: Failed to create temporary annotation directory " + tempDirectory.getAbsolutePath());
+			return false;
+		}
+		
+		deleteTempFiles(outputDirectory);
+		deleteTempFiles(tempDirectory);
+		
+		final List<File> files = getInputFiles(inputPath, outputDirectory);
+		if (files == null) {
+			output.debugWriteln("ERROR: Failed to list annotation input files in " + inputPath);
+			return false;
+		}
+		
+		output.debugWriteln("Annotating " + files.size() + " documents (" + this.skippedCount + " already annotated) from " + inputPath);
+		
+		final BlockingQueue<Item<D>> textQueue = new ArrayBlockingQueue<Item<D>>(this.queueCapacity);
+		final BlockingQueue<Item<D>> documentQueue = new ArrayBlockingQueue<Item<D>>(this.queueCapacity);
+		final Item<D> end = new Item<D>(null, null, 0);
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		final AtomicBoolean aborted = new AtomicBoolean(false);
+		
+		this.readCounters.start();
+		this.annotateCounters.start();
+		this.writeCounters.start();
+		this.totalCounters.start();
+		
+		ExecutorService threads = Executors.newFixedThreadPool(this.maxThreads + 2);
+		threads.execute(new Runnable() {
+			@Override
+			public void run() {
+				read(files, textQueue, end, failed, aborted);
+			}
+		});
+		
+		for (int i = 0; i < this.maxThreads; i++) {
+			threads.execute(new Runnable() {
+				@Override
+				public void run() {
+					annotate(textQueue, documentQueue, end, failed, aborted);
+				}
+			});
+		}
+		
+		threads.execute(new Runnable() {
+			@Override
+			public void run() {
+				write(outputDirectory, tempDirectory, documentQueue, end, failed, aborted);
+			}
+		});
+		
+		threads.shutdown();
+		try {
+			threads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			aborted.set(true);
+			threads.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		
+		deleteTempFiles(tempDirectory);
+		tempDirectory.delete();
+		
+		this.totalCounters.stop();
+		if (aborted.get())
+			output.debugWriteln("ERROR: Aborted annotating documents from " + inputPath + "\n" + getStatistics());
+		else
+			output.debugWriteln("Finished annotating documents from " + inputPath + "\n" + getStatistics());
+		
+		return !failed.get() && !aborted.get();
+	}
+	
+	/**
+	 * @return the directory in which documents are written before they
+	 * are moved to outputDirectory.  This is next to outputDirectory
+	 * rather than inside it, since DocumentSet.loadFromJSONDirectory
+	 * loads the files in subdirectories.
+	 */
+	private File getTempDirectory(File outputDirectory) {
+		File absoluteOutputDirectory = outputDirectory.getAbsoluteFile();
+		return new File(absoluteOutputDirectory.getParentFile(), absoluteOutputDirectory.getName() + TEMP_FILE_EXTENSION);
+	}
+	
+	/**
+	 * Deletes temporary files left by runs that crashed
+	 */
+	private void deleteTempFiles(File directory) {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		for (File file : files)
+			if (file.isFile() && file.getName().endsWith(TEMP_FILE_EXTENSION))
+				file.delete();
+	}
+	
+	private List<File> getInputFiles(String inputPath, File outputDirectory) {
+		File filePath = new File(inputPath);
+		File[] files = null;
+		if (filePath.isDirectory()) {
+			files = filePath.listFiles();
+		} else {
+			files = new File[] { filePath };
+		}
+		
+		if (files == null)
+			return null;
+		
+		Arrays.sort(files, new Comparator<File>() { // Ensure determinism
+		    public int compare(File o1, File o2) {
+		        return o1.getAbsolutePath().compareTo(o2.getAbsolutePath());
+		    }
+		});
+		
+		List<File> remainingFiles = new ArrayList<File>();
+		this.skippedCount = 0;
+		for (File file : files) {
+			if (file.isDirectory())
+				continue;
+			if (new File(outputDirectory, file.getName() + OUTPUT_FILE_EXTENSION).exists())
+				this.skippedCount++;
+			else
+				remainingFiles.add(file);
+		}
+		
+		return remainingFiles;
+	}
+	
+	private void read(List<File> files, BlockingQueue<Item<D>> textQueue, Item<D> end, AtomicBoolean failed, AtomicBoolean aborted) {
+		OutputWriter output = this.genericDocument.getDataTools().getOutputWriter();
+		try {
+			for (File file : files) {
+				long startTime = System.nanoTime();
+				String text = FileUtil.readFile(file);
+				this.readCounters.add(System.nanoTime() - startTime, text != null);
+				
+				if (text == null) {
+					output.debugWriteln("ERROR: Failed to read annotation input file " + file.getAbsolutePath());
+					failed.set(true);
+					continue;
+				}
+				
+				if (!offer(textQueue, new Item<D>(file.getName(), text, startTime), aborted))
+					break;
+			}
+		} catch (Throwable e) {
+			output.debugWriteln("ERROR: Annotation reader failed: " + e);
+			aborted.set(true);
+		} finally {
+			this.readCounters.stop();
+			for (int i = 0; i < this.maxThreads; i++)
+				offer(textQueue, end, aborted);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void annotate(BlockingQueue<Item<D>> textQueue, BlockingQueue<Item<D>> documentQueue, Item<D> end, AtomicBoolean failed, AtomicBoolean aborted) {
+		OutputWriter output = this.genericDocument.getDataTools().getOutputWriter();
+		try {
+			PipelineNLP pipeline = (this.pipelineFactory == null) ? null : this.pipelineFactory.makePipeline();
+			Item<D> item = null;
+			while ((item = poll(textQueue, aborted)) != null && item != end) {
+				long startTime = System.nanoTime();
+				try {
+					item.document = (D)this.genericDocument.makeInstanceFromText(item.fileName, item.text, this.language, pipeline, this.skipAnnotators);
+				} catch (Exception e) {
+					output.debugWriteln("ERROR: Failed to annotate document " + item.fileName + ": " + e);
+					item.document = null;
+				}
+				item.text = null;
+				
+				this.annotateCounters.add(System.nanoTime() - startTime, item.document != null);
+				if (item.document == null) {
+					failed.set(true);
+					continue;
+				}
+				
+				if (!offer(documentQueue, item, aborted))
+					break;
+			}
+		} catch (Throwable e) {
+			output.debugWriteln("ERROR: Annotation thread failed: " + e);
+			aborted.set(true);
+		} finally {
+			offer(documentQueue, end, aborted);
+		}
+	}
+	
+	private void write(File outputDirectory, File tempDirectory, BlockingQueue<Item<D>> documentQueue, Item<D> end, AtomicBoolean failed, AtomicBoolean aborted) {
+		OutputWriter output = this.genericDocument.getDataTools().getOutputWriter();
+		int remainingAnnotators = this.maxThreads;
+		try {
+			while (remainingAnnotators > 0) {
+				Item<D> item = poll(documentQueue, aborted);
+				if (item == null)
+					break;
+				if (item == end) {
+					remainingAnnotators--;
+					continue;
+				}
+				
+				long startTime = System.nanoTime();
+				File outputFile = new File(outputDirectory, item.fileName + OUTPUT_FILE_EXTENSION);
+				File tempFile = new File(tempDirectory, item.fileName + OUTPUT_FILE_EXTENSION + TEMP_FILE_EXTENSION);
+				boolean success = false;
+				try {
+					success = item.document.saveToJSONFile(tempFile.getAbsolutePath()) && tempFile.renameTo(outputFile);
+				} catch (RuntimeException e) {
+					output.debugWriteln("ERROR: Failed to write document " + item.fileName + ": " + e);
+				}
+				long endTime = System.nanoTime();
+				
+				this.writeCounters.add(endTime - startTime, success);
+				this.totalCounters.add(endTime - item.startTime, success);
+				if (!success) {
+					output.debugWriteln("ERROR: Failed to save annotated document " + outputFile.getAbsolutePath());
+					tempFile.delete();
+					failed.set(true);
+				}
+			}
+		} catch (Throwable e) {
+			output.debugWriteln("ERROR: Annotation writer failed: " + e);
+			aborted.set(true);
+		} finally {
+			this.annotateCounters.stop();
+			this.writeCounters.stop();
+		}
+	}
+	
+	/**
+	 * Adds an item to the queue, waiting for space unless the run has
+	 * been aborted (in which case the next stage may have stopped).
+	 * 
+	 * @return true if the item was added
+	 */
+	private boolean offer(BlockingQueue<Item<D>> queue, Item<D> item, AtomicBoolean aborted) {
+		try {
+			while (!aborted.get()) {
+				if (queue.offer(item, QUEUE_TIMEOUT, TimeUnit.MILLISECONDS))
+					return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			aborted.set(true);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return the next item from the queue, or null if the run has been
+	 * aborted
+	 */
+	private Item<D> poll(BlockingQueue<Item<D>> queue, AtomicBoolean aborted) {
+		try {
+			while (!aborted.get()) {
+				Item<D> item = queue.poll(QUEUE_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (item != null)
+					return item;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			aborted.set(true);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * @return the number of input files that were skipped because they
+	 * had already been annotated by a previous run
+	 */
+	public long getSkippedCount() {
+		return this.skippedCount;
+	}
+	
+	public List<StageCounters> getStageCounters() {
+		return Collections.unmodifiableList(Arrays.asList(this.readCounters, this.annotateCounters, this.writeCounters, this.totalCounters));
+	}
+	
+	public String getStatistics() {
+		StringBuilder statistics = new StringBuilder();
+		for (StageCounters counters : getStageCounters())
+			statistics.append(counters.toString()).append("\n");
+		return statistics.toString();
+	}
+}
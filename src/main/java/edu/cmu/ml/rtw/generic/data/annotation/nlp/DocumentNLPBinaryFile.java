@@ -0,0 +1,978 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.util.BinaryReader;
+import edu.cmu.ml.rtw.generic.util.BinaryWriter;
+import edu.cmu.ml.rtw.generic.util.Pair;
+import edu.cmu.ml.rtw.generic.util.Triple;
+
+/**
+ * DocumentNLPBinaryFile is a single-file binary container for
+ * DocumentNLPInMemory documents, meant as a faster and more compact
+ * alternative to a directory of JSON files.  Its layout is:
+ *
+ * - A header (magic number and version)
+ * - One block per document
+ * - A table of interned strings
+ * - An index from document names to block offsets and lengths
+ * - A fixed width footer with the offsets of the string table and index
+ *
+ * Token strings, PoS labels, dependency types, constituent labels,
+ * NER types, annotator names, and document names are interned in the
+ * string table, which is shared by all documents in the file and loaded
+ * once when the file is opened, so documents decoded from the file share
+ * their string instances.  Integers (token offsets, parse structure, span
+ * boundaries) are variable length encoded.
+ *
+ * Each document block is divided into one section per annotation type,
+ * prefixed by a section table giving each section's length, so a reader
+ * can decode only the annotation types it needs and skip the rest
+ * without parsing them.  The annotation types are chosen when a document
+ * is read, and the skipped types are not available from the decoded
+ * document.  Documents are read on demand by name through positional
+ * reads on the open file, so a reader can be shared by concurrent threads.
+ *
+ * Unlike the JSON format, the binary format also keeps annotation
+ * confidences.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class DocumentNLPBinaryFile {
+	private static final int MAGIC = 0x4D554231; // "MUB1"
+	private static final int VERSION = 2;
+	private static final int HEADER_LENGTH = 8;
+	private static final int FOOTER_LENGTH = 20;
+	private static final String HEADER_SECTION = "";
+
+	// Tags for serialized annotation values
+	private static final int VALUE_NULL = 0;
+	private static final int VALUE_INTERNED_STRING = 1;
+	private static final int VALUE_STRING = 2;
+	private static final int VALUE_TRUE = 3;
+	private static final int VALUE_FALSE = 4;
+	private static final int VALUE_INTEGER = 5;
+	private static final int VALUE_DOUBLE = 6;
+	private static final int VALUE_JSON_OBJECT = 7;
+	private static final int VALUE_JSON_ARRAY = 8;
+
+	/**
+	 * Writer appends documents to a new binary file.  The string table,
+	 * index, and footer are written by close, so a file is not readable
+	 * until its writer has been closed.  Writes are synchronized, so a
+	 * writer can be shared by threads that annotate documents in parallel.
+	 */
+	public static class Writer {
+		private String path;
+		private OutputStream out;
+		private long position;
+		private Map<String, Integer> stringIds;
+		private List<String> strings;
+		private Map<String, Pair<Long, Integer>> index;
+
+		public Writer(String path) {
+			this.path = path;
+			this.stringIds = new HashMap<String, Integer>();
+			this.strings = new ArrayList<String>();
+			this.index = new LinkedHashMap<String, Pair<Long, Integer>>();
+
+			try {
+				this.out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+				BinaryWriter header = new BinaryWriter(HEADER_LENGTH);
+				header.writeInt(MAGIC);
+				header.writeInt(VERSION);
+				header.writeTo(this.out);
+				this.position = header.size();
+			} catch (IOException e) {
+				e.printStackTrace();
+				if (this.out != null) {
+					try {
+						this.out.close();
+					} catch (IOException closeException) { }
+				}
+				this.out = null;
+			}
+		}
+
+		public String getPath() {
+			return this.path;
+		}
+
+		public synchronized int getDocumentCount() {
+			return this.index.size();
+		}
+
+		/**
+		 * @param document
+		 * @return true if the document was written.  Documents with names
+		 * that have already been written are not written again.
+		 */
+		public synchronized boolean write(DocumentNLPInMemory document) {
+			if (this.out == null || this.index.containsKey(document.getName()))
+				return false;
+
+			BinaryWriter block = encodeDocument(document);
+			if (block == null)
+				return false;
+
+			try {
+				block.writeTo(this.out);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return false;
+			}
+
+			intern(document.getName());
+			this.index.put(document.getName(), new Pair<Long, Integer>(this.position, block.size()));
+			this.position += block.size();
+			return true;
+		}
+
+		public synchronized boolean close() {
+			if (this.out == null)
+				return false;
+
+			try {
+				long stringTableOffset = this.position;
+				BinaryWriter stringTable = new BinaryWriter();
+				stringTable.writeVarInt(this.strings.size());
+				for (String str : this.strings)
+					stringTable.writeString(str);
+				stringTable.writeTo(this.out);
+
+				long indexOffset = stringTableOffset + stringTable.size();
+				BinaryWriter indexWriter = new BinaryWriter();
+				indexWriter.writeVarInt(this.index.size());
+				for (Entry<String, Pair<Long, Integer>> entry : this.index.entrySet()) {
+					indexWriter.writeVarInt(this.stringIds.get(entry.getKey()));
+					indexWriter.writeVarLong(entry.getValue().getFirst());
+					indexWriter.writeVarInt(entry.getValue().getSecond());
+				}
+				indexWriter.writeTo(this.out);
+
+				BinaryWriter footer = new BinaryWriter(FOOTER_LENGTH);
+				footer.writeLong(stringTableOffset);
+				footer.writeLong(indexOffset);
+				footer.writeInt(MAGIC);
+				footer.writeTo(this.out);
+
+				this.out.close();
+				this.out = null;
+			} catch (IOException e) {
+				e.printStackTrace();
+				return false;
+			}
+
+			return true;
+		}
+
+		private int intern(String str) {
+			Integer id = this.stringIds.get(str);
+			if (id == null) {
+				id = this.strings.size();
+				this.strings.add(str);
+				this.stringIds.put(str, id);
+			}
+			return id;
+		}
+
+		/**
+		 * Writes a reference to an interned string (0 for null)
+		 */
+		private void writeInterned(BinaryWriter w, String str) {
+			w.writeVarInt((str == null) ? 0 : intern(str) + 1);
+		}
+
+		private void writeConfidence(BinaryWriter w, Double confidence) {
+			if (confidence == null) {
+				w.writeByte(0);
+			} else {
+				w.writeByte(1);
+				w.writeDouble(confidence);
+			}
+		}
+
+		private void writeValue(BinaryWriter w, AnnotationTypeNLP<?> annotationType, Object value, boolean internStrings) {
+			Object serialized = (value == null) ? null : annotationType.serialize(value);
+			if (serialized == null) {
+				w.writeByte(VALUE_NULL);
+			} else if (serialized instanceof String && internStrings) {
+				w.writeByte(VALUE_INTERNED_STRING);
+				writeInterned(w, (String)serialized);
+			} else if (serialized instanceof Boolean) {
+				w.writeByte(((Boolean)serialized) ? VALUE_TRUE : VALUE_FALSE);
+			} else if (serialized instanceof Integer) {
+				w.writeByte(VALUE_INTEGER);
+				w.writeSignedVarInt((Integer)serialized);
+			} else if (serialized instanceof Double) {
+				w.writeByte(VALUE_DOUBLE);
+				w.writeDouble((Double)serialized);
+			} else if (serialized instanceof JSONObject) {
+				w.writeByte(VALUE_JSON_OBJECT);
+				w.writeString(serialized.toString());
+			} else if (serialized instanceof JSONArray) {
+				w.writeByte(VALUE_JSON_ARRAY);
+				w.writeString(serialized.toString());
+			} else {
+				w.writeByte(VALUE_STRING);
+				w.writeString(serialized.toString());
+			}
+		}
+
+		private void writeSpan(BinaryWriter w, TokenSpan span) {
+			w.writeVarInt(span.getStartTokenIndex());
+			w.writeSignedVarInt(span.getEndTokenIndex() - span.getStartTokenIndex());
+		}
+
+		@SuppressWarnings("unchecked")
+		private BinaryWriter encodeDocument(DocumentNLPInMemory document) {
+			List<Pair<String, BinaryWriter>> sections = new ArrayList<Pair<String, BinaryWriter>>();
+
+			BinaryWriter header = new BinaryWriter();
+			writeInterned(header, document.getName());
+			Map<String, String> annotatorNames = getAnnotatorNames(document);
+			header.writeVarInt(annotatorNames.size());
+			for (Entry<String, String> entry : annotatorNames.entrySet()) {
+				writeInterned(header, entry.getKey());
+				writeInterned(header, entry.getValue());
+			}
+			sections.add(new Pair<String, BinaryWriter>(HEADER_SECTION, header));
+
+			if (document.originalText != null) {
+				BinaryWriter w = new BinaryWriter(document.originalText.length() + 16);
+				w.writeString(document.originalText);
+				writeConfidence(w, document.originalTextConf);
+				sections.add(new Pair<String, BinaryWriter>(AnnotationTypeNLP.ORIGINAL_TEXT.getType(), w));
+			}
+
+			if (document.language != null) {
+				BinaryWriter w = new BinaryWriter(16);
+				writeInterned(w, document.language.toString());
+				writeConfidence(w, document.languageConf);
+				sections.add(new Pair<String, BinaryWriter>(AnnotationTypeNLP.LANGUAGE.getType(), w));
+			}
+
+			// Tokens and PoS tags are read through the document so that
+			// compact documents are written without expanding them
+			if (document.hasTokens()) {
+				BinaryWriter w = new BinaryWriter();
+				boolean conf = document.tokensConf != null;
+				w.writeByte(conf ? 1 : 0);
+				w.writeVarInt(document.getSentenceCount());
+				int prevEnd = 0;
+				for (int i = 0; i < document.getSentenceCount(); i++) {
+					int tokenCount = document.getSentenceTokenCount(i);
+					w.writeVarInt(tokenCount);
+					for (int j = 0; j < tokenCount; j++) {
+						int start = document.getTokenCharSpanStart(i, j);
+						int end = document.getTokenCharSpanEnd(i, j);
+						writeInterned(w, document.getTokenStr(i, j));
+						w.writeSignedVarInt(start - prevEnd);
+						w.writeSignedVarInt(end - start);
+						prevEnd = end;
+						if (conf)
+							w.writeDouble(document.tokensConf[i][j]);
+					}
+				}
+				sections.add(new Pair<String, BinaryWriter>(AnnotationTypeNLP.TOKEN.getType(), w));
+			}
+
+			if (document.hasPoSTags()) {
+				BinaryWriter w = new BinaryWriter();
+				boolean conf = document.posTagsConf != null;
+				w.writeByte(conf ? 1 : 0);
+				w.writeVarInt(document.getSentenceCount());
+				for (int i = 0; i < document.getSentenceCount(); i++) {
+					if (document.posTags != null && document.posTags[i] == null) {
+						w.writeVarInt(0);
+						continue;
+					}
+
+					int tokenCount = document.getSentenceTokenCount(i);
+					w.writeVarInt(tokenCount + 1);
+					for (int j = 0; j < tokenCount; j++) {
+						PoSTag posTag = document.getPoSTag(i, j);
+						writeInterned(w, (posTag == null) ? null : posTag.toString());
+						if (conf)
+							w.writeDouble(document.posTagsConf[i][j]);
+					}
+				}
+				sections.add(new Pair<String, BinaryWriter>(AnnotationTypeNLP.POS.getType(), w));
+			}
+
+			if (document.dependencyParses != null) {
+				BinaryWriter w = new BinaryWriter();
+				boolean conf = document.dependencyParsesConf != null;
+				w.writeByte(conf ? 1 : 0);
+				w.writeVarInt(document.dependencyParses.length);
+				for (int i = 0; i < document.dependencyParses.length; i++) {
+					DependencyParse parse = document.dependencyParses[i];
+					if (parse == null) {
+						w.writeVarInt(0);
+						continue;
+					}
+
+					// Dependencies are written in the order that DependencyParse.toString
+					// writes them, so that the decoded parse matches a parse read from JSON
+					List<DependencyParse.Dependency> dependencies = new ArrayList<DependencyParse.Dependency>();
+					DependencyParse.Node[] tokenNodes = parse.getTokenNodes();
+					if (tokenNodes != null)
+						for (int j = 0; j < tokenNodes.length; j++)
+							if (tokenNodes[j] != null)
+								dependencies.addAll(java.util.Arrays.asList(tokenNodes[j].getGovernors()));
+
+					w.writeVarInt(dependencies.size() + 1);
+					for (DependencyParse.Dependency dependency : dependencies) {
+						w.writeVarInt(dependency.getGoverningTokenIndex() + 1);
+						w.writeVarInt(dependency.getDependentTokenIndex());
+						writeInterned(w, dependency.getType());
+					}
+
+					if (conf)
+						w.writeDouble(document.dependencyParsesConf[i]);
+				}
+				sections.add(new Pair<String, BinaryWriter>(AnnotationTypeNLP.DEPENDENCY_PARSE.getType(), w));
+			}
+
+			if (document.constituencyParses != null) {
+				BinaryWriter w = new BinaryWriter();
+				boolean conf = document.constituencyParsesConf != null;
+				w.writeByte(conf ? 1 : 0);
+				w.writeVarInt(document.constituencyParses.length);
+				for (int i = 0; i < document.constituencyParses.length; i++) {
+					ConstituencyParse parse = document.constituencyParses[i];
+					if (parse == null) {
+						w.writeVarInt(0);
+					} else if (parse.getRoot() == null) {
+						w.writeVarInt(1);
+					} else {
+						w.writeVarInt(2);
+						writeConstituent(w, parse.getRoot());
+					}
+
+					if (conf)
+						w.writeDouble(document.constituencyParsesConf[i]);
+				}
+				sections.add(new Pair<String, BinaryWriter>(AnnotationTypeNLP.CONSTITUENCY_PARSE.getType(), w));
+			}
+
+			if (document.ner != null) {
+				BinaryWriter w = new BinaryWriter();
+				w.writeVarInt(document.ner.size());
+				for (Entry<Integer, List<Triple<TokenSpan, String, Double>>> entry : document.ner.entrySet()) {
+					w.writeVarInt(entry.getKey());
+					w.writeVarInt(entry.getValue().size());
+					for (Triple<TokenSpan, String, Double> span : entry.getValue()) {
+						writeSpan(w, span.getFirst());
+						writeInterned(w, span.getSecond());
+						writeConfidence(w, span.getThird());
+					}
+				}
+				sections.add(new Pair<String, BinaryWriter>(AnnotationTypeNLP.NER.getType(), w));
+			}
+
+			if (document.coref != null) {
+				BinaryWriter w = new BinaryWriter();
+				w.writeVarInt(document.coref.size());
+				for (Entry<Integer, List<Triple<TokenSpan, TokenSpanCluster, Double>>> entry : document.coref.entrySet()) {
+					w.writeVarInt(entry.getKey());
+					w.writeVarInt(entry.getValue().size());
+					for (Triple<TokenSpan, TokenSpanCluster, Double> span : entry.getValue()) {
+						writeSpan(w, span.getFirst());
+						writeValue(w, AnnotationTypeNLP.COREF, span.getSecond(), false);
+						writeConfidence(w, span.getThird());
+					}
+				}
+				sections.add(new Pair<String, BinaryWriter>(AnnotationTypeNLP.COREF.getType(), w));
+			}
+
+			if (document.otherDocumentAnnotations != null) {
+				for (Entry<AnnotationTypeNLP<?>, Pair<?, Double>> entry : document.otherDocumentAnnotations.entrySet()) {
+					BinaryWriter w = new BinaryWriter();
+					writeValue(w, entry.getKey(), entry.getValue().getFirst(), false);
+					writeConfidence(w, entry.getValue().getSecond());
+					sections.add(new Pair<String, BinaryWriter>(entry.getKey().getType(), w));
+				}
+			}
+
+			if (document.otherSentenceAnnotations != null) {
+				for (Entry<AnnotationTypeNLP<?>, Map<Integer, ?>> entry : document.otherSentenceAnnotations.entrySet()) {
+					BinaryWriter w = new BinaryWriter();
+					w.writeVarInt(entry.getValue().size());
+					for (Entry<Integer, ?> sentenceEntry : entry.getValue().entrySet()) {
+						Pair<?, Double> annotation = (Pair<?, Double>)sentenceEntry.getValue();
+						w.writeVarInt(sentenceEntry.getKey());
+						writeValue(w, entry.getKey(), annotation.getFirst(), false);
+						writeConfidence(w, annotation.getSecond());
+					}
+					sections.add(new Pair<String, BinaryWriter>(entry.getKey().getType(), w));
+				}
+			}
+
+			if (document.otherTokenSpanAnnotations != null) {
+				for (Entry<AnnotationTypeNLP<?>, Map<Integer, List<Triple<TokenSpan, ?, Double>>>> entry : document.otherTokenSpanAnnotations.entrySet()) {
+					BinaryWriter w = new BinaryWriter();
+					w.writeVarInt(entry.getValue().size());
+					for (Entry<Integer, List<Triple<TokenSpan, ?, Double>>> sentenceEntry : entry.getValue().entrySet()) {
+						w.writeVarInt(sentenceEntry.getKey());
+						w.writeVarInt(sentenceEntry.getValue().size());
+						for (Triple<TokenSpan, ?, Double> span : sentenceEntry.getValue()) {
+							writeSpan(w, span.getFirst());
+							writeValue(w, entry.getKey(), span.getSecond(), true);
+							writeConfidence(w, span.getThird());
+						}
+					}
+					sections.add(new Pair<String, BinaryWriter>(entry.getKey().getType(), w));
+				}
+			}
+
+			if (document.otherTokenAnnotations != null) {
+				for (Entry<AnnotationTypeNLP<?>, Pair<?, Double>[][]> entry : document.otherTokenAnnotations.entrySet()) {
+					BinaryWriter w = new BinaryWriter();
+					Pair<?, Double>[][] annotations = entry.getValue();
+					w.writeVarInt(annotations.length);
+					for (int i = 0; i < annotations.length; i++) {
+						if (annotations[i] == null) {
+							w.writeVarInt(0);
+							continue;
+						}
+
+						w.writeVarInt(annotations[i].length + 1);
+						for (int j = 0; j < annotations[i].length; j++) {
+							Pair<?, Double> annotation = annotations[i][j];
+							writeValue(w, entry.getKey(), (annotation == null) ? null : annotation.getFirst(), true);
+							writeConfidence(w, (annotation == null) ? null : annotation.getSecond());
+						}
+					}
+					sections.add(new Pair<String, BinaryWriter>(entry.getKey().getType(), w));
+				}
+			}
+
+			BinaryWriter block = new BinaryWriter();
+			block.writeVarInt(sections.size());
+			for (Pair<String, BinaryWriter> section : sections) {
+				writeInterned(block, section.getFirst());
+				block.writeVarInt(section.getSecond().size());
+			}
+			for (Pair<String, BinaryWriter> section : sections)
+				block.writeBytes(section.getSecond());
+
+			return block;
+		}
+
+		private void writeConstituent(BinaryWriter w, ConstituencyParse.Constituent constituent) {
+			writeInterned(w, constituent.getLabel());
+			ConstituencyParse.Constituent[] children = constituent.getChildren();
+			int childCount = (children == null) ? 0 : children.length;
+			TokenSpan span = (childCount == 0) ? constituent.getTokenSpan() : null;
+			w.writeVarInt((childCount << 1) | ((span != null) ? 1 : 0));
+			if (span != null)
+				writeSpan(w, span);
+			for (int i = 0; i < childCount; i++)
+				writeConstituent(w, children[i]);
+		}
+
+		private Map<String, String> getAnnotatorNames(DocumentNLPInMemory document) {
+			Map<String, String> names = new LinkedHashMap<String, String>();
+			putAnnotatorName(names, AnnotationTypeNLP.ORIGINAL_TEXT, document.originalTextAnnotatorName);
+			putAnnotatorName(names, AnnotationTypeNLP.LANGUAGE, document.languageAnnotatorName);
+			putAnnotatorName(names, AnnotationTypeNLP.TOKEN, document.tokenAnnotatorName);
+			putAnnotatorName(names, AnnotationTypeNLP.POS, document.posAnnotatorName);
+			putAnnotatorName(names, AnnotationTypeNLP.DEPENDENCY_PARSE, document.dependencyParseAnnotatorName);
+			putAnnotatorName(names, AnnotationTypeNLP.CONSTITUENCY_PARSE, document.constituencyParseAnnotatorName);
+			putAnnotatorName(names, AnnotationTypeNLP.NER, document.nerAnnotatorName);
+			putAnnotatorName(names, AnnotationTypeNLP.COREF, document.corefAnnotatorName);
+			if (document.otherAnnotatorNames != null)
+				for (Entry<AnnotationTypeNLP<?>, String> entry : document.otherAnnotatorNames.entrySet())
+					putAnnotatorName(names, entry.getKey(), entry.getValue());
+			return names;
+		}
+
+		private void putAnnotatorName(Map<String, String> names, AnnotationTypeNLP<?> annotationType, String annotatorName) {
+			if (annotatorName != null)
+				names.put(annotationType.getType(), annotatorName);
+		}
+	}
+
+	private String path;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private String[] strings;
+	private Map<String, Pair<Long, Integer>> index;
+
+	private DocumentNLPBinaryFile(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * @param path
+	 * @return the binary file at path, ready to read documents, or null if
+	 * the file couldn't be opened
+	 */
+	public static DocumentNLPBinaryFile open(String path) {
+		DocumentNLPBinaryFile binaryFile = new DocumentNLPBinaryFile(path);
+		try {
+			binaryFile.file = new RandomAccessFile(path, "r");
+			binaryFile.channel = binaryFile.file.getChannel();
+
+			long length = binaryFile.channel.size();
+			BinaryReader header = new BinaryReader(binaryFile.read(0, HEADER_LENGTH));
+			if (length < HEADER_LENGTH + FOOTER_LENGTH || header.readInt() != MAGIC)
+				throw new IllegalArgumentException("Invalid binary document file: " + path);
+			if (header.readInt() != VERSION)
+				throw new IllegalArgumentException("Unsupported binary document file version: " + path);
+
+			BinaryReader footer = new BinaryReader(binaryFile.read(length - FOOTER_LENGTH, FOOTER_LENGTH));
+			long stringTableOffset = footer.readLong();
+			long indexOffset = footer.readLong();
+			if (footer.readInt() != MAGIC)
+				throw new IllegalArgumentException("Incomplete binary document file (was its writer closed?): " + path);
+
+			BinaryReader stringTable = new BinaryReader(binaryFile.read(stringTableOffset, (int)(indexOffset - stringTableOffset)));
+			binaryFile.strings = new String[stringTable.readVarInt()];
+			for (int i = 0; i < binaryFile.strings.length; i++)
+				binaryFile.strings[i] = stringTable.readString();
+
+			BinaryReader indexReader = new BinaryReader(binaryFile.read(indexOffset, (int)(length - FOOTER_LENGTH - indexOffset)));
+			int documentCount = indexReader.readVarInt();
+			binaryFile.index = new LinkedHashMap<String, Pair<Long, Integer>>(documentCount * 2);
+			for (int i = 0; i < documentCount; i++) {
+				String name = binaryFile.strings[indexReader.readVarInt()];
+				long offset = indexReader.readVarLong();
+				int blockLength = indexReader.readVarInt();
+				binaryFile.index.put(name, new Pair<Long, Integer>(offset, blockLength));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			binaryFile.close();
+			return null;
+		}
+
+		return binaryFile;
+	}
+
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * @return names of the documents in the file, in the order in which
+	 * they were written
+	 */
+	public Set<String> getDocumentNames() {
+		return Collections.unmodifiableSet(this.index.keySet());
+	}
+
+	public boolean hasDocument(String name) {
+		return this.index.containsKey(name);
+	}
+
+	public int getDocumentCount() {
+		return this.index.size();
+	}
+
+	public DocumentNLPInMemory readDocument(String name, DataTools dataTools) {
+		return readDocument(name, dataTools, null);
+	}
+
+	/**
+	 * @param name
+	 * @param dataTools
+	 * @param annotationTypes annotation types to decode (or null to decode
+	 * all of them).  Sections for other annotation types are skipped.  Tokens
+	 * are always decoded along with any sentence, token, or token span
+	 * annotation type, since the document needs them to locate sentences.
+	 * @return the named document, or null if it isn't in the file or can't
+	 * be read
+	 */
+	public DocumentNLPInMemory readDocument(String name, DataTools dataTools, Collection<AnnotationTypeNLP<?>> annotationTypes) {
+		Pair<Long, Integer> location = this.index.get(name);
+		if (location == null)
+			return null;
+
+		try {
+			return decodeDocument(new BinaryReader(read(location.getFirst(), location.getSecond())), dataTools, getDecodedTypes(annotationTypes));
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public synchronized boolean close() {
+		try {
+			if (this.file != null)
+				this.file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			this.file = null;
+			this.channel = null;
+		}
+		return true;
+	}
+
+	private byte[] read(long offset, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			int read = this.channel.read(buffer, offset + buffer.position());
+			if (read < 0)
+				throw new IOException("Unexpected end of binary document file: " + this.path);
+		}
+		return bytes;
+	}
+
+	private Set<String> getDecodedTypes(Collection<AnnotationTypeNLP<?>> annotationTypes) {
+		if (annotationTypes == null)
+			return null;
+
+		Set<String> types = new HashSet<String>();
+		for (AnnotationTypeNLP<?> annotationType : annotationTypes) {
+			types.add(annotationType.getType());
+			if (annotationType.getTarget() != AnnotationTypeNLP.Target.DOCUMENT)
+				types.add(AnnotationTypeNLP.TOKEN.getType());
+		}
+		return types;
+	}
+
+	private String readInterned(BinaryReader r) {
+		int id = r.readVarInt();
+		return (id == 0) ? null : this.strings[id - 1];
+	}
+
+	private Double readConfidence(BinaryReader r) {
+		if (r.readByte() == 0)
+			return null;
+		return r.readDouble();
+	}
+
+	private Object readValue(BinaryReader r, DocumentNLPInMemory document, AnnotationTypeNLP<?> annotationType, int sentenceIndex) throws JSONException {
+		int tag = r.readByte();
+		Object serialized = null;
+		if (tag == VALUE_NULL)
+			return null;
+		else if (tag == VALUE_INTERNED_STRING)
+			serialized = readInterned(r);
+		else if (tag == VALUE_STRING)
+			serialized = r.readString();
+		else if (tag == VALUE_TRUE)
+			serialized = true;
+		else if (tag == VALUE_FALSE)
+			serialized = false;
+		else if (tag == VALUE_INTEGER)
+			serialized = r.readSignedVarInt();
+		else if (tag == VALUE_DOUBLE)
+			serialized = r.readDouble();
+		else if (tag == VALUE_JSON_OBJECT)
+			serialized = new JSONObject(r.readString());
+		else if (tag == VALUE_JSON_ARRAY)
+			serialized = new JSONArray(r.readString());
+		else
+			throw new IllegalArgumentException("Invalid value tag " + tag + " in binary document file: " + this.path);
+
+		if (annotationType.getTarget() == AnnotationTypeNLP.Target.DOCUMENT)
+			return annotationType.deserialize(document, serialized);
+		else
+			return annotationType.deserialize(document, sentenceIndex, serialized);
+	}
+
+	private TokenSpan readSpan(BinaryReader r, DocumentNLPInMemory document, int sentenceIndex) {
+		int start = r.readVarInt();
+		int end = start + r.readSignedVarInt();
+		return new TokenSpan(document, sentenceIndex, start, end);
+	}
+
+	@SuppressWarnings("unchecked")
+	private DocumentNLPInMemory decodeDocument(BinaryReader r, DataTools dataTools, Set<String> decodedTypes) throws JSONException {
+		DocumentNLPInMemory document = new DocumentNLPInMemory(dataTools);
+
+		int sectionCount = r.readVarInt();
+		String[] sectionNames = new String[sectionCount];
+		int[] sectionLengths = new int[sectionCount];
+		for (int i = 0; i < sectionCount; i++) {
+			sectionNames[i] = readInterned(r);
+			sectionLengths[i] = r.readVarInt();
+		}
+
+		for (int s = 0; s < sectionCount; s++) {
+			String sectionName = sectionNames[s];
+			if (!sectionName.equals(HEADER_SECTION) && decodedTypes != null && !decodedTypes.contains(sectionName)) {
+				r.skip(sectionLengths[s]);
+				continue;
+			}
+
+			BinaryReader w = r.slice(sectionLengths[s]);
+			if (sectionName.equals(HEADER_SECTION)) {
+				document.setName(readInterned(w));
+				int annotatorCount = w.readVarInt();
+				for (int i = 0; i < annotatorCount; i++)
+					setAnnotatorName(document, dataTools, readInterned(w), readInterned(w));
+			} else if (sectionName.equals(AnnotationTypeNLP.ORIGINAL_TEXT.getType())) {
+				document.originalText = w.readString();
+				document.originalTextConf = readConfidence(w);
+			} else if (sectionName.equals(AnnotationTypeNLP.LANGUAGE.getType())) {
+				document.language = Language.valueOf(readInterned(w));
+				document.languageConf = readConfidence(w);
+			} else if (sectionName.equals(AnnotationTypeNLP.TOKEN.getType())) {
+				boolean conf = w.readByte() != 0;
+				int sentenceCount = w.readVarInt();
+				document.tokens = new Token[sentenceCount][];
+				if (conf)
+					document.tokensConf = new double[sentenceCount][];
+				int prevEnd = 0;
+				for (int i = 0; i < sentenceCount; i++) {
+					int tokenCount = w.readVarInt();
+					document.tokens[i] = new Token[tokenCount];
+					if (conf)
+						document.tokensConf[i] = new double[tokenCount];
+					for (int j = 0; j < tokenCount; j++) {
+						String str = readInterned(w);
+						int start = prevEnd + w.readSignedVarInt();
+						int end = start + w.readSignedVarInt();
+						prevEnd = end;
+						document.tokens[i][j] = new Token(document, str, start, end);
+						if (conf)
+							document.tokensConf[i][j] = w.readDouble();
+					}
+				}
+			} else if (sectionName.equals(AnnotationTypeNLP.POS.getType())) {
+				boolean conf = w.readByte() != 0;
+				int sentenceCount = w.readVarInt();
+				document.posTags = new PoSTag[sentenceCount][];
+				if (conf)
+					document.posTagsConf = new double[sentenceCount][];
+				for (int i = 0; i < sentenceCount; i++) {
+					int tokenCount = w.readVarInt() - 1;
+					if (tokenCount < 0)
+						continue;
+					document.posTags[i] = new PoSTag[tokenCount];
+					if (conf)
+						document.posTagsConf[i] = new double[tokenCount];
+					for (int j = 0; j < tokenCount; j++) {
+						String tag = readInterned(w);
+						document.posTags[i][j] = (tag == null) ? null : PoSTag.valueOf(tag);
+						if (conf)
+							document.posTagsConf[i][j] = w.readDouble();
+					}
+				}
+			} else if (sectionName.equals(AnnotationTypeNLP.DEPENDENCY_PARSE.getType())) {
+				boolean conf = w.readByte() != 0;
+				int sentenceCount = w.readVarInt();
+				document.dependencyParses = new DependencyParse[sentenceCount];
+				if (conf)
+					document.dependencyParsesConf = new double[sentenceCount];
+				for (int i = 0; i < sentenceCount; i++) {
+					int dependencyCount = w.readVarInt() - 1;
+					if (dependencyCount >= 0)
+						document.dependencyParses[i] = readDependencyParse(w, document, i, dependencyCount);
+					if (conf)
+						document.dependencyParsesConf[i] = w.readDouble();
+				}
+			} else if (sectionName.equals(AnnotationTypeNLP.CONSTITUENCY_PARSE.getType())) {
+				boolean conf = w.readByte() != 0;
+				int sentenceCount = w.readVarInt();
+				document.constituencyParses = new ConstituencyParse[sentenceCount];
+				if (conf)
+					document.constituencyParsesConf = new double[sentenceCount];
+				for (int i = 0; i < sentenceCount; i++) {
+					int marker = w.readVarInt();
+					if (marker == 1) {
+						document.constituencyParses[i] = new ConstituencyParse(document, i);
+					} else if (marker == 2) {
+						ConstituencyParse parse = new ConstituencyParse(document, i);
+						document.constituencyParses[i] = new ConstituencyParse(document, i, readConstituent(w, parse, document, i));
+					}
+					if (conf)
+						document.constituencyParsesConf[i] = w.readDouble();
+				}
+			} else if (sectionName.equals(AnnotationTypeNLP.NER.getType())) {
+				int sentenceCount = w.readVarInt();
+				document.ner = new HashMap<Integer, List<Triple<TokenSpan, String, Double>>>();
+				for (int i = 0; i < sentenceCount; i++) {
+					int sentenceIndex = w.readVarInt();
+					int spanCount = w.readVarInt();
+					List<Triple<TokenSpan, String, Double>> spans = new ArrayList<Triple<TokenSpan, String, Double>>(spanCount);
+					for (int j = 0; j < spanCount; j++) {
+						TokenSpan span = readSpan(w, document, sentenceIndex);
+						String type = readInterned(w);
+						spans.add(new Triple<TokenSpan, String, Double>(span, type, readConfidence(w)));
+					}
+					document.ner.put(sentenceIndex, spans);
+				}
+			} else if (sectionName.equals(AnnotationTypeNLP.COREF.getType())) {
+				int sentenceCount = w.readVarInt();
+				document.coref = new HashMap<Integer, List<Triple<TokenSpan, TokenSpanCluster, Double>>>();
+				for (int i = 0; i < sentenceCount; i++) {
+					int sentenceIndex = w.readVarInt();
+					int spanCount = w.readVarInt();
+					List<Triple<TokenSpan, TokenSpanCluster, Double>> spans = new ArrayList<Triple<TokenSpan, TokenSpanCluster, Double>>(spanCount);
+					for (int j = 0; j < spanCount; j++) {
+						TokenSpan span = readSpan(w, document, sentenceIndex);
+						TokenSpanCluster cluster = (TokenSpanCluster)readValue(w, document, AnnotationTypeNLP.COREF, sentenceIndex);
+						spans.add(new Triple<TokenSpan, TokenSpanCluster, Double>(span, cluster, readConfidence(w)));
+					}
+					document.coref.put(sentenceIndex, spans);
+				}
+			} else {
+				AnnotationTypeNLP<?> annotationType = dataTools.getAnnotationTypeNLP(sectionName);
+				if (annotationType == null) {
+					dataTools.getOutputWriter().debugWriteln("WARNING: Skipping unknown annotation type '" + sectionName + "' in binary document file " + this.path);
+					continue;
+				}
+
+				if (annotationType.getTarget() == AnnotationTypeNLP.Target.DOCUMENT) {
+					if (document.otherDocumentAnnotations == null)
+						document.otherDocumentAnnotations = new HashMap<AnnotationTypeNLP<?>, Pair<?, Double>>();
+					Object value = readValue(w, document, annotationType, -1);
+					document.otherDocumentAnnotations.put(annotationType, new Pair<Object, Double>(value, readConfidence(w)));
+				} else if (annotationType.getTarget() == AnnotationTypeNLP.Target.SENTENCE) {
+					if (document.otherSentenceAnnotations == null)
+						document.otherSentenceAnnotations = new HashMap<AnnotationTypeNLP<?>, Map<Integer, ?>>();
+					Map<Integer, Pair<Object, Double>> sentenceMap = new HashMap<Integer, Pair<Object, Double>>();
+					int sentenceCount = w.readVarInt();
+					for (int i = 0; i < sentenceCount; i++) {
+						int sentenceIndex = w.readVarInt();
+						Object value = readValue(w, document, annotationType, sentenceIndex);
+						sentenceMap.put(sentenceIndex, new Pair<Object, Double>(value, readConfidence(w)));
+					}
+					document.otherSentenceAnnotations.put(annotationType, sentenceMap);
+				} else if (annotationType.getTarget() == AnnotationTypeNLP.Target.TOKEN_SPAN) {
+					if (document.otherTokenSpanAnnotations == null)
+						document.otherTokenSpanAnnotations = new HashMap<AnnotationTypeNLP<?>, Map<Integer, List<Triple<TokenSpan, ?, Double>>>>();
+					Map<Integer, List<Triple<TokenSpan, ?, Double>>> sentenceMap = new HashMap<Integer, List<Triple<TokenSpan, ?, Double>>>();
+					int sentenceCount = w.readVarInt();
+					for (int i = 0; i < sentenceCount; i++) {
+						int sentenceIndex = w.readVarInt();
+						int spanCount = w.readVarInt();
+						List<Triple<TokenSpan, ?, Double>> spans = new ArrayList<Triple<TokenSpan, ?, Double>>(spanCount);
+						for (int j = 0; j < spanCount; j++) {
+							TokenSpan span = readSpan(w, document, sentenceIndex);
+							Object value = readValue(w, document, annotationType, sentenceIndex);
+							spans.add(new Triple<TokenSpan, Object, Double>(span, value, readConfidence(w)));
+						}
+						sentenceMap.put(sentenceIndex, spans);
+					}
+					document.otherTokenSpanAnnotations.put(annotationType, sentenceMap);
+				} else if (annotationType.getTarget() == AnnotationTypeNLP.Target.TOKEN) {
+					if (document.otherTokenAnnotations == null)
+						document.otherTokenAnnotations = new HashMap<AnnotationTypeNLP<?>, Pair<?, Double>[][]>();
+					int sentenceCount = w.readVarInt();
+					Pair<?, Double>[][] annotations = (Pair<?, Double>[][])new Pair[sentenceCount][];
+					for (int i = 0; i < sentenceCount; i++) {
+						int tokenCount = w.readVarInt() - 1;
+						if (tokenCount < 0)
+							continue;
+						annotations[i] = (Pair<?, Double>[])new Pair[tokenCount];
+						for (int j = 0; j < tokenCount; j++) {
+							Object value = readValue(w, document, annotationType, i);
+							annotations[i][j] = new Pair<Object, Double>(value, readConfidence(w));
+						}
+					}
+					document.otherTokenAnnotations.put(annotationType, annotations);
+				}
+			}
+		}
+
+		document.compactIfEnabled();
+		return document;
+	}
+
+	private DependencyParse readDependencyParse(BinaryReader r, DocumentNLPInMemory document, int sentenceIndex, int dependencyCount) {
+		DependencyParse parse = new DependencyParse(document, sentenceIndex);
+		if (dependencyCount == 0)
+			return parse;
+
+		// Builds nodes the same way as DependencyParse.fromString
+		Map<Integer, Pair<List<DependencyParse.Dependency>, List<DependencyParse.Dependency>>> nodesToDeps = new HashMap<Integer, Pair<List<DependencyParse.Dependency>, List<DependencyParse.Dependency>>>();
+		int maxIndex = -1;
+		for (int i = 0; i < dependencyCount; i++) {
+			int govIndex = r.readVarInt() - 1;
+			int depIndex = r.readVarInt();
+			DependencyParse.Dependency dependency = parse.new Dependency(govIndex, depIndex, readInterned(r));
+
+			maxIndex = Math.max(depIndex, Math.max(govIndex, maxIndex));
+
+			if (!nodesToDeps.containsKey(govIndex))
+				nodesToDeps.put(govIndex, new Pair<List<DependencyParse.Dependency>, List<DependencyParse.Dependency>>(new ArrayList<DependencyParse.Dependency>(), new ArrayList<DependencyParse.Dependency>()));
+			if (!nodesToDeps.containsKey(depIndex))
+				nodesToDeps.put(depIndex, new Pair<List<DependencyParse.Dependency>, List<DependencyParse.Dependency>>(new ArrayList<DependencyParse.Dependency>(), new ArrayList<DependencyParse.Dependency>()));
+
+			nodesToDeps.get(govIndex).getSecond().add(dependency);
+			nodesToDeps.get(depIndex).getFirst().add(dependency);
+		}
+
+		DependencyParse.Node[] tokenNodes = new DependencyParse.Node[maxIndex + 1];
+		for (int i = 0; i < tokenNodes.length; i++)
+			if (nodesToDeps.containsKey(i))
+				tokenNodes[i] = parse.new Node(i, nodesToDeps.get(i).getFirst().toArray(new DependencyParse.Dependency[0]), nodesToDeps.get(i).getSecond().toArray(new DependencyParse.Dependency[0]));
+
+		if (!nodesToDeps.containsKey(-1))
+			throw new IllegalArgumentException("Failed to get root for " + document.getName() + " " + sentenceIndex);
+
+		DependencyParse.Node root = parse.new Node(-1, new DependencyParse.Dependency[0], nodesToDeps.get(-1).getSecond().toArray(new DependencyParse.Dependency[0]));
+		return new DependencyParse(document, sentenceIndex, root, tokenNodes);
+	}
+
+	private ConstituencyParse.Constituent readConstituent(BinaryReader r, ConstituencyParse parse, DocumentNLPInMemory document, int sentenceIndex) {
+		String label = readInterned(r);
+		int header = r.readVarInt();
+		int childCount = header >>> 1;
+		if ((header & 1) != 0)
+			return parse.new Constituent(label, readSpan(r, document, sentenceIndex));
+
+		ConstituencyParse.Constituent[] children = new ConstituencyParse.Constituent[childCount];
+		for (int i = 0; i < childCount; i++)
+			children[i] = readConstituent(r, parse, document, sentenceIndex);
+		return parse.new Constituent(label, children);
+	}
+
+	private void setAnnotatorName(DocumentNLPInMemory document, DataTools dataTools, String annotationType, String annotatorName) {
+		if (annotationType.equals(AnnotationTypeNLP.ORIGINAL_TEXT.getType()))
+			document.originalTextAnnotatorName = annotatorName;
+		else if (annotationType.equals(AnnotationTypeNLP.LANGUAGE.getType()))
+			document.languageAnnotatorName = annotatorName;
+		else if (annotationType.equals(AnnotationTypeNLP.TOKEN.getType()))
+			document.tokenAnnotatorName = annotatorName;
+		else if (annotationType.equals(AnnotationTypeNLP.POS.getType()))
+			document.posAnnotatorName = annotatorName;
+		else if (annotationType.equals(AnnotationTypeNLP.DEPENDENCY_PARSE.getType()))
+			document.dependencyParseAnnotatorName = annotatorName;
+		else if (annotationType.equals(AnnotationTypeNLP.CONSTITUENCY_PARSE.getType()))
+			document.constituencyParseAnnotatorName = annotatorName;
+		else if (annotationType.equals(AnnotationTypeNLP.NER.getType()))
+			document.nerAnnotatorName = annotatorName;
+		else if (annotationType.equals(AnnotationTypeNLP.COREF.getType()))
+			document.corefAnnotatorName = annotatorName;
+		else {
+			AnnotationTypeNLP<?> type = dataTools.getAnnotationTypeNLP(annotationType);
+			if (type == null)
+				return;
+			if (document.otherAnnotatorNames == null)
+				document.otherAnnotatorNames = new HashMap<AnnotationTypeNLP<?>, String>();
+			document.otherAnnotatorNames.put(type, annotatorName);
+		}
+	}
+}
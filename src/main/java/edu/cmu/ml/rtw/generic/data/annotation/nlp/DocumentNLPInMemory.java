@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.joda.time.DateTime;
 import org.json.JSONArray;
@@ -72,6 +73,13 @@ public class DocumentNLPInMemory extends DocumentNLP {
 	protected String originalText;
 	protected Token[][] tokens;
 	protected PoSTag[][] posTags;
+	// Replaces tokens and posTags when the document is compact
+	protected CompactTokens compactTokens;
+	
+	// Text reconstructed from the tokens, memoized by getText and getSentence
+	private volatile String text;
+	private volatile String[] sentenceTexts;
+	private volatile SentenceView[] sentenceViews;
 	protected DependencyParse[] dependencyParses; 
 	protected ConstituencyParse[] constituencyParses;
 	protected Map<Integer, List<Triple<TokenSpan, String, Double>>> ner;
@@ -82,20 +90,28 @@ public class DocumentNLPInMemory extends DocumentNLP {
 	protected Map<AnnotationTypeNLP<?>, Map<Integer, List<Triple<TokenSpan, ?, Double>>>> otherTokenSpanAnnotations;
 	protected Map<AnnotationTypeNLP<?>, Pair<?, Double>[][]> otherTokenAnnotations;
 	
+	// Per-sentence span indices over the token span annotations, built lazily on first query
+	private ConcurrentHashMap<Integer, TokenSpanIndex<Triple<TokenSpan, String, Double>>> nerIndices = new ConcurrentHashMap<Integer, TokenSpanIndex<Triple<TokenSpan, String, Double>>>();
+	private ConcurrentHashMap<Integer, TokenSpanIndex<Triple<TokenSpan, TokenSpanCluster, Double>>> corefIndices = new ConcurrentHashMap<Integer, TokenSpanIndex<Triple<TokenSpan, TokenSpanCluster, Double>>>();
+	private ConcurrentHashMap<AnnotationTypeNLP<?>, ConcurrentHashMap<Integer, TokenSpanIndex<Triple<TokenSpan, ?, Double>>>> otherTokenSpanIndices = new ConcurrentHashMap<AnnotationTypeNLP<?>, ConcurrentHashMap<Integer, TokenSpanIndex<Triple<TokenSpan, ?, Double>>>>();
+	
 	public DocumentNLPInMemory(DataTools dataTools) {
 		super(dataTools);
 	}
 
 	public DocumentNLPInMemory(DataTools dataTools, JSONObject json) {
 		super(dataTools, json);
+		compactIfEnabled();
 	}
 	
 	public DocumentNLPInMemory(DataTools dataTools, DocumentAnnotation documentAnnotation) {
 		super(dataTools, documentAnnotation);
+		compactIfEnabled();
 	}
 	
 	public DocumentNLPInMemory(DataTools dataTools, String jsonPath) {
 		super(dataTools, jsonPath);
+		compactIfEnabled();
 	}
 
 	public DocumentNLPInMemory(DataTools dataTools, DocumentAnnotation documentAnnotation, PipelineNLP pipeline) {
@@ -109,6 +125,7 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			return;
 		
 		runThroughPipeline(pipeline, skipAnnotators);
+		compactIfEnabled();
 	}
 
 	public DocumentNLPInMemory(DataTools dataTools, String name, String text, Language language, PipelineNLP pipeline) {
@@ -131,10 +148,71 @@ public class DocumentNLPInMemory extends DocumentNLP {
 		runThroughPipeline(pipeline, skipAnnotators);
 		
 		this.originalText = null;
+		compactIfEnabled();
+	}
+	
+	/**
+	 * Used by DocumentNLPBinaryFile to name documents that it
+	 * decodes
+	 */
+	void setName(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Moves the tokens and PoS tags of the document into flat
+	 * primitive arrays with a string table for the token strings
+	 * (see CompactTokens).  This uses several times less memory than
+	 * keeping Token objects for large corpora, but each call to getToken
+	 * constructs a new Token.  Callers that only need the token strings
+	 * should use getTokenStr instead.
+	 * 
+	 * This is not thread-safe: the accessors read the token fields without
+	 * locking, so a document must only be compacted before it is shared
+	 * with other threads (DataTools.setCompactDocuments compacts documents
+	 * as they are constructed).
+	 * 
+	 * @return true if the document is compact
+	 */
+	boolean compact() {
+		if (this.compactTokens != null)
+			return true;
+		if (this.tokens == null)
+			return false;
+		
+		this.compactTokens = new CompactTokens(this.tokens, this.posTags);
+		this.tokens = null;
+		this.posTags = null;
+		return true;
+	}
+	
+	public boolean isCompact() {
+		return this.compactTokens != null;
+	}
+	
+	void compactIfEnabled() {
+		if (this.dataTools != null && this.dataTools.getCompactDocuments())
+			compact();
+	}
+	
+	/**
+	 * Moves the tokens and PoS tags of a compact document back into
+	 * arrays so that annotators can add to them.  Like compact, this
+	 * is only called before the document is shared.
+	 */
+	private void expand() {
+		if (this.compactTokens == null)
+			return;
+		
+		this.tokens = this.compactTokens.toTokens(this);
+		this.posTags = this.compactTokens.toPoSTags();
+		this.compactTokens = null;
 	}
 	
 	@SuppressWarnings("unchecked")
 	private void runThroughPipeline(PipelineNLP pipeline, Collection<AnnotationTypeNLP<?>> skipAnnotators) {
+		expand();
+		
 		if (!pipeline.setDocument(this))
 			throw new IllegalArgumentException();
 
@@ -151,6 +229,7 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			if (annotationType.equals(AnnotationTypeNLP.TOKEN)) {
 				this.tokenAnnotatorName = pipeline.getAnnotatorName(AnnotationTypeNLP.TOKEN);
 				Pair<Token, Double>[][] tokens = pipeline.annotateTokens(AnnotationTypeNLP.TOKEN);
+				clearText();
 				boolean tokenConf = pipeline.annotatorMeasuresConfidence(AnnotationTypeNLP.TOKEN);
 				if (tokenConf) {
 					this.tokensConf = new double[tokens.length][];
@@ -189,11 +268,11 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			} else if (annotationType.equals(AnnotationTypeNLP.CONSTITUENCY_PARSE)) {			
 				this.constituencyParseAnnotatorName = pipeline.getAnnotatorName(AnnotationTypeNLP.CONSTITUENCY_PARSE);
 				Map<Integer, Pair<ConstituencyParse, Double>> parses = pipeline.annotateSentences(AnnotationTypeNLP.CONSTITUENCY_PARSE);
-				this.constituencyParses = new ConstituencyParse[this.tokens.length];
+				this.constituencyParses = new ConstituencyParse[getSentenceCount()];
 				
 				boolean consConf = pipeline.annotatorMeasuresConfidence(AnnotationTypeNLP.CONSTITUENCY_PARSE);
 				if (consConf)
-					this.constituencyParsesConf = new double[this.tokens.length];
+					this.constituencyParsesConf = new double[getSentenceCount()];
 				
 				for (Entry<Integer, Pair<ConstituencyParse, Double>> parse : parses.entrySet()) {
 					this.constituencyParses[parse.getKey()] = parse.getValue().getFirst();
@@ -206,9 +285,9 @@ public class DocumentNLPInMemory extends DocumentNLP {
 				
 				boolean depConf = pipeline.annotatorMeasuresConfidence(AnnotationTypeNLP.DEPENDENCY_PARSE);
 				if (depConf)
-					this.dependencyParsesConf = new double[this.tokens.length];
+					this.dependencyParsesConf = new double[getSentenceCount()];
 				
-				this.dependencyParses = new DependencyParse[this.tokens.length];
+				this.dependencyParses = new DependencyParse[getSentenceCount()];
 				for (Entry<Integer, Pair<DependencyParse, Double>> parse : parses.entrySet()) {
 					this.dependencyParses[parse.getKey()] = parse.getValue().getFirst();
 					if (depConf) 
@@ -266,6 +345,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 					this.otherTokenAnnotations.put(annotationType, pipeline.annotateTokens(annotationType));
 				}
 			}
+			
+			clearTokenSpanIndices();
 		}
 	}
 	
@@ -308,7 +389,7 @@ public class DocumentNLPInMemory extends DocumentNLP {
 					json.put(entry.getKey().getType(), entry.getKey().serialize(entry.getValue().getFirst()));
 			}
 			
-			if (this.tokens == null)
+			if (!hasTokens())
 				return json;
 				
 			int sentenceCount = getSentenceCount();
@@ -321,13 +402,12 @@ public class DocumentNLPInMemory extends DocumentNLP {
 				JSONArray posTagsJson = new JSONArray();
 				
 				for (int j = 0; j < tokenCount; j++) {
-					Token token = this.tokens[i][j];
-					if (token.getCharSpanEnd() < 0 || token.getCharSpanStart() < 0)
-						tokensJson.put(getToken(i, j).getStr());
+					if (getTokenCharSpanEnd(i, j) < 0 || getTokenCharSpanStart(i, j) < 0)
+						tokensJson.put(getTokenStr(i, j));
 					else
-						tokensJson.put(token.toJSON());
+						tokensJson.put(getToken(i, j).toJSON());
 					
-					if (this.posTags != null) {
+					if (hasPoSTags()) {
 						PoSTag posTag = getPoSTag(i, j);
 						if (posTag != null)
 							posTagsJson.put(posTag.toString());	
@@ -335,7 +415,7 @@ public class DocumentNLPInMemory extends DocumentNLP {
 				}
 				
 				sentenceJson.put("tokens", tokensJson);
-				if (this.posTags != null)
+				if (hasPoSTags())
 					sentenceJson.put("posTags", posTagsJson);
 				if (this.dependencyParses != null)
 					sentenceJson.put("dependencyParse", getDependencyParse(i).toString());
@@ -496,6 +576,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 				return true;
 			
 			JSONArray sentences = json.getJSONArray("sentences");
+			clearText();
+			this.compactTokens = null;
 			this.tokens = new Token[sentences.length()][];
 			this.posTags = new PoSTag[sentences.length()][];
 			this.dependencyParses = new DependencyParse[sentences.length()];
@@ -639,6 +721,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			e.printStackTrace();
 		}
 		
+		clearTokenSpanIndices();
+		
 		return true;
 	}
 
@@ -655,10 +739,10 @@ public class DocumentNLPInMemory extends DocumentNLP {
 	private TokenSpan getTokenSpanFromCharSpan(int sentenceIndex, int charSpanStart, int charSpanEnd) {
 		int startTokenIndex = -1;
 		int endTokenIndex = -1;
-		for (int i = 0; i < this.tokens[sentenceIndex].length; i++) {
-			if (this.tokens[sentenceIndex][i].getCharSpanStart() == charSpanStart)
+		for (int i = 0; i < getSentenceTokenCount(sentenceIndex); i++) {
+			if (getTokenCharSpanStart(sentenceIndex, i) == charSpanStart)
 				startTokenIndex = i;
-			if (this.tokens[sentenceIndex][i].getCharSpanEnd() == charSpanEnd) {
+			if (getTokenCharSpanEnd(sentenceIndex, i) == charSpanEnd) {
 				endTokenIndex = i + 1;
 				break;
 			}
@@ -754,6 +838,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			return true;
 		
 		TreeMap<Integer, Annotation> sentenceAnnotations = orderedAnnotations.get(AnnotationTypeNLP.SENTENCE);
+		clearText();
+		this.compactTokens = null;
 		this.tokens = new Token[sentenceAnnotations.size()][];
 		this.tokenAnnotatorName = orderedAnnotations.get(AnnotationTypeNLP.TOKEN).firstEntry().getValue().getAnnotator();
 		boolean tokenConf = orderedAnnotations.get(AnnotationTypeNLP.TOKEN).firstEntry().getValue().getConfidence() != null;
@@ -914,6 +1000,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			sentenceIndex++;
 		}
 		
+		clearTokenSpanIndices();
+		
 		return true;
 	}
 	
@@ -947,7 +1035,7 @@ public class DocumentNLPInMemory extends DocumentNLP {
 		DateTime annotationTime = DateTime.now();
 		List<Annotation> annotations = new ArrayList<Annotation>();
 		
-		int lastCharIndex = (this.tokens != null && this.tokens.length > 0) ? this.tokens[this.tokens.length-1][this.tokens[this.tokens.length - 1].length - 1].getCharSpanEnd() : 0;
+		int lastCharIndex = (hasTokens() && getSentenceCount() > 0) ? getTokenCharSpanEnd(getSentenceCount()-1, getSentenceTokenCount(getSentenceCount() - 1) - 1) : 0;
 		if (this.originalText != null && annotationTypes.contains(AnnotationTypeNLP.ORIGINAL_TEXT)) {
 			annotations.add(makeMicroAnnotation(0, 
 												lastCharIndex, 
@@ -990,37 +1078,37 @@ public class DocumentNLPInMemory extends DocumentNLP {
 		boolean outputNer = annotationTypes.contains(AnnotationTypeNLP.NER);
 		boolean outputCoref = annotationTypes.contains(AnnotationTypeNLP.COREF);
 		
-		if (this.tokens == null)
+		if (!hasTokens())
 			return new DocumentAnnotation(this.name, annotations);
 		
-		for (int i = 0; i < this.tokens.length; i++) {
+		for (int i = 0; i < getSentenceCount(); i++) {
 			if (outputTokens || outputPoS) {
-				for (int j = 0; j < this.tokens[i].length; j++) {
+				for (int j = 0; j < getSentenceTokenCount(i); j++) {
 					if (outputTokens) {
-						annotations.add(makeMicroAnnotation(this.tokens[i][j].getCharSpanStart(), 
-														    this.tokens[i][j].getCharSpanEnd(), 
+						annotations.add(makeMicroAnnotation(getTokenCharSpanStart(i, j), 
+														    getTokenCharSpanEnd(i, j), 
 														    AnnotationTypeNLP.TOKEN.getType(), 
 														    this.tokenAnnotatorName,  
 														    annotationTime,
-														    this.tokens[i][j].getStr(),
+														    getTokenStr(i, j),
 														    (this.tokensConf != null) ? this.tokensConf[i][j] : null));
 					}
 					
-					if (outputPoS && this.posTags != null) {
-							annotations.add(makeMicroAnnotation(this.tokens[i][j].getCharSpanStart(), 
-																this.tokens[i][j].getCharSpanEnd(), 
+					if (outputPoS && hasPoSTags()) {
+							annotations.add(makeMicroAnnotation(getTokenCharSpanStart(i, j), 
+																getTokenCharSpanEnd(i, j), 
 																AnnotationTypeNLP.POS.getType(), 
 																this.posAnnotatorName, 
 																annotationTime,
-																AnnotationTypeNLP.POS.serialize(this.posTags[i][j]),
+																AnnotationTypeNLP.POS.serialize(getPoSTag(i, j)),
 																this.posTagsConf != null ? this.posTagsConf[i][j] : null));
 					}
 				}
 			}
 			
 			if (outputSentence) {
-				annotations.add(makeMicroAnnotation(this.tokens[i][0].getCharSpanStart(), 
-													this.tokens[i][this.tokens[i].length - 1].getCharSpanEnd(), 
+				annotations.add(makeMicroAnnotation(getTokenCharSpanStart(i, 0), 
+													getTokenCharSpanEnd(i, getSentenceTokenCount(i) - 1), 
 													AnnotationTypeNLP.SENTENCE.getType(), 
 													this.tokenAnnotatorName, 
 													annotationTime,
@@ -1029,8 +1117,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			}
 			
 			if (this.dependencyParses != null && outputDep) {
-				annotations.add(makeMicroAnnotation(this.tokens[i][0].getCharSpanStart(), 
-													this.tokens[i][this.tokens[i].length - 1].getCharSpanEnd(), 
+				annotations.add(makeMicroAnnotation(getTokenCharSpanStart(i, 0), 
+													getTokenCharSpanEnd(i, getSentenceTokenCount(i) - 1), 
 													AnnotationTypeNLP.DEPENDENCY_PARSE.getType(), 
 													this.dependencyParseAnnotatorName, 
 													annotationTime,
@@ -1039,8 +1127,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			}
 			
 			if (this.constituencyParses != null && outputCon) {
-				annotations.add(makeMicroAnnotation(this.tokens[i][0].getCharSpanStart(), 
-						this.tokens[i][this.tokens[i].length - 1].getCharSpanEnd(), 
+				annotations.add(makeMicroAnnotation(getTokenCharSpanStart(i, 0), 
+						getTokenCharSpanEnd(i, getSentenceTokenCount(i) - 1), 
 						AnnotationTypeNLP.CONSTITUENCY_PARSE.getType(), 
 						this.constituencyParseAnnotatorName, 
 						annotationTime,
@@ -1051,8 +1139,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			if (this.ner != null && outputNer && this.ner.containsKey(i)) {
 				List<Triple<TokenSpan, String, Double>> sentenceNer = this.ner.get(i);
 				for (Triple<TokenSpan, String, Double> nerSpan : sentenceNer) {
-					annotations.add(makeMicroAnnotation(this.tokens[i][nerSpan.getFirst().getStartTokenIndex()].getCharSpanStart(), 
-							this.tokens[i][nerSpan.getFirst().getEndTokenIndex()-1].getCharSpanEnd(), 
+					annotations.add(makeMicroAnnotation(getTokenCharSpanStart(i, nerSpan.getFirst().getStartTokenIndex()), 
+							getTokenCharSpanEnd(i, nerSpan.getFirst().getEndTokenIndex()-1), 
 							AnnotationTypeNLP.NER.getType(), 
 							this.nerAnnotatorName, 
 							annotationTime,
@@ -1064,8 +1152,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			if (this.coref != null && outputCoref && this.coref.containsKey(i)) {
 				List<Triple<TokenSpan, TokenSpanCluster, Double>> sentenceCoref = this.coref.get(i);
 				for (Triple<TokenSpan, TokenSpanCluster, Double> corefSpan : sentenceCoref) {
-					annotations.add(makeMicroAnnotation(this.tokens[i][corefSpan.getFirst().getStartTokenIndex()].getCharSpanStart(), 
-							this.tokens[i][corefSpan.getFirst().getEndTokenIndex()-1].getCharSpanEnd(), 
+					annotations.add(makeMicroAnnotation(getTokenCharSpanStart(i, corefSpan.getFirst().getStartTokenIndex()), 
+							getTokenCharSpanEnd(i, corefSpan.getFirst().getEndTokenIndex()-1), 
 							AnnotationTypeNLP.COREF.getType(), 
 							this.corefAnnotatorName, 
 							annotationTime,
@@ -1082,8 +1170,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 				
 				for (Entry<Integer, ?> sentenceEntry : entry.getValue().entrySet()) {
 					Pair pair = (Pair)sentenceEntry.getValue();
-					annotations.add(makeMicroAnnotation(this.tokens[sentenceEntry.getKey()][0].getCharSpanStart(), 
-							this.tokens[sentenceEntry.getKey()][this.tokens[sentenceEntry.getKey()].length - 1].getCharSpanEnd(), 
+					annotations.add(makeMicroAnnotation(getTokenCharSpanStart(sentenceEntry.getKey(), 0), 
+							getTokenCharSpanEnd(sentenceEntry.getKey(), getSentenceTokenCount(sentenceEntry.getKey()) - 1), 
 							entry.getKey().getType(), 
 							(this.otherAnnotatorNames != null) ? this.otherAnnotatorNames.get(entry.getKey()) : "", 
 							annotationTime,
@@ -1101,8 +1189,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 				
 				for (Entry<Integer, List<Triple<TokenSpan, ?, Double>>> sentenceEntry : entry.getValue().entrySet()) {
 					for (Triple<TokenSpan, ?, Double> span : sentenceEntry.getValue()) {
-						annotations.add(makeMicroAnnotation(this.tokens[sentenceEntry.getKey()][span.getFirst().getStartTokenIndex()].getCharSpanStart(), 
-								this.tokens[sentenceEntry.getKey()][span.getFirst().getEndTokenIndex()-1].getCharSpanEnd(), 
+						annotations.add(makeMicroAnnotation(getTokenCharSpanStart(sentenceEntry.getKey(), span.getFirst().getStartTokenIndex()), 
+								getTokenCharSpanEnd(sentenceEntry.getKey(), span.getFirst().getEndTokenIndex()-1), 
 								entry.getKey().getType(), 
 								(this.otherAnnotatorNames != null) ? this.otherAnnotatorNames.get(entry.getKey()) : "", 
 								annotationTime,
@@ -1121,8 +1209,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
 				Pair<?, Double>[][] anno = entry.getValue();
 				for (int i = 0; i < anno.length; i++) {
 					for (int j = 0; j < anno[i].length; j++) {
-						annotations.add(makeMicroAnnotation(this.tokens[i][j].getCharSpanStart(), 
-								this.tokens[i][j].getCharSpanEnd(), 
+						annotations.add(makeMicroAnnotation(getTokenCharSpanStart(i, j), 
+								getTokenCharSpanEnd(i, j), 
 								entry.getKey().getType(), 
 								(this.otherAnnotatorNames != null) ? this.otherAnnotatorNames.get(entry.getKey()) : "", 
 								annotationTime,
@@ -1172,16 +1260,16 @@ public class DocumentNLPInMemory extends DocumentNLP {
     boolean outputNer = annotationTypes == null || annotationTypes.contains(AnnotationTypeNLP.NER);
     boolean outputCoref = annotationTypes == null || annotationTypes.contains(AnnotationTypeNLP.COREF);
 
-    if (this.tokens == null) {
+    if (!hasTokens()) {
       endHtml(htmlBuilder);
       return htmlBuilder.toString();
     }
 
-    for (int i = 0; i < this.tokens.length; i++) {
-      if (outputPoS && this.posTags != null) {
-        for (int j = 0; j < this.tokens[i].length; j++) {
+    for (int i = 0; i < getSentenceCount(); i++) {
+      if (outputPoS && hasPoSTags()) {
+        for (int j = 0; j < getSentenceTokenCount(i); j++) {
           htmlBuilder.append("<div class=\"annotation\">\n");
-          htmlBuilder.append(AnnotationTypeNLP.POS.toHtml(this.posTags[i][j]));
+          htmlBuilder.append(AnnotationTypeNLP.POS.toHtml(getPoSTag(i, j)));
           htmlBuilder.append("</div>\n");
         }
       }
@@ -1227,8 +1315,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
           Pair pair = (Pair)sentenceEntry.getValue();
           System.out.println("Sentence annotation: " + entry.getKey().serialize(pair.getFirst()));
           int sentenceId = sentenceEntry.getKey();
-          int sentenceStart = tokens[sentenceId][0].getCharSpanStart();
-          int sentenceEnd = tokens[sentenceId][tokens[sentenceId].length - 1].getCharSpanEnd();
+          int sentenceStart = getTokenCharSpanStart(sentenceId, 0);
+          int sentenceEnd = getTokenCharSpanEnd(sentenceId, getSentenceTokenCount(sentenceId) - 1);
           htmlBuilder.append("<div class=\"annotation\"");
           htmlBuilder.append(" spanStart=\"" + sentenceStart + "\"");
           htmlBuilder.append(" spanEnd=\"" + sentenceEnd + "\"");
@@ -1251,8 +1339,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
           for (Triple<TokenSpan, ?, Double> span : sentenceEntry.getValue()) {
             System.out.println("Token span annotation: " + entry.getKey().serialize(span.getSecond()));
             int sentenceId = sentenceEntry.getKey();
-            int spanStart = tokens[sentenceId][span.getFirst().getStartTokenIndex()].getCharSpanStart();
-            int spanEnd = tokens[sentenceId][span.getFirst().getEndTokenIndex()-1].getCharSpanEnd(); 
+            int spanStart = getTokenCharSpanStart(sentenceId, span.getFirst().getStartTokenIndex());
+            int spanEnd = getTokenCharSpanEnd(sentenceId, span.getFirst().getEndTokenIndex()-1); 
             htmlBuilder.append("<div class=\"annotation\"");
             htmlBuilder.append(" spanStart=\"" + spanStart + "\"");
             htmlBuilder.append(" spanEnd=\"" + spanEnd + "\"");
@@ -1275,8 +1363,8 @@ public class DocumentNLPInMemory extends DocumentNLP {
         for (int i = 0; i < anno.length; i++) {
           for (int j = 0; j < anno[i].length; j++) {
             System.out.println("Token annotation: " + entry.getKey().serialize(anno[i][j].getFirst()));
-            int spanStart = tokens[i][j].getCharSpanStart();
-            int spanEnd = tokens[i][j].getCharSpanEnd();
+            int spanStart = getTokenCharSpanStart(i, j);
+            int spanEnd = getTokenCharSpanEnd(i, j);
             htmlBuilder.append("<div class=\"annotation\"");
             htmlBuilder.append(" spanStart=\"" + spanStart + "\"");
             htmlBuilder.append(" spanEnd=\"" + spanEnd + "\"");
@@ -1334,11 +1422,15 @@ public class DocumentNLPInMemory extends DocumentNLP {
 
 	@Override
 	public int getSentenceCount() {
+		if (this.compactTokens != null)
+			return this.compactTokens.getSentenceCount();
 		return this.tokens.length;
 	}
 	
 	@Override
 	public int getSentenceTokenCount(int sentenceIndex) {
+		if (this.compactTokens != null)
+			return this.compactTokens.getSentenceTokenCount(sentenceIndex);
 		return this.tokens[sentenceIndex].length;
 	}
 	
@@ -1349,32 +1441,132 @@ public class DocumentNLPInMemory extends DocumentNLP {
 	
 	@Override
 	public String getText() {
-		StringBuilder text = new StringBuilder();
+		String text = this.text;
+		if (text != null)
+			return text;
+		
+		StringBuilder textBuilder = new StringBuilder();
 		for (int i = 0; i < getSentenceCount(); i++)
-			text = text.append(getSentence(i)).append(" ");
-		return text.toString().trim();
+			textBuilder = textBuilder.append(getSentence(i)).append(" ");
+		text = textBuilder.toString().trim();
+		this.text = text;
+		return text;
 	}
 	
 	@Override
 	public String getSentence(int sentenceIndex) {
+		String[] sentenceTexts = this.sentenceTexts;
+		if (sentenceTexts == null) {
+			sentenceTexts = new String[getSentenceCount()];
+			this.sentenceTexts = sentenceTexts;
+		} else if (sentenceTexts[sentenceIndex] != null) {
+			return sentenceTexts[sentenceIndex];
+		}
+		
 		StringBuilder sentenceStr = new StringBuilder();
 		
-		for (int i = 0; i < this.tokens[sentenceIndex].length; i++) {
-			sentenceStr = sentenceStr.append(this.tokens[sentenceIndex][i].getStr()).append(" ");
+		for (int i = 0; i < getSentenceTokenCount(sentenceIndex); i++) {
+			sentenceStr = sentenceStr.append(getTokenStr(sentenceIndex, i)).append(" ");
 		}
-		return sentenceStr.toString().trim();
+		
+		String sentence = sentenceStr.toString().trim();
+		sentenceTexts[sentenceIndex] = sentence;
+		return sentence;
+	}
+	
+	/**
+	 * @return a view of the sentence, memoized so that repeated 
+	 * lookups (for example, by TokenSpan.toString) don't recompute
+	 * the token offsets
+	 */
+	@Override
+	public SentenceView getSentenceView(int sentenceIndex) {
+		SentenceView[] sentenceViews = this.sentenceViews;
+		if (sentenceViews == null) {
+			sentenceViews = new SentenceView[getSentenceCount()];
+			this.sentenceViews = sentenceViews;
+		} else if (sentenceViews[sentenceIndex] != null) {
+			return sentenceViews[sentenceIndex];
+		}
+		
+		SentenceView sentenceView = super.getSentenceView(sentenceIndex);
+		sentenceViews[sentenceIndex] = sentenceView;
+		return sentenceView;
+	}
+	
+	@Override
+	protected boolean memoizesSentenceViews() {
+		return true;
+	}
+	
+	/**
+	 * Clears the text memoized by getText, getSentence and 
+	 * getSentenceView.  This must be called whenever the tokens 
+	 * are replaced.
+	 */
+	private void clearText() {
+		this.text = null;
+		this.sentenceTexts = null;
+		this.sentenceViews = null;
+	}
+	
+	/**
+	 * Clears the indices over the NER, coref and other token span 
+	 * annotations.  This must be called whenever those annotations 
+	 * are modified.
+	 */
+	private void clearTokenSpanIndices() {
+		// The indices are null when the super constructor loads the
+		// document, and are initialized empty after that
+		if (this.nerIndices == null)
+			return;
+		this.nerIndices.clear();
+		this.corefIndices.clear();
+		this.otherTokenSpanIndices.clear();
 	}
 	
 	@Override
 	public Token getToken(int sentenceIndex, int tokenIndex) {
 		if (tokenIndex < 0)
-			return new Token(this, "ROOT");
+			return getRootToken();
+		else if (this.compactTokens != null)
+			return this.compactTokens.getToken(this, sentenceIndex, tokenIndex);
 		else 
 			return this.tokens[sentenceIndex][tokenIndex];
 	}
 	
+	@Override
+	public String getTokenStr(int sentenceIndex, int tokenIndex) {
+		if (tokenIndex < 0 || this.compactTokens == null)
+			return getToken(sentenceIndex, tokenIndex).getStr();
+		else
+			return this.compactTokens.getStr(sentenceIndex, tokenIndex);
+	}
+	
+	int getTokenCharSpanStart(int sentenceIndex, int tokenIndex) {
+		if (this.compactTokens != null)
+			return this.compactTokens.getCharSpanStart(sentenceIndex, tokenIndex);
+		return this.tokens[sentenceIndex][tokenIndex].getCharSpanStart();
+	}
+	
+	int getTokenCharSpanEnd(int sentenceIndex, int tokenIndex) {
+		if (this.compactTokens != null)
+			return this.compactTokens.getCharSpanEnd(sentenceIndex, tokenIndex);
+		return this.tokens[sentenceIndex][tokenIndex].getCharSpanEnd();
+	}
+	
+	boolean hasTokens() {
+		return this.tokens != null || this.compactTokens != null;
+	}
+	
+	boolean hasPoSTags() {
+		return this.posTags != null || (this.compactTokens != null && this.compactTokens.hasPoSTags());
+	}
+	
 	@Override
 	public PoSTag getPoSTag(int sentenceIndex, int tokenIndex) {
+		if (this.compactTokens != null)
+			return this.compactTokens.getPoSTag(sentenceIndex, tokenIndex);
 		return this.posTags[sentenceIndex][tokenIndex];
 	}
 	
@@ -1396,34 +1588,20 @@ public class DocumentNLPInMemory extends DocumentNLP {
 	@Override
 	public List<Pair<TokenSpan, String>> getNer(TokenSpan tokenSpan,
 			Relation[] relationToAnnotations) {
-		List<Triple<TokenSpan, String, Double>> sentenceNer = this.ner.get(tokenSpan.getSentenceIndex());
 		List<Pair<TokenSpan, String>> retNer = new ArrayList<Pair<TokenSpan, String>>();
-		if (sentenceNer == null)
-			return retNer;
-		
-		for (Pair<TokenSpan, String> span : sentenceNer) {
-			TokenSpan.Relation relation = tokenSpan.getRelationTo(span.getFirst());
-			if (Arrays.asList(relationToAnnotations).contains(relation))
-				retNer.add(span);
-		}
-		
+		TokenSpanIndex<Triple<TokenSpan, String, Double>> index = getTokenSpanIndex(this.ner, this.nerIndices, tokenSpan.getSentenceIndex());
+		if (index != null)
+			index.collect(tokenSpan, relationToAnnotations, retNer);
 		return retNer;
 	}
 
 	@Override
 	public List<Pair<TokenSpan, TokenSpanCluster>> getCoref(
 			TokenSpan tokenSpan, Relation[] relationToAnnotations) {
-		List<Triple<TokenSpan, TokenSpanCluster, Double>> sentenceCoref = this.coref.get(tokenSpan.getSentenceIndex());
 		List<Pair<TokenSpan, TokenSpanCluster>> retCoref = new ArrayList<Pair<TokenSpan, TokenSpanCluster>>();
-		if (sentenceCoref == null)
-			return retCoref;
-		
-		for (Pair<TokenSpan, TokenSpanCluster> span : sentenceCoref) {
-			TokenSpan.Relation relation = tokenSpan.getRelationTo(span.getFirst());
-			if (Arrays.asList(relationToAnnotations).contains(relation))
-				retCoref.add(span);
-		}
-		
+		TokenSpanIndex<Triple<TokenSpan, TokenSpanCluster, Double>> index = getTokenSpanIndex(this.coref, this.corefIndices, tokenSpan.getSentenceIndex());
+		if (index != null)
+			index.collect(tokenSpan, relationToAnnotations, retCoref);
 		return retCoref;
 	}
 
@@ -1462,9 +1640,9 @@ public class DocumentNLPInMemory extends DocumentNLP {
 				|| ((this.otherTokenAnnotations != null) && this.otherTokenAnnotations.containsKey(annotationType))
 				|| (annotationType.equals(AnnotationTypeNLP.ORIGINAL_TEXT) && this.originalText != null)
 				|| (annotationType.equals(AnnotationTypeNLP.LANGUAGE) && this.language != null)
-				|| (annotationType.equals(AnnotationTypeNLP.TOKEN) && this.tokens != null)
-				|| (annotationType.equals(AnnotationTypeNLP.SENTENCE) && this.tokens != null)
-				|| (annotationType.equals(AnnotationTypeNLP.POS) && this.posTags != null)
+				|| (annotationType.equals(AnnotationTypeNLP.TOKEN) && hasTokens())
+				|| (annotationType.equals(AnnotationTypeNLP.SENTENCE) && hasTokens())
+				|| (annotationType.equals(AnnotationTypeNLP.POS) && hasPoSTags())
 				|| (annotationType.equals(AnnotationTypeNLP.DEPENDENCY_PARSE) && this.dependencyParses != null)
 				|| (annotationType.equals(AnnotationTypeNLP.CONSTITUENCY_PARSE) && this.constituencyParses != null)
 				|| (annotationType.equals(AnnotationTypeNLP.NER) && this.ner != null)
@@ -1484,7 +1662,7 @@ public class DocumentNLPInMemory extends DocumentNLP {
 		if (this.otherTokenAnnotations != null)
 			annotationTypes.addAll(this.otherTokenAnnotations.keySet());
 		
-		if (this.tokens != null) {
+		if (hasTokens()) {
 			annotationTypes.add(AnnotationTypeNLP.TOKEN);
 			annotationTypes.add(AnnotationTypeNLP.SENTENCE);
 		}
@@ -1493,7 +1671,7 @@ public class DocumentNLPInMemory extends DocumentNLP {
 			annotationTypes.add(AnnotationTypeNLP.ORIGINAL_TEXT);
 		if (this.language != null)
 			annotationTypes.add(AnnotationTypeNLP.LANGUAGE);
-		if (this.posTags != null)
+		if (hasPoSTags())
 			annotationTypes.add(AnnotationTypeNLP.POS);
 		if (this.constituencyParses != null)
 			annotationTypes.add(AnnotationTypeNLP.CONSTITUENCY_PARSE);
@@ -1534,10 +1712,12 @@ public class DocumentNLPInMemory extends DocumentNLP {
 		List<Pair<TokenSpan, T>> anno = super.getTokenSpanAnnotations(annotationType, tokenSpan, relationsToAnnotations);
 		if (anno != null)
 			return anno;
-		List<Triple<TokenSpan, ?, Double>> tokenSpanAnnotation = this.otherTokenSpanAnnotations.get(annotationType).get(tokenSpan.getSentenceIndex());
-		if (tokenSpanAnnotation == null)
+		TokenSpanIndex<Triple<TokenSpan, ?, Double>> index = getOtherTokenSpanIndex(annotationType, tokenSpan.getSentenceIndex());
+		if (index == null)
 			return new ArrayList<Pair<TokenSpan, T>>();
-		anno = new ArrayList<Pair<TokenSpan, T>>();
+		List<Triple<TokenSpan, ?, Double>> tokenSpanAnnotation = new ArrayList<Triple<TokenSpan, ?, Double>>();
+		index.collect(tokenSpan, relationsToAnnotations, tokenSpanAnnotation);
+		anno = new ArrayList<Pair<TokenSpan, T>>(tokenSpanAnnotation.size());
 		for (Pair<TokenSpan, ?> span : tokenSpanAnnotation)
 			anno.add(new Pair<TokenSpan, T>(span.getFirst(), annotationType.getAnnotationClass().cast(span.getSecond())));
 		return anno;
@@ -1579,11 +1759,13 @@ public class DocumentNLPInMemory extends DocumentNLP {
 		List<Triple<TokenSpan, T, Double>> anno = super.getTokenSpanAnnotationConfidences(annotationType, tokenSpan, relationsToAnnotations);
 		if (anno != null)
 			return anno;
-		List<Triple<TokenSpan, ?, Double>> tokenSpanAnnotation = this.otherTokenSpanAnnotations.get(annotationType).get(tokenSpan.getSentenceIndex());
-		if (tokenSpanAnnotation == null)
+		TokenSpanIndex<Triple<TokenSpan, ?, Double>> index = getOtherTokenSpanIndex(annotationType, tokenSpan.getSentenceIndex());
+		if (index == null)
 			return new ArrayList<Triple<TokenSpan, T, Double>>(); 
+		List<Triple<TokenSpan, ?, Double>> tokenSpanAnnotation = new ArrayList<Triple<TokenSpan, ?, Double>>();
+		index.collect(tokenSpan, relationsToAnnotations, tokenSpanAnnotation);
 		
-		anno = new ArrayList<Triple<TokenSpan, T, Double>>();
+		anno = new ArrayList<Triple<TokenSpan, T, Double>>(tokenSpanAnnotation.size());
 		for (Triple<TokenSpan, ?, Double> span : tokenSpanAnnotation)
 			anno.add(new Triple<TokenSpan, T, Double>(span.getFirst(), annotationType.getAnnotationClass().cast(span.getSecond()), span.getThird()));
 		return anno;
@@ -1636,35 +1818,56 @@ public class DocumentNLPInMemory extends DocumentNLP {
 	@Override
 	public List<Triple<TokenSpan, String, Double>> getNerWithConfidence(
 			TokenSpan tokenSpan, Relation[] relationsToAnnotations) {
-		List<Triple<TokenSpan, String, Double>> sentenceNer = this.ner.get(tokenSpan.getSentenceIndex());
 		List<Triple<TokenSpan, String, Double>> retNer = new ArrayList<Triple<TokenSpan, String, Double>>();
-		if (sentenceNer == null)
-			return retNer;
-		
-		for (Triple<TokenSpan, String, Double> span : sentenceNer) {
-			TokenSpan.Relation relation = tokenSpan.getRelationTo(span.getFirst());
-			if (Arrays.asList(relationsToAnnotations).contains(relation))
-				retNer.add(span);
-		}
-		
+		TokenSpanIndex<Triple<TokenSpan, String, Double>> index = getTokenSpanIndex(this.ner, this.nerIndices, tokenSpan.getSentenceIndex());
+		if (index != null)
+			index.collect(tokenSpan, relationsToAnnotations, retNer);
 		return retNer;
 	}
 
 	@Override
 	public List<Triple<TokenSpan, TokenSpanCluster, Double>> getCorefWithConfidence(
 			TokenSpan tokenSpan, Relation[] relationsToAnnotations) {
-		List<Triple<TokenSpan, TokenSpanCluster, Double>> sentenceCoref = this.coref.get(tokenSpan.getSentenceIndex());
 		List<Triple<TokenSpan, TokenSpanCluster, Double>> retCoref = new ArrayList<Triple<TokenSpan, TokenSpanCluster, Double>>();
-		if (sentenceCoref == null)
-			return retCoref;
+		TokenSpanIndex<Triple<TokenSpan, TokenSpanCluster, Double>> index = getTokenSpanIndex(this.coref, this.corefIndices, tokenSpan.getSentenceIndex());
+		if (index != null)
+			index.collect(tokenSpan, relationsToAnnotations, retCoref);
+		return retCoref;
+	}
+	
+	private TokenSpanIndex<Triple<TokenSpan, ?, Double>> getOtherTokenSpanIndex(AnnotationTypeNLP<?> annotationType, int sentenceIndex) {
+		if (this.otherTokenSpanAnnotations == null)
+			return null;
 		
-		for (Triple<TokenSpan, TokenSpanCluster, Double> span : sentenceCoref) {
-			TokenSpan.Relation relation = tokenSpan.getRelationTo(span.getFirst());
-			if (Arrays.asList(relationsToAnnotations).contains(relation))
-				retCoref.add(span);
+		ConcurrentHashMap<Integer, TokenSpanIndex<Triple<TokenSpan, ?, Double>>> indices = this.otherTokenSpanIndices.get(annotationType);
+		if (indices == null) {
+			this.otherTokenSpanIndices.putIfAbsent(annotationType, new ConcurrentHashMap<Integer, TokenSpanIndex<Triple<TokenSpan, ?, Double>>>());
+			indices = this.otherTokenSpanIndices.get(annotationType);
 		}
 		
-		return retCoref;
+		return getTokenSpanIndex(this.otherTokenSpanAnnotations.get(annotationType), indices, sentenceIndex);
+	}
+	
+	/**
+	 * @return the index over the annotations of the given sentence, 
+	 * or null if the sentence has no annotations.  The index is rebuilt 
+	 * if the sentence's annotation list has been replaced or resized since
+	 * it was built.
+	 */
+	private <A extends Pair<TokenSpan, ?>> TokenSpanIndex<A> getTokenSpanIndex(Map<Integer, List<A>> annotations, ConcurrentHashMap<Integer, TokenSpanIndex<A>> indices, int sentenceIndex) {
+		if (annotations == null)
+			return null;
+		List<A> sentenceAnnotations = annotations.get(sentenceIndex);
+		if (sentenceAnnotations == null)
+			return null;
+		
+		TokenSpanIndex<A> index = indices.get(sentenceIndex);
+		if (index == null || !index.isIndexOf(sentenceAnnotations)) {
+			index = new TokenSpanIndex<A>(sentenceAnnotations);
+			indices.put(sentenceIndex, index);
+		}
+		
+		return index;
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -1,23 +1,53 @@
 package edu.cmu.ml.rtw.generic.data.annotation.nlp;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.data.annotation.DocumentCache;
 import edu.cmu.ml.rtw.generic.data.annotation.DocumentSet;
-import edu.cmu.ml.rtw.generic.data.annotation.nlp.micro.Annotation;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.micro.DocumentAnnotation;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.micro.DocumentAnnotationReader;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.micro.DocumentAnnotationWriter;
 import edu.cmu.ml.rtw.generic.model.annotator.nlp.PipelineNLP;
+import edu.cmu.ml.rtw.generic.model.annotator.nlp.PipelineNLPStanford;
 import edu.cmu.ml.rtw.generic.util.FileUtil;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
 import edu.cmu.ml.rtw.generic.util.Pair;
+import edu.cmu.ml.rtw.generic.util.ThreadMapper;
 
 public class DocumentSetNLP<D extends DocumentNLP> extends DocumentSet<D> {
+	/**
+	 * Number of documents read from a micro-annotation file and constructed
+	 * through a pipeline at once
+	 */
+	private static final int MICRO_FILE_BATCH_SIZE = 256;
+	private static final int TEXT_FILE_BATCH_SIZE = 64;
+	
+	/**
+	 * Weighs documents by their numbers of tokens, so that the memory
+	 * limits of DocumentCaches can be given as numbers of tokens
+	 */
+	public static final DocumentCache.Weigher<DocumentNLP> TOKEN_COUNT_WEIGHER = new DocumentCache.Weigher<DocumentNLP>() {
+		@Override
+		public int weigh(DocumentNLP document) {
+			int tokenCount = 0;
+			for (int i = 0; i < document.getSentenceCount(); i++)
+				tokenCount += document.getSentenceTokenCount(i);
+			return tokenCount;
+		}
+	};
+	
 	public DocumentSetNLP(String name) {
 		super(name);
 	}
@@ -38,24 +68,162 @@ public class DocumentSetNLP<D extends DocumentNLP> extends DocumentSet<D> {
 	}
 	
 	public boolean saveToMicroFile(String filePath, Collection<AnnotationTypeNLP<?>> annotationTypes) {
+		return saveToMicroFile(filePath, annotationTypes, 1);
+	}
+	
+	/**
+	 * Saves the documents to a single micro-annotation file through a 
+	 * DocumentAnnotationWriter.  Batches of documents are converted to 
+	 * micro-annotations and serialized using up to maxThreads threads, and
+	 * each document's annotations are written on consecutive lines.
+	 */
+	public boolean saveToMicroFile(String filePath, Collection<AnnotationTypeNLP<?>> annotationTypes, int maxThreads) {
+		DocumentAnnotationWriter writer = new DocumentAnnotationWriter(filePath, maxThreads);
+		ThreadMapper<String, DocumentAnnotation> converter = new ThreadMapper<String, DocumentAnnotation>(new ThreadMapper.Fn<String, DocumentAnnotation>() {
+			@Override
+			public DocumentAnnotation apply(String name) {
+				return getDocumentByName(name).toMicroAnnotation(annotationTypes);
+			}
+		});
+		
+		List<String> names = new ArrayList<String>(getDocumentNames());
+		boolean success = true;
+		for (int i = 0; i < names.size() && success; i += DocumentAnnotationWriter.DEFAULT_BATCH_SIZE) {
+			List<String> batchNames = names.subList(i, Math.min(names.size(), i + DocumentAnnotationWriter.DEFAULT_BATCH_SIZE));
+			List<DocumentAnnotation> documentAnnotations = converter.run(batchNames, maxThreads);
+			if (documentAnnotations == null) {
+				success = false;
+				break;
+			}
+			
+			for (DocumentAnnotation documentAnnotation : documentAnnotations)
+				success = writer.write(documentAnnotation) && success;
+		}
+		
+		return writer.close() && success;
+	}
+
+	/**
+	 * Saves the documents to a single DocumentNLPBinaryFile at filePath
+	 */
+	public boolean saveToBinaryFile(String filePath) {
+		return saveToBinaryDirectory(filePath, 1);
+	}
+	
+	/**
+	 * Saves the documents in DocumentNLPBinaryFile shards within a directory.
+	 * Each document is assigned to one of shardCount files named 
+	 * "[shard index].bin" by the hash of its name.  If shardCount is 1, then
+	 * path is the path to a single binary file rather than a directory.
+	 */
+	public boolean saveToBinaryDirectory(String path, int shardCount) {
+		DocumentNLPBinaryFile.Writer[] writers = new DocumentNLPBinaryFile.Writer[shardCount];
+		if (shardCount == 1) {
+			writers[0] = new DocumentNLPBinaryFile.Writer(path);
+		} else {
+			File directory = new File(path);
+			if (!directory.exists() && !directory.mkdirs())
+				return false;
+			for (int i = 0; i < shardCount; i++)
+				writers[i] = new DocumentNLPBinaryFile.Writer(new File(directory, i + ".bin").getAbsolutePath());
+		}
+		
+		List<String> names = new ArrayList<String>(getDocumentNames());
+		Collections.sort(names); // Ensure determinism
+		
+		boolean success = true;
+		for (String name : names) {
+			D document = getDocumentByName(name, false);
+			DocumentNLPInMemory documentInMemory = null;
+			if (document instanceof DocumentNLPInMemory)
+				documentInMemory = (DocumentNLPInMemory)document;
+			else
+				documentInMemory = new DocumentNLPInMemory(document.getDataTools(), document.toJSON());
+			
+			int shard = (name.hashCode() & Integer.MAX_VALUE) % shardCount;
+			if (!writers[shard].write(documentInMemory)) {
+				success = false;
+				break;
+			}
+		}
+		
+		for (DocumentNLPBinaryFile.Writer writer : writers)
+			success = writer.close() && success;
+		
+		return success;
+	}
+	
+	public static DocumentSetNLP<DocumentNLPInMemory> loadFromBinaryPath(String name, String path, DataTools dataTools) {
+		return loadFromBinaryPath(name, path, dataTools, null);
+	}
+	
+	/**
+	 * @param name
+	 * @param path path to a DocumentNLPBinaryFile, or to a directory of 
+	 * DocumentNLPBinaryFile shards saved by saveToBinaryDirectory
+	 * @param dataTools
+	 * @param annotationTypes annotation types to decode when documents are 
+	 * loaded (or null for all of them).  Other annotation types are not 
+	 * available from the loaded documents.
+	 * @return a document set that lazily reads documents from the binary 
+	 * files, or null if the files couldn't be opened.  The files are held 
+	 * open for the life of the document set.
+	 */
+	public static DocumentSetNLP<DocumentNLPInMemory> loadFromBinaryPath(String name, String path, DataTools dataTools, Collection<AnnotationTypeNLP<?>> annotationTypes) {
+		File filePath = new File(path);
+		File[] files = null;
+		if (filePath.isDirectory()) {
+			files = filePath.listFiles(new FilenameFilter() {
+				@Override
+				public boolean accept(File dir, String fileName) {
+					return fileName.endsWith(".bin");
+				}
+			});
+			if (files == null)
+				return null;
+		} else {
+			files = new File[] { filePath };
+		}
+		
+		Collections.sort(Arrays.asList(files), new Comparator<File>() { // Ensure determinism
+		    public int compare(File o1, File o2) {
+		        return o1.getAbsolutePath().compareTo(o2.getAbsolutePath());
+		    }
+		});
+		
+		DocumentSetNLP<DocumentNLPInMemory> documentSet = new DocumentSetNLP<DocumentNLPInMemory>(name);
+		Map<String, DocumentNLPBinaryFile> documentFiles = new HashMap<String, DocumentNLPBinaryFile>();
+		List<DocumentNLPBinaryFile> binaryFiles = new ArrayList<DocumentNLPBinaryFile>();
+		boolean opened = false;
 		try {
-			BufferedWriter w = new BufferedWriter(new FileWriter(filePath));
-		
-			for (String name : getDocumentNames()) {
-				D document = getDocumentByName(name);
-				DocumentAnnotation documentAnnotation = document.toMicroAnnotation(annotationTypes);
-				List<Annotation> annotations = documentAnnotation.getAllAnnotations();
-				for (Annotation annotation : annotations) {
-					w.write(annotation.toJsonString() + "\n");
+			for (File file : files) {
+				DocumentNLPBinaryFile binaryFile = DocumentNLPBinaryFile.open(file.getAbsolutePath());
+				if (binaryFile == null)
+					return null;
+				binaryFiles.add(binaryFile);
+				
+				for (String documentName : binaryFile.getDocumentNames()) {
+					documentFiles.put(documentName, binaryFile);
+					documentSet.fileNamesAndDocuments.put(documentName, new Pair<String, DocumentNLPInMemory>(documentName, null));
 				}
 			}
-			
-			w.close();
-		} catch (IOException e) {
-			return false;
+			opened = true;
+		} finally {
+			// Close the files that were opened if any of them failed
+			if (!opened)
+				for (DocumentNLPBinaryFile binaryFile : binaryFiles)
+					binaryFile.close();
 		}
 		
-		return true;
+		documentSet.directoryPath = path;
+		documentSet.documentLoader = new DocumentLoader<DocumentNLPInMemory>() {
+			@Override
+			public DocumentNLPInMemory load(String documentName) {
+				return documentFiles.get(documentName).readDocument(documentName, dataTools, annotationTypes);
+			}
+		};
+		
+		return documentSet;
 	}
 
 	public static <D extends DocumentNLP> DocumentSetNLP<D> loadFromMicroPathThroughPipeline(String name, String path, D genericDocument) {
@@ -67,6 +235,19 @@ public class DocumentSetNLP<D extends DocumentNLP> extends DocumentSet<D> {
 	}
 	
 	public static <D extends DocumentNLP> DocumentSetNLP<D> loadFromMicroPathThroughPipeline(String name, String path, D genericDocument, PipelineNLP pipeline, Collection<AnnotationTypeNLP<?>> skipAnnotators, boolean oneDocumentPerFile) {
+		return loadFromMicroPathThroughPipeline(name, path, genericDocument, pipeline, skipAnnotators, oneDocumentPerFile, 1);
+	}
+	
+	/**
+	 * @param maxThreads number of threads used to parse the annotations in
+	 * each file, and to construct documents from them when oneDocumentPerFile
+	 * is false.  Documents are constructed in parallel through the pipeline, 
+	 * so the pipeline's annotators must be safe to use from several threads 
+	 * if maxThreads is greater than 1.
+	 * @return the document set, or null if some of the files couldn't be
+	 * read, or some of their documents couldn't be constructed
+	 */
+	public static <D extends DocumentNLP> DocumentSetNLP<D> loadFromMicroPathThroughPipeline(String name, String path, D genericDocument, PipelineNLP pipeline, Collection<AnnotationTypeNLP<?>> skipAnnotators, boolean oneDocumentPerFile, int maxThreads) {
 		File filePath = new File(path);
 		File[] files = null;
 		if (filePath.isDirectory()) {
@@ -90,8 +271,8 @@ public class DocumentSetNLP<D extends DocumentNLP> extends DocumentSet<D> {
 			documentSet.documentLoader = new DocumentLoader<D>() {
 				@Override
 				public D load(String documentFileName) {
-					DocumentSetNLP<D> documents = loadFromMicroFileThroughPipeline(new File(path, documentFileName), genericDocument, pipeline, skipAnnotators);
-					if (documents.size() == 0)
+					DocumentSetNLP<D> documents = loadFromMicroFileThroughPipeline(new File(path, documentFileName), genericDocument, pipeline, skipAnnotators, maxThreads);
+					if (documents == null || documents.size() == 0)
 						return null;
 					else 
 						return documents.getDocumentByName(documents.getDocumentNames().toArray()[0].toString(), false);
@@ -103,24 +284,101 @@ public class DocumentSetNLP<D extends DocumentNLP> extends DocumentSet<D> {
 			} 
 		} else {
 			for (File file : files) {
-				documentSet.addAll(loadFromMicroFileThroughPipeline(file, genericDocument, pipeline, skipAnnotators));
+				DocumentSetNLP<D> documents = loadFromMicroFileThroughPipeline(file, genericDocument, pipeline, skipAnnotators, maxThreads);
+				if (documents == null)
+					return null;
+				documentSet.addAll(documents);
 			}
 		}
 	
 		return documentSet;
 	}
 
-	@SuppressWarnings("unchecked")
-	private static <D extends DocumentNLP> DocumentSetNLP<D> loadFromMicroFileThroughPipeline(File file, D genericDocument, PipelineNLP pipeline, Collection<AnnotationTypeNLP<?>> skipAnnotators) {
-		List<DocumentAnnotation> documentAnnotations = DocumentAnnotation.fromFile(file.getAbsolutePath());
+	/**
+	 * Constructs the documents in a micro-annotation file through the 
+	 * pipeline.  The file is streamed in batches of documents, assuming that
+	 * each document's annotations are on consecutive lines (as they are 
+	 * written by saveToMicroFile).  If a document turns out to be split 
+	 * across the file, then the documents are constructed again after the 
+	 * whole file has been read.
+	 * 
+	 * @return the documents, or null if the file couldn't be read, or some
+	 * of its documents couldn't be constructed
+	 */
+	private static <D extends DocumentNLP> DocumentSetNLP<D> loadFromMicroFileThroughPipeline(File file, D genericDocument, PipelineNLP pipeline, Collection<AnnotationTypeNLP<?>> skipAnnotators, int maxThreads) {
+		OutputWriter output = genericDocument.getDataTools().getOutputWriter();
+		ThreadMapper<DocumentAnnotation, D> decoder = new ThreadMapper<DocumentAnnotation, D>(new ThreadMapper.Fn<DocumentAnnotation, D>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public D apply(DocumentAnnotation documentAnnotation) {
+				return (D)genericDocument.makeInstanceFromMicroAnnotation(documentAnnotation, pipeline, skipAnnotators);
+			}
+		});
+		
 		DocumentSetNLP<D> documentSet = new DocumentSetNLP<D>("");
-		for (DocumentAnnotation documentAnnotation : documentAnnotations) {
-			documentSet.add((D)genericDocument.makeInstanceFromMicroAnnotation(documentAnnotation, pipeline, skipAnnotators));
+		DocumentAnnotationReader reader = new DocumentAnnotationReader(file.getAbsolutePath(), maxThreads, DocumentAnnotationReader.DEFAULT_BATCH_SIZE, true);
+		Set<String> documentIds = new HashSet<String>();
+		List<DocumentAnnotation> batch = new ArrayList<DocumentAnnotation>(MICRO_FILE_BATCH_SIZE);
+		boolean contiguous = true;
+		while (reader.hasNext()) {
+			DocumentAnnotation documentAnnotation = reader.next();
+			if (!documentIds.add(String.valueOf(documentAnnotation.getDocumentId()))) {
+				contiguous = false;
+				break;
+			}
+			
+			batch.add(documentAnnotation);
+			if (batch.size() == MICRO_FILE_BATCH_SIZE) {
+				if (!decodeMicroAnnotations(file, decoder, batch, documentSet, output, maxThreads))
+					return null;
+				batch.clear();
+			}
 		}
-	
+		reader.close();
+		
+		if (contiguous) {
+			if (reader.hasFailed()) {
+				output.debugWriteln("Error: Failed to read micro-annotations from " + file.getAbsolutePath());
+				return null;
+			}
+			
+			if (!decodeMicroAnnotations(file, decoder, batch, documentSet, output, maxThreads))
+				return null;
+			return documentSet;
+		}
+		
+		output.debugWriteln("Micro-annotations for documents in " + file.getAbsolutePath() + " are not on consecutive lines.  Reading the whole file before constructing documents.");
+		
+		List<DocumentAnnotation> documentAnnotations = DocumentAnnotationReader.readAll(file.getAbsolutePath(), maxThreads);
+		if (documentAnnotations == null) {
+			output.debugWriteln("Error: Failed to read micro-annotations from " + file.getAbsolutePath());
+			return null;
+		}
+		
+		documentSet = new DocumentSetNLP<D>("");
+		if (!decodeMicroAnnotations(file, decoder, documentAnnotations, documentSet, output, maxThreads))
+			return null;
 		return documentSet;
 	}
 	
+	private static <D extends DocumentNLP> boolean decodeMicroAnnotations(File file, ThreadMapper<DocumentAnnotation, D> decoder, List<DocumentAnnotation> documentAnnotations, DocumentSetNLP<D> documentSet, OutputWriter output, int maxThreads) {
+		List<D> documents = decoder.run(documentAnnotations, maxThreads);
+		if (documents == null) {
+			output.debugWriteln("Error: Failed to construct documents from micro-annotations in " + file.getAbsolutePath());
+			return false;
+		}
+		
+		for (int i = 0; i < documents.size(); i++) {
+			if (documents.get(i) == null) {
+				output.debugWriteln("Error: Failed to construct document " + documentAnnotations.get(i).getDocumentId() + " from micro-annotations in " + file.getAbsolutePath());
+				return false;
+			}
+			documentSet.add(documents.get(i));
+		}
+		
+		return true;
+	}
+	
 	public static <D extends DocumentNLP> DocumentSetNLP<D> loadFromTextPathThroughPipeline(String name, Language language, String path, D genericDocument) {
 		return loadFromTextPathThroughPipeline(name, language, path, genericDocument, null, null);
 	}
@@ -162,4 +420,75 @@ public class DocumentSetNLP<D extends DocumentNLP> extends DocumentSet<D> {
 	
 		return documentSet;
 	}
+	
+	/**
+	 * Annotates the text files at path up front using maxThreads threads,
+	 * and returns a document set that holds the annotated documents in 
+	 * memory, named by their file names.  Batches of files are annotated 
+	 * through PipelineNLPStanford.makeDocuments, so the pipeline's pool 
+	 * size limits the number of documents annotated by CoreNLP at once.
+	 * For corpora that don't fit in memory, or runs that should resume after
+	 * an interruption, use the DocumentNLPAnnotationDriver overload of 
+	 * loadFromTextPathThroughPipeline instead.
+	 * 
+	 * @return the annotated document set, or null if some of the documents
+	 * failed to be annotated
+	 */
+	public static <D extends DocumentNLP> DocumentSetNLP<D> annotateFromTextPath(String name, Language language, String path, D genericDocument, PipelineNLPStanford pipeline, Collection<AnnotationTypeNLP<?>> skipAnnotators, int maxThreads) {
+		File filePath = new File(path);
+		File[] files = null;
+		if (filePath.isDirectory()) {
+			files = filePath.listFiles();
+			if (files == null)
+				return null;
+		} else {
+			files = new File[] { filePath };
+		}
+		
+		Collections.sort(Arrays.asList(files), new Comparator<File>() { // Ensure determinism
+		    public int compare(File o1, File o2) {
+		        return o1.getAbsolutePath().compareTo(o2.getAbsolutePath());
+		    }
+		});
+		
+		DocumentSetNLP<D> documentSet = new DocumentSetNLP<D>(name);
+		for (int i = 0; i < files.length; i += TEXT_FILE_BATCH_SIZE) {
+			List<Pair<String, String>> namesAndTexts = new ArrayList<Pair<String, String>>();
+			for (int j = i; j < Math.min(files.length, i + TEXT_FILE_BATCH_SIZE); j++) {
+				String text = FileUtil.readFile(files[j]);
+				if (text == null)
+					return null;
+				namesAndTexts.add(new Pair<String, String>(files[j].getName(), text));
+			}
+			
+			List<D> documents = pipeline.makeDocuments(genericDocument, namesAndTexts, language, skipAnnotators, maxThreads);
+			if (documents == null)
+				return null;
+			documentSet.addAll(documents);
+		}
+		
+		return documentSet;
+	}
+	
+	/**
+	 * Annotates the text files at path in parallel with a 
+	 * DocumentNLPAnnotationDriver, saving the annotated documents to 
+	 * outputPath, and then returns a document set that lazily loads them 
+	 * from there.  Text files that were annotated by a previous (possibly
+	 * interrupted) run with the same outputPath aren't annotated again.
+	 * To keep the annotated documents in memory instead, use 
+	 * annotateFromTextPath.
+	 * 
+	 * @param pipelineFactory constructs a pipeline for each of the maxThreads
+	 * annotation threads
+	 * @return the annotated document set, or null if some of the documents
+	 * failed to be annotated or saved
+	 */
+	public static <D extends DocumentNLP> DocumentSetNLP<D> loadFromTextPathThroughPipeline(String name, Language language, String path, D genericDocument, DocumentNLPAnnotationDriver.PipelineFactory pipelineFactory, Collection<AnnotationTypeNLP<?>> skipAnnotators, String outputPath, int maxThreads) {
+		DocumentNLPAnnotationDriver<D> driver = new DocumentNLPAnnotationDriver<D>(genericDocument, language, pipelineFactory, skipAnnotators, maxThreads);
+		if (!driver.run(path, outputPath))
+			return null;
+		
+		return DocumentSet.loadFromJSONDirectory(outputPath, genericDocument, new DocumentSetNLP<D>(name));
+	}
 }
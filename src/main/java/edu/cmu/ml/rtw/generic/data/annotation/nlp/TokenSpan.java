@@ -128,12 +128,25 @@ public class TokenSpan {
 	}
 	
 	public String toString() {
-		StringBuilder str = new StringBuilder();
+		if (this.startTokenIndex >= this.endTokenIndex)
+			return "";
 		
-		for (int i = this.startTokenIndex; i < this.endTokenIndex; i++)
-			str.append(getDocument().getTokenStr(this.sentenceIndex, i)).append(" ");
+		// Spans from the ROOT token aren't in the sentence view, and 
+		// documents that don't memoize views would build a view over the
+		// whole sentence for each call
+		if (this.startTokenIndex < 0 || !getDocument().memoizesSentenceViews()) {
+			StringBuilder str = new StringBuilder();
+			
+			for (int i = this.startTokenIndex; i < this.endTokenIndex; i++)
+				str.append(getDocument().getTokenStr(this.sentenceIndex, i)).append(" ");
+			
+			return str.toString().trim();
+		}
 		
-		return str.toString().trim();
+		// Gazetteer features call this for every datum, so the span is
+		// copied straight out of the memoized sentence view
+		DocumentNLP.SentenceView sentence = getDocument().getSentenceView(this.sentenceIndex);
+		return sentence.subSequence(sentence.getTokenStart(this.startTokenIndex), sentence.getTokenEnd(this.endTokenIndex - 1)).toString().trim();
 	}
 	
 	public JSONObject toJSON() {
@@ -0,0 +1,202 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.cmu.ml.rtw.generic.util.Pair;
+
+/**
+ * TokenSpanIndex indexes the token span annotations of a single
+ * sentence so that the annotations whose spans have EQUAL, CONTAINS,
+ * or CONTAINED_BY relations to a query span (with respect to
+ * TokenSpan.getRelationTo) can be found in logarithmic time (plus
+ * time proportional to the number of results).
+ *
+ * The annotations are sorted by span start (and descending span end),
+ * and the sorted array is treated as an implicit balanced interval tree
+ * in which each node stores the maximum span end in its subtree.
+ * EQUAL and CONTAINS queries are answered by a binary search over span
+ * starts, and CONTAINED_BY queries by searching the tree.  Queries for
+ * other relations fall back to scanning the annotations.  Either way,
+ * the results are in the order of the list from which the index was
+ * constructed, as they would be from a scan of the list.
+ *
+ * Fields are final and never modified after construction, so an index
+ * can be shared across threads.  An index doesn't follow changes to
+ * its list, so it should be rebuilt when the list is modified (see
+ * isIndexOf).
+ *
+ * @author Bill McDowell
+ *
+ * @param <A> annotation type
+ */
+public class TokenSpanIndex<A extends Pair<TokenSpan, ?>> {
+	private static final int INDEXED_RELATIONS = relationMask(new TokenSpan.Relation[] { TokenSpan.Relation.EQUAL, TokenSpan.Relation.CONTAINS, TokenSpan.Relation.CONTAINED_BY });
+
+	private final List<A> source;
+	// Annotations in their original order
+	private final List<A> annotations;
+	// Original positions of the annotations in sorted order, and their
+	// span starts and ends
+	private final int[] positions;
+	private final int[] starts;
+	private final int[] ends;
+	private final int[] maxEnds;
+	private final String documentName;
+
+	/**
+	 * @param annotations annotations from a single sentence of a single
+	 * document
+	 */
+	public TokenSpanIndex(List<A> annotations) {
+		this.source = annotations;
+		this.annotations = new ArrayList<A>(annotations);
+
+		List<Integer> sorted = new ArrayList<Integer>(this.annotations.size());
+		for (int i = 0; i < this.annotations.size(); i++)
+			sorted.add(i);
+		Collections.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer p1, Integer p2) {
+				TokenSpan s1 = TokenSpanIndex.this.annotations.get(p1).getFirst();
+				TokenSpan s2 = TokenSpanIndex.this.annotations.get(p2).getFirst();
+				if (s1.getStartTokenIndex() != s2.getStartTokenIndex())
+					return Integer.compare(s1.getStartTokenIndex(), s2.getStartTokenIndex());
+				else
+					return Integer.compare(s2.getEndTokenIndex(), s1.getEndTokenIndex());
+			}
+		});
+
+		this.positions = new int[sorted.size()];
+		this.starts = new int[sorted.size()];
+		this.ends = new int[sorted.size()];
+		this.maxEnds = new int[sorted.size()];
+		for (int i = 0; i < sorted.size(); i++) {
+			this.positions[i] = sorted.get(i);
+			this.starts[i] = this.annotations.get(this.positions[i]).getFirst().getStartTokenIndex();
+			this.ends[i] = this.annotations.get(this.positions[i]).getFirst().getEndTokenIndex();
+		}
+
+		computeMaxEnds(0, sorted.size());
+		this.documentName = (this.annotations.size() > 0) ? this.annotations.get(0).getFirst().getDocument().getName() : null;
+	}
+
+	/**
+	 * @return the list from which the index was constructed
+	 */
+	public List<A> getSource() {
+		return this.source;
+	}
+
+	/**
+	 * @param annotations
+	 * @return true if the index was constructed from annotations, and
+	 * annotations hasn't been added to or removed from since then
+	 */
+	public boolean isIndexOf(List<A> annotations) {
+		return this.source == annotations && this.annotations.size() == annotations.size();
+	}
+
+	public int size() {
+		return this.annotations.size();
+	}
+
+	/**
+	 * Adds the annotations whose spans have one of the given relations to
+	 * tokenSpan into results, in their original order
+	 *
+	 * @param tokenSpan
+	 * @param relations
+	 * @param results
+	 * @return true
+	 */
+	public boolean collect(TokenSpan tokenSpan, TokenSpan.Relation[] relations, List<? super A> results) {
+		int mask = relationMask(relations);
+		if (this.annotations.size() == 0 || mask == 0)
+			return true;
+
+		if ((mask & ~INDEXED_RELATIONS) != 0 || !tokenSpan.getDocument().getName().equals(this.documentName)) {
+			for (A annotation : this.annotations)
+				if ((mask & (1 << tokenSpan.getRelationTo(annotation.getFirst()).ordinal())) != 0)
+					results.add(annotation);
+			return true;
+		}
+
+		int queryStart = tokenSpan.getStartTokenIndex();
+		int queryEnd = tokenSpan.getEndTokenIndex();
+		List<Integer> hits = new ArrayList<Integer>();
+
+		if ((mask & (relationMask(TokenSpan.Relation.EQUAL) | relationMask(TokenSpan.Relation.CONTAINS))) != 0) {
+			for (int i = lowerBound(queryStart); i < this.starts.length && this.starts[i] <= queryEnd; i++) {
+				if (this.ends[i] > queryEnd)
+					continue;
+				TokenSpan.Relation relation = (this.starts[i] == queryStart && this.ends[i] == queryEnd) ? TokenSpan.Relation.EQUAL : TokenSpan.Relation.CONTAINS;
+				if ((mask & relationMask(relation)) != 0)
+					hits.add(this.positions[i]);
+			}
+		}
+
+		if ((mask & relationMask(TokenSpan.Relation.CONTAINED_BY)) != 0)
+			collectContaining(0, this.starts.length, queryStart, queryEnd, hits);
+
+		// The relations are disjoint, so each annotation is hit at most once
+		Collections.sort(hits);
+		for (Integer hit : hits)
+			results.add(this.annotations.get(hit));
+
+		return true;
+	}
+
+	private void collectContaining(int low, int high, int queryStart, int queryEnd, List<Integer> hits) {
+		if (low >= high)
+			return;
+		int mid = (low + high) >>> 1;
+		if (this.maxEnds[mid] < queryEnd)
+			return;
+
+		collectContaining(low, mid, queryStart, queryEnd, hits);
+		if (this.starts[mid] > queryStart)
+			return;
+
+		if (this.ends[mid] >= queryEnd && !(this.starts[mid] == queryStart && this.ends[mid] == queryEnd))
+			hits.add(this.positions[mid]);
+		collectContaining(mid + 1, high, queryStart, queryEnd, hits);
+	}
+
+	private int computeMaxEnds(int low, int high) {
+		if (low >= high)
+			return Integer.MIN_VALUE;
+		int mid = (low + high) >>> 1;
+		this.maxEnds[mid] = Math.max(this.ends[mid], Math.max(computeMaxEnds(low, mid), computeMaxEnds(mid + 1, high)));
+		return this.maxEnds[mid];
+	}
+
+	/**
+	 * @return the first position with span start at least start
+	 */
+	private int lowerBound(int start) {
+		int low = 0;
+		int high = this.starts.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.starts[mid] < start)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private static int relationMask(TokenSpan.Relation relation) {
+		return 1 << relation.ordinal();
+	}
+
+	private static int relationMask(TokenSpan.Relation[] relations) {
+		int mask = 0;
+		for (int i = 0; i < relations.length; i++)
+			mask |= relationMask(relations[i]);
+		return mask;
+	}
+}
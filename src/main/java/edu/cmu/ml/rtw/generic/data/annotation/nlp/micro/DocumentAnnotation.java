@@ -5,11 +5,15 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
@@ -21,19 +25,57 @@ import edu.cmu.ml.rtw.generic.util.FileUtil;
  * {@code getDocumentId()} method.
  *
  * <p>
- * {@code DocumentAnnotation} is immutable.
+ * {@code DocumentAnnotation} is immutable. The annotations are indexed
+ * by slot and by span when the instance is constructed, so slot, span,
+ * and overlap queries do not scan all of the annotations.
  *
  * @author jayant
  *
  */
 public class DocumentAnnotation {
 
+  private static final Comparator<Annotation> SPAN_START_ORDER = new Comparator<Annotation>() {
+    @Override
+    public int compare(Annotation a1, Annotation a2) {
+      return Integer.compare(a1.getSpanStart(), a2.getSpanStart());
+    }
+  };
+
   private final String documentId;
   private final List<Annotation> annotations;
 
+  // Annotations bucketed by slot, in their original order
+  private final ImmutableListMultimap<String, Annotation> slotAnnotations;
+  // Annotations sorted by span start (and otherwise in their original
+  // order), with the sorted span starts
+  private final Annotation[] spanAnnotations;
+  private final int[] spanStarts;
+  // Centered interval tree over the positions of the annotations in
+  // the original list, for overlap queries
+  private final IntervalNode spanTree;
+
   public DocumentAnnotation(String documentId, List<Annotation> annotations) {
     this.documentId = documentId;
     this.annotations = ImmutableList.copyOf(annotations);
+
+    ImmutableListMultimap.Builder<String, Annotation> slotAnnotations = ImmutableListMultimap.builder();
+    for (Annotation annotation : this.annotations) {
+      slotAnnotations.put(annotation.getSlot(), annotation);
+    }
+    this.slotAnnotations = slotAnnotations.build();
+
+    this.spanAnnotations = this.annotations.toArray(new Annotation[this.annotations.size()]);
+    Arrays.sort(this.spanAnnotations, SPAN_START_ORDER);
+    this.spanStarts = new int[this.spanAnnotations.length];
+    for (int i = 0; i < this.spanAnnotations.length; i++) {
+      this.spanStarts[i] = this.spanAnnotations[i].getSpanStart();
+    }
+
+    int[] positions = new int[this.annotations.size()];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = i;
+    }
+    this.spanTree = IntervalNode.build(this.annotations, positions);
   }
 
   /**
@@ -96,13 +138,7 @@ public class DocumentAnnotation {
    * @return
    */
   public List<Annotation> getAnnotationsWithSlot(String slot) {
-    List<Annotation> returnValue = Lists.newArrayList();
-    for (Annotation annotation : annotations) {
-      if (annotation.getSlot().equals(slot)) {
-        returnValue.add(annotation);
-      }
-    }
-    return returnValue;
+    return Lists.newArrayList(slotAnnotations.get(slot));
   }
 
   /**
@@ -113,14 +149,183 @@ public class DocumentAnnotation {
    */
   public List<Annotation> getAnnotationsForSpan(int spanStart, int spanEnd) {
     List<Annotation> result = Lists.newArrayList();
-    for (Annotation a : annotations) {
-      if (a.getSpanStart() == spanStart && a.getSpanEnd() == spanEnd) {
-        result.add(a);
+    for (int i = firstSpanStartAtLeast(spanStart); i < spanStarts.length && spanStarts[i] == spanStart; i++) {
+      if (spanAnnotations[i].getSpanEnd() == spanEnd) {
+        result.add(spanAnnotations[i]);
       }
     }
     return result;
   }
 
+  /**
+   * Gets all of the annotations whose spans overlap the span from
+   * {@code spanStart} (inclusive) to {@code spanEnd} (exclusive), i.e.,
+   * the annotations for which {@code annotation.spanStart < spanEnd}
+   * and {@code annotation.spanEnd > spanStart}. The annotations are
+   * returned in their original order.
+   *
+   */
+  public List<Annotation> getAnnotationsOverlappingSpan(int spanStart, int spanEnd) {
+    List<Integer> positions = Lists.newArrayList();
+    if (spanTree != null) {
+      spanTree.collectOverlapping(annotations, spanStart, spanEnd, positions);
+    }
+    Collections.sort(positions);
+
+    List<Annotation> result = Lists.newArrayListWithCapacity(positions.size());
+    for (Integer position : positions) {
+      result.add(annotations.get(position));
+    }
+    return result;
+  }
+
+  private int firstSpanStartAtLeast(int spanStart) {
+    int low = 0;
+    int high = spanStarts.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (spanStarts[mid] < spanStart) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * A node of a centered interval tree. The node holds the annotations
+   * whose spans contain its center (sorted by span start, and by
+   * descending span end), and its subtrees hold the annotations that
+   * end before and start after the center. Long spans, such as the
+   * document level annotations that cover the whole text, stay near
+   * the root, so they don't slow down queries for short spans.
+   */
+  private static class IntervalNode {
+    private final int center;
+    private final int[] byStart;
+    private final int[] byEnd;
+    private final IntervalNode left;
+    private final IntervalNode right;
+
+    private IntervalNode(int center, int[] byStart, int[] byEnd, IntervalNode left, IntervalNode right) {
+      this.center = center;
+      this.byStart = byStart;
+      this.byEnd = byEnd;
+      this.left = left;
+      this.right = right;
+    }
+
+    /**
+     * Builds a tree over the annotations at {@code positions}, or
+     * returns null if there are none.
+     */
+    public static IntervalNode build(final List<Annotation> annotations, int[] positions) {
+      if (positions.length == 0) {
+        return null;
+      }
+
+      // The median endpoint is contained in at least one span, so each
+      // subtree holds fewer annotations than its parent
+      int[] endpoints = new int[positions.length * 2];
+      for (int i = 0; i < positions.length; i++) {
+        endpoints[2 * i] = annotations.get(positions[i]).getSpanStart();
+        endpoints[2 * i + 1] = annotations.get(positions[i]).getSpanEnd();
+      }
+      Arrays.sort(endpoints);
+      int center = endpoints[positions.length];
+
+      int leftCount = 0;
+      int centerCount = 0;
+      for (int position : positions) {
+        Annotation annotation = annotations.get(position);
+        if (annotation.getSpanEnd() < center) {
+          leftCount++;
+        } else if (annotation.getSpanStart() <= center) {
+          centerCount++;
+        }
+      }
+
+      int[] leftPositions = new int[leftCount];
+      Integer[] centerPositions = new Integer[centerCount];
+      int[] rightPositions = new int[positions.length - leftCount - centerCount];
+      leftCount = 0;
+      centerCount = 0;
+      int rightCount = 0;
+      for (int position : positions) {
+        Annotation annotation = annotations.get(position);
+        if (annotation.getSpanEnd() < center) {
+          leftPositions[leftCount++] = position;
+        } else if (annotation.getSpanStart() <= center) {
+          centerPositions[centerCount++] = position;
+        } else {
+          rightPositions[rightCount++] = position;
+        }
+      }
+
+      Arrays.sort(centerPositions, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer p1, Integer p2) {
+          return Integer.compare(annotations.get(p1).getSpanStart(), annotations.get(p2).getSpanStart());
+        }
+      });
+      int[] byStart = new int[centerCount];
+      for (int i = 0; i < centerCount; i++) {
+        byStart[i] = centerPositions[i];
+      }
+
+      Arrays.sort(centerPositions, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer p1, Integer p2) {
+          return Integer.compare(annotations.get(p2).getSpanEnd(), annotations.get(p1).getSpanEnd());
+        }
+      });
+      int[] byEnd = new int[centerCount];
+      for (int i = 0; i < centerCount; i++) {
+        byEnd[i] = centerPositions[i];
+      }
+
+      return new IntervalNode(center, byStart, byEnd,
+          build(annotations, leftPositions), build(annotations, rightPositions));
+    }
+
+    /**
+     * Adds the positions of the annotations in this subtree that
+     * overlap the span from {@code spanStart} (inclusive) to
+     * {@code spanEnd} (exclusive) to {@code positions}.
+     */
+    public void collectOverlapping(List<Annotation> annotations, int spanStart, int spanEnd, List<Integer> positions) {
+      if (spanEnd <= center) {
+        // Every span here ends at or after the center, so only the ones
+        // that start before the query ends can overlap it
+        for (int i = 0; i < byStart.length && annotations.get(byStart[i]).getSpanStart() < spanEnd; i++) {
+          if (annotations.get(byStart[i]).getSpanEnd() > spanStart) {
+            positions.add(byStart[i]);
+          }
+        }
+      } else if (spanStart >= center) {
+        // Every span here starts at or before the center, so only the
+        // ones that end after the query starts can overlap it
+        for (int i = 0; i < byEnd.length && annotations.get(byEnd[i]).getSpanEnd() > spanStart; i++) {
+          if (annotations.get(byEnd[i]).getSpanStart() < spanEnd) {
+            positions.add(byEnd[i]);
+          }
+        }
+      } else {
+        for (int position : byStart) {
+          positions.add(position);
+        }
+      }
+
+      if (left != null && spanStart < center) {
+        left.collectOverlapping(annotations, spanStart, spanEnd, positions);
+      }
+      if (right != null && spanEnd > center) {
+        right.collectOverlapping(annotations, spanStart, spanEnd, positions);
+      }
+    }
+  }
+
   /**
    * Returns a new {@code DocumentAnnotation} containing all of the
    * annotations in both {@code this} and {@code other}.
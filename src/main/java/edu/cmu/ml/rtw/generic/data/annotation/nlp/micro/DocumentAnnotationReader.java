@@ -0,0 +1,219 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp.micro;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.common.collect.Lists;
+
+import edu.cmu.ml.rtw.generic.util.FileUtil;
+import edu.cmu.ml.rtw.generic.util.ThreadMapper;
+
+/**
+ * Reads the document annotations stored in a micro-annotation file
+ * (in the one-JSON-object-per-line format read by
+ * {@link DocumentAnnotation#fromFile}) as a stream.
+ *
+ * <p>
+ * Lines are read in batches, and the lines of each batch are parsed in
+ * parallel. Annotations are grouped by document id and then by slot
+ * in a single pass, so each returned {@code DocumentAnnotation} holds
+ * the annotations of each slot next to each other, in file order.
+ *
+ * <p>
+ * If {@code contiguousDocuments} is true, then each document's
+ * annotations are assumed to be stored on consecutive lines (as they
+ * are written by {@link DocumentAnnotationWriter}), and each document
+ * is returned as soon as a line for a different document is read. Only
+ * a batch of lines is held in memory at a time. If a document's lines
+ * are not consecutive, then it is returned in several pieces. If
+ * {@code contiguousDocuments} is false, then documents are returned
+ * after the whole file has been read, in the order that they first
+ * appear in the file.
+ *
+ * <p>
+ * Lines that are not valid annotations (including blank lines) are
+ * skipped, and counted by {@link #getInvalidLineCount}.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class DocumentAnnotationReader implements Iterator<DocumentAnnotation> {
+  public static final int DEFAULT_BATCH_SIZE = 8192;
+
+  private static final ThreadMapper<String, Annotation> PARSER =
+      new ThreadMapper<String, Annotation>(new ThreadMapper.Fn<String, Annotation>() {
+        @Override
+        public Annotation apply(String line) {
+          return Annotation.fromJsonString(line);
+        }
+      });
+
+  private final int maxThreads;
+  private final int batchSize;
+  private final boolean contiguousDocuments;
+
+  private BufferedReader reader;
+  private boolean failed;
+  private int invalidLineCount;
+
+  // Documents (and their annotations grouped by slot) that may still
+  // receive annotations, in order of first appearance
+  private final Map<String, Map<String, List<Annotation>>> openDocuments;
+  private final LinkedList<DocumentAnnotation> completeDocuments;
+
+  public DocumentAnnotationReader(String filename, int maxThreads) {
+    this(filename, maxThreads, DEFAULT_BATCH_SIZE, true);
+  }
+
+  public DocumentAnnotationReader(String filename, int maxThreads, int batchSize,
+      boolean contiguousDocuments) {
+    this.maxThreads = maxThreads;
+    this.batchSize = batchSize;
+    this.contiguousDocuments = contiguousDocuments;
+    this.reader = FileUtil.getFileReader(filename);
+    this.failed = (this.reader == null);
+    this.invalidLineCount = 0;
+    this.openDocuments = new LinkedHashMap<String, Map<String, List<Annotation>>>();
+    this.completeDocuments = new LinkedList<DocumentAnnotation>();
+  }
+
+  /**
+   * Reads all of the document annotations in {@code filename}, like
+   * {@link DocumentAnnotation#fromFile}, but parses the lines in
+   * parallel.
+   *
+   * @param filename
+   * @param maxThreads
+   * @return the document annotations, or null if the file could not
+   * be read
+   */
+  public static List<DocumentAnnotation> readAll(String filename, int maxThreads) {
+    DocumentAnnotationReader reader = new DocumentAnnotationReader(filename, maxThreads,
+        DEFAULT_BATCH_SIZE, false);
+    List<DocumentAnnotation> documentAnnotations = Lists.newArrayList(reader);
+    if (reader.hasFailed()) {
+      return null;
+    }
+    return documentAnnotations;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (this.completeDocuments.isEmpty() && this.reader != null) {
+      readBatch();
+    }
+    return !this.completeDocuments.isEmpty();
+  }
+
+  @Override
+  public DocumentAnnotation next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return this.completeDocuments.removeFirst();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @return true if the file could not be opened or read. Documents
+   * that were read before the failure are still returned.
+   */
+  public boolean hasFailed() {
+    return this.failed;
+  }
+
+  public int getInvalidLineCount() {
+    return this.invalidLineCount;
+  }
+
+  /**
+   * Stops reading the file.
+   */
+  public void close() {
+    if (this.reader == null) {
+      return;
+    }
+
+    try {
+      this.reader.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    this.reader = null;
+  }
+
+  private void readBatch() {
+    List<String> lines = new ArrayList<String>(this.batchSize);
+    try {
+      String line = null;
+      while (lines.size() < this.batchSize && (line = this.reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      this.failed = true;
+    }
+
+    if (!lines.isEmpty()) {
+      List<Annotation> annotations = PARSER.run(lines, this.maxThreads);
+      if (annotations == null) {
+        this.failed = true;
+      } else {
+        for (Annotation annotation : annotations) {
+          addAnnotation(annotation);
+        }
+      }
+    }
+
+    if (lines.size() < this.batchSize || this.failed) {
+      close();
+      completeOpenDocuments();
+    }
+  }
+
+  private void addAnnotation(Annotation annotation) {
+    if (annotation == null) {
+      this.invalidLineCount++;
+      return;
+    }
+
+    String documentId = annotation.getDocumentId();
+    Map<String, List<Annotation>> slotAnnotations = this.openDocuments.get(documentId);
+    if (slotAnnotations == null) {
+      if (this.contiguousDocuments) {
+        completeOpenDocuments();
+      }
+      slotAnnotations = new LinkedHashMap<String, List<Annotation>>();
+      this.openDocuments.put(documentId, slotAnnotations);
+    }
+
+    List<Annotation> annotations = slotAnnotations.get(annotation.getSlot());
+    if (annotations == null) {
+      annotations = new ArrayList<Annotation>();
+      slotAnnotations.put(annotation.getSlot(), annotations);
+    }
+    annotations.add(annotation);
+  }
+
+  private void completeOpenDocuments() {
+    for (Map.Entry<String, Map<String, List<Annotation>>> entry : this.openDocuments.entrySet()) {
+      List<Annotation> annotations = new ArrayList<Annotation>();
+      for (List<Annotation> slotAnnotations : entry.getValue().values()) {
+        annotations.addAll(slotAnnotations);
+      }
+      this.completeDocuments.add(new DocumentAnnotation(entry.getKey(), annotations));
+    }
+    this.openDocuments.clear();
+  }
+}
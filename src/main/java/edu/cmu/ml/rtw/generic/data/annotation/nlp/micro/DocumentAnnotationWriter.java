@@ -0,0 +1,161 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp.micro;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cmu.ml.rtw.generic.util.ThreadMapper;
+
+/**
+ * Writes document annotations to a micro-annotation file in the
+ * one-JSON-object-per-line format read by {@link DocumentAnnotationReader}
+ * and {@link DocumentAnnotation#fromFile}.
+ *
+ * <p>
+ * Documents are collected into batches. The annotations of a batch are
+ * serialized to JSON in parallel, and then written in order through a
+ * large buffer, so each document's annotations are stored on
+ * consecutive lines, in the order that the documents were given.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class DocumentAnnotationWriter {
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private static final ThreadMapper<DocumentAnnotation, String> SERIALIZER =
+      new ThreadMapper<DocumentAnnotation, String>(new ThreadMapper.Fn<DocumentAnnotation, String>() {
+        @Override
+        public String apply(DocumentAnnotation documentAnnotation) {
+          StringBuilder str = new StringBuilder();
+          for (Annotation annotation : documentAnnotation.getAllAnnotations()) {
+            str.append(annotation.toJsonString()).append('\n');
+          }
+          return str.toString();
+        }
+      });
+
+  private final int maxThreads;
+  private final int batchSize;
+
+  private BufferedWriter writer;
+  private List<DocumentAnnotation> batch;
+  private int documentCount;
+  private long annotationCount;
+
+  public DocumentAnnotationWriter(String filename, int maxThreads) {
+    this(filename, maxThreads, DEFAULT_BATCH_SIZE);
+  }
+
+  public DocumentAnnotationWriter(String filename, int maxThreads, int batchSize) {
+    this.maxThreads = maxThreads;
+    this.batchSize = batchSize;
+    this.batch = new ArrayList<DocumentAnnotation>(batchSize);
+    this.documentCount = 0;
+    this.annotationCount = 0;
+
+    try {
+      this.writer = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(filename), StandardCharsets.UTF_8), BUFFER_SIZE);
+    } catch (IOException e) {
+      e.printStackTrace();
+      this.writer = null;
+    }
+  }
+
+  /**
+   * @param documentAnnotation
+   * @return false if the writer could not be opened, or if writing a
+   * full batch failed
+   */
+  public synchronized boolean write(DocumentAnnotation documentAnnotation) {
+    if (this.writer == null) {
+      return false;
+    }
+
+    this.batch.add(documentAnnotation);
+    if (this.batch.size() >= this.batchSize) {
+      return writeBatch();
+    }
+    return true;
+  }
+
+  /**
+   * Writes the current batch and flushes the output.
+   *
+   * @return false if writing failed
+   */
+  public synchronized boolean flush() {
+    if (this.writer == null || !writeBatch()) {
+      return false;
+    }
+
+    try {
+      this.writer.flush();
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Writes the current batch and closes the file.
+   *
+   * @return false if writing or closing failed
+   */
+  public synchronized boolean close() {
+    if (this.writer == null) {
+      return false;
+    }
+
+    boolean success = writeBatch();
+    try {
+      this.writer.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+      success = false;
+    }
+    this.writer = null;
+    return success;
+  }
+
+  public synchronized int getDocumentCount() {
+    return this.documentCount;
+  }
+
+  public synchronized long getAnnotationCount() {
+    return this.annotationCount;
+  }
+
+  private boolean writeBatch() {
+    if (this.batch.isEmpty()) {
+      return true;
+    }
+
+    List<String> serializedDocuments = SERIALIZER.run(this.batch, this.maxThreads);
+    if (serializedDocuments == null) {
+      return false;
+    }
+
+    try {
+      for (int i = 0; i < serializedDocuments.size(); i++) {
+        this.writer.write(serializedDocuments.get(i));
+        this.annotationCount += this.batch.get(i).getAllAnnotations().size();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+
+    this.documentCount += this.batch.size();
+    this.batch.clear();
+    return true;
+  }
+}
@@ -47,7 +47,7 @@ public class FeatureConjunction<D extends Datum<L>, L> extends Feature<D, L> {
 	public boolean init(FeaturizedDataSet<D, L> dataSet) {
 		this.dataSet = dataSet;
 
-		final CounterTable<String> counter = new CounterTable<String>();
+		final CounterTable<String> counter = new CounterTable<String>(true);
 		dataSet.map(new ThreadMapper.Fn<D, Boolean>() {
 			@Override
 			public Boolean apply(D datum) {
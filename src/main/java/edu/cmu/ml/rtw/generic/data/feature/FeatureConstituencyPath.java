@@ -61,7 +61,7 @@ public class FeatureConstituencyPath<D extends Datum<L>, L> extends Feature<D, L
 	
 	@Override
 	public boolean init(FeaturizedDataSet<D, L> dataSet) {
-		final CounterTable<String> counter = new CounterTable<String>();
+		final CounterTable<String> counter = new CounterTable<String>(true);
 		dataSet.map(new ThreadMapper.Fn<D, Boolean>() {
 			@Override
 			public Boolean apply(D datum) {
@@ -102,18 +102,10 @@ public class FeatureConstituencyPath<D extends Datum<L>, L> extends Feature<D, L
 				|| sourceSpan.getSentenceIndex() != targetSpan.getSentenceIndex())
 			return null;
 		
-		ConstituentPath shortestPath = null;
 		int sentenceIndex = sourceSpan.getSentenceIndex();
 		ConstituencyParse parse = sourceSpan.getDocument().getConstituencyParse(sentenceIndex);
-		for (int i = sourceSpan.getStartTokenIndex(); i < sourceSpan.getEndTokenIndex(); i++){
-			for (int j = targetSpan.getStartTokenIndex(); j < targetSpan.getEndTokenIndex(); j++){
-				ConstituentPath path = parse.getPath(i, j);
-				if (shortestPath == null || (path != null && path.getLength() < shortestPath.getLength()))
-					shortestPath = path;
-			}
-		}
-
-		return shortestPath;
+		return parse.getShortestPath(sourceSpan.getStartTokenIndex(), sourceSpan.getEndTokenIndex(), 
+									 targetSpan.getStartTokenIndex(), targetSpan.getEndTokenIndex());
 	}
 	
 	@Override
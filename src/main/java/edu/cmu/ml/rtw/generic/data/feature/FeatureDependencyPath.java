@@ -59,7 +59,7 @@ public class FeatureDependencyPath<D extends Datum<L>, L> extends Feature<D, L>
 	
 	@Override
 	public boolean init(FeaturizedDataSet<D, L> dataSet) {
-		final CounterTable<String> counter = new CounterTable<String>();
+		final CounterTable<String> counter = new CounterTable<String>(true);
 		dataSet.map(new ThreadMapper.Fn<D, Boolean>() {
 			@Override
 			public Boolean apply(D datum) {
@@ -100,18 +100,10 @@ public class FeatureDependencyPath<D extends Datum<L>, L> extends Feature<D, L>
 				|| sourceSpan.getSentenceIndex() != targetSpan.getSentenceIndex())
 			return null;
 		
-		DependencyPath shortestPath = null;
 		int sentenceIndex = sourceSpan.getSentenceIndex();
 		DependencyParse parse = sourceSpan.getDocument().getDependencyParse(sentenceIndex);
-		for (int i = sourceSpan.getStartTokenIndex(); i < sourceSpan.getEndTokenIndex(); i++){
-			for (int j = targetSpan.getStartTokenIndex(); j < targetSpan.getEndTokenIndex(); j++){
-				DependencyPath path = parse.getPath(i, j);
-				if (shortestPath == null || (path != null && path.getTokenLength() < shortestPath.getTokenLength()))
-					shortestPath = path;
-			}
-		}
-
-		return shortestPath;
+		return parse.getShortestPath(sourceSpan.getStartTokenIndex(), sourceSpan.getEndTokenIndex(), 
+									 targetSpan.getStartTokenIndex(), targetSpan.getEndTokenIndex());
 	}
 	
 	@Override
@@ -68,7 +68,7 @@ public abstract class FeatureGazetteer<D extends Datum<L>, L> extends Feature<D,
 		if (!this.includeIds)
 			return true;
 		
-		final CounterTable<String> counter = new CounterTable<String>();
+		final CounterTable<String> counter = new CounterTable<String>(true);
 		dataSet.map(new ThreadMapper.Fn<D, Boolean>() {
 			@Override
 			public Boolean apply(D datum) {
@@ -1,13 +1,14 @@
 package edu.cmu.ml.rtw.generic.data.feature;
 
 
+import java.util.Arrays;
 import java.util.List;
 
 import edu.cmu.ml.rtw.generic.data.Context;
 import edu.cmu.ml.rtw.generic.data.DataTools;
 import edu.cmu.ml.rtw.generic.data.annotation.Datum;
+import edu.cmu.ml.rtw.generic.parse.Obj;
 import edu.cmu.ml.rtw.generic.util.Pair;
-import edu.cmu.ml.rtw.generic.util.StringUtil;
 
 /**
  * For datum d, string extractor S, and gazetteer G, 
@@ -18,6 +19,10 @@ import edu.cmu.ml.rtw.generic.util.StringUtil;
  * Where E is measures the normalized edit-distance 
  * between g and S(d).
  * 
+ * The 'editDistanceMeasure' parameter names the measure
+ * E from the StringPairMeasures registered in DataTools
+ * (by default, "NormalizedLevenshtein").
+ * 
  * @author Bill McDowell
  *
  * @param <D> datum type
@@ -36,11 +41,10 @@ public class FeatureGazetteerEditDistance<D extends Datum<L>, L> extends Feature
 		
 		this.extremumType = FeatureGazetteer.ExtremumType.Minimum;
 		
-		this.editDistanceMeasure = new DataTools.StringPairMeasure() {
-			public double compute(String str1, String str2) {
-				return StringUtil.levenshteinDistance(str1, str2)/((double)(str1.length()+str2.length()));
-			}
-		};
+		this.editDistanceMeasure = context.getDatumTools().getDataTools().getStringPairMeasure("NormalizedLevenshtein");
+		
+		this.parameterNames = Arrays.copyOf(this.parameterNames, this.parameterNames.length + 1);
+		this.parameterNames[this.parameterNames.length - 1] = "editDistanceMeasure";
 	}
 	
 	@Override
@@ -57,4 +61,26 @@ public class FeatureGazetteerEditDistance<D extends Datum<L>, L> extends Feature
 	public Feature<D, L> makeInstance(Context<D, L> context) {
 		return new FeatureGazetteerEditDistance<D, L>(context);
 	}
+	
+	@Override
+	public Obj getParameterValue(String parameter) {
+		Obj parameterValue = super.getParameterValue(parameter);
+		if (parameterValue != null)
+			return parameterValue;
+		else if (parameter.equals("editDistanceMeasure"))
+			return Obj.stringValue((this.editDistanceMeasure == null) ? "" : this.editDistanceMeasure.toString());
+		return null;
+	}
+	
+	@Override
+	public boolean setParameterValue(String parameter, Obj parameterValue) {
+		if (super.setParameterValue(parameter, parameterValue))
+			return true;
+		else if (parameter.equals("editDistanceMeasure"))
+			this.editDistanceMeasure = this.context.getDatumTools().getDataTools().getStringPairMeasure(this.context.getMatchValue(parameterValue));
+		else
+			return false;
+		
+		return true;
+	}
 }
@@ -74,7 +74,7 @@ public abstract class FeatureGram<D extends Datum<L>, L> extends Feature<D, L> {
 	
 	@Override
 	public boolean init(FeaturizedDataSet<D, L> dataSet) {
-		final CounterTable<String> counter = new CounterTable<String>();
+		final CounterTable<String> counter = new CounterTable<String>(true);
 		dataSet.map(new ThreadMapper.Fn<D, Boolean>() {
 			@Override
 			public Boolean apply(D datum) {
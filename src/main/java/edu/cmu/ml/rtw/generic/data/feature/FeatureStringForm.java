@@ -31,7 +31,7 @@ public class FeatureStringForm<D extends Datum<L>, L> extends Feature<D, L> {
 	
 	@Override
 	public boolean init(FeaturizedDataSet<D, L> dataSet) {
-		final CounterTable<String> counter = new CounterTable<String>();
+		final CounterTable<String> counter = new CounterTable<String>(true);
 		dataSet.map(new ThreadMapper.Fn<D, Boolean>() {
 			@Override
 			public Boolean apply(D datum) {
@@ -29,10 +29,14 @@ import edu.cmu.ml.rtw.generic.util.ThreadMapper.Fn;
  * evaluate models.  
  * 
  * The current implementation computes the features on demand as their
- * values are requested, and permanently caches their values in memory.
- * In the future, this might be improved so that some values can be
- * evicted from the cache and possibly serialized/deserialized from
- * disk.
+ * values are requested, and caches their values in a VectorStore.  By
+ * default, the store permanently keeps the values in memory, but
+ * a VectorStoreBounded can be set through setVectorStore so that
+ * values are evicted from memory and possibly spilled to disk.
+ * Subsets, samples, and binary versions of the data set share its 
+ * store until the features of one of them change, at which point the 
+ * changed data set moves to a new empty store (see 
+ * VectorStore.makeInstance).
  * 
  * @author Bill McDowell
  *
@@ -47,9 +51,10 @@ public class FeaturizedDataSet<D extends Datum<L>, L> extends DataSet<D, L> {
 	private Map<String, Feature<D, L>> referencedFeatures; // Maps from reference names to features
 	private TreeMap<Integer, Feature<D, L>> features; // Maps from the feature's starting vocabulary index to the feature
 	private Map<Integer, String> featureVocabularyNames; // Sparse map from indices to names
-	private Map<Integer, Vector> featureVocabularyValues; // Map from datum ids to indices to values
+	private VectorStore featureVocabularyValues; // Map from datum ids to indices to values
 	private int featureVocabularySize;
 	private boolean precomputedFeatures;
+	private boolean sharedVectorStore; // Whether the vector store is shared with derived data sets
 	
 	public FeaturizedDataSet(String name, Datum.Tools<D, L> datumTools, Datum.Tools.LabelMapping<L> labelMapping) {
 		this(name, 1, datumTools, labelMapping);
@@ -73,7 +78,7 @@ public class FeaturizedDataSet<D extends Datum<L>, L> extends DataSet<D, L> {
 				addFeature(feature);
 		
 		this.featureVocabularyNames = new ConcurrentHashMap<Integer, String>();
-		this.featureVocabularyValues = new ConcurrentHashMap<Integer, Vector>();
+		this.featureVocabularyValues = new VectorStoreInMemory();
 		this.precomputedFeatures = false;
 	}
 	
@@ -94,6 +99,22 @@ public class FeaturizedDataSet<D extends Datum<L>, L> extends DataSet<D, L> {
 		return true;
 	}
 	
+	public VectorStore getVectorStore() {
+		return this.featureVocabularyValues;
+	}
+	
+	/**
+	 * @param vectorStore
+	 * @return true if the store has been set.  Vectors cached in the
+	 * previous store are discarded, and will be recomputed on demand.
+	 */
+	public boolean setVectorStore(VectorStore vectorStore) {
+		this.featureVocabularyValues = vectorStore;
+		this.precomputedFeatures = false;
+		this.sharedVectorStore = false;
+		return true;
+	}
+	
 	public <T> List<T> map(final ThreadMapper.Fn<D, T> fn) {
 		return map(fn, this.maxThreads);
 	}
@@ -159,6 +180,13 @@ public class FeaturizedDataSet<D extends Datum<L>, L> extends DataSet<D, L> {
 	
 	
 	private boolean addFeatureHelper(Feature<D, L> feature) {
+		if (this.sharedVectorStore) {
+			// Vectors in the shared store were computed from the previous features
+			this.featureVocabularyValues = this.featureVocabularyValues.makeInstance();
+			this.precomputedFeatures = false;
+			this.sharedVectorStore = false;
+		}
+		
 		if (!feature.isIgnored()) {
 			this.features.put(this.featureVocabularySize, feature);
 			this.featureVocabularySize += feature.getVocabularySize();
@@ -251,8 +279,9 @@ public class FeaturizedDataSet<D extends Datum<L>, L> extends DataSet<D, L> {
 	public Vector getFeatureVocabularyValues(D datum, boolean cacheValues) {
 		if (!this.data.containsKey(datum.getId()))
 			return null;
-		if (this.featureVocabularyValues.containsKey(datum.getId()))
-			return this.featureVocabularyValues.get(datum.getId());
+		Vector cachedVector = this.featureVocabularyValues.get(datum.getId());
+		if (cachedVector != null)
+			return cachedVector;
 		
 		Map<Integer, Double> values = new HashMap<Integer, Double>();
 		for (Entry<Integer, Feature<D, L>> featureEntry : this.features.entrySet()) {
@@ -324,18 +353,47 @@ public class FeaturizedDataSet<D extends Datum<L>, L> extends DataSet<D, L> {
 		if (!subset.addFeatures(this.featureList, false))
 			return null;
 		
+		// Share the cached feature values (rather than copying them) so
+		// that subsets stay within the bounds of the configured vector store
 		subset.featureVocabularyNames = this.featureVocabularyNames;
+		subset.featureVocabularyValues = this.featureVocabularyValues;
 		subset.precomputedFeatures = this.precomputedFeatures;
+		subset.sharedVectorStore = true;
+		this.sharedVectorStore = true;
 		
-		while (iterator.hasNext()) {
-			D datum = iterator.next();
-			subset.add(datum);
-			subset.featureVocabularyValues.put(datum.getId(), this.featureVocabularyValues.get(datum.getId()));
-		}
+		while (iterator.hasNext())
+			subset.add(iterator.next());
 		
 		return subset;
 	}
 	
+	/**
+	 * @param fraction
+	 * @param random
+	 * @return a random sample containing the given fraction of the data, 
+	 * sharing this data set's features and cached feature values.  Samples 
+	 * drawn using Randoms with the same seed are nested, so that smaller 
+	 * samples are subsets of larger ones.
+	 */
+	public FeaturizedDataSet<D, L> getSample(double fraction, Random random) {
+		FeaturizedDataSet<D, L> sample = new FeaturizedDataSet<D, L>(this.name + " " + fraction, this.maxThreads, getDatumTools(), getLabelMapping());
+		if (!sample.addFeatures(this.featureList, false))
+			return null;
+		
+		sample.featureVocabularyNames = this.featureVocabularyNames;
+		sample.featureVocabularyValues = this.featureVocabularyValues;
+		sample.precomputedFeatures = this.precomputedFeatures;
+		sample.sharedVectorStore = true;
+		this.sharedVectorStore = true;
+		
+		List<Integer> permutation = constructRandomDataPermutation(random);
+		int sampleSize = Math.min(permutation.size(), Math.max(1, (int)Math.round(fraction * permutation.size())));
+		for (int i = 0; i < sampleSize; i++)
+			sample.add(getDatumById(permutation.get(i)));
+		
+		return sample;
+	}
+	
 	@Override
 	public <T extends Datum<Boolean>> DataSet<T, Boolean> makeBinary(LabelIndicator<L> labelIndicator, Context<T, Boolean> context) {
 		List<Feature<T, Boolean>> features = new ArrayList<Feature<T, Boolean>>();
@@ -352,6 +410,8 @@ public class FeaturizedDataSet<D extends Datum<L>, L> extends DataSet<D, L> {
 		dataSet.featureVocabularySize = this.featureVocabularySize;
 		dataSet.featureVocabularyNames = this.featureVocabularyNames;
 		dataSet.featureVocabularyValues = this.featureVocabularyValues;
+		dataSet.sharedVectorStore = true;
+		this.sharedVectorStore = true;
 		
 		return dataSet;
 	}
@@ -0,0 +1,62 @@
+package edu.cmu.ml.rtw.generic.data.feature;
+
+import org.platanios.learn.math.matrix.Vector;
+
+/**
+ * VectorStore holds the feature vectors that a FeaturizedDataSet
+ * has computed for its datums, keyed by datum id.  Implementations
+ * decide how much of the store is kept in memory, so that a
+ * FeaturizedDataSet over a large number of datums does not need to
+ * keep every vector on the heap.
+ *
+ * Implementations must be safe to use from multiple threads, since
+ * FeaturizedDataSet computes vectors from within DataSet.map.
+ *
+ * @author Bill McDowell
+ *
+ */
+public interface VectorStore {
+	/**
+	 * @param datumId
+	 * @return the vector stored for the datum, or null if there is no
+	 * vector stored for it.  Callers must not modify the returned vector.
+	 */
+	Vector get(int datumId);
+
+	/**
+	 * @param datumId
+	 * @param vector
+	 * @return true if the vector has been stored
+	 */
+	boolean put(int datumId, Vector vector);
+
+	boolean contains(int datumId);
+
+	/**
+	 * @return the number of lookups that found a stored vector
+	 */
+	long getHitCount();
+
+	/**
+	 * @return the number of lookups that did not find a stored vector
+	 */
+	long getMissCount();
+
+	/**
+	 * @return the number of vectors that have been evicted from memory
+	 */
+	long getEvictionCount();
+
+	/**
+	 * Removes all stored vectors and releases any resources held by the
+	 * store.
+	 */
+	void clear();
+
+	/**
+	 * @return an empty store configured like this one.  This is used
+	 * by data sets that stop sharing a store when their features
+	 * change.
+	 */
+	VectorStore makeInstance();
+}
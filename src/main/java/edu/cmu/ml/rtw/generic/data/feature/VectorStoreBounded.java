@@ -0,0 +1,296 @@
+package edu.cmu.ml.rtw.generic.data.feature;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.platanios.learn.math.matrix.SparseVector;
+import org.platanios.learn.math.matrix.Vector;
+import org.platanios.learn.math.matrix.Vector.VectorElement;
+
+/**
+ * VectorStoreBounded keeps a bounded number of bytes worth of vectors
+ * in memory, and evicts the least recently used vectors when that
+ * bound is exceeded.  Vectors are held in memory as compressed
+ * (CSR-style) index and value arrays rather than as boxed maps.
+ *
+ * If a spill file is given, evicted vectors are written to a
+ * memory-mapped file, and read back from it (and returned to the
+ * in-memory tier) when they are requested again.  Otherwise, evicted
+ * vectors are dropped, and the FeaturizedDataSet using the store will
+ * recompute them on demand.
+ *
+ * Each vector is written to the spill file at most once, since vectors
+ * never change after they are stored.  The vectors returned by get
+ * are copies, so modifying them does not change the stored vectors.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class VectorStoreBounded implements VectorStore {
+	private static final int SPILL_SEGMENT_SIZE = 64*1024*1024;
+	private static final int VECTOR_OVERHEAD_BYTES = 64;
+
+	private static class CompressedVector {
+		private int size;
+		private int[] indices;
+		private double[] values;
+
+		public CompressedVector(int size, int[] indices, double[] values) {
+			this.size = size;
+			this.indices = indices;
+			this.values = values;
+		}
+
+		public long getMemoryBytes() {
+			return VECTOR_OVERHEAD_BYTES + this.indices.length*12L;
+		}
+
+		public int getSpillBytes() {
+			return 8 + this.indices.length*12;
+		}
+
+		public Vector toVector() {
+			return new SparseVector(this.size, Arrays.copyOf(this.indices, this.indices.length), Arrays.copyOf(this.values, this.values.length));
+		}
+	}
+
+	private long maxMemoryBytes;
+	private long memoryBytes;
+	private LinkedHashMap<Integer, CompressedVector> memory;
+
+	private File spillFile;
+	private RandomAccessFile spillAccess;
+	private List<MappedByteBuffer> spillSegments;
+	private long spillLength;
+	private Map<Integer, Long> spillLocations; // Maps datum ids to (segment index << 32 | segment position)
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long spills;
+	private int instances;
+
+	/**
+	 * @param maxMemoryBytes approximate number of bytes of vectors to keep
+	 * in memory
+	 */
+	public VectorStoreBounded(long maxMemoryBytes) {
+		this(maxMemoryBytes, null);
+	}
+
+	/**
+	 * @param maxMemoryBytes approximate number of bytes of vectors to keep
+	 * in memory
+	 * @param spillFile file to which evicted vectors are written.  If null,
+	 * evicted vectors are dropped.
+	 */
+	public VectorStoreBounded(long maxMemoryBytes, File spillFile) {
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.memoryBytes = 0;
+		this.memory = new LinkedHashMap<Integer, CompressedVector>(16, .75F, true);
+		this.spillFile = spillFile;
+		this.spillSegments = new ArrayList<MappedByteBuffer>();
+		this.spillLength = 0;
+		this.spillLocations = new HashMap<Integer, Long>();
+	}
+
+	@Override
+	public synchronized Vector get(int datumId) {
+		CompressedVector vector = this.memory.get(datumId);
+		if (vector != null) {
+			this.hits++;
+			return vector.toVector();
+		}
+
+		Long spillLocation = this.spillLocations.get(datumId);
+		if (spillLocation == null) {
+			this.misses++;
+			return null;
+		}
+
+		this.hits++;
+		vector = readSpilled(spillLocation);
+		putInMemory(datumId, vector);
+		return vector.toVector();
+	}
+
+	@Override
+	public synchronized boolean put(int datumId, Vector vector) {
+		if (this.memory.containsKey(datumId) || this.spillLocations.containsKey(datumId))
+			return true;
+		return putInMemory(datumId, compress(vector));
+	}
+
+	@Override
+	public synchronized boolean contains(int datumId) {
+		return this.memory.containsKey(datumId) || this.spillLocations.containsKey(datumId);
+	}
+
+	@Override
+	public synchronized long getHitCount() {
+		return this.hits;
+	}
+
+	@Override
+	public synchronized long getMissCount() {
+		return this.misses;
+	}
+
+	@Override
+	public synchronized long getEvictionCount() {
+		return this.evictions;
+	}
+
+	/**
+	 * @return the number of vectors that have been written to the spill
+	 * file
+	 */
+	public synchronized long getSpillCount() {
+		return this.spills;
+	}
+
+	public synchronized long getMemoryBytes() {
+		return this.memoryBytes;
+	}
+
+	@Override
+	public synchronized void clear() {
+		this.memory.clear();
+		this.memoryBytes = 0;
+		this.spillLocations.clear();
+		this.spillSegments.clear();
+		this.spillLength = 0;
+
+		if (this.spillAccess != null) {
+			try {
+				this.spillAccess.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			this.spillAccess = null;
+			this.spillFile.delete();
+		}
+	}
+
+	/**
+	 * @return an empty store with the same memory bound.  If this store
+	 * spills to a file, then the new store spills to a file next to it.
+	 */
+	@Override
+	public synchronized VectorStore makeInstance() {
+		this.instances++;
+		if (this.spillFile == null)
+			return new VectorStoreBounded(this.maxMemoryBytes);
+		else
+			return new VectorStoreBounded(this.maxMemoryBytes, new File(this.spillFile.getPath() + "." + this.instances));
+	}
+
+	private boolean putInMemory(int datumId, CompressedVector vector) {
+		this.memory.put(datumId, vector);
+		this.memoryBytes += vector.getMemoryBytes();
+
+		Iterator<Entry<Integer, CompressedVector>> iterator = this.memory.entrySet().iterator();
+		while (this.memoryBytes > this.maxMemoryBytes && iterator.hasNext()) {
+			Entry<Integer, CompressedVector> eldest = iterator.next();
+			if (eldest.getKey() == datumId)
+				break;
+
+			iterator.remove();
+			this.memoryBytes -= eldest.getValue().getMemoryBytes();
+			this.evictions++;
+
+			if (this.spillFile != null && !this.spillLocations.containsKey(eldest.getKey())) {
+				if (!spill(eldest.getKey(), eldest.getValue()))
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean spill(int datumId, CompressedVector vector) {
+		int recordBytes = vector.getSpillBytes();
+		MappedByteBuffer segment = (this.spillSegments.isEmpty()) ? null : this.spillSegments.get(this.spillSegments.size() - 1);
+
+		try {
+			if (segment == null || segment.remaining() < recordBytes) {
+				if (this.spillAccess == null)
+					this.spillAccess = new RandomAccessFile(this.spillFile, "rw");
+
+				int segmentSize = Math.max(SPILL_SEGMENT_SIZE, recordBytes);
+				segment = this.spillAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, this.spillLength, segmentSize);
+				this.spillSegments.add(segment);
+				this.spillLength += segmentSize;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+
+		long location = (((long)(this.spillSegments.size() - 1)) << 32) | segment.position();
+		segment.putInt(vector.size);
+		segment.putInt(vector.indices.length);
+		for (int i = 0; i < vector.indices.length; i++)
+			segment.putInt(vector.indices[i]);
+		for (int i = 0; i < vector.values.length; i++)
+			segment.putDouble(vector.values[i]);
+
+		this.spillLocations.put(datumId, location);
+		this.spills++;
+
+		return true;
+	}
+
+	private CompressedVector readSpilled(long location) {
+		MappedByteBuffer segment = this.spillSegments.get((int)(location >>> 32));
+		int position = (int)location;
+
+		int size = segment.getInt(position);
+		int length = segment.getInt(position + 4);
+		position += 8;
+
+		int[] indices = new int[length];
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			indices[i] = segment.getInt(position);
+			position += 4;
+		}
+
+		for (int i = 0; i < length; i++) {
+			values[i] = segment.getDouble(position);
+			position += 8;
+		}
+
+		return new CompressedVector(size, indices, values);
+	}
+
+	private CompressedVector compress(Vector vector) {
+		int[] indices = new int[16];
+		double[] values = new double[16];
+		int length = 0;
+
+		for (VectorElement element : vector) {
+			if (length == indices.length) {
+				indices = Arrays.copyOf(indices, length*2);
+				values = Arrays.copyOf(values, length*2);
+			}
+
+			indices[length] = element.index();
+			values[length] = element.value();
+			length++;
+		}
+
+		return new CompressedVector(vector.size(), Arrays.copyOf(indices, length), Arrays.copyOf(values, length));
+	}
+}
@@ -0,0 +1,72 @@
+package edu.cmu.ml.rtw.generic.data.feature;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.platanios.learn.math.matrix.Vector;
+
+/**
+ * VectorStoreInMemory permanently keeps every stored vector in
+ * memory.  This is the default store used by FeaturizedDataSet.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class VectorStoreInMemory implements VectorStore {
+	private Map<Integer, Vector> vectors;
+	private AtomicLong hits;
+	private AtomicLong misses;
+
+	public VectorStoreInMemory() {
+		this.vectors = new ConcurrentHashMap<Integer, Vector>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	@Override
+	public Vector get(int datumId) {
+		Vector vector = this.vectors.get(datumId);
+		if (vector == null)
+			this.misses.incrementAndGet();
+		else
+			this.hits.incrementAndGet();
+		return vector;
+	}
+
+	@Override
+	public boolean put(int datumId, Vector vector) {
+		this.vectors.put(datumId, vector);
+		return true;
+	}
+
+	@Override
+	public boolean contains(int datumId) {
+		return this.vectors.containsKey(datumId);
+	}
+
+	@Override
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return 0;
+	}
+
+	@Override
+	public void clear() {
+		this.vectors.clear();
+	}
+
+	@Override
+	public VectorStore makeInstance() {
+		return new VectorStoreInMemory();
+	}
+}
@@ -2,72 +2,179 @@ package edu.cmu.ml.rtw.generic.data.feature.fn;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
+import edu.cmu.ml.rtw.generic.parse.Assignment;
+import edu.cmu.ml.rtw.generic.parse.AssignmentList;
 import edu.cmu.ml.rtw.generic.parse.CtxParsableFunction;
+import edu.cmu.ml.rtw.generic.parse.Obj;
 import edu.cmu.ml.rtw.generic.data.Context;
+import edu.cmu.ml.rtw.generic.util.SegmentedCache;
 
+/**
+ * Fn represents a function from a collection of S to a collection of T,
+ * with optional caching of outputs by id.
+ * 
+ * The caches are SegmentedCaches with size and weight limits that can
+ * be set for each function through internal assignments in a context, 
+ * as in:
+ * 
+ * ts_fn ins1=NGramInside(n="1") { value cacheSize="50000"; value cacheWeight="1000000"; };
+ * 
+ * where the weight of a cached output is the number of elements in it.
+ * 
+ * @author Bill McDowell
+ *
+ */
 public abstract class Fn<S, T> extends CtxParsableFunction {
-	private int CACHE_SIZE = 20000; // FIXME Set this elsewhere
+	private static final int DEFAULT_CACHE_SIZE = 20000;
+	private static final long DEFAULT_CACHE_WEIGHT = Long.MAX_VALUE;
 	
 	public enum CacheMode {
 		ON,
 		OFF
 	}
 	
-	private Map<String, List<T>> listCache;
-	private Map<String, Set<T>> setCache;
+	private int cacheSize = DEFAULT_CACHE_SIZE;
+	private long cacheWeight = DEFAULT_CACHE_WEIGHT;
+	private volatile SegmentedCache<String, List<T>> listCache;
+	private volatile SegmentedCache<String, Set<T>> setCache;
 	
 	protected void addToSetCache(String id, Set<T> output) {
-		this.setCache.put(id, output);
+		getInitializedSetCache().put(id, output);
 	}
 	
 	protected Set<T> lookupSetCache(String id) {
-		return this.setCache.get(id);
+		return getInitializedSetCache().get(id);
 	}
 	
-	protected void initializeSetCache() {
+	protected synchronized void initializeSetCache() {
 		if (this.setCache == null) {
-			this.setCache = Collections.synchronizedMap(new LinkedHashMap<String, Set<T>>(CACHE_SIZE, .75F, true) {
-				private static final long serialVersionUID = 1L;
-	
-				// This method is called just after a new entry has been added
-			    public boolean removeEldestEntry(Map.Entry<String, Set<T>> eldest) {
-			        return size() > CACHE_SIZE;
-			    }
+			this.setCache = new SegmentedCache<String, Set<T>>(this.cacheSize, this.cacheWeight, new SegmentedCache.Weigher<String, Set<T>>() {
+				@Override
+				public int weigh(String key, Set<T> value) {
+					return value.size() + 1;
+				}
 			});
 		}
 	}
 	
 	protected void addToListCache(String id, List<T> output) {
-		this.listCache.put(id, output);
+		getInitializedListCache().put(id, output);
 	}
 	
 	protected List<T> lookupListCache(String id) {
-		return this.listCache.get(id);
+		return getInitializedListCache().get(id);
 	}
 	
-	protected void initializeListCache() {
+	protected synchronized void initializeListCache() {
 		if (this.listCache == null) {
-			this.listCache = Collections.synchronizedMap(new LinkedHashMap<String, List<T>>(CACHE_SIZE, .75F, true) {
-				private static final long serialVersionUID = 1L;
-	
-				// This method is called just after a new entry has been added
-			    public boolean removeEldestEntry(Map.Entry<String, List<T>> eldest) {
-			        return size() > CACHE_SIZE;
-			    }
+			this.listCache = new SegmentedCache<String, List<T>>(this.cacheSize, this.cacheWeight, new SegmentedCache.Weigher<String, List<T>>() {
+				@Override
+				public int weigh(String key, List<T> value) {
+					return value.size() + 1;
+				}
 			});
 		}
 	}
 	
-	public List<T> listCachedCompute(Collection<S> input, String id) {
-		initializeListCache();
+	/**
+	 * @return the list cache, initializing it if necessary.  The field is
+	 * read once, so callers keep a usable cache even if setCacheLimits
+	 * replaces it concurrently.
+	 */
+	private SegmentedCache<String, List<T>> getInitializedListCache() {
+		SegmentedCache<String, List<T>> listCache = this.listCache;
+		if (listCache != null)
+			return listCache;
 		
+		synchronized (this) {
+			initializeListCache();
+			return this.listCache;
+		}
+	}
+	
+	private SegmentedCache<String, Set<T>> getInitializedSetCache() {
+		SegmentedCache<String, Set<T>> setCache = this.setCache;
+		if (setCache != null)
+			return setCache;
+		
+		synchronized (this) {
+			initializeSetCache();
+			return this.setCache;
+		}
+	}
+	
+	public int getCacheSize() {
+		return this.cacheSize;
+	}
+	
+	public long getCacheWeight() {
+		return this.cacheWeight;
+	}
+	
+	/**
+	 * Sets the size and weight limits of the caches.  This replaces the
+	 * caches with empty ones that are created on the next cached compute.
+	 * 
+	 * @param cacheSize maximum number of outputs in each cache
+	 * @param cacheWeight maximum total number of elements of the outputs in 
+	 * each cache
+	 */
+	public synchronized void setCacheLimits(int cacheSize, long cacheWeight) {
+		this.cacheSize = cacheSize;
+		this.cacheWeight = cacheWeight;
+		this.listCache = null;
+		this.setCache = null;
+	}
+	
+	/**
+	 * @return the list output cache, for querying its statistics (or null if
+	 * no list outputs have been cached)
+	 */
+	public SegmentedCache<String, List<T>> getListCache() {
+		return this.listCache;
+	}
+	
+	/**
+	 * @return the set output cache, for querying its statistics (or null if
+	 * no set outputs have been cached)
+	 */
+	public SegmentedCache<String, Set<T>> getSetCache() {
+		return this.setCache;
+	}
+	
+	public long getCacheHitCount() {
+		long hits = 0;
+		SegmentedCache<String, List<T>> listCache = this.listCache;
+		SegmentedCache<String, Set<T>> setCache = this.setCache;
+		if (listCache != null)
+			hits += listCache.getHitCount();
+		if (setCache != null)
+			hits += setCache.getHitCount();
+		return hits;
+	}
+	
+	public long getCacheMissCount() {
+		long misses = 0;
+		SegmentedCache<String, List<T>> listCache = this.listCache;
+		SegmentedCache<String, Set<T>> setCache = this.setCache;
+		if (listCache != null)
+			misses += listCache.getMissCount();
+		if (setCache != null)
+			misses += setCache.getMissCount();
+		return misses;
+	}
+	
+	public double getCacheHitRate() {
+		long hits = getCacheHitCount();
+		long requests = hits + getCacheMissCount();
+		return (requests == 0) ? 0.0 : hits / (double)requests;
+	}
+	
+	public List<T> listCachedCompute(Collection<S> input, String id) {
 		List<T> output = lookupListCache(id);
 		if (output != null)
 			return output;
@@ -80,8 +187,6 @@ public abstract class Fn<S, T> extends CtxParsableFunction {
 	}
 	
 	public Set<T> setCachedCompute(Collection<S> input, String id) {
-		initializeSetCache();
-		
 		Set<T> output = lookupSetCache(id);
 		if (output != null) {
 			return output;
@@ -94,9 +199,46 @@ public abstract class Fn<S, T> extends CtxParsableFunction {
 		return output;
 	}
 	
+	/**
+	 * Removes all outputs from the caches.  The caches are cleared in place,
+	 * so this is safe to call while other threads are computing outputs.
+	 */
 	public void clearCaches() {
-		this.listCache = null;
-		this.setCache = null;
+		SegmentedCache<String, List<T>> listCache = this.listCache;
+		SegmentedCache<String, Set<T>> setCache = this.setCache;
+		if (listCache != null)
+			listCache.clear();
+		if (setCache != null)
+			setCache.clear();
+	}
+	
+	@Override
+	public Obj toParse(boolean includeInternal) {
+		Obj.Function function = (Obj.Function)super.toParse(includeInternal);
+		if (!includeInternal)
+			return function;
+		
+		AssignmentList internal = function.getInternalAssignments();
+		if (this.cacheSize != DEFAULT_CACHE_SIZE)
+			internal.add(Assignment.assignmentTyped(null, Context.VALUE_STR, "cacheSize", Obj.stringValue(String.valueOf(this.cacheSize))));
+		if (this.cacheWeight != DEFAULT_CACHE_WEIGHT)
+			internal.add(Assignment.assignmentTyped(null, Context.VALUE_STR, "cacheWeight", Obj.stringValue(String.valueOf(this.cacheWeight))));
+		
+		return function;
+	}
+	
+	@Override
+	protected boolean fromParseHelper(Obj obj) {
+		AssignmentList internal = ((Obj.Function)obj).getInternalAssignments();
+		if (internal != null) {
+			// FIXME Handle type errors
+			if (internal.contains("cacheSize"))
+				this.cacheSize = Integer.valueOf(((Obj.Value)internal.get("cacheSize").getValue()).getStr());
+			if (internal.contains("cacheWeight"))
+				this.cacheWeight = Long.valueOf(((Obj.Value)internal.get("cacheWeight").getValue()).getStr());
+		}
+		
+		return super.fromParseHelper(obj);
 	}
 	
 	public List<T> listCompute(Collection<S> input, String id, CacheMode cacheMode) {
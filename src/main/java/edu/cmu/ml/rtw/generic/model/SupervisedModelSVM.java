@@ -8,6 +8,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.platanios.learn.math.matrix.Vector;
+import org.platanios.learn.math.matrix.Vector.VectorElement;
 
 import edu.cmu.ml.rtw.generic.data.Context;
 import edu.cmu.ml.rtw.generic.data.annotation.Datum;
@@ -19,6 +24,8 @@ import edu.cmu.ml.rtw.generic.parse.AssignmentList;
 import edu.cmu.ml.rtw.generic.parse.Obj;
 import edu.cmu.ml.rtw.generic.util.BidirectionalLookupTable;
 import edu.cmu.ml.rtw.generic.util.OutputWriter;
+import edu.cmu.ml.rtw.generic.util.ThreadMapper;
+import edu.cmu.ml.rtw.generic.util.ThreadPool;
 
 /**
  * SupervisedModelSVM represents a multi-class SVM trained with
@@ -28,6 +35,14 @@ import edu.cmu.ml.rtw.generic.util.OutputWriter;
  * gradient updates are theoretically sound when used with AdaGrad (haven't
  * taken the time to think about it), but it seems to work anyway.
  * 
+ * The weights are kept in a WeightStore, which is either a sparse
+ * primitive hash table ('weightStore=Sparse' in the extra info) or
+ * a dense paged array ('weightStore=Dense').  If 'trainingThreads' is
+ * greater than 1, then each training iteration makes lock-free Hogwild
+ * updates to a dense store from multiple threads.  Stores that don't 
+ * support concurrent updates (see WeightStore.supportsConcurrentUpdates)
+ * are always updated from a single thread.
+ * 
  * @author Bill McDowell
  *
  * @param <D> datum type
@@ -37,14 +52,15 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 	protected BidirectionalLookupTable<L, Integer> labelIndices;
 	protected int trainingIterations; // number of training iterations for which to run (set through 'extra info')
 	protected boolean earlyStopIfNoLabelChange; // whether to have early stopping when no prediction changes on dev set (set through 'extra info')
+	protected String weightStore = "Sparse"; // type of weight store ('Sparse' or 'Dense') (set through 'extra info')
+	protected int trainingThreads = 1; // number of Hogwild training threads.  More than 1 forces a dense weight store (set through 'extra info')
 	protected Map<Integer, String> featureNames; // map from feature indices to their names
 	protected int numFeatures; // total number of features
 	protected double[] bias_b;
-	protected Map<Integer, Double> feature_w; // Labels x (Input features (percepts)) sparse weights mapped from weight indices 
+	protected WeightStore feature_w; // Labels x (Input features (percepts)) weights and their Adagrad G (diagonal) indexed by weight indices 
 	
 	// Adagrad stuff
 	protected int t;
-	protected Map<Integer, Double> feature_G;  // Just diagonal
 	protected double[] bias_G;
 	
 	protected double l2; // l2 regularizer
@@ -54,7 +70,7 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 	protected Random random;
 
 	public SupervisedModelSVM() {
-		this.featureNames = new HashMap<Integer, String>();
+		this.featureNames = new ConcurrentHashMap<Integer, String>();
 	}
 	
 	public SupervisedModelSVM(Context<D, L> context) {
@@ -137,10 +153,9 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 			
 			this.bias_b = new double[this.validLabels.size()];
 			this.numFeatures = data.getFeatureVocabularySize();
-			this.feature_w = new HashMap<Integer, Double>(); 	
+			this.feature_w = makeWeightStore((long)this.validLabels.size()*this.numFeatures);
 	
 			this.bias_G = new double[this.bias_b.length];
-			this.feature_G = new HashMap<Integer, Double>();
 		}
 		
 		this.random = data.getDatumTools().getDataTools().makeLocalRandom();
@@ -148,6 +163,13 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 		return true;
 	}
 	
+	protected WeightStore makeWeightStore(long numWeights) {
+		if (this.trainingThreads > 1 || this.weightStore.equals("Dense"))
+			return new WeightStoreDense(numWeights);
+		else
+			return new WeightStoreSparse();
+	}
+	
 	/**
 	 * @param iteration
 	 * @param data
@@ -156,13 +178,15 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 	 */
 	protected boolean trainOneIteration(int iteration, FeaturizedDataSet<D, L> data) {
 		List<Integer> dataPermutation = data.constructRandomDataPermutation(this.random);
+		if (this.trainingThreads > 1 && this.feature_w.supportsConcurrentUpdates())
+			return trainOneIterationHogwild(iteration, data, dataPermutation);
 		
 		for (Integer datumId : dataPermutation) {
 			D datum = data.getDatumById(datumId);
 			L datumLabel = this.mapValidLabel(datum.getLabel());
 			L bestLabel = argMaxScoreLabel(data, datum, true);
 
-			if (!trainOneDatum(datum, datumLabel, bestLabel, iteration, data)) {
+			if (!trainOneDatum(datum, datumLabel, bestLabel, iteration, this.t, data)) {
 				return false;
 			}
 			
@@ -171,113 +195,110 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 		return true;
 	}
 	
+	/**
+	 * @param iteration
+	 * @param data
+	 * @param dataPermutation
+	 * @return true if the model has been trained for a full pass over the
+	 * training data set using 'trainingThreads' threads that update the
+	 * weights without locking (Hogwild)
+	 */
+	protected boolean trainOneIterationHogwild(final int iteration, final FeaturizedDataSet<D, L> data, List<Integer> dataPermutation) {
+		final AtomicInteger t = new AtomicInteger(this.t);
+		List<Boolean> results = ThreadPool.getShared().map(dataPermutation, dataPermutation.size(), new ThreadMapper.Fn<Integer, Boolean>() {
+			@Override
+			public Boolean apply(Integer datumId) {
+				D datum = data.getDatumById(datumId);
+				L datumLabel = mapValidLabel(datum.getLabel());
+				L bestLabel = argMaxScoreLabel(data, datum, true);
+				return trainOneDatum(datum, datumLabel, bestLabel, iteration, t.getAndIncrement(), data);
+			}
+		}, this.trainingThreads).get();
+		
+		this.t = t.get();
+		
+		if (results == null)
+			return false;
+		for (Boolean result : results)
+			if (!result)
+				return false;
+		return true;
+	}
+	
 	/**
 	 * 
 	 * @param datum
 	 * @param datumLabel
 	 * @param bestLabel
 	 * @param iteration
+	 * @param t number of datums that the model has been trained on so far
 	 * @param data
 	 * @return true if the model has made SGD weight updates from a single datum.
 	 */
-	protected boolean trainOneDatum(D datum, L datumLabel, L bestLabel, int iteration, FeaturizedDataSet<D, L> data) {
+	protected boolean trainOneDatum(D datum, L datumLabel, L bestLabel, int iteration, int t, FeaturizedDataSet<D, L> data) {
 		int N = data.size();
 		double K = N/4.0;
 		boolean datumLabelBest = datumLabel.equals(bestLabel);
-		boolean regularizerUpdate = (this.t % K == 0); // for "occasionality trick"
+		boolean regularizerUpdate = (t % K == 0); // for "occasionality trick"
 		
-		Map<Integer, Double> datumFeatureValues = data.getFeatureVocabularyValuesAsMap(datum);
+		Vector datumFeatureValues = data.getFeatureVocabularyValues(datum);
 		
 		if (iteration == 0) {
 			List<Integer> missingNameKeys = new ArrayList<Integer>();
-			for (Integer key : datumFeatureValues.keySet())
-				if (!this.featureNames.containsKey(key))
-					missingNameKeys.add(key);
+			for (VectorElement featureValue : datumFeatureValues)
+				if (!this.featureNames.containsKey(featureValue.index()))
+					missingNameKeys.add(featureValue.index());
 			this.featureNames.putAll(data.getFeatureVocabularyNamesForIndices(missingNameKeys));
 		}
 		
 		if (datumLabelBest && !regularizerUpdate) // No update necessary
 			return true;
-			
+		
+		int datumLabelIndex = this.labelIndices.get(datumLabel);
+		int bestLabelIndex = this.labelIndices.get(bestLabel);
+		
 		// Update feature weights
 		if (!regularizerUpdate) { // Update only for loss function gradients
-			for (Entry<Integer, Double> featureValue : datumFeatureValues.entrySet()) {
-				int i_datumLabelWeight = getWeightIndex(datumLabel, featureValue.getKey());
-				int i_bestLabelWeight = getWeightIndex(bestLabel, featureValue.getKey());
-				
-				if (!this.feature_w.containsKey(i_datumLabelWeight)) {
-					this.feature_w.put(i_datumLabelWeight, 0.0);
-					this.feature_G.put(i_datumLabelWeight, 0.0);
-				}
-				
-				if (!this.feature_w.containsKey(i_bestLabelWeight)) {
-					this.feature_w.put(i_bestLabelWeight, 0.0);
-					this.feature_G.put(i_bestLabelWeight, 0.0);
-				}
-				
-				// Gradients
-				double g_datumLabelWeight = -featureValue.getValue();
-				double g_bestLabelWeight = featureValue.getValue();
-				
-				// Adagrad G
-				double G_datumLabelWeight = this.feature_G.get(i_datumLabelWeight) + g_datumLabelWeight*g_datumLabelWeight;
-				double G_bestLabelWeight = this.feature_G.get(i_bestLabelWeight) + g_bestLabelWeight*g_bestLabelWeight;
-				
-				this.feature_G.put(i_datumLabelWeight, G_datumLabelWeight);
-				this.feature_G.put(i_bestLabelWeight, G_bestLabelWeight);
-				
-				// Learning rates
-				double eta_datumLabelWeight = 1.0/Math.sqrt(G_datumLabelWeight);
-				double eta_bestLabelWeight = 1.0/Math.sqrt(G_bestLabelWeight);
-				
-				// Weight update
-				this.feature_w.put(i_datumLabelWeight, this.feature_w.get(i_datumLabelWeight) - eta_datumLabelWeight*g_datumLabelWeight);
-				this.feature_w.put(i_bestLabelWeight, this.feature_w.get(i_bestLabelWeight) - eta_bestLabelWeight*g_bestLabelWeight);
+			for (VectorElement featureValue : datumFeatureValues) {
+				this.feature_w.update(getWeightIndex(datumLabelIndex, featureValue.index()), -featureValue.value());
+				this.feature_w.update(getWeightIndex(bestLabelIndex, featureValue.index()), featureValue.value());
 			}
 		} else { // Full weight update for regularizer
-			Map<Integer, Double> g = new HashMap<Integer, Double>(); // gradients
-			
-			// Gradient update for hinge loss
-			for (Entry<Integer, Double> featureValue : datumFeatureValues.entrySet()) {
-				int i_datumLabelWeight = getWeightIndex(datumLabel, featureValue.getKey());
-				int i_bestLabelWeight = getWeightIndex(bestLabel, featureValue.getKey());
-				
-				g.put(i_datumLabelWeight, -featureValue.getValue());
-				g.put(i_bestLabelWeight, featureValue.getValue());
+			// Gradients for hinge loss (zero if the datum label is the best label)
+			final Map<Long, Double> lossG = new HashMap<Long, Double>();
+			if (!datumLabelBest) {
+				for (VectorElement featureValue : datumFeatureValues) {
+					lossG.put(getWeightIndex(datumLabelIndex, featureValue.index()), -featureValue.value());
+					lossG.put(getWeightIndex(bestLabelIndex, featureValue.index()), featureValue.value());
+				}
 			}
 			
 			// Occasional gradient update for regularizer (this happens after every K training datum updates)
-			for (Entry<Integer, Double> wEntry : this.feature_w.entrySet()) {
-				if (!g.containsKey(wEntry.getKey()))
-					g.put(wEntry.getKey(), (K/N)*this.l2*wEntry.getValue());
-				else 
-					g.put(wEntry.getKey(), g.get(wEntry.getKey()) + (K/N)*this.l2*wEntry.getValue());
-			}
-			
-			// Update weights based on gradients
-			for (Entry<Integer, Double> gEntry : g.entrySet()) {
-				if (gEntry.getValue() == 0)
-					continue;
-				
-				if (!this.feature_w.containsKey(gEntry.getKey())) {
-					this.feature_w.put(gEntry.getKey(), 0.0);
-					this.feature_G.put(gEntry.getKey(), 0.0);
+			final double regularizerScale = (K/N)*this.l2;
+			this.feature_w.forEach(new WeightStore.EntryFn() {
+				@Override
+				public void apply(long index, double w, double G) {
+					double g = regularizerScale*w;
+					Double gLoss = lossG.remove(index);
+					if (gLoss != null)
+						g += gLoss;
+					if (g != 0)
+						feature_w.update(index, g);
 				}
-				
-				// Adagrad G
-				double G = this.feature_G.get(gEntry.getKey()) + gEntry.getValue()*gEntry.getValue();
-				this.feature_G.put(gEntry.getKey(), G);
-				
-				double eta = 1.0/Math.sqrt(G);
-				this.feature_w.put(gEntry.getKey(), this.feature_w.get(gEntry.getKey()) - eta*gEntry.getValue());
+			});
+			
+			// Loss gradient updates for weights that haven't been stored yet
+			for (Entry<Long, Double> gEntry : lossG.entrySet()) {
+				if (gEntry.getValue() != 0)
+					this.feature_w.update(gEntry.getKey(), gEntry.getValue());
 			}
 		}
 			
 		// Update label biases
 		for (int i = 0; i < this.bias_b.length; i++) {
 			// Bias gradient based on hinge loss
-			double g = ((this.labelIndices.get(datumLabel) == i) ? -1.0 : 0.0) +
-							(this.labelIndices.get(bestLabel) == i ? 1.0 : 0.0);
+			double g = ((datumLabelIndex == i) ? -1.0 : 0.0) +
+							(bestLabelIndex == i ? 1.0 : 0.0);
 			
 			if (g == 0)
 				continue;
@@ -303,9 +324,7 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 		double value = 0;
 		
 		if (this.l2 > 0) {
-			double l2Norm = 0;
-			for (Entry<Integer, Double> wEntry : this.feature_w.entrySet())
-				l2Norm += wEntry.getValue()*wEntry.getValue();
+			double l2Norm = this.feature_w.computeSumOfSquaredWeights();
 			value += l2Norm*this.l2*.5;
 		}
 		
@@ -361,12 +380,10 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 	protected double scoreLabel(FeaturizedDataSet<D, L> data, D datum, L label, boolean includeCost) {
 		double score = 0;		
 		
-		Map<Integer, Double> featureValues = data.getFeatureVocabularyValuesAsMap(datum);
+		Vector featureValues = data.getFeatureVocabularyValues(datum);
 		int labelIndex = this.labelIndices.get(label);
-		for (Entry<Integer, Double> entry : featureValues.entrySet()) {
-			int wIndex = this.getWeightIndex(label, entry.getKey());
-			if (this.feature_w.containsKey(wIndex))
-				score += this.feature_w.get(wIndex)*entry.getValue();
+		for (VectorElement featureValue : featureValues) {
+			score += this.feature_w.getWeight(getWeightIndex(labelIndex, featureValue.index()))*featureValue.value();
 		}
 		
 		score += this.bias_b[labelIndex];
@@ -379,20 +396,20 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 		return score;
 	}
 	
-	protected int getWeightIndex(L label, int featureIndex) {
-		return this.labelIndices.get(label)*this.numFeatures + featureIndex;
+	protected long getWeightIndex(L label, int featureIndex) {
+		return getWeightIndex(this.labelIndices.get(label), featureIndex);
 	}
 	
-	protected int getWeightIndex(int labelIndex, int featureIndex) {
-		return labelIndex*this.numFeatures + featureIndex;
+	protected long getWeightIndex(int labelIndex, int featureIndex) {
+		return ((long)labelIndex)*this.numFeatures + featureIndex;
 	}
 	
-	protected int getFeatureIndex(int weightIndex) {
-		return weightIndex % this.numFeatures;
+	protected int getFeatureIndex(long weightIndex) {
+		return (int)(weightIndex % this.numFeatures);
 	}
 	
-	protected int getLabelIndex(int weightIndex) {
-		return weightIndex / this.numFeatures;
+	protected int getLabelIndex(long weightIndex) {
+		return (int)(weightIndex / this.numFeatures);
 	}
 	
 	@Override
@@ -489,6 +506,8 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 		
 		binaryModelSVM.earlyStopIfNoLabelChange = this.earlyStopIfNoLabelChange;
 		binaryModelSVM.trainingIterations = this.trainingIterations;
+		binaryModelSVM.weightStore = this.weightStore;
+		binaryModelSVM.trainingThreads = this.trainingThreads;
 		binaryModelSVM.setLabelIndices();
 		
 		return binaryModelSVM;
@@ -502,18 +521,21 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 			this.trainingIterations = Integer.valueOf(((Obj.Value)internalAssignments.get("trainingIterations").getValue()).getStr());
 		if (internalAssignments.contains("earlyStopIfNoLabelChange"))
 			this.earlyStopIfNoLabelChange = Boolean.valueOf(((Obj.Value)internalAssignments.get("earlyStopIfNoLabelChange").getValue()).getStr());
+		if (internalAssignments.contains("weightStore"))
+			this.weightStore = ((Obj.Value)internalAssignments.get("weightStore").getValue()).getStr();
+		if (internalAssignments.contains("trainingThreads"))
+			this.trainingThreads = Integer.valueOf(((Obj.Value)internalAssignments.get("trainingThreads").getValue()).getStr());
 		
 		if (!internalAssignments.contains("t") || !internalAssignments.contains("numWeights"))
 			return true;
 		
-		int numWeights = Integer.valueOf(((Obj.Value)internalAssignments.get("numWeights").getValue()).getStr());
-		this.numFeatures = numWeights / this.labelIndices.size();
+		long numWeights = Long.valueOf(((Obj.Value)internalAssignments.get("numWeights").getValue()).getStr());
+		this.numFeatures = (int)(numWeights / this.labelIndices.size());
 		
 		this.t = Integer.valueOf(((Obj.Value)internalAssignments.get("t").getValue()).getStr());
-		this.featureNames = new HashMap<Integer, String>();
+		this.featureNames = new ConcurrentHashMap<Integer, String>();
 		
-		this.feature_w = new HashMap<Integer, Double>();
-		this.feature_G = new HashMap<Integer, Double>();
+		this.feature_w = makeWeightStore(numWeights);
 		
 		this.bias_b = new double[this.labelIndices.size()];
 		this.bias_G = new double[this.bias_b.length];	
@@ -538,10 +560,9 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 				int labelIndex = Integer.valueOf(wArr.getStr(4));
 				int featureIndex = Integer.valueOf(wArr.getStr(5));
 				
-				int index = labelIndex*this.numFeatures+featureIndex;
+				long index = getWeightIndex(labelIndex, featureIndex);
 				this.featureNames.put(featureIndex, featureName);
-				this.feature_w.put(index, w);
-				this.feature_G.put(index, G);
+				this.feature_w.set(index, w, G);
 			}
 		}
 		
@@ -560,6 +581,14 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 				Assignment.assignmentTyped(null, Context.VALUE_STR, "earlyStopIfNoLabelChange", Obj.stringValue(String.valueOf(this.earlyStopIfNoLabelChange)))
 		);
 		
+		internalAssignments.add(
+				Assignment.assignmentTyped(null, Context.VALUE_STR, "weightStore", Obj.stringValue(this.weightStore))
+		);
+		
+		internalAssignments.add(
+				Assignment.assignmentTyped(null, Context.VALUE_STR, "trainingThreads", Obj.stringValue(String.valueOf(this.trainingThreads)))
+		);
+		
 		if (this.numFeatures == 0)
 			return internalAssignments;
 		
@@ -568,7 +597,7 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 		);
 		
 		internalAssignments.add(
-			Assignment.assignmentTyped(null, Context.VALUE_STR, "numWeights", Obj.stringValue(String.valueOf(this.labelIndices.size()*this.numFeatures)))
+			Assignment.assignmentTyped(null, Context.VALUE_STR, "numWeights", Obj.stringValue(String.valueOf(((long)this.labelIndices.size())*this.numFeatures)))
 		);
 		 
 		for (int i = 0; i < this.labelIndices.size(); i++) {
@@ -583,36 +612,42 @@ public class SupervisedModelSVM<D extends Datum<L>, L> extends SupervisedModel<D
 			);
 		}
 		
-		List<Entry<Integer, Double>> wList = new ArrayList<Entry<Integer, Double>>(this.feature_w.entrySet());
-		Collections.sort(wList, new Comparator<Entry<Integer, Double>>() {
+		final List<Long> wList = new ArrayList<Long>();
+		this.feature_w.forEach(new WeightStore.EntryFn() {
+			@Override
+			public void apply(long index, double w, double G) {
+				if (Double.compare(w, 0.0) != 0)
+					wList.add(index);
+			}
+		});
+		
+		Collections.sort(wList, new Comparator<Long>() {
 			@Override
-			public int compare(Entry<Integer, Double> e1,
-					Entry<Integer, Double> e2) {
-				if (Math.abs(e1.getValue()) > Math.abs(e2.getValue()))
+			public int compare(Long i1, Long i2) {
+				double w1 = Math.abs(feature_w.getWeight(i1));
+				double w2 = Math.abs(feature_w.getWeight(i2));
+				if (w1 > w2)
 					return -1;
-				else if (Math.abs(e1.getValue()) < Math.abs(e2.getValue()))
+				else if (w1 < w2)
 					return 1;
 				else
 					return 0;
 			} });
 		
-		for (Entry<Integer, Double> weightEntry : wList) {
-			if (Double.compare(weightEntry.getValue(), 0.0) == 0)
-				continue;
-			
-			String weightIndex = String.valueOf(weightEntry.getKey());
-			int labelIndex = getLabelIndex(weightEntry.getKey());
+		for (Long weightIndex : wList) {
+			String weightIndexStr = String.valueOf(weightIndex);
+			int labelIndex = getLabelIndex(weightIndex);
 			String labelIndexStr = String.valueOf(labelIndex);
-			int featureIndex = getFeatureIndex(weightEntry.getKey());
+			int featureIndex = getFeatureIndex(weightIndex);
 			String featureIndexStr = String.valueOf(featureIndex); 
 			String label = this.labelIndices.reverseGet(labelIndex).toString();
 			String featureName = this.featureNames.get(featureIndex);
-			String w = String.valueOf(weightEntry.getValue());
-			String G = String.valueOf((this.feature_G.containsKey(weightEntry.getKey())) ? this.feature_G.get(weightEntry.getKey()).doubleValue() : 0.0);
+			String w = String.valueOf(this.feature_w.getWeight(weightIndex));
+			String G = String.valueOf(this.feature_w.getG(weightIndex));
 			
 			Obj.Array weightArray = Obj.array(new String[] { label, featureName, w, G, labelIndexStr, featureIndexStr });
 			internalAssignments.add(
-				Assignment.assignmentTyped(null, Context.ARRAY_STR, "w_" + weightIndex, weightArray)
+				Assignment.assignmentTyped(null, Context.ARRAY_STR, "w_" + weightIndexStr, weightArray)
 			);
 		}
 		
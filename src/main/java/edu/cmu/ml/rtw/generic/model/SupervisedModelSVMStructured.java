@@ -95,19 +95,19 @@ public class SupervisedModelSVMStructured<D extends Datum<L>, L> extends Supervi
 			// Best datum labels according to model's inference based on current weights
 			Map<D, L> bestDatumLabels = getBestDatumLabels(data, datumStructure, scoredDatumLabels);
 
-			Map<Integer, Double> datumStructureFeatureValues = computeDatumStructureFeatureValues(data, datumStructure, datumLabels, iteration == 0);
-			Map<Integer, Double> bestStructureFeatureValues = computeDatumStructureFeatureValues(data, datumStructure, bestDatumLabels, false);
+			Map<Long, Double> datumStructureFeatureValues = computeDatumStructureFeatureValues(data, datumStructure, datumLabels, iteration == 0);
+			Map<Long, Double> bestStructureFeatureValues = computeDatumStructureFeatureValues(data, datumStructure, bestDatumLabels, false);
 			
 			// Update feature weight gradients
-			Map<Integer, Double> gMap = new HashMap<Integer, Double>();
+			final Map<Long, Double> gMap = new HashMap<Long, Double>();
 			
-			for (Entry<Integer, Double> featureEntry : datumStructureFeatureValues.entrySet()) {
-				int weightIndex = featureEntry.getKey();
+			for (Entry<Long, Double> featureEntry : datumStructureFeatureValues.entrySet()) {
+				long weightIndex = featureEntry.getKey();
 				gMap.put(weightIndex, -featureEntry.getValue());
 			}
 			
-			for (Entry<Integer, Double> featureEntry : bestStructureFeatureValues.entrySet()) {
-				int weightIndex = featureEntry.getKey();
+			for (Entry<Long, Double> featureEntry : bestStructureFeatureValues.entrySet()) {
+				long weightIndex = featureEntry.getKey();
 				if (gMap.containsKey(weightIndex))
 					gMap.put(weightIndex, gMap.get(weightIndex) + featureEntry.getValue());
 				else
@@ -115,34 +115,28 @@ public class SupervisedModelSVMStructured<D extends Datum<L>, L> extends Supervi
 			}
 			
 			// Occasionally (every K datums) include regularizer term in computation of feature weight gradients
-			if (regularizerUpdate) {	
-				for (Entry<Integer, Double> wEntry : this.feature_w.entrySet()) {
-					if (!gMap.containsKey(wEntry.getKey()))
-						gMap.put(wEntry.getKey(), (K/N)*this.l2*wEntry.getValue());
-					else 
-						gMap.put(wEntry.getKey(), gMap.get(wEntry.getKey()) + (K/N)*this.l2*wEntry.getValue());
-				}
+			if (regularizerUpdate) {
+				final double regularizerScale = (K/N)*this.l2;
+				this.feature_w.forEach(new WeightStore.EntryFn() {
+					@Override
+					public void apply(long index, double w, double G) {
+						if (!gMap.containsKey(index))
+							gMap.put(index, regularizerScale*w);
+						else 
+							gMap.put(index, gMap.get(index) + regularizerScale*w);
+					}
+				});
 			}
 				
 			// Update feature weights based on computed gradients
-			for (Entry<Integer, Double> gEntry : gMap.entrySet()) {
-				int weightIndex = gEntry.getKey();
+			for (Entry<Long, Double> gEntry : gMap.entrySet()) {
+				long weightIndex = gEntry.getKey();
 				double g = gEntry.getValue();
 				
 				if (g == 0)
 					continue;
 				
-				if (!this.feature_w.containsKey(weightIndex)) {
-					this.feature_w.put(weightIndex, 0.0);
-					this.feature_G.put(weightIndex, 0.0);
-				}
-				
-				double G = this.feature_G.get(weightIndex) + g*g;
-				this.feature_G.put(weightIndex, G);
-				
-				double eta = 1.0/Math.sqrt(G);
-				
-				this.feature_w.put(weightIndex, this.feature_w.get(weightIndex) - eta*g);
+				this.feature_w.update(weightIndex, g);
 			}
 			
 			// Update label biases
@@ -176,9 +170,7 @@ public class SupervisedModelSVMStructured<D extends Datum<L>, L> extends Supervi
 		double value = 0.0;
 
 		if (this.l2 > 0) {
-			double l2Norm = 0;
-			for (double w : this.feature_w.values())
-				l2Norm += w*w;
+			double l2Norm = this.feature_w.computeSumOfSquaredWeights();
 			value += l2Norm*this.l2*.5;
 		}
 		
@@ -389,10 +381,9 @@ public class SupervisedModelSVMStructured<D extends Datum<L>, L> extends Supervi
 	protected double scoreDatumStructure(FeaturizedDataSet<D, L> data, DatumStructure<D, L> datumStructure, Map<D, L> structureLabels, boolean includeCost) {
 		double score = 0.0;
 	
-		Map<Integer, Double> datumStructureFeatureValues = computeDatumStructureFeatureValues(data, datumStructure, structureLabels, false);
-		for (Entry<Integer, Double> entry : datumStructureFeatureValues.entrySet()) {
-			if (this.feature_w.containsKey(entry.getKey()))
-				score += this.feature_w.get(entry.getKey())*entry.getValue();
+		Map<Long, Double> datumStructureFeatureValues = computeDatumStructureFeatureValues(data, datumStructure, structureLabels, false);
+		for (Entry<Long, Double> entry : datumStructureFeatureValues.entrySet()) {
+			score += this.feature_w.getWeight(entry.getKey())*entry.getValue();
 		}
 		
 		for (int i = 0; i < this.bias_b.length; i++) {
@@ -411,16 +402,16 @@ public class SupervisedModelSVMStructured<D extends Datum<L>, L> extends Supervi
 		return score;
 	}
 	
-	protected Map<Integer, Double> computeDatumStructureFeatureValues(FeaturizedDataSet<D,L> data, DatumStructure<D, L> datumStructure, Map<D, L> structureLabels, boolean cacheFeatureNames) {
-		Map<Integer, Double> featureValues = new HashMap<Integer, Double>();
+	protected Map<Long, Double> computeDatumStructureFeatureValues(FeaturizedDataSet<D,L> data, DatumStructure<D, L> datumStructure, Map<D, L> structureLabels, boolean cacheFeatureNames) {
+		Map<Long, Double> featureValues = new HashMap<Long, Double>();
 		int numDatumFeatures = data.getFeatureVocabularySize();
 		for (D datum : datumStructure) {
 			Map<Integer, Double> datumFeatureValues = data.getFeatureVocabularyValuesAsMap(datum);
 			int labelIndex = this.labelIndices.get(structureLabels.get(datum));
-			int featureLabelOffset = numDatumFeatures*labelIndex;
+			long featureLabelOffset = ((long)numDatumFeatures)*labelIndex;
 			
 			for (Entry<Integer, Double> entry : datumFeatureValues.entrySet()) {
-				int featureIndex = featureLabelOffset + entry.getKey();
+				long featureIndex = featureLabelOffset + entry.getKey();
 				if (!featureValues.containsKey(featureIndex))
 					featureValues.put(featureIndex, 0.0);
 				featureValues.put(featureIndex, featureValues.get(featureIndex) + entry.getValue());
@@ -0,0 +1,65 @@
+package edu.cmu.ml.rtw.generic.model;
+
+/**
+ * WeightStore holds the weights of a linear model trained with AdaGrad,
+ * along with the sum of squared gradients (G) for each weight.  Weights
+ * are addressed by long indices so that (label x feature) weight spaces
+ * with large feature vocabularies do not overflow.
+ *
+ * Weights that have never been updated or set have value 0 and G 0.
+ *
+ * @author Bill McDowell
+ *
+ */
+public abstract class WeightStore {
+	/**
+	 * EntryFn is applied to each stored weight by WeightStore.forEach
+	 */
+	public interface EntryFn {
+		void apply(long index, double w, double G);
+	}
+
+	public abstract double getWeight(long index);
+	public abstract double getG(long index);
+	public abstract boolean contains(long index);
+	public abstract boolean set(long index, double w, double G);
+
+	/**
+	 * Applies fn to every stored weight.  It's safe for fn to
+	 * update weights that it is applied to, but fn should not add new
+	 * weights to the store.
+	 *
+	 * @param fn
+	 */
+	public abstract void forEach(EntryFn fn);
+
+	/**
+	 * Makes an AdaGrad step for the weight at the given index
+	 *
+	 * @param index
+	 * @param g gradient
+	 * @return the updated weight
+	 */
+	public abstract double update(long index, double g);
+
+	/**
+	 * @return true if update can be called concurrently from multiple
+	 * threads without locking (with possibly lost updates, as in Hogwild)
+	 */
+	public abstract boolean supportsConcurrentUpdates();
+
+	public double computeSumOfSquaredWeights() {
+		final double[] sum = new double[1];
+		forEach(new EntryFn() {
+			@Override
+			public void apply(long index, double w, double G) {
+				sum[0] += w*w;
+			}
+		});
+		return sum[0];
+	}
+
+	protected static double adaGradWeight(double w, double G, double g) {
+		return w - g/Math.sqrt(G);
+	}
+}
@@ -0,0 +1,111 @@
+package edu.cmu.ml.rtw.generic.model;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * WeightStoreDense stores weights and their AdaGrad G values in primitive
+ * double arrays.  The index space is split into fixed size pages which
+ * are only allocated once a weight on the page is set, so the store
+ * can address more than Integer.MAX_VALUE weights, and sparsely
+ * used weight spaces don't need to be fully allocated.
+ *
+ * Updates don't take locks, so the store can be updated concurrently
+ * by Hogwild style training.  Concurrent updates to the same weight
+ * might occasionally be lost.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class WeightStoreDense extends WeightStore {
+	private static final int PAGE_BITS = 15;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private long size;
+	private AtomicReferenceArray<double[]> pages; // Each page interleaves weights and G values
+
+	public WeightStoreDense(long size) {
+		this.size = size;
+		this.pages = new AtomicReferenceArray<double[]>((int)((size + PAGE_SIZE - 1) >>> PAGE_BITS));
+	}
+
+	public long getSize() {
+		return this.size;
+	}
+
+	@Override
+	public double getWeight(long index) {
+		double[] page = this.pages.get((int)(index >>> PAGE_BITS));
+		if (page == null)
+			return 0.0;
+		return page[2*((int)index & PAGE_MASK)];
+	}
+
+	@Override
+	public double getG(long index) {
+		double[] page = this.pages.get((int)(index >>> PAGE_BITS));
+		if (page == null)
+			return 0.0;
+		return page[2*((int)index & PAGE_MASK) + 1];
+	}
+
+	@Override
+	public boolean contains(long index) {
+		double[] page = this.pages.get((int)(index >>> PAGE_BITS));
+		if (page == null)
+			return false;
+		int offset = 2*((int)index & PAGE_MASK);
+		return page[offset] != 0.0 || page[offset + 1] != 0.0;
+	}
+
+	@Override
+	public boolean set(long index, double w, double G) {
+		double[] page = getOrAllocatePage((int)(index >>> PAGE_BITS));
+		int offset = 2*((int)index & PAGE_MASK);
+		page[offset] = w;
+		page[offset + 1] = G;
+		return true;
+	}
+
+	@Override
+	public double update(long index, double g) {
+		double[] page = getOrAllocatePage((int)(index >>> PAGE_BITS));
+		int offset = 2*((int)index & PAGE_MASK);
+		double G = page[offset + 1] + g*g;
+		double w = adaGradWeight(page[offset], G, g);
+		page[offset + 1] = G;
+		page[offset] = w;
+		return w;
+	}
+
+	@Override
+	public void forEach(EntryFn fn) {
+		for (int i = 0; i < this.pages.length(); i++) {
+			double[] page = this.pages.get(i);
+			if (page == null)
+				continue;
+
+			long pageStart = ((long)i) << PAGE_BITS;
+			for (int j = 0; j < PAGE_SIZE; j++) {
+				double w = page[2*j];
+				double G = page[2*j + 1];
+				if (w != 0.0 || G != 0.0)
+					fn.apply(pageStart + j, w, G);
+			}
+		}
+	}
+
+	@Override
+	public boolean supportsConcurrentUpdates() {
+		return true;
+	}
+
+	private double[] getOrAllocatePage(int pageIndex) {
+		double[] page = this.pages.get(pageIndex);
+		if (page != null)
+			return page;
+
+		this.pages.compareAndSet(pageIndex, null, new double[2*PAGE_SIZE]);
+		return this.pages.get(pageIndex);
+	}
+}
@@ -0,0 +1,135 @@
+package edu.cmu.ml.rtw.generic.model;
+
+import java.util.Arrays;
+
+/**
+ * WeightStoreSparse stores weights and their AdaGrad G values in an
+ * open-addressing hash table with primitive long keys and double values,
+ * so that weight updates don't box indices or values.  Only weights that
+ * have been set or updated take up space.
+ *
+ * The store is not safe for concurrent updates.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class WeightStoreSparse extends WeightStore {
+	private static final long EMPTY_KEY = -1;
+	private static final double MAX_LOAD = .6;
+
+	private long[] keys;
+	private double[] w;
+	private double[] G;
+	private int size;
+
+	public WeightStoreSparse() {
+		this(1024);
+	}
+
+	public WeightStoreSparse(int initialCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(16, (int)(initialCapacity/MAX_LOAD)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	@Override
+	public double getWeight(long index) {
+		int slot = findSlot(index);
+		return (this.keys[slot] == EMPTY_KEY) ? 0.0 : this.w[slot];
+	}
+
+	@Override
+	public double getG(long index) {
+		int slot = findSlot(index);
+		return (this.keys[slot] == EMPTY_KEY) ? 0.0 : this.G[slot];
+	}
+
+	@Override
+	public boolean contains(long index) {
+		return this.keys[findSlot(index)] != EMPTY_KEY;
+	}
+
+	@Override
+	public boolean set(long index, double w, double G) {
+		int slot = findOrInsertSlot(index);
+		this.w[slot] = w;
+		this.G[slot] = G;
+		return true;
+	}
+
+	@Override
+	public double update(long index, double g) {
+		int slot = findOrInsertSlot(index);
+		this.G[slot] += g*g;
+		this.w[slot] = adaGradWeight(this.w[slot], this.G[slot], g);
+		return this.w[slot];
+	}
+
+	@Override
+	public void forEach(EntryFn fn) {
+		for (int i = 0; i < this.keys.length; i++)
+			if (this.keys[i] != EMPTY_KEY)
+				fn.apply(this.keys[i], this.w[i], this.G[i]);
+	}
+
+	@Override
+	public boolean supportsConcurrentUpdates() {
+		return false;
+	}
+
+	private int findSlot(long index) {
+		int mask = this.keys.length - 1;
+		int slot = hash(index) & mask;
+		while (this.keys[slot] != EMPTY_KEY && this.keys[slot] != index)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private int findOrInsertSlot(long index) {
+		int slot = findSlot(index);
+		if (this.keys[slot] == index)
+			return slot;
+
+		if (this.size + 1 > this.keys.length*MAX_LOAD) {
+			grow();
+			slot = findSlot(index);
+		}
+
+		this.keys[slot] = index;
+		this.size++;
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = this.keys;
+		double[] oldW = this.w;
+		double[] oldG = this.G;
+
+		allocate(oldKeys.length*2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == EMPTY_KEY)
+				continue;
+			int slot = findSlot(oldKeys[i]);
+			this.keys[slot] = oldKeys[i];
+			this.w[slot] = oldW[i];
+			this.G[slot] = oldG[i];
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		Arrays.fill(this.keys, EMPTY_KEY);
+		this.w = new double[capacity];
+		this.G = new double[capacity];
+	}
+
+	private static int hash(long index) {
+		index ^= index >>> 33;
+		index *= 0xff51afd7ed558ccdL;
+		index ^= index >>> 33;
+		return (int)index;
+	}
+}
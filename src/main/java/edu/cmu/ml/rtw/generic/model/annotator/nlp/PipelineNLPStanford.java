@@ -9,12 +9,16 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.Stack;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import edu.cmu.ml.rtw.generic.data.Context;
 import edu.cmu.ml.rtw.generic.data.annotation.AnnotationType;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.AnnotationTypeNLP;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.ConstituencyParse;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.DependencyParse;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.DocumentNLP;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.Language;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.PoSTag;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.Token;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.TokenSpan;
@@ -23,6 +27,7 @@ import edu.cmu.ml.rtw.generic.data.annotation.nlp.ConstituencyParse.Constituent;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.DependencyParse.Dependency;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.DependencyParse.Node;
 import edu.cmu.ml.rtw.generic.util.Pair;
+import edu.cmu.ml.rtw.generic.util.ThreadMapper;
 import edu.cmu.ml.rtw.generic.util.Triple;
 import edu.stanford.nlp.dcoref.CorefChain;
 import edu.stanford.nlp.dcoref.CorefChain.CorefMention;
@@ -46,8 +51,139 @@ import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.IntPair;
 
+/**
+ * PipelineNLPStanford annotates documents using the Stanford CoreNLP
+ * pipeline.  
+ * 
+ * StanfordCoreNLP instances are not safe to use from multiple threads 
+ * at once, so the pipeline keeps a pool of instances (see 
+ * PipelineNLPStanford.Pool) which are checked out while a document is 
+ * annotated.  The pool is shared by copies of the pipeline made 
+ * through the copy constructor, so documents can be annotated 
+ * concurrently by giving each thread its own copy (as 
+ * makeDocuments does).  The pool holds at most poolSize 
+ * instances, which are constructed as they're needed.  Each instance 
+ * loads its own models, so the pool size should be chosen with memory 
+ * in mind.  The pool size can be given by the "stanfordPoolSize" value 
+ * of a Context, which is kept separate from "maxThreads" so that the 
+ * number of threads used elsewhere doesn't multiply the memory taken by 
+ * the models.
+ * 
+ * The pool also accumulates the time spent in the CoreNLP annotators
+ * and in converting their output into each annotation type (see 
+ * getAnnotatorTimes).
+ * 
+ * @author Bill McDowell
+ *
+ */
 public class PipelineNLPStanford extends PipelineNLP {
-	private StanfordCoreNLP nlpPipeline;
+	public static final String CORENLP_TIMER_NAME = "corenlp";
+	
+	/**
+	 * Pool holds StanfordCoreNLP instances constructed from the same
+	 * properties, and accumulated annotation times.
+	 */
+	public static class Pool {
+		private Properties properties;
+		private int maxSize;
+		private List<StanfordCoreNLP> idle;
+		private List<StanfordCoreNLP> all;
+		private Map<String, AtomicLong> times;
+		
+		public Pool(Properties properties, int maxSize) {
+			this.properties = properties;
+			this.maxSize = Math.max(1, maxSize);
+			this.idle = new ArrayList<StanfordCoreNLP>();
+			this.all = new ArrayList<StanfordCoreNLP>();
+			this.times = new ConcurrentHashMap<String, AtomicLong>();
+		}
+		
+		/**
+		 * @return an idle instance, constructing one if none are idle and the
+		 * pool isn't full, or waiting for one to be checked in otherwise.  
+		 * Returns null if interrupted while waiting.
+		 */
+		public StanfordCoreNLP checkout() {
+			synchronized (this) {
+				while (this.idle.isEmpty() && this.all.size() >= this.maxSize) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return null;
+					}
+				}
+				
+				if (!this.idle.isEmpty())
+					return this.idle.remove(this.idle.size() - 1);
+				
+				// Reserve a place for the new instance, and construct it
+				// outside of the lock since loading models is slow
+				this.all.add(null);
+			}
+			
+			StanfordCoreNLP nlpPipeline = null;
+			try {
+				nlpPipeline = new StanfordCoreNLP(this.properties);
+			} finally {
+				synchronized (this) {
+					this.all.remove(null);
+					if (nlpPipeline != null)
+						this.all.add(nlpPipeline);
+					notifyAll();
+				}
+			}
+			
+			return nlpPipeline;
+		}
+		
+		public synchronized boolean checkin(StanfordCoreNLP nlpPipeline) {
+			this.idle.add(nlpPipeline);
+			notifyAll();
+			return true;
+		}
+		
+		public synchronized int getSize() {
+			return this.all.size();
+		}
+		
+		public int getMaxSize() {
+			return this.maxSize;
+		}
+		
+		public boolean addTime(String name, long nanos) {
+			AtomicLong time = this.times.get(name);
+			if (time == null) {
+				this.times.putIfAbsent(name, new AtomicLong());
+				time = this.times.get(name);
+			}
+			time.addAndGet(nanos);
+			return true;
+		}
+		
+		public Map<String, Long> getTimes() {
+			Map<String, Long> times = new HashMap<String, Long>();
+			for (Entry<String, AtomicLong> entry : this.times.entrySet())
+				times.put(entry.getKey(), entry.getValue().get());
+			return times;
+		}
+		
+		/**
+		 * @return CoreNLP's timing information for each of the constructed 
+		 * instances, which breaks down the time spent by each of the CoreNLP 
+		 * annotators
+		 */
+		public synchronized List<String> getTimingInformation() {
+			List<String> timingInformation = new ArrayList<String>();
+			for (StanfordCoreNLP nlpPipeline : this.all)
+				if (nlpPipeline != null)
+					timingInformation.add(nlpPipeline.timingInformation());
+			return timingInformation;
+		}
+	}
+	
+	private Pool pool;
+	private int poolSize;
 	private Annotation annotatedText;
 	private int maxSentenceLength;
 	
@@ -55,20 +191,38 @@ public class PipelineNLPStanford extends PipelineNLP {
 	private int[] originalToValidSentenceIndices;
 	
 	public PipelineNLPStanford() {
-		super();
-		this.maxSentenceLength = 0;
+		this(0);
 	}
 	
 	public PipelineNLPStanford(int maxSentenceLength) {
+		this(maxSentenceLength, 1);
+	}
+	
+	/**
+	 * @param maxSentenceLength
+	 * @param poolSize maximum number of StanfordCoreNLP instances to
+	 * use concurrently across copies of this pipeline
+	 */
+	public PipelineNLPStanford(int maxSentenceLength, int poolSize) {
 		super();
 		this.maxSentenceLength = maxSentenceLength;
+		this.poolSize = poolSize;
+	}
+	
+	/**
+	 * @param context context whose "stanfordPoolSize" value (if it has one) 
+	 * gives the pool size
+	 */
+	public PipelineNLPStanford(Context<?, ?> context) {
+		this(0, (context.getStringValue("stanfordPoolSize") != null) ? context.getIntValue("stanfordPoolSize") : 1);
 	}
 	
 	public PipelineNLPStanford(PipelineNLPStanford pipeline) {
 		super();
 		
 		this.document = pipeline.document;
-		this.nlpPipeline = pipeline.nlpPipeline;
+		this.pool = pipeline.pool;
+		this.poolSize = pipeline.poolSize;
 		this.annotatedText = pipeline.annotatedText;
 		this.maxSentenceLength = pipeline.maxSentenceLength;
 		this.validSentenceCount = pipeline.validSentenceCount;
@@ -123,7 +277,14 @@ public class PipelineNLPStanford extends PipelineNLP {
 		}
 		
 		props.put("annotators", propsStr);
-		this.nlpPipeline = new StanfordCoreNLP(props);
+		this.pool = new Pool(props, this.poolSize);
+		
+		// Construct the first instance up front so that models are loaded
+		// (and fail to load) during initialization
+		StanfordCoreNLP nlpPipeline = this.pool.checkout();
+		if (nlpPipeline == null)
+			return false;
+		this.pool.checkin(nlpPipeline);
 		
 		clearAnnotators();
 		
@@ -536,14 +697,22 @@ public class PipelineNLPStanford extends PipelineNLP {
 		if (!super.setDocument(document))
 			return false;
 		
-		if (this.nlpPipeline == null)
+		if (this.pool == null)
 			if (!initialize())
 				return false;
 		
 		this.annotatedText = new Annotation(document.getOriginalText());
 		
-		synchronized (this.nlpPipeline) {
-			this.nlpPipeline.annotate(this.annotatedText);
+		StanfordCoreNLP nlpPipeline = this.pool.checkout();
+		if (nlpPipeline == null)
+			return false;
+		
+		try {
+			long startTime = System.nanoTime();
+			nlpPipeline.annotate(this.annotatedText);
+			this.pool.addTime(CORENLP_TIMER_NAME, System.nanoTime() - startTime);
+		} finally {
+			this.pool.checkin(nlpPipeline);
 		}
 		
 		List<CoreMap> sentences = this.annotatedText.get(SentencesAnnotation.class);
@@ -567,4 +736,98 @@ public class PipelineNLPStanford extends PipelineNLP {
 		
 		return true;
 	}
+	
+	@Override
+	public <T> Pair<T, Double> annotateDocument(AnnotationTypeNLP<T> annotationType) {
+		long startTime = System.nanoTime();
+		Pair<T, Double> annotation = super.annotateDocument(annotationType);
+		addTime(annotationType, startTime);
+		return annotation;
+	}
+	
+	@Override
+	public <T> Map<Integer, Pair<T, Double>> annotateSentences(AnnotationTypeNLP<T> annotationType) {
+		long startTime = System.nanoTime();
+		Map<Integer, Pair<T, Double>> annotations = super.annotateSentences(annotationType);
+		addTime(annotationType, startTime);
+		return annotations;
+	}
+	
+	@Override
+	public <T> List<Triple<TokenSpan, T, Double>> annotateTokenSpans(AnnotationTypeNLP<T> annotationType) {
+		long startTime = System.nanoTime();
+		List<Triple<TokenSpan, T, Double>> annotations = super.annotateTokenSpans(annotationType);
+		addTime(annotationType, startTime);
+		return annotations;
+	}
+	
+	@Override
+	public <T> Pair<T, Double>[][] annotateTokens(AnnotationTypeNLP<T> annotationType) {
+		long startTime = System.nanoTime();
+		Pair<T, Double>[][] annotations = super.annotateTokens(annotationType);
+		addTime(annotationType, startTime);
+		return annotations;
+	}
+	
+	private boolean addTime(AnnotationTypeNLP<?> annotationType, long startTime) {
+		if (this.pool == null)
+			return false;
+		return this.pool.addTime(annotationType.getType(), System.nanoTime() - startTime);
+	}
+	
+	/**
+	 * @return total nanoseconds spent annotating by copies of this pipeline,
+	 * keyed by CORENLP_TIMER_NAME for the CoreNLP annotators, and by 
+	 * annotation type name for converting CoreNLP output into each 
+	 * annotation type
+	 */
+	public Map<String, Long> getAnnotatorTimes() {
+		if (this.pool == null)
+			return new HashMap<String, Long>();
+		return this.pool.getTimes();
+	}
+	
+	/**
+	 * @return CoreNLP's per-annotator timing information for each 
+	 * StanfordCoreNLP instance in the pool
+	 */
+	public List<String> getStanfordTimingInformation() {
+		if (this.pool == null)
+			return new ArrayList<String>();
+		return this.pool.getTimingInformation();
+	}
+	
+	public Pool getPool() {
+		return this.pool;
+	}
+	
+	/**
+	 * Constructs and annotates a document for each (name, text) pair in
+	 * parallel.  Each thread annotates through its own copy of this 
+	 * pipeline, so at most poolSize documents are annotated by CoreNLP
+	 * at once.
+	 * 
+	 * @param genericDocument document used to construct new instances
+	 * @param namesAndTexts
+	 * @param language
+	 * @param skipAnnotators
+	 * @param maxThreads
+	 * @return the annotated documents in the order of namesAndTexts, or 
+	 * null if some document failed to be annotated
+	 */
+	@SuppressWarnings("unchecked")
+	public <D extends DocumentNLP> List<D> makeDocuments(final D genericDocument, List<Pair<String, String>> namesAndTexts, final Language language, final Collection<AnnotationTypeNLP<?>> skipAnnotators, int maxThreads) {
+		if (this.pool == null && !initialize())
+			return null;
+		
+		final PipelineNLPStanford pipeline = this;
+		ThreadMapper<Pair<String, String>, D> mapper = new ThreadMapper<Pair<String, String>, D>(new ThreadMapper.Fn<Pair<String, String>, D>() {
+			@Override
+			public D apply(Pair<String, String> nameAndText) {
+				return (D)genericDocument.makeInstanceFromText(nameAndText.getFirst(), nameAndText.getSecond(), language, new PipelineNLPStanford(pipeline), skipAnnotators);
+			}
+		});
+		
+		return mapper.run(namesAndTexts, Math.min(maxThreads, this.pool.getMaxSize()));
+	}
 }
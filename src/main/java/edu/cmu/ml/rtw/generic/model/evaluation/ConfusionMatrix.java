@@ -6,26 +6,49 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 
 import edu.cmu.ml.rtw.generic.data.annotation.Datum;
 import edu.cmu.ml.rtw.generic.data.annotation.Datum.Tools.LabelMapping;
 import edu.cmu.ml.rtw.generic.data.annotation.nlp.TokenSpan;
+import edu.cmu.ml.rtw.generic.util.ThreadMapper;
 
 /**
  * ConfusionMatrix represents a confusion matrix for assignments
  * of labels to a data set.
- * 
+ *
+ * The counts are stored in a single array indexed by the positions
+ * of the actual and predicted labels in the set of valid labels, so
+ * the size of the matrix doesn't depend on the amount of data.  By
+ * default, only counts are kept.  If the matrix is constructed with a
+ * positive example capacity, then it also keeps a uniform random
+ * sample (a reservoir) of at most that many datums for each entry,
+ * which are used to describe errors.
+ *
+ * A matrix is not safe to modify from several threads at once.  To
+ * count data in parallel, each thread should count into its own shard
+ * (see makeShard), and the shards should then be merged with add.
+ *
  * @author Bill McDowell
  *
  * @param <D> datum type
  * @param <L> datum label type
  */
 public class ConfusionMatrix<D extends Datum<L>, L> {
-	// map from actual to predicted label to datums
-	private Map<L, Map<L, List<D>>> actualToPredicted;
+	public static final int DEFAULT_EXAMPLE_CAPACITY = 100;
+	
 	private Set<L> validLabels;
 	private LabelMapping<L> labelMapping;
+	private int exampleCapacity;
+	
+	private List<L> labels;
+	private Map<L, Integer> labelIndices;
+	// counts[actual*labels.size() + predicted]
+	private long[] counts;
+	// Sampled datums for each entry (null if examples aren't kept)
+	private List<List<D>> examples;
+	private Random random;
 	
 	/**
 	 * @param validLabels - labels to include in the matrix
@@ -35,30 +58,84 @@ public class ConfusionMatrix<D extends Datum<L>, L> {
 	}
 	
 	/**
-	 * 
+	 *
 	 * @param validLabels - labels to include in the matrix
 	 * @param labelMapping - mapping from all labels to validLabels
 	 */
 	public ConfusionMatrix(Set<L> validLabels, LabelMapping<L> labelMapping) {
+		this(validLabels, labelMapping, 0);
+	}
+	
+	/**
+	 *
+	 * @param validLabels - labels to include in the matrix
+	 * @param labelMapping - mapping from all labels to validLabels
+	 * @param exampleCapacity - maximum number of example datums to keep
+	 * for each entry of the matrix (0 to only keep counts)
+	 */
+	public ConfusionMatrix(Set<L> validLabels, LabelMapping<L> labelMapping, int exampleCapacity) {
+		this(validLabels, labelMapping, exampleCapacity, new Random(1));
+	}
+	
+	private ConfusionMatrix(Set<L> validLabels, LabelMapping<L> labelMapping, int exampleCapacity, Random random) {
 		this.validLabels = validLabels;
 		this.labelMapping = labelMapping;
-		this.actualToPredicted = new HashMap<L, Map<L, List<D>>>();
+		this.exampleCapacity = exampleCapacity;
+		this.random = random;
+		
+		this.labels = new ArrayList<L>(validLabels);
+		this.labelIndices = new HashMap<L, Integer>();
+		for (int i = 0; i < this.labels.size(); i++)
+			this.labelIndices.put(this.labels.get(i), i);
+		
+		int entryCount = this.labels.size()*this.labels.size();
+		this.counts = new long[entryCount];
+		if (exampleCapacity > 0) {
+			this.examples = new ArrayList<List<D>>(entryCount);
+			for (int i = 0; i < entryCount; i++)
+				this.examples.add(new ArrayList<D>());
+		}
+	}
+	
+	/**
+	 * @return an empty matrix with the same labels and example capacity
+	 * as this one, into which a single thread can count a part of the data
+	 * before it is merged back into this matrix
+	 */
+	public ConfusionMatrix<D, L> makeShard() {
+		return new ConfusionMatrix<D, L>(this.validLabels, this.labelMapping, this.exampleCapacity, new Random(this.random.nextLong()));
+	}
+	
+	public boolean keepsExamples() {
+		return this.examples != null;
 	}
 	
 	/**
 	 * @param otherMatrix
-	 * @return true if otherMatrix values have been added to this matrix's values
+	 * @return true if otherMatrix values have been added to this matrix's values.
+	 * Entries for labels that aren't valid in this matrix are ignored.  If both
+	 * matrices keep examples, then the merged examples are a random sample of
+	 * the examples of both.
 	 */
 	public boolean add(ConfusionMatrix<D, L> otherMatrix) {
-		for (Entry<L, Map<L, List<D>>> otherMatrixEntryActual : otherMatrix.actualToPredicted.entrySet()) {
-			L actual = otherMatrixEntryActual.getKey();
-			if (!this.actualToPredicted.containsKey(actual))
-				this.actualToPredicted.put(actual, new HashMap<L, List<D>>());
-			for (Entry<L, List<D>> otherMatrixEntryPredicted : otherMatrixEntryActual.getValue().entrySet()) {
-				L predicted = otherMatrixEntryPredicted.getKey();
-				if (!this.actualToPredicted.get(actual).containsKey(predicted))
-					this.actualToPredicted.get(actual).put(predicted, new ArrayList<D>());
-				this.actualToPredicted.get(actual).get(predicted).addAll(otherMatrixEntryPredicted.getValue());
+		int[] otherToThis = new int[otherMatrix.labels.size()];
+		for (int i = 0; i < otherToThis.length; i++) {
+			Integer index = this.labelIndices.get(otherMatrix.labels.get(i));
+			otherToThis[i] = (index == null) ? -1 : index;
+		}
+		
+		int otherSize = otherMatrix.labels.size();
+		for (int i = 0; i < otherSize; i++) {
+			if (otherToThis[i] < 0)
+				continue;
+			for (int j = 0; j < otherSize; j++) {
+				if (otherToThis[j] < 0)
+					continue;
+				int otherEntry = i*otherSize + j;
+				int entry = getEntry(otherToThis[i], otherToThis[j]);
+				if (this.examples != null && otherMatrix.examples != null)
+					mergeExamples(entry, otherMatrix.examples.get(otherEntry), otherMatrix.counts[otherEntry]);
+				this.counts[entry] += otherMatrix.counts[otherEntry];
 			}
 		}
 		
@@ -70,44 +147,121 @@ public class ConfusionMatrix<D extends Datum<L>, L> {
 	 * @return true if classifiedData has been added to the confusion matrix
 	 */
 	public boolean addData(Map<D, L> classifiedData) {
-		for (L actual : this.validLabels) {
-			this.actualToPredicted.put(actual, new HashMap<L, List<D>>());
-			for (L predicted : this.validLabels) {
-				this.actualToPredicted.get(actual).put(predicted, new ArrayList<D>());
+		for (Entry<D, L> classifiedDatum : classifiedData.entrySet())
+			addDatum(classifiedDatum.getKey(), classifiedDatum.getValue());
+		return true;
+	}
+	
+	/**
+	 * @param classifiedData
+	 * @param maxThreads
+	 * @return true if classifiedData has been added to the confusion matrix,
+	 * after counting a contiguous slice of it into a separate shard on each
+	 * thread
+	 */
+	public boolean addData(Map<D, L> classifiedData, final int maxThreads) {
+		if (maxThreads <= 1 || classifiedData.size() < maxThreads)
+			return addData(classifiedData);
+		
+		final List<Entry<D, L>> entries = new ArrayList<Entry<D, L>>(classifiedData.entrySet());
+		final List<ConfusionMatrix<D, L>> shards = new ArrayList<ConfusionMatrix<D, L>>(maxThreads);
+		for (int i = 0; i < maxThreads; i++)
+			shards.add(makeShard());
+		
+		ThreadMapper<Integer, Boolean> threads = new ThreadMapper<Integer, Boolean>(new ThreadMapper.Fn<Integer, Boolean>() {
+			@Override
+			public Boolean apply(Integer shard) {
+				ConfusionMatrix<D, L> matrix = shards.get(shard);
+				int end = (int)((shard + 1L)*entries.size()/maxThreads);
+				for (int i = (int)((long)shard*entries.size()/maxThreads); i < end; i++)
+					matrix.addDatum(entries.get(i).getKey(), entries.get(i).getValue());
+				return true;
 			}
-		}
+		});
 		
-		for (Entry<D, L> classifiedDatum : classifiedData.entrySet()) {
-			if (classifiedDatum.getKey().getLabel() == null)
-				continue;
-			L actualLabel = mapValidLabel(classifiedDatum.getKey().getLabel());
-			L predictedLabel = mapValidLabel(classifiedDatum.getValue());
-			
-			if (actualLabel== null || predictedLabel == null)
-				continue;
-			
-			this.actualToPredicted.get(actualLabel).get(predictedLabel).add(classifiedDatum.getKey());
+		List<Integer> shardIndices = new ArrayList<Integer>(maxThreads);
+		for (int j = 0; j < maxThreads; j++)
+			shardIndices.add(j);
+		
+		if (threads.run(shardIndices, maxThreads) == null)
+			return false;
+		
+		for (ConfusionMatrix<D, L> shard : shards)
+			add(shard);
+		
+		return true;
+	}
+	
+	/**
+	 * @param datum
+	 * @param predictedLabel
+	 * @return true if the datum was counted (it is labeled, and its actual
+	 * and predicted labels map to valid labels)
+	 */
+	public boolean addDatum(D datum, L predictedLabel) {
+		if (datum.getLabel() == null)
+			return false;
+		L actualLabel = mapValidLabel(datum.getLabel());
+		predictedLabel = mapValidLabel(predictedLabel);
+		
+		if (actualLabel == null || predictedLabel == null)
+			return false;
+		
+		int entry = getEntry(this.labelIndices.get(actualLabel), this.labelIndices.get(predictedLabel));
+		this.counts[entry]++;
+		
+		if (this.examples != null) {
+			List<D> entryExamples = this.examples.get(entry);
+			if (entryExamples.size() < this.exampleCapacity) {
+				entryExamples.add(datum);
+			} else {
+				long index = (long)(this.random.nextDouble()*this.counts[entry]);
+				if (index < this.exampleCapacity)
+					entryExamples.set((int)index, datum);
+			}
 		}
 		
 		return true;
 	}
 	
+	/**
+	 * @param actual
+	 * @param predicted
+	 * @return the number of datums with the actual label for which the
+	 * predicted label was predicted
+	 */
+	public long getCount(L actual, L predicted) {
+		Integer actualIndex = this.labelIndices.get(actual);
+		Integer predictedIndex = this.labelIndices.get(predicted);
+		if (actualIndex == null || predictedIndex == null)
+			return 0;
+		return this.counts[getEntry(actualIndex, predictedIndex)];
+	}
+	
+	/**
+	 * @return the total number of datums counted by the matrix
+	 */
+	public long getTotalCount() {
+		long total = 0;
+		for (int i = 0; i < this.counts.length; i++)
+			total += this.counts[i];
+		return total;
+	}
+	
 	/**
 	 * @param scale
 	 * @return the matrix as map of maps scaled by scale
 	 */
 	public Map<L, Map<L, Double>> getConfusionMatrix(double scale) {
-		if (this.actualToPredicted == null)
-			return null;
-		
 		Map<L, Map<L, Double>> confusionMatrix = new HashMap<L, Map<L, Double>>();
 		
-		for (Entry<L, Map<L, List<D>>> entryActual : this.actualToPredicted.entrySet()) {
-			confusionMatrix.put(entryActual.getKey(), new HashMap<L, Double>());
-			for (Entry<L, List<D>> entryPredicted : entryActual.getValue().entrySet()) {
-				confusionMatrix.get(entryActual.getKey()).put(entryPredicted.getKey(), entryPredicted.getValue().size()*scale);
-			}
+		for (int i = 0; i < this.labels.size(); i++) {
+			Map<L, Double> predicted = new HashMap<L, Double>();
+			for (int j = 0; j < this.labels.size(); j++)
+				predicted.put(this.labels.get(j), this.counts[getEntry(i, j)]*scale);
+			confusionMatrix.put(this.labels.get(i), predicted);
 		}
+		
 		return confusionMatrix;
 	}
 	
@@ -141,7 +295,7 @@ public class ConfusionMatrix<D extends Datum<L>, L> {
 					String cleanDoubleStr = cleanDouble.format(value);
 					confusionMatrixStr.append(cleanDoubleStr)
 									  .append("\t");
-				
+					
 					rowTotal += value;
 					rowIncorrect += ((i == j) ? 0 : value);
 					colTotals[j] += value;
@@ -182,21 +336,26 @@ public class ConfusionMatrix<D extends Datum<L>, L> {
 	
 	/**
 	 * @param tokenExtractor
-	 * @return a description of data for each entry in the 
+	 * @return a description of data for each entry in the
 	 * confusion matrix.  The description currently just
 	 * contains the sentences associated with data that
 	 * contributed to the value of an entry of the matrix.
+	 * Only the sampled examples are described, so the
+	 * description is empty if the matrix doesn't keep
+	 * examples.
 	 */
 	public String getActualToPredictedDescription(Datum.Tools.TokenSpanExtractor<D, L> tokenExtractor) {
 		StringBuilder description = new StringBuilder();
+		if (this.examples == null)
+			return description.toString();
 		
-		for (Entry<L, Map<L, List<D>>> entryActual : this.actualToPredicted.entrySet()) {
-			for (Entry<L, List<D>> entryPredicted : entryActual.getValue().entrySet()) {
-				if (entryActual.getKey().equals(entryPredicted.getKey()))
+		for (int i = 0; i < this.labels.size(); i++) {
+			for (int j = 0; j < this.labels.size(); j++) {
+				if (i == j)
 					continue;
-				for (D datum: entryPredicted.getValue()) {
+				for (D datum : this.examples.get(getEntry(i, j))) {
 					
-					TokenSpan[] tokenSpans = null; 
+					TokenSpan[] tokenSpans = null;
 					String sentence = null;
 					if (tokenExtractor != null) {
 						tokenSpans = tokenExtractor.extract(datum);
@@ -204,8 +363,8 @@ public class ConfusionMatrix<D extends Datum<L>, L> {
 							sentence = tokenSpans[0].getDocument().getSentence(tokenSpans[0].getSentenceIndex());
 					}
 					
-					description.append("PREDICTED: ").append(entryPredicted.getKey()).append("\n");
-					description.append("ACTUAL: ").append(entryActual.getKey()).append("\n");
+					description.append("PREDICTED: ").append(this.labels.get(j)).append("\n");
+					description.append("ACTUAL: ").append(this.labels.get(i)).append("\n");
 					if (sentence != null)
 						description.append("FIRST SENTENCE: ").append(sentence).append("\n");
 					description.append(datum.toString()).append("\n\n");
@@ -219,27 +378,44 @@ public class ConfusionMatrix<D extends Datum<L>, L> {
 	
 	/**
 	 * @param actual
-	 * @return a mapping from predicted labels to the lists of datums for
-	 * which they were predicted
+	 * @return a mapping from predicted labels to the lists of sampled
+	 * datums for which they were predicted, or null if the matrix doesn't
+	 * keep examples
 	 */
 	public Map<L, List<D>> getPredictedForActual(L actual) {
-		return this.actualToPredicted.get(actual);
+		Integer actualIndex = this.labelIndices.get(actual);
+		if (this.examples == null || actualIndex == null)
+			return null;
+		
+		Map<L, List<D>> predicted = new HashMap<L, List<D>>();
+		for (int j = 0; j < this.labels.size(); j++)
+			predicted.put(this.labels.get(j), this.examples.get(getEntry(actualIndex, j)));
+		return predicted;
 	}
 	
+	/**
+	 * @param predicted
+	 * @return a mapping from actual labels to the lists of sampled datums
+	 * for which predicted was predicted, or null if the matrix doesn't keep
+	 * examples
+	 */
 	public Map<L, List<D>> getActualForPredicted(L predicted) {
-		Map<L, List<D>> actual = new HashMap<L, List<D>>();
-	
-		for (Entry<L, Map<L, List<D>>> entry : this.actualToPredicted.entrySet()) {
-			if (!actual.containsKey(entry.getKey()))
-				actual.put(entry.getKey(), new ArrayList<D>());
-			actual.get(entry.getKey()).addAll(entry.getValue().get(predicted));
-		}
+		Integer predictedIndex = this.labelIndices.get(predicted);
+		if (this.examples == null || predictedIndex == null)
+			return null;
 		
+		Map<L, List<D>> actual = new HashMap<L, List<D>>();
+		for (int i = 0; i < this.labels.size(); i++)
+			actual.put(this.labels.get(i), this.examples.get(getEntry(i, predictedIndex)));
 		return actual;
 	}
 	
 	public List<D> getActualPredicted(L actual, L predicted) {
-		return this.actualToPredicted.get(actual).get(predicted);
+		Integer actualIndex = this.labelIndices.get(actual);
+		Integer predictedIndex = this.labelIndices.get(predicted);
+		if (this.examples == null || actualIndex == null || predictedIndex == null)
+			return null;
+		return this.examples.get(getEntry(actualIndex, predictedIndex));
 	}
 	
 	protected L mapValidLabel(L label) {
@@ -252,4 +428,43 @@ public class ConfusionMatrix<D extends Datum<L>, L> {
 		else
 			return null;
 	}
+	
+	private int getEntry(int actualIndex, int predictedIndex) {
+		return actualIndex*this.labels.size() + predictedIndex;
+	}
+	
+	/**
+	 * Replaces the examples of an entry with a sample of its examples
+	 * and the other examples, where each example is drawn from one of
+	 * the two samples with probability proportional to the number of
+	 * datums that the sample still represents.
+	 */
+	private void mergeExamples(int entry, List<D> otherExamples, long otherCount) {
+		List<D> entryExamples = this.examples.get(entry);
+		if (entryExamples.size() + otherExamples.size() <= this.exampleCapacity) {
+			entryExamples.addAll(otherExamples);
+			return;
+		}
+		
+		List<D> remaining = new ArrayList<D>(entryExamples);
+		List<D> otherRemaining = new ArrayList<D>(otherExamples);
+		long count = this.counts[entry];
+		List<D> merged = new ArrayList<D>(this.exampleCapacity);
+		while (merged.size() < this.exampleCapacity && (!remaining.isEmpty() || !otherRemaining.isEmpty())) {
+			boolean fromOther = remaining.isEmpty()
+					|| (!otherRemaining.isEmpty() && this.random.nextDouble()*(count + otherCount) < otherCount);
+			List<D> source = (fromOther) ? otherRemaining : remaining;
+			int index = this.random.nextInt(source.size());
+			merged.add(source.get(index));
+			source.set(index, source.get(source.size() - 1));
+			source.remove(source.size() - 1);
+			
+			if (fromOther)
+				otherCount = Math.max(0, otherCount - 1);
+			else
+				count = Math.max(0, count - 1);
+		}
+		
+		this.examples.set(entry, merged);
+	}
 }
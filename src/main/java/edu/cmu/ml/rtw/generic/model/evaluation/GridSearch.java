@@ -2,15 +2,16 @@ package edu.cmu.ml.rtw.generic.model.evaluation;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import edu.cmu.ml.rtw.generic.data.Context;
 import edu.cmu.ml.rtw.generic.data.annotation.Datum;
@@ -24,11 +25,51 @@ import edu.cmu.ml.rtw.generic.parse.AssignmentList;
 import edu.cmu.ml.rtw.generic.parse.CtxParsableFunction;
 import edu.cmu.ml.rtw.generic.parse.Obj;
 import edu.cmu.ml.rtw.generic.util.OutputWriter;
+import edu.cmu.ml.rtw.generic.util.ThreadMapper;
 /**
  * GridSearch performs a grid-search for hyper-parameter values
  * of a given model using a training and test (dev) data
  * set.
  * 
+ * Positions are evaluated in parallel on the process-wide shared
+ * ThreadPool, starting with the positions that are estimated to be 
+ * the most expensive (see PositionCostEstimator and the cost 
+ * parameter of GridDimension), so that long evaluations don't 
+ * start last and leave the other threads idle.  All positions share 
+ * the training and test feature vectors, which are computed once
+ * before the positions are evaluated.  PositionListeners are notified
+ * as each position finishes.
+ * 
+ * The 'search' parameter determines which positions are evaluated:
+ * 
+ * - GRID evaluates every position in the grid.
+ * 
+ * - RANDOM evaluates 'samples' positions drawn uniformly at random 
+ * from the grid (without constructing the full grid).
+ * 
+ * - SUCCESSIVE_HALVING draws 'samples' random positions, and trains 
+ * and evaluates each of them with a 'minBudget' fraction of the full 
+ * training budget.  Only the best 1/'reductionFactor' of the positions 
+ * (according to the evaluation) are kept and re-evaluated with 
+ * 'reductionFactor' times the budget, and so on, until the remaining 
+ * positions are evaluated with the full budget.
+ * 
+ * - HYPERBAND runs several brackets of successive halving, trading 
+ * off the number of sampled positions against the initial budget,
+ * from many positions at 'minBudget' to a few positions at the full
+ * budget (Li et al., 2017).
+ * 
+ * The training budget is either the value of the model parameter named
+ * by 'budgetParameter' (for example, the maximum number of training 
+ * examples or iterations), which is scaled by the budget fraction, or 
+ * if no budget parameter is given, the fraction of the training data
+ * that is used for training.
+ * 
+ * For the randomized searches, the grid evaluation contains each
+ * sampled position's evaluation at the largest budget that it reached,
+ * and only positions evaluated with the full budget are considered for
+ * the best position.
+ * 
  * @author Bill McDowell
  *
  * @param <D> datum type
@@ -36,11 +77,68 @@ import edu.cmu.ml.rtw.generic.util.OutputWriter;
  */
 public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 	private static final String DIMENSION_STR = "dimension";
+	private static final int MAX_SAMPLE_ATTEMPTS_PER_POSITION = 100;
+	
+	public enum SearchStrategy {
+		GRID,
+		RANDOM,
+		SUCCESSIVE_HALVING,
+		HYPERBAND;
+		
+		/**
+		 * @param str
+		 * @return the strategy named str, or null if there is no such
+		 * strategy
+		 */
+		public static SearchStrategy fromString(String str) {
+			for (SearchStrategy strategy : SearchStrategy.values())
+				if (strategy.name().equals(str))
+					return strategy;
+			return null;
+		}
+	}
+	
+	/**
+	 * PositionCostEstimator estimates the relative cost of evaluating
+	 * grid positions, so that the most expensive positions can be 
+	 * started first.
+	 * 
+	 * @author Bill McDowell
+	 *
+	 */
+	public interface PositionCostEstimator<D extends Datum<L>, L> {
+		double estimateCost(GridSearch<D, L>.GridPosition position);
+	}
+	
+	/**
+	 * PositionListener is notified of each grid position's evaluation
+	 * as soon as it finishes.  Positions may finish on several threads
+	 * at once.
+	 * 
+	 * @author Bill McDowell
+	 *
+	 */
+	public interface PositionListener<D extends Datum<L>, L> {
+		void positionEvaluated(GridSearch<D, L>.EvaluatedGridPosition position);
+	}
 	
 	public static class GridDimension extends CtxParsableFunction {
+		/**
+		 * CostScale describes how the cost of evaluating a position
+		 * scales with the dimension's (numeric) value.  LINEAR is for 
+		 * values like numbers of training iterations, and INVERSE is 
+		 * for values like step sizes or convergence tolerances.
+		 */
+		public enum CostScale {
+			NONE,
+			LINEAR,
+			INVERSE
+		}
+		
 		private String name = "";
 		private Obj.Array values = new Obj.Array();
 		private boolean trainingDimension = true;
+		private CostScale cost = CostScale.NONE;
 		
 		private Context<?, ?> context;
 		
@@ -59,10 +157,14 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 		public String getName() {
 			return this.name;
 		}
+		
+		public CostScale getCost() {
+			return this.cost;
+		}
 
 		@Override
 		public String[] getParameterNames() {
-			return new String[] { "name", "values", "trainingDimension" };
+			return new String[] { "name", "values", "trainingDimension", "cost" };
 		}
 
 		@Override
@@ -73,6 +175,8 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 				return this.values;
 			else if (parameter.equals("trainingDimension"))
 				return Obj.stringValue(String.valueOf(this.trainingDimension));
+			else if (parameter.equals("cost"))
+				return Obj.stringValue(this.cost.toString());
 			else
 				return null;
 		}
@@ -85,6 +189,8 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 				this.values = (Obj.Array)parameterValue;
 			else if (parameter.equals("trainingDimension"))
 				this.trainingDimension = Boolean.valueOf(this.context.getMatchValue(parameterValue));
+			else if (parameter.equals("cost"))
+				this.cost = CostScale.valueOf(this.context.getMatchValue(parameterValue));
 			else
 				return false;
 			return true;
@@ -222,12 +328,20 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 	public class EvaluatedGridPosition extends GridPosition {
 		private double positionValue;
 		private ValidationTrainTest<D, L> validation;
+		private long evaluationTime;
+		private double budget;
 		
 		public EvaluatedGridPosition(Context<?, ?> context, GridPosition position, double positionValue, ValidationTrainTest<D, L> validation) {
+			this(context, position, positionValue, validation, 0, 1.0);
+		}
+		
+		public EvaluatedGridPosition(Context<?, ?> context, GridPosition position, double positionValue, ValidationTrainTest<D, L> validation, long evaluationTime, double budget) {
 			super(context);
 			this.coordinates = position.coordinates;
 			this.positionValue = positionValue;
 			this.validation = validation;
+			this.evaluationTime = evaluationTime;
+			this.budget = budget;
 		}
 
 		
@@ -235,6 +349,22 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 			return this.positionValue;
 		}
 		
+		/**
+		 * @return milliseconds taken to train (if the position was 
+		 * trained) and evaluate the model at this position
+		 */
+		public long getEvaluationTime() {
+			return this.evaluationTime;
+		}
+		
+		/**
+		 * @return fraction of the full training budget with which the 
+		 * model was trained at this position
+		 */
+		public double getBudget() {
+			return this.budget;
+		}
+		
 		public ValidationTrainTest<D, L> getValidation() {
 			return this.validation;
 		}
@@ -253,10 +383,23 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 	
 	private DecimalFormat cleanDouble;
 	
+	private SearchStrategy search = SearchStrategy.GRID;
+	private int samples = 10;
+	private int reductionFactor = 3;
+	private double minBudget = 1.0/9.0;
+	private String budgetParameter = "";
+	
+	// Training data samples for partial budgets
+	private Map<Double, FeaturizedDataSet<D, L>> budgetTrainData;
+	
+	private PositionCostEstimator<D, L> costEstimator;
+	private List<PositionListener<D, L>> positionListeners;
+	
 	public GridSearch(Context<D, L> context) {
 		this.context = context;
 		this.dimensions = new ArrayList<GridDimension>();
 		this.cleanDouble = new DecimalFormat("0.00000");
+		this.positionListeners = new ArrayList<PositionListener<D, L>>();
 	}
 	
 	public Context<D, L> getContext() {
@@ -277,6 +420,7 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 		this.trainData = trainData;
 		this.testData = testData;
 		this.gridEvaluation = null;
+		this.budgetTrainData = null;
 		
 		return true;
 	}
@@ -300,6 +444,56 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 		return this.dimensions;
 	}
 	
+	/**
+	 * @param costEstimator estimator used to order the evaluation of 
+	 * positions, or null to estimate costs from the dimensions' cost 
+	 * scales
+	 */
+	public void setCostEstimator(PositionCostEstimator<D, L> costEstimator) {
+		this.costEstimator = costEstimator;
+	}
+	
+	public void addPositionListener(PositionListener<D, L> positionListener) {
+		synchronized (this.positionListeners) {
+			this.positionListeners.add(positionListener);
+		}
+	}
+	
+	/**
+	 * @param position
+	 * @return the estimated relative cost of evaluating the position.  
+	 * Unless a cost estimator is set, this is the product of the position's
+	 * values for training dimensions with LINEAR cost scales, divided by 
+	 * the product of its values for dimensions with INVERSE cost scales. 
+	 */
+	public double estimateCost(GridPosition position) {
+		if (this.costEstimator != null)
+			return this.costEstimator.estimateCost(position);
+		
+		double cost = 1.0;
+		for (GridDimension dimension : this.dimensions) {
+			if (!dimension.isTrainingDimension() || dimension.getCost() == GridDimension.CostScale.NONE)
+				continue;
+			Obj value = position.getParameterValue(dimension.getName());
+			if (value == null)
+				continue;
+			
+			double numericValue = 0.0;
+			try {
+				numericValue = Double.valueOf(this.context.getMatchValue(value));
+			} catch (NumberFormatException e) {
+				continue; // Non-numeric values don't affect the estimate
+			}
+			
+			if (dimension.getCost() == GridDimension.CostScale.LINEAR)
+				cost *= numericValue;
+			else if (numericValue != 0.0)
+				cost /= numericValue;
+		}
+		
+		return cost;
+	}
+	
 	public List<EvaluatedGridPosition> getGridEvaluation() {
 		return getGridEvaluation(1);
 	}
@@ -308,37 +502,170 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 		if (this.gridEvaluation != null)
 			return this.gridEvaluation;
 		
+		// Compute the shared feature vectors before the positions need them, so 
+		// that they aren't computed by several positions at once
+		if ((this.trainData != null && !this.trainData.precomputeFeatures()) 
+				|| (this.testData != null && !this.testData.precomputeFeatures()))
+			return null;
+		
+		Random random = this.context.getDatumTools().getDataTools().makeLocalRandom();
+		List<List<EvaluatedGridPosition>> results = null;
+		if (this.search == SearchStrategy.GRID) {
+			results = evaluatePositions(constructGrid(), 1.0, maxThreads);
+		} else if (this.search == SearchStrategy.RANDOM) {
+			results = evaluatePositions(sampleGrid(this.samples, random), 1.0, maxThreads);
+		} else if (this.search == SearchStrategy.SUCCESSIVE_HALVING) {
+			results = runSuccessiveHalving(sampleGrid(this.samples, random), this.minBudget, maxThreads);
+		} else if (this.search == SearchStrategy.HYPERBAND) {
+			results = runHyperband(random, maxThreads);
+		}
+		
+		if (results == null)
+			return null;
+		
 		this.gridEvaluation = new ArrayList<EvaluatedGridPosition>();
-		List<GridPosition> grid = constructGrid();
-		
-		try {
-	 		if (maxThreads > 1) {
-	 			ExecutorService threadPool = Executors.newFixedThreadPool(maxThreads);
-	 			List<PositionThread> tasks = new ArrayList<PositionThread>();
-	 	 		for (GridPosition position : grid) {
-	 				tasks.add(new PositionThread(position));
-	 			}
-	 	 		
-				
-				List<Future<List<EvaluatedGridPosition>>> results = threadPool.invokeAll(tasks);
-				threadPool.shutdown();
-				threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-				for (Future<List<EvaluatedGridPosition>> futureResult : results) {
-					List<EvaluatedGridPosition> result = futureResult.get();
-					if (result == null)
-						return null;
-					this.gridEvaluation.addAll(result);
+		for (List<EvaluatedGridPosition> result : results)
+			this.gridEvaluation.addAll(result);
+		
+		return this.gridEvaluation;
+	}
+	
+	/**
+	 * Hyperband runs brackets of successive halving from the most
+	 * aggressive (the most positions, starting at the minimum budget) 
+	 * to plain random search at the full budget.
+	 */
+	private List<List<EvaluatedGridPosition>> runHyperband(Random random, int maxThreads) {
+		int maxBracket = (int)Math.floor(Math.log(1.0/this.minBudget)/Math.log(this.reductionFactor) + 1e-9);
+		List<List<EvaluatedGridPosition>> results = new ArrayList<List<EvaluatedGridPosition>>();
+		
+		for (int bracket = maxBracket; bracket >= 0; bracket--) {
+			int bracketPositions = (int)Math.ceil((maxBracket + 1.0)/(bracket + 1.0)*Math.pow(this.reductionFactor, bracket));
+			double bracketBudget = Math.pow(this.reductionFactor, -bracket);
+			
+			List<List<EvaluatedGridPosition>> bracketResults = runSuccessiveHalving(sampleGrid(bracketPositions, random), bracketBudget, maxThreads);
+			if (bracketResults == null)
+				return null;
+			results.addAll(bracketResults);
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Evaluates the positions with the initial budget, and then repeatedly 
+	 * keeps the best 1/reductionFactor of them and re-evaluates those with 
+	 * reductionFactor times the budget, until the full budget is reached.
+	 * 
+	 * @return the evaluations of each position at the largest budget 
+	 * that it reached, in the order of the given positions
+	 */
+	private List<List<EvaluatedGridPosition>> runSuccessiveHalving(List<GridPosition> positions, double initialBudget, int maxThreads) {
+		Map<GridPosition, List<EvaluatedGridPosition>> lastResults = new HashMap<GridPosition, List<EvaluatedGridPosition>>();
+		List<GridPosition> remainingPositions = positions;
+		double budget = Math.min(1.0, initialBudget);
+		OutputWriter output = this.context.getDatumTools().getDataTools().getOutputWriter();
+		
+		while (true) {
+			List<List<EvaluatedGridPosition>> results = evaluatePositions(remainingPositions, budget, maxThreads);
+			if (results == null)
+				return null;
+			
+			final Map<GridPosition, Double> values = new HashMap<GridPosition, Double>();
+			for (int i = 0; i < remainingPositions.size(); i++) {
+				lastResults.put(remainingPositions.get(i), results.get(i));
+				values.put(remainingPositions.get(i), getBestValue(results.get(i)));
+			}
+			
+			if (budget >= 1.0)
+				break;
+			
+			List<GridPosition> rankedPositions = new ArrayList<GridPosition>(remainingPositions);
+			Collections.sort(rankedPositions, new Comparator<GridPosition>() {
+				@Override
+				public int compare(GridPosition p1, GridPosition p2) {
+					return Double.compare(values.get(p2), values.get(p1));
 				}
-	 		} else {
-	 			for (GridPosition position : grid)
-	 				this.gridEvaluation.addAll((new PositionThread(position)).call());
-	 		}
-		} catch (Exception e) {
-			e.printStackTrace();
+			});
+			
+			int keepCount = Math.max(1, rankedPositions.size() / this.reductionFactor);
+			remainingPositions = rankedPositions.subList(0, keepCount);
+			budget = Math.min(1.0, budget*this.reductionFactor);
+			
+			output.debugWriteln("Grid search (" + this.referenceName + ") keeping " + keepCount + " of " + rankedPositions.size() + " positions for budget " + this.cleanDouble.format(budget));
+		}
+		
+		List<List<EvaluatedGridPosition>> results = new ArrayList<List<EvaluatedGridPosition>>(positions.size());
+		for (GridPosition position : positions)
+			results.add(lastResults.get(position));
+		return results;
+	}
+	
+	private double getBestValue(List<EvaluatedGridPosition> evaluatedPositions) {
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (EvaluatedGridPosition evaluatedPosition : evaluatedPositions)
+			if (evaluatedPosition != null)
+				bestValue = Math.max(bestValue, evaluatedPosition.getPositionValue());
+		return bestValue;
+	}
+	
+	/**
+	 * @return the evaluations of each of the given positions (over the 
+	 * non-training dimensions) with the given training budget, in order
+	 * of the given positions
+	 */
+	private List<List<EvaluatedGridPosition>> evaluatePositions(final List<GridPosition> grid, final double budget, int maxThreads) {
+		final FeaturizedDataSet<D, L> positionTrainData = getBudgetTrainData(budget);
+		if (positionTrainData == null)
 			return null;
+		
+		final double[] costs = new double[grid.size()];
+		List<Integer> schedule = new ArrayList<Integer>(grid.size());
+		for (int i = 0; i < grid.size(); i++) {
+			costs[i] = estimateCost(grid.get(i));
+			schedule.add(i);
 		}
 		
-		return this.gridEvaluation;
+		Collections.sort(schedule, new Comparator<Integer>() { // Most expensive first
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(costs[i2], costs[i1]);
+			}
+		});
+		
+		ThreadMapper<Integer, List<EvaluatedGridPosition>> positionMapper = new ThreadMapper<Integer, List<EvaluatedGridPosition>>(new ThreadMapper.Fn<Integer, List<EvaluatedGridPosition>>() {
+			@Override
+			public List<EvaluatedGridPosition> apply(Integer positionIndex) {
+				return (new PositionThread(grid.get(positionIndex), budget, positionTrainData)).call();
+			}
+		});
+		
+		List<List<EvaluatedGridPosition>> scheduledResults = positionMapper.run(schedule, maxThreads);
+		if (scheduledResults == null)
+			return null;
+		
+		// Results are kept in grid order, regardless of the order of evaluation
+		List<List<EvaluatedGridPosition>> results = new ArrayList<List<EvaluatedGridPosition>>(Collections.<List<EvaluatedGridPosition>>nCopies(grid.size(), null));
+		for (int i = 0; i < schedule.size(); i++)
+			results.set(schedule.get(i), scheduledResults.get(i));
+		
+		return results;
+	}
+	
+	/**
+	 * @return the training data for the budget.  If there is no budget
+	 * parameter, then this is a sample of the training data, and samples
+	 * for smaller budgets are subsets of those for larger budgets.
+	 */
+	private synchronized FeaturizedDataSet<D, L> getBudgetTrainData(double budget) {
+		if (budget >= 1.0 || this.budgetParameter.length() > 0 || this.trainData == null)
+			return this.trainData;
+		
+		if (this.budgetTrainData == null)
+			this.budgetTrainData = new HashMap<Double, FeaturizedDataSet<D, L>>();
+		if (!this.budgetTrainData.containsKey(budget))
+			this.budgetTrainData.put(budget, this.trainData.getSample(budget, this.context.getDatumTools().getDataTools().makeLocalRandom()));
+		return this.budgetTrainData.get(budget);
 	}
 	
 	public EvaluatedGridPosition getBestPosition() {
@@ -351,7 +678,7 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 		EvaluatedGridPosition maxPosition = null;
 		
 		for (EvaluatedGridPosition position: gridEvaluation) {
-			if (position.getPositionValue() > maxValue) {
+			if (position.getBudget() >= 1.0 && position.getPositionValue() > maxValue) {
 				maxValue = position.getPositionValue();
 				maxPosition = position;
 			}
@@ -368,6 +695,39 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 		return constructGrid(null, true);
 	}
 	
+	/**
+	 * @return sampleCount distinct positions over the training dimensions 
+	 * drawn uniformly at random, or the full grid if it has no more than
+	 * sampleCount positions
+	 */
+	private List<GridPosition> sampleGrid(int sampleCount, Random random) {
+		double gridSize = 1.0;
+		for (GridDimension dimension : this.dimensions)
+			if (dimension.isTrainingDimension())
+				gridSize *= dimension.getValues().size();
+		
+		if (gridSize <= sampleCount)
+			return constructGrid();
+		
+		Set<GridPosition> sampledPositions = new HashSet<GridPosition>();
+		List<GridPosition> positions = new ArrayList<GridPosition>();
+		int maxAttempts = sampleCount * MAX_SAMPLE_ATTEMPTS_PER_POSITION;
+		for (int i = 0; i < maxAttempts && positions.size() < sampleCount; i++) {
+			GridPosition position = new GridPosition(this.context);
+			for (GridDimension dimension : this.dimensions) {
+				if (!dimension.isTrainingDimension())
+					continue;
+				Obj.Array values = dimension.getValues();
+				position.setParameterValue(dimension.getName(), values.get(random.nextInt(values.size())));
+			}
+			
+			if (sampledPositions.add(position))
+				positions.add(position);
+		}
+		
+		return positions;
+	}
+	
 	private List<GridPosition> constructGrid(GridPosition initialPosition, boolean training) {
 		List<GridPosition> positions = new ArrayList<GridPosition>();
 		
@@ -396,25 +756,45 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 		return positions;
 	}
 	
-	private class PositionThread implements Callable<List<EvaluatedGridPosition>> {
+	private class PositionThread {
 		private GridPosition position;
 		private SupervisedModel<D, L> positionModel;
 		private SupervisedModelEvaluation<D, L> positionEvaluation;
 		private Context<D, L> context;
+		private double budget;
+		private FeaturizedDataSet<D, L> positionTrainData;
+		private Obj budgetValue;
 		
-		public PositionThread(GridPosition position) {
+		public PositionThread(GridPosition position, double budget, FeaturizedDataSet<D, L> positionTrainData) {
 			this.position = position;
 			this.context = GridSearch.this.context.clone(false);
+			this.budget = budget;
+			this.positionTrainData = positionTrainData;
 			
 			for (Entry<String, Obj> entry : this.position.getCoordinates().entrySet())
 				this.context.addValue(entry.getKey(), this.context.getMatchValue(entry.getValue()));
 			
 			this.positionModel = this.context.getMatchModel(GridSearch.this.modelObj);
 			this.positionEvaluation = this.context.getMatchEvaluation(GridSearch.this.evaluationObj);
+			
+			if (budget < 1.0 && GridSearch.this.budgetParameter.length() > 0)
+				this.budgetValue = scaleBudgetValue(this.positionModel.getParameterValue(GridSearch.this.budgetParameter));
 		}
 		
-		@Override
-		public List<EvaluatedGridPosition> call() throws Exception {
+		private Obj scaleBudgetValue(Obj fullValue) {
+			if (fullValue == null)
+				return null;
+			
+			String fullValueStr = this.context.getMatchValue(fullValue);
+			try {
+				long longValue = Long.valueOf(fullValueStr);
+				return Obj.stringValue(String.valueOf(Math.max(1L, Math.round(longValue*this.budget))));
+			} catch (NumberFormatException e) { }
+			
+			return Obj.stringValue(String.valueOf(Double.valueOf(fullValueStr)*this.budget));
+		}
+		
+		public List<EvaluatedGridPosition> call() {
 			List<GridPosition> positions = constructGrid(this.position, false); // Positions for non-training dimensions
 			List<EvaluatedGridPosition> evaluatedPositions = new ArrayList<EvaluatedGridPosition>();
 			boolean skipTraining = false;
@@ -431,12 +811,15 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 			
 			output.debugWriteln("Grid search evaluating " + GridSearch.this.evaluationObj.toString() + " of model (" + GridSearch.this.referenceName + " " + position.toString() + ")");
 			
+			long startTime = System.currentTimeMillis();
 			this.positionModel.setParameterValues(position.getCoordinates());
+			if (this.budgetValue != null && !skipTraining)
+				this.positionModel.setParameterValue(GridSearch.this.budgetParameter, this.budgetValue);
 			
 			List<SupervisedModelEvaluation<D, L>> evaluations = new ArrayList<SupervisedModelEvaluation<D, L>>(1);
 			evaluations.add(this.positionEvaluation);
 			
-			ValidationTrainTest<D, L> validation = new ValidationTrainTest<D, L>(GridSearch.this.referenceName + " " + position.toString(), 1, this.positionModel, trainData, testData, evaluations, null);
+			ValidationTrainTest<D, L> validation = new ValidationTrainTest<D, L>(GridSearch.this.referenceName + " " + position.toString(), 1, this.positionModel, this.positionTrainData, testData, evaluations, null);
 			double computedEvaluation = validation.run(skipTraining).get(0);
 			if (computedEvaluation  < 0) {
 				output.debugWriteln("Error: Grid search evaluation failed at position " + position.toString());
@@ -445,23 +828,55 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 			
 			output.debugWriteln("Finished grid search evaluating model with hyper parameters (" + GridSearch.this.referenceName + " " + position.toString() + ")");
 			
-			return new EvaluatedGridPosition(this.context, position, computedEvaluation, validation);
+			EvaluatedGridPosition evaluatedPosition = new EvaluatedGridPosition(this.context, position, computedEvaluation, validation, System.currentTimeMillis() - startTime, this.budget);
+			synchronized (GridSearch.this.positionListeners) {
+				for (PositionListener<D, L> positionListener : GridSearch.this.positionListeners)
+					positionListener.positionEvaluated(evaluatedPosition);
+			}
+			
+			return evaluatedPosition;
 		}
 	}
 
 	@Override
 	public String[] getParameterNames() {
-		return new String[0];
+		return new String[] { "search", "samples", "reductionFactor", "minBudget", "budgetParameter" };
 	}
 
 	@Override
 	public Obj getParameterValue(String parameter) {
-		return null;
+		if (parameter.equals("search"))
+			return Obj.stringValue(this.search.toString());
+		else if (parameter.equals("samples"))
+			return Obj.stringValue(String.valueOf(this.samples));
+		else if (parameter.equals("reductionFactor"))
+			return Obj.stringValue(String.valueOf(this.reductionFactor));
+		else if (parameter.equals("minBudget"))
+			return Obj.stringValue(String.valueOf(this.minBudget));
+		else if (parameter.equals("budgetParameter"))
+			return Obj.stringValue(this.budgetParameter);
+		else
+			return null;
 	}
 
 	@Override
 	public boolean setParameterValue(String parameter, Obj parameterValue) {
-		return false;
+		if (parameter.equals("search")) {
+			SearchStrategy search = SearchStrategy.fromString(this.context.getMatchValue(parameterValue));
+			if (search == null)
+				return false;
+			this.search = search;
+		} else if (parameter.equals("samples"))
+			this.samples = Integer.valueOf(this.context.getMatchValue(parameterValue));
+		else if (parameter.equals("reductionFactor"))
+			this.reductionFactor = Integer.valueOf(this.context.getMatchValue(parameterValue));
+		else if (parameter.equals("minBudget"))
+			this.minBudget = Double.valueOf(this.context.getMatchValue(parameterValue));
+		else if (parameter.equals("budgetParameter"))
+			this.budgetParameter = this.context.getMatchValue(parameterValue);
+		else
+			return false;
+		return true;
 	}
 
 	@Override
@@ -516,6 +931,22 @@ public class GridSearch<D extends Datum<L>, L> extends CtxParsableFunction {
 		
 		gridSearch.dimensions = this.dimensions;
 		gridSearch.cleanDouble = this.cleanDouble;
+		gridSearch.search = this.search;
+		gridSearch.samples = this.samples;
+		gridSearch.reductionFactor = this.reductionFactor;
+		gridSearch.minBudget = this.minBudget;
+		gridSearch.budgetParameter = this.budgetParameter;
+		
+		if (this.costEstimator != null) {
+			gridSearch.costEstimator = new PositionCostEstimator<T, Boolean>() {
+				@Override
+				public double estimateCost(GridSearch<T, Boolean>.GridPosition position) {
+					GridPosition unaryPosition = new GridPosition(GridSearch.this.context);
+					unaryPosition.coordinates = position.coordinates;
+					return GridSearch.this.costEstimator.estimateCost(unaryPosition);
+				}
+			};
+		}
 		
 		return gridSearch;
 	}
@@ -169,7 +169,7 @@ public class ValidationGST<D extends Datum<L>, L> extends Validation<D, L> {
 				if (!this.trainOnDev) 
 					this.model = bestGridPosition.getValidation().getModel();
 				else {
-					this.model = this.model.clone();
+					this.model = (this.model != null) ? this.model.clone() : bestGridPosition.getValidation().getModel().clone();
 					this.model.setParameterValues(bestGridPosition.getCoordinates());
 					
 				}
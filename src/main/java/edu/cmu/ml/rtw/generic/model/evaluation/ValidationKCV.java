@@ -1,365 +1,374 @@
 package edu.cmu.ml.rtw.generic.model.evaluation;
 
-/*import java.io.BufferedReader;
-import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
-import edu.cmu.ml.rtw.generic.data.annotation.DataSet;*/
+import edu.cmu.ml.rtw.generic.data.Context;
+import edu.cmu.ml.rtw.generic.data.annotation.DataSet;
 import edu.cmu.ml.rtw.generic.data.annotation.Datum;
-/*import edu.cmu.ml.rtw.generic.data.annotation.Datum.Tools;
 import edu.cmu.ml.rtw.generic.data.feature.Feature;
 import edu.cmu.ml.rtw.generic.data.feature.FeaturizedDataSet;
 import edu.cmu.ml.rtw.generic.model.SupervisedModel;
 import edu.cmu.ml.rtw.generic.util.OutputWriter;
-import edu.cmu.ml.rtw.generic.util.Pair;*/
+import edu.cmu.ml.rtw.generic.util.Pair;
+import edu.cmu.ml.rtw.generic.util.ThreadMapper;
+import edu.cmu.ml.rtw.generic.util.Timer;
 
 /**
- * FIXME Needs refactoring
- * ValidationKCV performs a k-fold cross validation with 
- * a given model on set of annotated 
- * organization mentions 
- * (http://en.wikipedia.org/wiki/Cross-validation_(statistics)#k-fold_cross-validation).  
- * For each fold, there is an  
- * optional grid-search for hyper-parameter values using
+ * ValidationKCV performs a k-fold cross validation with
+ * a given model on a data set
+ * (http://en.wikipedia.org/wiki/Cross-validation_(statistics)#k-fold_cross-validation).
+ * For each fold, there is an optional grid-search for
+ * hyper-parameter values using
  * edu.cmu.ml.rtw.generic.model.evaluation.GridSearch with
  * (k-2) parts as training, one part as dev, and one part as
  * test data.
- * 
+ *
+ * The folds are run in parallel on the shared thread pool.  Each
+ * fold gets its own clone of the context (with the value FOLD set to
+ * the fold index), so its features are initialized once on the fold's
+ * training data, and its models and grid search don't interfere with
+ * other folds.  The fold's data sets only reference the datums of the
+ * full data set, and their feature vectors are computed once before
+ * the grid search, so that they are reused by every grid position.
+ *
  * @author Bill McDowell
  *
  * @param <D> datum type
  * @param <L> datum label type
  */
-public class ValidationKCV<D extends Datum<L>, L>/* extends Validation<D, L>*/ {
-/*	private List<Feature<D, L>> features;
-	private List<DataSet<D, L>> folds;
-	private List<GridSearch.GridDimension> gridDimensions; 
+public class ValidationKCV<D extends Datum<L>, L> extends Validation<D, L> {
+	private Context<D, L> context;
 	private DataSet<D, L> data;
-	
-	private List<Pair<GridSearch<D, L>.GridPosition, List<Double>>> gridFoldResults;
-	private List<ValidationResult> validationResults;
-	
 	private int k;
 	private boolean trainOnDev;
-	private String[] parameters = new String[] { "trainOnDev", "k"};*/
-	
+
+	private List<DataSet<D, L>> folds;
+	private List<ValidationResult> validationResults;
+	// Full budget grid position evaluations for each fold, keyed by position values
+	private Map<String, Pair<GridSearch<D, L>.GridPosition, Double[]>> gridFoldResults;
+
 	/**
 	 * @param name
+	 * @param context - Context with features, model, evaluations, optional
+	 * grid search, and values for 'k', 'trainOnDev', 'maxThreads', and
+	 * 'errorExampleExtractor'
 	 * @param data - Dataset to randomly partition into folds
 	 */
-/*	public ValidationKCV(String name, DataSet<D, L> data) {
-		super(name, data.getDatumTools());
-		this.gridDimensions = new ArrayList<GridSearch.GridDimension>();
+	public ValidationKCV(String name, Context<D, L> context, DataSet<D, L> data) {
+		this(name, context, data, context.getIntValue("k"), context.getBooleanValue("trainOnDev"));
+	}
+
+	public ValidationKCV(String name, Context<D, L> context, DataSet<D, L> data, int k, boolean trainOnDev) {
+		super(name, context);
+		this.context = context;
 		this.data = data;
-		this.features = new ArrayList<Feature<D, L>>();
+		this.k = k;
+		this.trainOnDev = trainOnDev;
 	}
-	
+
 	@Override
 	public List<Double> run() {
-		this.folds = this.data.makePartition(this.k, this.data.getDatumTools().getDataTools().getGlobalRandom());
-		
-		ExecutorService threadPool = Executors.newFixedThreadPool(maxThreads);
-		List<ValidationThread> tasks = new ArrayList<ValidationThread>();
-		this.validationResults = new ArrayList<ValidationResult>(this.folds.size());
- 		for (int i = 0; i < this.folds.size(); i++) {
- 			validationResults.add(null);
-			tasks.add(new ValidationThread(i, 1));
-		}
-		
-		try {
-			List<Future<ValidationResult>> results = threadPool.invokeAll(tasks);
-			threadPool.shutdown();
-			threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-			for (Future<ValidationResult> futureResult : results) {
-				ValidationResult result = futureResult.get();
-				if (result == null)
-					return null;
-				this.validationResults.set(result.getFoldIndex(), result);
+		OutputWriter output = this.datumTools.getDataTools().getOutputWriter();
+		Timer timer = this.datumTools.getDataTools().getTimer();
+
+		timer.startClock(this.name + " KCV (Total)");
+
+		this.folds = this.data.makePartition(this.k, this.datumTools.getDataTools().getGlobalRandom());
+		List<Integer> foldIndices = new ArrayList<Integer>(this.folds.size());
+		for (int i = 0; i < this.folds.size(); i++)
+			foldIndices.add(i);
+
+		// Folds run concurrently, so each fold's grid search gets a share of
+		// the threads.  Data set operations within folds run on the shared
+		// thread pool, so they can use all of them.
+		final int foldThreads = Math.max(1, this.maxThreads / this.folds.size());
+		ThreadMapper<Integer, ValidationResult> foldMapper = new ThreadMapper<Integer, ValidationResult>(new ThreadMapper.Fn<Integer, ValidationResult>() {
+			@Override
+			public ValidationResult apply(Integer foldIndex) {
+				return runFold(foldIndex, foldThreads);
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
+		});
+
+		this.validationResults = foldMapper.run(foldIndices, this.maxThreads);
+		if (this.validationResults == null)
 			return null;
+		for (ValidationResult result : this.validationResults) {
+			if (result == null) {
+				output.debugWriteln("Error: Validation failed (" + this.name + ")");
+				return null;
+			}
 		}
-		
-		this.confusionMatrix = new ConfusionMatrix<D, L>(this.model.getValidLabels(), this.model.getLabelMapping());
+
+		this.confusionMatrix = null;
 		this.evaluationValues = new ArrayList<Double>(this.evaluations.size());
-		for (int i = 0; i < this.evaluations.size(); i++) {
+		for (int i = 0; i < this.evaluations.size(); i++)
 			this.evaluationValues.add(0.0);
+
+		for (ValidationResult result : this.validationResults) {
+			List<Double> foldEvaluationValues = result.getEvaluationValues();
+			for (int j = 0; j < foldEvaluationValues.size(); j++)
+				this.evaluationValues.set(j, this.evaluationValues.get(j) + foldEvaluationValues.get(j));
+
+			if (this.confusionMatrix == null)
+				this.confusionMatrix = new ConfusionMatrix<D, L>(result.getModel().getValidLabels(), result.getModel().getLabelMapping());
+			this.confusionMatrix.add(result.getConfusionMatrix());
 		}
-		
-		for (int i = 0; i < validationResults.size(); i++) {
-			List<Double> evaluationValues = validationResults.get(i).getEvaluationValues();
-			for (int j = 0; j < evaluationValues.size(); j++) {
-				this.evaluationValues.set(j , this.evaluationValues.get(j) + evaluationValues.get(j));
+
+		for (int i = 0; i < this.evaluationValues.size(); i++)
+			this.evaluationValues.set(i, this.evaluationValues.get(i)/this.folds.size());
+
+		this.model = this.validationResults.get(0).getModel();
+
+		// Successive halving and hyperband evaluate different positions with
+		// different budgets in each fold, so only the full budget evaluations
+		// are comparable across folds
+		this.gridFoldResults = new LinkedHashMap<String, Pair<GridSearch<D, L>.GridPosition, Double[]>>();
+		for (ValidationResult result : this.validationResults) {
+			List<GridSearch<D, L>.EvaluatedGridPosition> gridEvaluation = result.getGridEvaluation();
+			if (gridEvaluation == null)
+				continue;
+			for (GridSearch<D, L>.EvaluatedGridPosition position : gridEvaluation) {
+				if (position.getBudget() < 1.0)
+					continue;
+				String positionKey = position.toValueString("\t");
+				if (!this.gridFoldResults.containsKey(positionKey))
+					this.gridFoldResults.put(positionKey, new Pair<GridSearch<D, L>.GridPosition, Double[]>(position, new Double[this.folds.size()]));
+				this.gridFoldResults.get(positionKey).getSecond()[result.getFoldIndex()] = position.getPositionValue();
 			}
-			
-			this.confusionMatrix.add(validationResults.get(i).getConfusionMatrix());
 		}
-		
-		for (int i = 0; i < this.evaluationValues.size(); i++) {
-			this.evaluationValues.set(i, this.evaluationValues.get(i)/this.folds.size());
+
+		timer.stopClock(this.name + " KCV (Total)");
+
+		return this.evaluationValues;
+	}
+
+	private ValidationResult runFold(int foldIndex, int foldThreads) {
+		OutputWriter output = this.datumTools.getDataTools().getOutputWriter();
+		Timer timer = this.datumTools.getDataTools().getTimer();
+		String namePrefix = this.name + " Fold " + foldIndex;
+
+		Context<D, L> foldContext = this.context.clone(false);
+		if (foldContext == null)
+			return null;
+		foldContext.addValue("FOLD", String.valueOf(foldIndex));
+
+		GridSearch<D, L> gridSearch = (foldContext.getGridSearches().size() > 0 && foldContext.getGridSearches().get(0).getDimensions().size() > 0) ? foldContext.getGridSearches().get(0) : null;
+
+		/*
+		 * Initialize training, dev, and test sets
+		 */
+		output.debugWriteln("Initializing CV data sets for " + namePrefix);
+		timer.startClock(namePrefix + " (Features)");
+
+		Datum.Tools.LabelMapping<L> labelMapping = this.data.getLabelMapping();
+		FeaturizedDataSet<D, L> testData = new FeaturizedDataSet<D, L>(namePrefix + " Test", this.maxThreads, this.datumTools, labelMapping);
+		FeaturizedDataSet<D, L> trainData = new FeaturizedDataSet<D, L>(namePrefix + " Training", this.maxThreads, this.datumTools, labelMapping);
+		FeaturizedDataSet<D, L> devData = new FeaturizedDataSet<D, L>(namePrefix + " Dev", this.maxThreads, this.datumTools, labelMapping);
+		for (int j = 0; j < this.folds.size(); j++) {
+			if (j == foldIndex) {
+				testData.addAll(this.folds.get(j));
+			} else if (gridSearch != null && j == ((foldIndex + 1) % this.folds.size())) {
+				devData.addAll(this.folds.get(j));
+			} else {
+				trainData.addAll(this.folds.get(j));
+			}
 		}
-		
-		if (this.gridDimensions.size() > 0) {
-			this.gridFoldResults = new ArrayList<Pair<GridSearch<D, L>.GridPosition, List<Double>>>();
-			for (int i = 0; i < validationResults.size(); i++) {
-				List<GridSearch<D, L>.EvaluatedGridPosition> gridEvaluation = validationResults.get(i).getGridEvaluation();
-				for (int j = 0; j < gridEvaluation.size(); j++) {
-					if (this.gridFoldResults.size() <= j)
-						this.gridFoldResults.add(new Pair<GridSearch<D, L>.GridPosition, List<Double>>(gridEvaluation.get(j), new ArrayList<Double>()));
-					this.gridFoldResults.get(j).getSecond().add(gridEvaluation.get(j).getPositionValue());
-				}
+
+		// The fold context's features are uninitialized clones, so they can be
+		// initialized on this fold without affecting other folds
+		for (Feature<D, L> feature : foldContext.getFeatures()) {
+			if (!trainData.addFeature(feature, true))
+				return null;
+			if (!devData.addFeature(feature, false) || !testData.addFeature(feature, false))
+				return null;
+		}
+
+		if (!trainData.precomputeFeatures() || !devData.precomputeFeatures() || !testData.precomputeFeatures())
+			return null;
+
+		timer.stopClock(namePrefix + " (Features)");
+
+		output.dataWriteln("--------------- Fold: " + foldIndex + " ---------------");
+		output.modelWriteln("--------------- Fold: " + foldIndex + " ---------------");
+
+		/*
+		 *  Run either ValidationTrainTest or ValidationGST on the fold
+		 */
+		timer.startClock(namePrefix + " (Validation)");
+
+		ValidationResult result = null;
+		if (gridSearch != null) {
+			ValidationGST<D, L> gridSearchValidation = new ValidationGST<D, L>(namePrefix, foldThreads, trainData, devData, testData, foldContext.getEvaluations(), this.errorExampleExtractor, gridSearch, this.trainOnDev);
+			List<Double> foldEvaluationValues = gridSearchValidation.run();
+			if (foldEvaluationValues == null)
+				return null;
+			result = new ValidationResult(foldIndex, foldEvaluationValues, gridSearchValidation.getConfusionMatrix(), gridSearchValidation.getModel(), gridSearchValidation.getGridEvaluation(), gridSearchValidation.getBestGridPosition());
+		} else {
+			SupervisedModel<D, L> foldModel = foldContext.getModels().get(0);
+			ValidationTrainTest<D, L> trainTestValidation = new ValidationTrainTest<D, L>(namePrefix, foldThreads, foldModel, trainData, testData, foldContext.getEvaluations(), this.errorExampleExtractor);
+			List<Double> foldEvaluationValues = trainTestValidation.run();
+			if (foldEvaluationValues.size() > 0 && foldEvaluationValues.get(0) < 0) {
+				output.debugWriteln("Error: Validation failed on fold " + foldIndex);
+				return null;
 			}
+			result = new ValidationResult(foldIndex, foldEvaluationValues, trainTestValidation.getConfusionMatrix(), foldModel, null, null);
 		}
-		
-		return this.evaluationValues;
+
+		timer.stopClock(namePrefix + " (Validation)");
+
+		output.modelWriteln(result.getModel().toString());
+		result.setTimes(timer.getClockRunTimeInMillis(namePrefix + " (Features)"), timer.getClockRunTimeInMillis(namePrefix + " (Validation)"));
+
+		return result;
+	}
+
+	@Override
+	public boolean outputModel() {
+		return true; // Fold models are output as the folds finish
 	}
-	
+
 	@Override
 	public boolean outputResults() {
 		DecimalFormat cleanDouble = new DecimalFormat("0.00000");
-		OutputWriter output = this.folds.get(0).getDatumTools().getDataTools().getOutputWriter();
-
-		String gridSearchParameters = ((this.gridDimensions.size() > 0) ? this.validationResults.get(0).getBestParameters().toKeyString("\t") + "\t" : "");
-		String evaluationsStr = "";
-		
-		for (int i = 0; i < this.evaluations.size(); i++) {
-			evaluationsStr += this.evaluations.get(i).toString() + "\t";
-		
-		}
-		
-		output.resultsWriteln("Fold\t" + gridSearchParameters + evaluationsStr);
-		
-		for (int i = 0; i < this.validationResults.size(); i++) {
-			String gridSearchParameterValues = ((this.gridDimensions.size() > 0) ? validationResults.get(i).getBestParameters().toValueString("\t") + "\t" : "");
-			String evaluationValuesStr = "";
-			for (int j = 0; j < this.validationResults.get(i).evaluationValues.size(); j++) {
-				evaluationValuesStr += cleanDouble.format(this.validationResults.get(i).evaluationValues.get(j)) + "\t";
-			}
-			
-			output.resultsWriteln(i + "\t" + gridSearchParameterValues + evaluationValuesStr);
+		OutputWriter output = this.datumTools.getDataTools().getOutputWriter();
+		boolean hasGrid = this.validationResults.get(0).getBestParameters() != null;
+
+		String gridSearchParameters = (hasGrid) ? this.validationResults.get(0).getBestParameters().toKeyString("\t") + "\t" : "";
+		StringBuilder evaluationsStr = new StringBuilder();
+		for (int i = 0; i < this.evaluations.size(); i++)
+			evaluationsStr.append(this.evaluations.get(i).toString()).append("\t");
+
+		output.resultsWriteln("Fold\t" + gridSearchParameters + evaluationsStr.toString() + "Feature time (ms)\tValidation time (ms)");
+
+		for (ValidationResult result : this.validationResults) {
+			String gridSearchParameterValues = (hasGrid) ? result.getBestParameters().toValueString("\t") + "\t" : "";
+			StringBuilder evaluationValuesStr = new StringBuilder();
+			for (Double evaluationValue : result.getEvaluationValues())
+				evaluationValuesStr.append(cleanDouble.format(evaluationValue)).append("\t");
+
+			output.resultsWriteln(result.getFoldIndex() + "\t" + gridSearchParameterValues + evaluationValuesStr.toString() + result.getFeatureTime() + "\t" + result.getValidationTime());
 		}
-		
+
 		output.resultsWrite("Averages:\t");
-		for (int i = 0; i < this.gridDimensions.size(); i++)
-			output.resultsWrite("\t");
-		for (int i = 0; i < this.evaluationValues.size(); i++) {
+		if (hasGrid)
+			for (int i = 0; i < this.validationResults.get(0).getBestParameters().getCoordinates().size(); i++)
+				output.resultsWrite("\t");
+		for (int i = 0; i < this.evaluationValues.size(); i++)
 			output.resultsWrite(cleanDouble.format(this.evaluationValues.get(i)) + "\t");
-		}
 		output.resultsWriteln("");
-		
+
 		output.resultsWriteln("\nTotal Confusion Matrix:\n " + this.confusionMatrix.toString());
-		
-		if (this.gridDimensions.size() > 0) {
+
+		if (this.gridFoldResults.size() > 0) {
 			output.resultsWriteln("\nGrid search results:");
-			output.resultsWrite(this.validationResults.get(0).getGridEvaluation().get(0).toKeyString("\t") + "\t");
+			output.resultsWrite(this.gridFoldResults.values().iterator().next().getFirst().toKeyString("\t") + "\t");
 			for (int i = 0; i < this.folds.size(); i++)
 				output.resultsWrite("Fold " + i + "\t");
 			output.resultsWrite("\n");
-			
-			for (Pair<GridSearch<D, L>.GridPosition, List<Double>> gridFoldResult : this.gridFoldResults) {
+
+			// Positions that weren't evaluated with the full budget in a fold
+			// have empty cells for that fold
+			for (Pair<GridSearch<D, L>.GridPosition, Double[]> gridFoldResult : this.gridFoldResults.values()) {
 				output.resultsWrite(gridFoldResult.getFirst().toValueString("\t") + "\t");
-				for (int i = 0; i < gridFoldResult.getSecond().size(); i++) {
-					output.resultsWrite(cleanDouble.format(gridFoldResult.getSecond().get(i)) + "\t");
-				}
+				for (int i = 0; i < gridFoldResult.getSecond().length; i++)
+					output.resultsWrite(((gridFoldResult.getSecond()[i] == null) ? "" : cleanDouble.format(gridFoldResult.getSecond()[i])) + "\t");
 				output.resultsWrite("\n");
 			}
 		}
-		
+
+		output.resultsWriteln("\nTime:\n" + this.datumTools.getDataTools().getTimer().toString());
+
 		return true;
 	}
-	
+
+	@Override
+	public boolean outputData() {
+		StringBuilder errorExamples = new StringBuilder();
+		for (ValidationResult result : this.validationResults)
+			errorExamples.append("--------------- Fold: ").append(result.getFoldIndex()).append(" ---------------\n")
+						 .append(result.getConfusionMatrix().getActualToPredictedDescription(this.errorExampleExtractor));
+		this.datumTools.getDataTools().getOutputWriter().dataWriteln(errorExamples.toString());
+		return true;
+	}
+
+	public List<ValidationResult> getValidationResults() {
+		return this.validationResults;
+	}
+
 	/**
-	 * ValidationResult stores the results of training and evaluating 
+	 * ValidationResult stores the results of training and evaluating
 	 * the model on a single fold
-	 * 
+	 *
 	 * @author Bill McDowell
 	 *
 	 */
-/*	private class ValidationResult  {
+	public class ValidationResult  {
 		private int foldIndex;
 		private List<Double> evaluationValues;
 		private ConfusionMatrix<D, L> confusionMatrix;
+		private SupervisedModel<D, L> model;
 		private List<GridSearch<D, L>.EvaluatedGridPosition> gridEvaluation;
 		private GridSearch<D, L>.GridPosition bestParameters;
-		
-		public ValidationResult(int foldIndex, List<Double> evaluationValues, ConfusionMatrix<D, L> confusionMatrix, List<GridSearch<D, L>.EvaluatedGridPosition> gridEvaluation, GridSearch<D, L>.GridPosition bestParameters) {
+		private long featureTime;
+		private long validationTime;
+
+		public ValidationResult(int foldIndex, List<Double> evaluationValues, ConfusionMatrix<D, L> confusionMatrix, SupervisedModel<D, L> model, List<GridSearch<D, L>.EvaluatedGridPosition> gridEvaluation, GridSearch<D, L>.GridPosition bestParameters) {
 			this.foldIndex = foldIndex;
 			this.evaluationValues = evaluationValues;
 			this.confusionMatrix = confusionMatrix;
+			this.model = model;
 			this.gridEvaluation = gridEvaluation;
 			this.bestParameters = bestParameters;
 		}
-		
+
 		public int getFoldIndex() {
 			return this.foldIndex;
 		}
-		
+
 		public List<Double> getEvaluationValues() {
 			return this.evaluationValues;
 		}
-		
+
 		public ConfusionMatrix<D, L> getConfusionMatrix() {
 			return this.confusionMatrix;
 		}
-		
+
+		public SupervisedModel<D, L> getModel() {
+			return this.model;
+		}
+
 		public List<GridSearch<D, L>.EvaluatedGridPosition> getGridEvaluation() {
 			return this.gridEvaluation;
 		}
-		
+
 		public GridSearch<D, L>.GridPosition getBestParameters() {
 			return this.bestParameters;
 		}
-	}
-	
-	/**
-	 * ValidationThread trains and evaluates the model on a single
-	 * fold (with optional single-threaded grid search).
-	 * 
-	 * @author Bill McDowell
-	 *
-	 */
-/*	private class ValidationThread implements Callable<ValidationResult> {
-		private int foldIndex;
-		private int maxThreads;
-		// fold-specific environment variables that can be referenced by
-		// experiment configuration files
-		private Map<String, String> parameterEnvironment; 
-		
-		public ValidationThread(int foldIndex, int maxThreads) {
-			this.foldIndex = foldIndex;
-			this.maxThreads = maxThreads;
-	
-			this.parameterEnvironment = new HashMap<String, String>();
-			this.parameterEnvironment.putAll(folds.get(foldIndex).getDatumTools().getDataTools().getParameterEnvironment());
-			this.parameterEnvironment.put("FOLD", String.valueOf(this.foldIndex));
-		}
-		
-		public ValidationResult call() {
-			OutputWriter output = folds.get(foldIndex).getDatumTools().getDataTools().getOutputWriter();
-			String namePrefix = name + " Fold " + foldIndex;
-			
-			/*
-			 * Initialize training, dev, and test sets
-			 */
-/*			output.debugWriteln("Initializing CV data sets for " + name);
-			Datum.Tools<D, L> datumTools = folds.get(this.foldIndex).getDatumTools();
-			Datum.Tools.LabelMapping<L> labelMapping = folds.get(this.foldIndex).getLabelMapping();
-			FeaturizedDataSet<D, L> testData = new FeaturizedDataSet<D, L>(namePrefix + " Test", this.maxThreads, datumTools, labelMapping);
-			FeaturizedDataSet<D, L> trainData = new FeaturizedDataSet<D, L>(namePrefix + " Training", this.maxThreads, datumTools, labelMapping);
-			FeaturizedDataSet<D, L> devData = new FeaturizedDataSet<D, L>(namePrefix + " Dev", this.maxThreads, datumTools, labelMapping);
-			for (int j = 0; j < folds.size(); j++) {
-				if (j == this.foldIndex) {
-					testData.addAll(folds.get(j));
-				} else if (gridDimensions.size() > 0 && j == ((foldIndex + 1) % folds.size())) {
-					devData.addAll(folds.get(j));
-				} else {
-					trainData.addAll(folds.get(j));	
-				}
-			}
-			
-			/* Need cloned bunch of features for the fold so that they can be 
-			 * reinitialized without affecting other folds' results */
-/*			output.debugWriteln("Initializing features for CV fold " + this.foldIndex);
-			for (Feature<D, L> feature : features) {
-				Feature<D, L> foldFeature = feature.clone(datumTools, this.parameterEnvironment);
-				if (!foldFeature.init(trainData))
-					return null;
-				
-				trainData.addFeature(foldFeature);
-				devData.addFeature(foldFeature);
-				testData.addFeature(foldFeature);
-			}
-			
-			SupervisedModel<D, L> foldModel = model.clone(datumTools, this.parameterEnvironment, true);
-			
-			output.dataWriteln("--------------- Fold: " + this.foldIndex + " ---------------");
-			output.modelWriteln("--------------- Fold: " + this.foldIndex + " ---------------");
-			
-			/*
-			 *  Run either TrainTestValidation or GridSearchTestValidation on the fold
-			 */
-/*			ValidationResult result = null;
-			List<Double> evaluationValues = null;
-			if (gridDimensions.size() > 0) {
-				ValidationGST<D, L> gridSearchValidation = new ValidationGST<D, L>(namePrefix, this.maxThreads, foldModel, trainData, devData, testData, evaluations, errorExampleExtractor, gridDimensions, true);
-				evaluationValues = gridSearchValidation.run();
-				result = new ValidationResult(foldIndex, evaluationValues, gridSearchValidation.getConfusionMatrix(), gridSearchValidation.getGridEvaluation(), gridSearchValidation.getBestGridPosition());
-			} else {
-				ValidationTrainTest<D, L> accuracyValidation = new ValidationTrainTest<D, L>(namePrefix, this.maxThreads, foldModel, trainData, testData, evaluations, errorExampleExtractor);
-				evaluationValues = accuracyValidation.run();
-				output.modelWriteln(accuracyValidation.getModel().toString());
-				result = new ValidationResult(foldIndex, evaluationValues, accuracyValidation.getConfusionMatrix(), null, null);
-			}
-			
-			if (evaluationValues.get(0) < 0)
-				output.debugWriteln("Error: Validation failed on fold " + this.foldIndex);
-			
-			return result;
-		}
-	}
-		
-	@Override
-	protected boolean setMaxThreads(int maxThreads) {
-		this.maxThreads = maxThreads;
-		return true;
-	}
-	
-	@Override
-	protected boolean addFeature(Feature<D, L> feature) {
-		this.features.add(feature);
-		return true;
-	}
 
-	@Override
-	public String[] getParameterNames() {
-		return this.parameters;
-	}
+		/**
+		 * @return milliseconds spent constructing the fold's data sets and
+		 * initializing and computing its features
+		 */
+		public long getFeatureTime() {
+			return this.featureTime;
+		}
 
-	@Override
-	public String getParameterValue(String parameter) {
-		if (parameter.equals("trainOnDev")) {
-			return String.valueOf(this.trainOnDev);
-		} else if (parameter.equals("k"))
-			return String.valueOf(this.k);
-		
-		return null;
-	}
+		/**
+		 * @return milliseconds spent on the fold's grid search, training, and
+		 * evaluation
+		 */
+		public long getValidationTime() {
+			return this.validationTime;
+		}
 
-	@Override
-	public boolean setParameterValue(String parameter, String parameterValue,
-			Tools<D, L> datumTools) {
-		if (parameter.equals("trainOnDev")) {
-			this.trainOnDev = Boolean.valueOf(parameterValue);
-		} else if (parameter.equals("k")) {
-			this.k = Integer.valueOf(parameterValue);
-		} else
-			return false;
-		
-		return true;
-	}
-	
-	@Override
-	public boolean deserializeNext(BufferedReader reader, String nextName) throws IOException {
-		if (nextName.equals("gridDimension")) {
-			GridSearch.GridDimension gridDimension = new GridSearch.GridDimension();
-			if (!gridDimension.deserialize(reader))
-				return false;
-			
-			this.gridDimensions.add(gridDimension);
-		} else {
-			return super.deserializeNext(reader, nextName);
+		private boolean setTimes(long featureTime, long validationTime) {
+			this.featureTime = featureTime;
+			this.validationTime = validationTime;
+			return true;
 		}
-		
-		return true;
-	}*/
+	}
 }
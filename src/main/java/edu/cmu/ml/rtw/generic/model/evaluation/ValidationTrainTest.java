@@ -111,8 +111,8 @@ public class ValidationTrainTest<D extends Datum<L>, L> extends Validation<D, L>
 		for (int i = 0; i < this.evaluations.size(); i++)
 			this.evaluationValues.set(i, this.evaluations.get(i).evaluate(this.model, this.testData, classifiedData));
 		
-		this.confusionMatrix = new ConfusionMatrix<D, L>(this.model.getValidLabels(), this.model.getLabelMapping());
-		this.confusionMatrix.addData(classifiedData);
+		this.confusionMatrix = new ConfusionMatrix<D, L>(this.model.getValidLabels(), this.model.getLabelMapping(), ConfusionMatrix.DEFAULT_EXAMPLE_CAPACITY);
+		this.confusionMatrix.addData(classifiedData, this.maxThreads);
 		
 		timer.stopClock(this.name + " Train/Test (Testing)");
 		
@@ -0,0 +1,107 @@
+package edu.cmu.ml.rtw.generic.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryReader reads values written by BinaryWriter from a byte
+ * array.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class BinaryReader {
+	private byte[] buffer;
+	private int position;
+	private int end;
+
+	public BinaryReader(byte[] buffer) {
+		this(buffer, 0, buffer.length);
+	}
+
+	public BinaryReader(byte[] buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.position = offset;
+		this.end = offset + length;
+	}
+
+	public int getPosition() {
+		return this.position;
+	}
+
+	public boolean hasRemaining() {
+		return this.position < this.end;
+	}
+
+	public void skip(int length) {
+		this.position += length;
+	}
+
+	/**
+	 * @param length
+	 * @return a reader over the next length bytes, which are skipped by
+	 * this reader
+	 */
+	public BinaryReader slice(int length) {
+		BinaryReader slice = new BinaryReader(this.buffer, this.position, length);
+		this.position += length;
+		return slice;
+	}
+
+	public int readByte() {
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	public int readVarInt() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = this.buffer[this.position++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	public int readSignedVarInt() {
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public long readVarLong() {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = this.buffer[this.position++];
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	public long readLong() {
+		long value = 0;
+		for (int i = 0; i < 8; i++)
+			value = (value << 8) | (this.buffer[this.position++] & 0xFF);
+		return value;
+	}
+
+	public int readInt() {
+		int value = 0;
+		for (int i = 0; i < 4; i++)
+			value = (value << 8) | (this.buffer[this.position++] & 0xFF);
+		return value;
+	}
+
+	public double readDouble() {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	public String readString() {
+		int length = readVarInt();
+		String str = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+		this.position += length;
+		return str;
+	}
+}
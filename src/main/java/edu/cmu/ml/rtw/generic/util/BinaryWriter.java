@@ -0,0 +1,118 @@
+package edu.cmu.ml.rtw.generic.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * BinaryWriter accumulates bytes in a growable in-memory buffer, with
+ * methods for writing variable length (LEB128) encoded integers, zig-zag
+ * encoded signed integers, fixed width doubles and longs, and length
+ * prefixed UTF-8 strings.  BinaryReader reads the same encodings.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class BinaryWriter {
+	private byte[] buffer;
+	private int size;
+
+	public BinaryWriter() {
+		this(256);
+	}
+
+	public BinaryWriter(int initialCapacity) {
+		this.buffer = new byte[Math.max(16, initialCapacity)];
+		this.size = 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public void clear() {
+		this.size = 0;
+	}
+
+	public void writeByte(int b) {
+		ensureCapacity(this.size + 1);
+		this.buffer[this.size++] = (byte)b;
+	}
+
+	public void writeBytes(byte[] bytes, int offset, int length) {
+		ensureCapacity(this.size + length);
+		System.arraycopy(bytes, offset, this.buffer, this.size, length);
+		this.size += length;
+	}
+
+	public void writeBytes(BinaryWriter writer) {
+		writeBytes(writer.buffer, 0, writer.size);
+	}
+
+	/**
+	 * Writes a non-negative int in 1 to 5 bytes (smaller values take
+	 * fewer bytes)
+	 */
+	public void writeVarInt(int value) {
+		ensureCapacity(this.size + 5);
+		while ((value & ~0x7F) != 0) {
+			this.buffer[this.size++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.size++] = (byte)value;
+	}
+
+	/**
+	 * Writes a possibly negative int so that values with small absolute
+	 * values take few bytes
+	 */
+	public void writeSignedVarInt(int value) {
+		writeVarInt((value << 1) ^ (value >> 31));
+	}
+
+	public void writeVarLong(long value) {
+		ensureCapacity(this.size + 10);
+		while ((value & ~0x7FL) != 0) {
+			this.buffer[this.size++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.size++] = (byte)value;
+	}
+
+	public void writeLong(long value) {
+		ensureCapacity(this.size + 8);
+		for (int i = 7; i >= 0; i--)
+			this.buffer[this.size++] = (byte)(value >>> (i * 8));
+	}
+
+	public void writeInt(int value) {
+		ensureCapacity(this.size + 4);
+		for (int i = 3; i >= 0; i--)
+			this.buffer[this.size++] = (byte)(value >>> (i * 8));
+	}
+
+	public void writeDouble(double value) {
+		writeLong(Double.doubleToLongBits(value));
+	}
+
+	public void writeString(String str) {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length);
+		writeBytes(bytes, 0, bytes.length);
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.buffer, this.size);
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(this.buffer, 0, this.size);
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= this.buffer.length)
+			return;
+		this.buffer = Arrays.copyOf(this.buffer, Math.max(capacity, this.buffer.length * 2));
+	}
+}
@@ -1,5 +1,6 @@
 package edu.cmu.ml.rtw.generic.util;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,25 +16,133 @@ import org.json.JSONObject;
  * and decrementing counts for each item, and transforming the histogram
  * into various data-structures.
  * 
+ * By default, incrementCount synchronizes on the table, so concurrent
+ * threads that increment counts (e.g. through DataSet.map while building
+ * feature vocabularies) contend on a single lock.  A concurrent table 
+ * instead gives each incrementing thread its own count map, and merges
+ * these maps into the shared counts when the counts are next read.  Reads
+ * must not overlap with increments in a concurrent table, which holds for
+ * the usual pattern of counting within a map over a data set and then
+ * pruning and indexing the counts after the map returns.  A merge drops
+ * each thread's count map, so that the threads of a long-lived pool 
+ * don't hold onto the maps after the counts are read.
+ * 
  * @author Lingpeng Kong, Bill McDowell
  * 
  */
 public class CounterTable<T>{
+	private static class LocalCounts<T> {
+		private HashMap<T, int[]> counts; // Null until the thread increments (again) after a merge
+	}
+	
 	public HashMap<T, Integer> counts;
 	
+	private boolean concurrent;
+	private List<LocalCounts<T>> allLocalCounts;
+	private ThreadLocal<LocalCounts<T>> localCounts;
+	
 	public CounterTable(){
+		this(false);
+	}
+	
+	/**
+	 * @param concurrent indicates whether each incrementing thread should 
+	 * keep its own counts, to be merged when the counts are read
+	 */
+	public CounterTable(boolean concurrent) {
 		this.counts= new HashMap<T,Integer>();
+		this.concurrent = concurrent;
+		
+		if (this.concurrent) {
+			this.allLocalCounts = new ArrayList<LocalCounts<T>>();
+			this.localCounts = new ThreadLocal<LocalCounts<T>>() {
+				@Override
+				protected LocalCounts<T> initialValue() {
+					return new LocalCounts<T>();
+				}
+			};
+		}
+	}
+	
+	public void incrementCount(T w){
+		if (!this.concurrent) {
+			synchronized (this) {
+				Integer count = this.counts.get(w);
+				this.counts.put(w, (count == null) ? 1 : count + 1);
+			}
+			return;
+		}
+		
+		LocalCounts<T> local = this.localCounts.get();
+		if (local.counts == null) {
+			local.counts = new HashMap<T, int[]>();
+			synchronized (this.allLocalCounts) {
+				this.allLocalCounts.add(local);
+			}
+		}
+		
+		int[] count = local.counts.get(w);
+		if (count == null)
+			local.counts.put(w, new int[] { 1 });
+		else
+			count[0]++;
+	}
+	
+	/**
+	 * Removes all but the most frequent maxSize items.  Items tied with the
+	 * maxSize-th most frequent item are also removed, so fewer than maxSize 
+	 * items may remain.
+	 * 
+	 * @param maxSize
+	 */
+	public void removeCountsOutsideTop(int maxSize) {
+		mergeLocalCounts();
+		if (this.counts.size() <= maxSize)
+			return;
+		
+		int[] values = new int[this.counts.size()];
+		int i = 0;
+		for (Integer count : this.counts.values())
+			values[i++] = count;
+		
+		removeCountsLessThan(selectThreshold(values, maxSize) + 1);
 	}
 	
-	public synchronized void incrementCount(T w){
-		if(this.counts.containsKey(w)){
-			this.counts.put(w, this.counts.get(w) + 1);
-		} else {
-			this.counts.put(w, 1);
+	/**
+	 * @return the (maxSize+1)-th largest of values
+	 */
+	private int selectThreshold(int[] values, int maxSize) {
+		Arrays.sort(values);
+		return values[values.length - maxSize - 1];
+	}
+	
+	/**
+	 * Merges the counts held by incrementing threads into the shared
+	 * counts.  The thread count maps are dropped rather than emptied, so 
+	 * that their backing tables can be collected even though the 
+	 * (possibly pooled) threads outlive the table's ThreadLocal.  A thread
+	 * that increments again after a merge starts a new count map.
+	 */
+	private void mergeLocalCounts() {
+		if (!this.concurrent)
+			return;
+		
+		synchronized (this.allLocalCounts) {
+			for (LocalCounts<T> local : this.allLocalCounts) {
+				for (Entry<T, int[]> entry : local.counts.entrySet()) {
+					Integer count = this.counts.get(entry.getKey());
+					this.counts.put(entry.getKey(), (count == null) ? entry.getValue()[0] : count + entry.getValue()[0]);
+				}
+				
+				local.counts = null;
+			}
+			
+			this.allLocalCounts.clear();
 		}
 	}
 	
 	public void removeCountsLessThan(int minCount) {
+		mergeLocalCounts();
 		List<T> valuesToRemove = new ArrayList<T>();
 		for (Entry<T, Integer> entry : this.counts.entrySet()) {
 			if (entry.getValue() < minCount)
@@ -45,6 +154,7 @@ public class CounterTable<T>{
 	}
 	
 	public Map<T, Integer> buildIndex() {
+		mergeLocalCounts();
 		HashMap<T, Integer> index = new HashMap<T, Integer>(this.counts.size());
 		int i = 0;
 		
@@ -57,6 +167,7 @@ public class CounterTable<T>{
 	}
 	
 	public TreeMap<Integer, List<T>> getSortedCounts() {
+		mergeLocalCounts();
 		TreeMap<Integer, List<T>> sortedCounts = new TreeMap<Integer, List<T>>();
 		
 		for (Entry<T, Integer> entry : this.counts.entrySet()) {
@@ -70,14 +181,17 @@ public class CounterTable<T>{
 	}
 	
 	public Map<T, Integer> getCounts() {
+		mergeLocalCounts();
 		return this.counts;
 	}
 	
 	public int getSize() {
+		mergeLocalCounts();
 		return this.counts.size();
 	}
 	
 	public JSONObject toJSON() {
+		mergeLocalCounts();
 		JSONObject json = new JSONObject();
 		
 		TreeMap<Integer, List<T>> sortedCounts = getSortedCounts();
@@ -98,6 +212,13 @@ public class CounterTable<T>{
 	@SuppressWarnings("unchecked")
 	public boolean fromJSON(JSONObject json) {
 		this.counts = new HashMap<T, Integer>(); 
+		if (this.concurrent) {
+			synchronized (this.allLocalCounts) {
+				for (LocalCounts<T> local : this.allLocalCounts)
+					local.counts = null;
+				this.allLocalCounts.clear();
+			}
+		}
 		
 		JSONArray keys = json.names();
 		try {
@@ -0,0 +1,258 @@
+package edu.cmu.ml.rtw.generic.util;
+
+/**
+ * EditDistance computes Levenshtein distances between strings without
+ * allocating a full dynamic programming matrix.
+ *
+ * When the shorter string has at most 64 characters, the distance is
+ * computed with Myers' bit-parallel algorithm (in the formulation given
+ * by Hyyro), which processes a whole column of the matrix with a few
+ * word operations per character of the longer string.  Otherwise, the
+ * matrix is computed one row at a time, keeping only two rows.
+ *
+ * The bounded variants only determine whether the distance is within a
+ * given threshold.  They return immediately if the lengths of the strings
+ * differ by more than the threshold, restrict the two-row computation to
+ * the diagonal band of cells that can be within the threshold, and stop
+ * as soon as the distance is certain to exceed it.
+ *
+ * The rows and character masks are kept in thread-local buffers, so
+ * repeated comparisons do not allocate.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class EditDistance {
+	private static final int MAX_BIT_PARALLEL_LENGTH = 64;
+	private static final int ASCII_SIZE = 128;
+
+	private static class Buffers {
+		private int[] previousRow = new int[16];
+		private int[] currentRow = new int[16];
+
+		// Bit masks of the positions of each character in the pattern
+		// for the bit-parallel algorithm.  Non-ASCII characters are looked
+		// up in a short list, since a pattern has at most 64 of them.
+		private long[] asciiMasks = new long[ASCII_SIZE];
+		private char[] otherChars = new char[MAX_BIT_PARALLEL_LENGTH];
+		private long[] otherMasks = new long[MAX_BIT_PARALLEL_LENGTH];
+		private int otherCount;
+
+		public void ensureRowLength(int length) {
+			if (this.previousRow.length >= length)
+				return;
+			int newLength = Math.max(length, this.previousRow.length * 2);
+			this.previousRow = new int[newLength];
+			this.currentRow = new int[newLength];
+		}
+
+		public void swapRows() {
+			int[] temp = this.previousRow;
+			this.previousRow = this.currentRow;
+			this.currentRow = temp;
+		}
+
+		public void setPattern(CharSequence pattern) {
+			this.otherCount = 0;
+			for (int i = 0; i < pattern.length(); i++) {
+				char c = pattern.charAt(i);
+				if (c < ASCII_SIZE) {
+					this.asciiMasks[c] |= 1L << i;
+					continue;
+				}
+
+				int j = 0;
+				while (j < this.otherCount && this.otherChars[j] != c)
+					j++;
+				if (j == this.otherCount) {
+					this.otherChars[j] = c;
+					this.otherMasks[j] = 0L;
+					this.otherCount++;
+				}
+				this.otherMasks[j] |= 1L << i;
+			}
+		}
+
+		public void clearPattern(CharSequence pattern) {
+			for (int i = 0; i < pattern.length(); i++) {
+				char c = pattern.charAt(i);
+				if (c < ASCII_SIZE)
+					this.asciiMasks[c] = 0L;
+			}
+			this.otherCount = 0;
+		}
+
+		public long getMask(char c) {
+			if (c < ASCII_SIZE)
+				return this.asciiMasks[c];
+			for (int i = 0; i < this.otherCount; i++)
+				if (this.otherChars[i] == c)
+					return this.otherMasks[i];
+			return 0L;
+		}
+	}
+
+	private static final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	/**
+	 * @param str1
+	 * @param str2
+	 * @return the Levenshtein distance between str1 and str2
+	 */
+	public static int levenshtein(CharSequence str1, CharSequence str2) {
+		CharSequence shorter = (str1.length() <= str2.length()) ? str1 : str2;
+		CharSequence longer = (str1.length() <= str2.length()) ? str2 : str1;
+
+		if (shorter.length() == 0)
+			return longer.length();
+		else if (shorter.length() <= MAX_BIT_PARALLEL_LENGTH)
+			return levenshteinBitParallel(shorter, longer, Integer.MAX_VALUE);
+		else
+			return levenshteinTwoRow(shorter, longer);
+	}
+
+	/**
+	 * @param str1
+	 * @param str2
+	 * @param maxDistance
+	 * @return the Levenshtein distance between str1 and str2 if it is
+	 * at most maxDistance, and otherwise maxDistance + 1
+	 */
+	public static int levenshtein(CharSequence str1, CharSequence str2, int maxDistance) {
+		if (maxDistance < 0)
+			return 0;
+
+		CharSequence shorter = (str1.length() <= str2.length()) ? str1 : str2;
+		CharSequence longer = (str1.length() <= str2.length()) ? str2 : str1;
+
+		if (longer.length() - shorter.length() > maxDistance)
+			return maxDistance + 1;
+		else if (maxDistance >= longer.length()) // The distance is at most the longer length
+			return levenshtein(shorter, longer);
+		else if (shorter.length() == 0)
+			return longer.length();
+		else if (shorter.length() <= MAX_BIT_PARALLEL_LENGTH)
+			return levenshteinBitParallel(shorter, longer, maxDistance);
+		else
+			return levenshteinBanded(shorter, longer, maxDistance);
+	}
+
+	/**
+	 * Myers' algorithm with the pattern (at most 64 characters) along the
+	 * bits of a word.  The vertical differences between adjacent cells of
+	 * the current column are stored as positive and negative bit vectors, and
+	 * the score tracks the value of the bottom cell.  If the score minus
+	 * the number of remaining columns exceeds maxDistance, then the final
+	 * distance must also exceed it.
+	 */
+	private static int levenshteinBitParallel(CharSequence pattern, CharSequence text, int maxDistance) {
+		Buffers b = buffers.get();
+		b.setPattern(pattern);
+
+		int m = pattern.length();
+		int n = text.length();
+		long last = 1L << (m - 1);
+		long positiveVertical = -1L;
+		long negativeVertical = 0L;
+		int score = m;
+
+		for (int j = 0; j < n; j++) {
+			long equal = b.getMask(text.charAt(j));
+			long xVertical = equal | negativeVertical;
+			long xHorizontal = (((equal & positiveVertical) + positiveVertical) ^ positiveVertical) | equal;
+			long positiveHorizontal = negativeVertical | ~(xHorizontal | positiveVertical);
+			long negativeHorizontal = positiveVertical & xHorizontal;
+
+			if ((positiveHorizontal & last) != 0)
+				score++;
+			else if ((negativeHorizontal & last) != 0)
+				score--;
+
+			if (maxDistance != Integer.MAX_VALUE && score - (n - j - 1) > maxDistance) {
+				b.clearPattern(pattern);
+				return maxDistance + 1;
+			}
+
+			positiveHorizontal = (positiveHorizontal << 1) | 1L;
+			negativeHorizontal = negativeHorizontal << 1;
+			positiveVertical = negativeHorizontal | ~(xVertical | positiveHorizontal);
+			negativeVertical = positiveHorizontal & xVertical;
+		}
+
+		b.clearPattern(pattern);
+		return (score > maxDistance) ? maxDistance + 1 : score;
+	}
+
+	private static int levenshteinTwoRow(CharSequence shorter, CharSequence longer) {
+		Buffers b = buffers.get();
+		int m = shorter.length();
+		b.ensureRowLength(m + 1);
+
+		int[] previous = b.previousRow;
+		for (int j = 0; j <= m; j++)
+			previous[j] = j;
+
+		for (int i = 1; i <= longer.length(); i++) {
+			int[] current = b.currentRow;
+			char c = longer.charAt(i - 1);
+			current[0] = i;
+			for (int j = 1; j <= m; j++) {
+				int substitution = previous[j - 1] + ((shorter.charAt(j - 1) == c) ? 0 : 1);
+				current[j] = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), substitution);
+			}
+			b.swapRows();
+			previous = b.previousRow;
+		}
+
+		return previous[m];
+	}
+
+	/**
+	 * Two-row computation restricted to the cells within maxDistance of the
+	 * diagonal.  Cells outside of the band are treated as maxDistance + 1, and
+	 * the computation stops when every cell in a row exceeds maxDistance.
+	 */
+	private static int levenshteinBanded(CharSequence shorter, CharSequence longer, int maxDistance) {
+		Buffers b = buffers.get();
+		int m = shorter.length();
+		int n = longer.length();
+		int outside = maxDistance + 1;
+		b.ensureRowLength(m + 2);
+
+		int[] previous = b.previousRow;
+		for (int j = 0; j <= m; j++)
+			previous[j] = Math.min(j, outside);
+		previous[m + 1] = outside;
+
+		for (int i = 1; i <= n; i++) {
+			int[] current = b.currentRow;
+			char c = longer.charAt(i - 1);
+			int low = Math.max(1, i - maxDistance);
+			int high = Math.min(m, i + maxDistance);
+
+			current[low - 1] = (low == 1) ? Math.min(i, outside) : outside;
+			int rowMin = current[low - 1];
+			for (int j = low; j <= high; j++) {
+				int substitution = previous[j - 1] + ((shorter.charAt(j - 1) == c) ? 0 : 1);
+				int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), substitution);
+				current[j] = Math.min(value, outside);
+				rowMin = Math.min(rowMin, current[j]);
+			}
+			if (high < m)
+				current[high + 1] = outside;
+
+			if (rowMin > maxDistance)
+				return outside;
+
+			b.swapRows();
+			previous = b.previousRow;
+		}
+
+		return previous[m];
+	}
+}
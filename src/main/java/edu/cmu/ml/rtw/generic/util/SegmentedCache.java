@@ -0,0 +1,339 @@
+package edu.cmu.ml.rtw.generic.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SegmentedCache is a bounded concurrent cache.  Keys are hashed
+ * into independently locked segments, so threads that access different
+ * keys rarely contend with each other.  Each segment keeps its entries
+ * in least-recently-used order, and evicts from the least recently
+ * used end when it exceeds its share of the cache's size or weight
+ * limits.
+ *
+ * New entries are admitted with a TinyLFU policy: each segment keeps a
+ * small count-min sketch of approximate key access frequencies (which
+ * is periodically halved so that it tracks recent history), and when
+ * a segment is full, a new entry is only admitted if its key has been
+ * accessed more often than the key of the entry that it would evict.
+ * This keeps keys that are requested once from flushing frequently
+ * requested keys out of the cache.
+ *
+ * The cache keeps hit, miss, eviction, and rejection counts that can be
+ * queried while the cache is in use.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class SegmentedCache<K, V> {
+	/**
+	 * Weigher computes the weight of a cached value, which counts
+	 * against the cache's weight limit.
+	 */
+	public interface Weigher<K, V> {
+		int weigh(K key, V value);
+	}
+
+	private static final int MAX_SKETCH_COUNT = 15;
+	private static final int SKETCH_DEPTH = 4;
+	private static final int[] SKETCH_SEEDS = { 0x97CB3127, 0xB71C2A1F, 0x3C6EF372, 0xA54FF53A };
+
+	private class Entry {
+		private V value;
+		private int weight;
+
+		public Entry(V value, int weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private class Segment {
+		private LinkedHashMap<K, Entry> entries;
+		private long maxSize;
+		private long maxWeight;
+		private long weight;
+
+		// Frequency sketch
+		private int[] sketch;
+		private int sketchMask;
+		private int sketchAdditions;
+		private int sketchResetSize;
+
+		public Segment(long maxSize, long maxWeight) {
+			this.entries = new LinkedHashMap<K, Entry>(16, .75F, true);
+			this.maxSize = maxSize;
+			this.maxWeight = maxWeight;
+			this.weight = 0;
+
+			int width = Integer.highestOneBit((int)Math.min(Math.max(16, maxSize), 1 << 20) - 1) << 1;
+			this.sketch = new int[SKETCH_DEPTH * width];
+			this.sketchMask = width - 1;
+			this.sketchAdditions = 0;
+			this.sketchResetSize = (int)Math.min(10 * Math.max(16, maxSize), Integer.MAX_VALUE / 2);
+		}
+
+		public synchronized V get(K key, int hash) {
+			recordAccess(hash);
+			Entry entry = this.entries.get(key);
+			return (entry == null) ? null : entry.value;
+		}
+
+		public synchronized boolean put(K key, int hash, V value, int valueWeight) {
+			Entry previous = this.entries.get(key);
+			if (previous != null) {
+				this.weight -= previous.weight;
+				previous.value = value;
+				previous.weight = valueWeight;
+				this.weight += valueWeight;
+				evict(null);
+				return true;
+			}
+
+			if (valueWeight > this.maxWeight || this.maxSize == 0)
+				return false;
+
+			// TinyLFU admission: when full, only admit the entry if its key is
+			// more frequent than the key of the least recently used entry
+			if (isFull(valueWeight)) {
+				K victim = this.entries.keySet().iterator().next();
+				if (estimateFrequency(hash) <= estimateFrequency(spread(victim.hashCode())))
+					return false;
+			}
+
+			this.entries.put(key, new Entry(value, valueWeight));
+			this.weight += valueWeight;
+			evict(key);
+			return true;
+		}
+
+		public synchronized V remove(K key) {
+			Entry entry = this.entries.remove(key);
+			if (entry == null)
+				return null;
+			this.weight -= entry.weight;
+			return entry.value;
+		}
+
+		public synchronized void clear() {
+			this.entries.clear();
+			this.weight = 0;
+		}
+
+		public synchronized int size() {
+			return this.entries.size();
+		}
+
+		public synchronized long weight() {
+			return this.weight;
+		}
+
+		private boolean isFull(int additionalWeight) {
+			return this.entries.size() >= this.maxSize || this.weight + additionalWeight > this.maxWeight;
+		}
+
+		private void evict(K keep) {
+			Iterator<Map.Entry<K, Entry>> iterator = this.entries.entrySet().iterator();
+			while ((this.entries.size() > this.maxSize || this.weight > this.maxWeight) && iterator.hasNext()) {
+				Map.Entry<K, Entry> eldest = iterator.next();
+				if (keep != null && eldest.getKey().equals(keep))
+					continue;
+				this.weight -= eldest.getValue().weight;
+				iterator.remove();
+				evictionCount.increment();
+			}
+		}
+
+		private void recordAccess(int hash) {
+			for (int i = 0; i < SKETCH_DEPTH; i++) {
+				int index = sketchIndex(hash, i);
+				if (this.sketch[index] < MAX_SKETCH_COUNT)
+					this.sketch[index]++;
+			}
+
+			this.sketchAdditions++;
+			if (this.sketchAdditions >= this.sketchResetSize) {
+				for (int i = 0; i < this.sketch.length; i++)
+					this.sketch[i] >>>= 1;
+				this.sketchAdditions /= 2;
+			}
+		}
+
+		private int estimateFrequency(int hash) {
+			int frequency = MAX_SKETCH_COUNT;
+			for (int i = 0; i < SKETCH_DEPTH; i++)
+				frequency = Math.min(frequency, this.sketch[sketchIndex(hash, i)]);
+			return frequency;
+		}
+
+		private int sketchIndex(int hash, int row) {
+			int h = (hash ^ SKETCH_SEEDS[row]) * 0x9E3779B9;
+			h ^= h >>> 16;
+			return row * (this.sketchMask + 1) + (h & this.sketchMask);
+		}
+	}
+
+	private Segment[] segments;
+	private int segmentShift;
+	private Weigher<K, V> weigher;
+	private long maxSize;
+	private long maxWeight;
+
+	private LongAdder hitCount = new LongAdder();
+	private LongAdder missCount = new LongAdder();
+	private LongAdder evictionCount = new LongAdder();
+	private LongAdder rejectionCount = new LongAdder();
+
+	/**
+	 * @param maxSize maximum number of entries
+	 */
+	public SegmentedCache(long maxSize) {
+		this(maxSize, Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * @param maxSize maximum number of entries
+	 * @param maxWeight maximum total weight of the entries
+	 * @param weigher computes the weights of entries (or null if every
+	 * entry has weight 1)
+	 */
+	public SegmentedCache(long maxSize, long maxWeight, Weigher<K, V> weigher) {
+		this(maxSize, maxWeight, weigher, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param maxSize maximum number of entries
+	 * @param maxWeight maximum total weight of the entries
+	 * @param weigher computes the weights of entries (or null if every
+	 * entry has weight 1)
+	 * @param concurrencyLevel approximate number of segments (rounded up to
+	 * a power of 2, and reduced for small caches so that each segment holds
+	 * a reasonable number of entries)
+	 */
+	@SuppressWarnings("unchecked")
+	public SegmentedCache(long maxSize, long maxWeight, Weigher<K, V> weigher, int concurrencyLevel) {
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+
+		int segmentCount = 1;
+		while (segmentCount < concurrencyLevel && segmentCount < 64 && maxSize / (segmentCount * 2) >= 32)
+			segmentCount *= 2;
+
+		this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+		this.segments = new SegmentedCache.Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			long segmentMaxSize = maxSize / segmentCount + ((i < maxSize % segmentCount) ? 1 : 0);
+			long segmentMaxWeight = (maxWeight == Long.MAX_VALUE) ? Long.MAX_VALUE : maxWeight / segmentCount + ((i < maxWeight % segmentCount) ? 1 : 0);
+			this.segments[i] = new Segment(segmentMaxSize, segmentMaxWeight);
+		}
+	}
+
+	public V get(K key) {
+		int hash = spread(key.hashCode());
+		V value = segmentFor(hash).get(key, hash);
+		if (value == null)
+			this.missCount.increment();
+		else
+			this.hitCount.increment();
+		return value;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return true if the value was cached, and false if it was rejected
+	 * by the admission policy or was too heavy to cache
+	 */
+	public boolean put(K key, V value) {
+		int hash = spread(key.hashCode());
+		int weight = (this.weigher == null) ? 1 : this.weigher.weigh(key, value);
+		boolean admitted = segmentFor(hash).put(key, hash, value, weight);
+		if (!admitted)
+			this.rejectionCount.increment();
+		return admitted;
+	}
+
+	public V remove(K key) {
+		return segmentFor(spread(key.hashCode())).remove(key);
+	}
+
+	public void clear() {
+		for (Segment segment : this.segments)
+			segment.clear();
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : this.segments)
+			size += segment.size();
+		return size;
+	}
+
+	public long getWeight() {
+		long weight = 0;
+		for (Segment segment : this.segments)
+			weight += segment.weight();
+		return weight;
+	}
+
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
+	public long getMaxWeight() {
+		return this.maxWeight;
+	}
+
+	public long getHitCount() {
+		return this.hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return this.missCount.sum();
+	}
+
+	public double getHitRate() {
+		long hits = getHitCount();
+		long requests = hits + getMissCount();
+		return (requests == 0) ? 0.0 : hits / (double)requests;
+	}
+
+	/**
+	 * @return number of entries evicted to make room for other entries
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.sum();
+	}
+
+	/**
+	 * @return number of entries that the admission policy refused to cache
+	 */
+	public long getRejectionCount() {
+		return this.rejectionCount.sum();
+	}
+
+	public void resetStatistics() {
+		this.hitCount.reset();
+		this.missCount.reset();
+		this.evictionCount.reset();
+		this.rejectionCount.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size() + ", weight=" + getWeight() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+				+ ", hitRate=" + getHitRate() + ", evictions=" + getEvictionCount() + ", rejections=" + getRejectionCount();
+	}
+
+	private Segment segmentFor(int hash) {
+		return (this.segments.length == 1) ? this.segments[0] : this.segments[hash >>> this.segmentShift];
+	}
+
+	private static int spread(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
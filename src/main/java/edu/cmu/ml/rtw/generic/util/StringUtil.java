@@ -3,6 +3,7 @@ package edu.cmu.ml.rtw.generic.util;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * 
@@ -12,6 +13,32 @@ import java.util.List;
  * 
  */
 public class StringUtil {
+	// Character classes of ASCII characters for clean.  Word characters
+	// map to their lower case forms, white-space maps to WHITE_SPACE, and
+	// other characters map to 0.
+	private static final char WHITE_SPACE = ' ';
+	private static final char[] CLEAN_CLASSES = new char[128];
+	static {
+		for (char c = 'a'; c <= 'z'; c++)
+			CLEAN_CLASSES[c] = c;
+		for (char c = 'A'; c <= 'Z'; c++)
+			CLEAN_CLASSES[c] = Character.toLowerCase(c);
+		for (char c = '0'; c <= '9'; c++)
+			CLEAN_CLASSES[c] = c;
+		CLEAN_CLASSES['_'] = '_';
+		for (char c : new char[] { ' ', '\t', '\n', '\u000B', '\f', '\r' })
+			CLEAN_CLASSES[c] = WHITE_SPACE;
+	}
+	
+	private static final ThreadLocal<StringBuilder> cleanBuilders = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder();
+		}
+	};
+	
+	private static volatile SegmentedCache<String, String> cleanCache;
+	
 	/**
 	 * @param str1
 	 * @param str2
@@ -48,27 +75,164 @@ public class StringUtil {
 		return true;
 	}
 	
+	/**
+	 * @param str1
+	 * @param str2
+	 * @return the Levenshtein distance between str1 and str2 (computed by 
+	 * EditDistance)
+	 */
 	public static int levenshteinDistance(String str1, String str2) {
-		int[][] distance = new int[str1.length() + 1][str2.length() + 1];
-
-		for (int i = 0; i <= str1.length(); i++)
-			distance[i][0] = i;
-		for (int j = 1; j <= str2.length(); j++)
-			distance[0][j] = j;
-
-		for (int i = 1; i <= str1.length(); i++)
-			for (int j = 1; j <= str2.length(); j++)
-				distance[i][j] = 
-					Math.min(
-						Math.min(distance[i - 1][j] + 1, distance[i][j - 1] + 1),
-						distance[i - 1][j - 1]+((str1.charAt(i - 1) == str2.charAt(j - 1)) ? 0 : 1)
-					);
-
-		return distance[str1.length()][str2.length()];
+		return EditDistance.levenshtein(str1, str2);
 	}
 	
-	// FIXME: This function is messy and inefficient and really shouldn't exist
+	/**
+	 * @param str1
+	 * @param str2
+	 * @param maxDistance
+	 * @return the Levenshtein distance between str1 and str2 if it is at most
+	 * maxDistance, and otherwise maxDistance + 1.  This stops early when the
+	 * distance is certain to exceed maxDistance.
+	 */
+	public static int levenshteinDistance(String str1, String str2, int maxDistance) {
+		return EditDistance.levenshtein(str1, str2, maxDistance);
+	}
+	
+	/**
+	 * Caches cleaned strings for clean, and interns them so that equal 
+	 * cleaned strings share a single instance.
+	 * 
+	 * @param maxSize maximum number of cached strings, or 0 to disable the
+	 * cache
+	 */
+	public static void setCleanCacheSize(int maxSize) {
+		if (maxSize <= 0)
+			cleanCache = null;
+		else
+			cleanCache = new SegmentedCache<String, String>(maxSize);
+	}
+	
+	/**
+	 * @return the cache used by clean, or null if clean is not cached
+	 */
+	public static SegmentedCache<String, String> getCleanCache() {
+		return cleanCache;
+	}
+	
+	/**
+	 * @param str
+	 * @return str trimmed and lower cased, without tokens (split on white-space) 
+	 * that start with slashes or dashes, and without non-alpha-numeric 
+	 * characters (other than underscores).  The remaining non-empty tokens
+	 * are separated by single spaces.
+	 */
 	public static String clean(String str) {
+		SegmentedCache<String, String> cache = cleanCache;
+		if (cache == null)
+			return cleanUncached(str);
+		
+		String cleanStr = cache.get(str);
+		if (cleanStr != null)
+			return cleanStr;
+		
+		// Clean strings are clean, so they're cached under themselves, which 
+		// interns them
+		cleanStr = cleanUncached(str);
+		String internedCleanStr = cache.get(cleanStr);
+		if (internedCleanStr != null)
+			cleanStr = internedCleanStr;
+		else
+			cache.put(cleanStr, cleanStr);
+		
+		cache.put(str, cleanStr);
+		return cleanStr;
+	}
+	
+	/**
+	 * Computes the same result as cleanRegex in a single pass over str, using
+	 * a table of character classes for ASCII characters
+	 */
+	private static String cleanUncached(String str) {
+		int start = 0;
+		int end = str.length();
+		while (start < end && str.charAt(start) <= ' ')
+			start++;
+		while (end > start && str.charAt(end - 1) <= ' ')
+			end--;
+		
+		if (end - start == 1) {
+			char c = str.charAt(start);
+			if (c == '$' || c == '&' || c == '+' || c == '@')
+				return str.substring(start, end);
+		}
+		
+		String language = Locale.getDefault().getLanguage();
+		if (language.equals("tr") || language.equals("az") || language.equals("lt"))
+			return cleanRegex(str);
+		
+		StringBuilder cleanStr = cleanBuilders.get();
+		cleanStr.setLength(0);
+		int i = start;
+		while (i < end) {
+			while (i < end && isCleanWhiteSpace(str.charAt(i)))
+				i++;
+			if (i == end)
+				break;
+			
+			int tokenStart = i;
+			while (i < end && !isCleanWhiteSpace(str.charAt(i)))
+				i++;
+			
+			char first = str.charAt(tokenStart);
+			if (first == '/' || first == '\\' || first == '-')
+				continue;
+			
+			int tokenMark = cleanStr.length();
+			if (tokenMark > 0)
+				cleanStr.append(' ');
+			int wordStart = cleanStr.length();
+			
+			for (int j = tokenStart; j < i; j++) {
+				char c = str.charAt(j);
+				if (c < CLEAN_CLASSES.length) {
+					if (CLEAN_CLASSES[c] != 0)
+						cleanStr.append(CLEAN_CLASSES[c]);
+					continue;
+				}
+				
+				// Non-ASCII characters are removed, unless they lower case to 
+				// ASCII word characters
+				int codePoint = c;
+				if (Character.isHighSurrogate(c) && j + 1 < i && Character.isLowSurrogate(str.charAt(j + 1))) {
+					codePoint = Character.toCodePoint(c, str.charAt(j + 1));
+					j++;
+				}
+				String lower = new String(Character.toChars(codePoint)).toLowerCase();
+				for (int k = 0; k < lower.length(); k++) {
+					char lowerC = lower.charAt(k);
+					if (lowerC < CLEAN_CLASSES.length && CLEAN_CLASSES[lowerC] != 0 && CLEAN_CLASSES[lowerC] != WHITE_SPACE)
+						cleanStr.append(lowerC);
+				}
+			}
+			
+			if (cleanStr.length() == wordStart)
+				cleanStr.setLength(tokenMark);
+		}
+		
+		if (cleanStr.length() == str.length() && str.contentEquals(cleanStr))
+			return str;
+		return cleanStr.toString();
+	}
+	
+	private static boolean isCleanWhiteSpace(char c) {
+		return c < CLEAN_CLASSES.length && CLEAN_CLASSES[c] == WHITE_SPACE;
+	}
+	
+	/**
+	 * The original regular expression implementation of clean, which is used
+	 * in locales where lower casing ASCII letters can give non-ASCII 
+	 * characters.
+	 */
+	static String cleanRegex(String str) {
 		StringBuilder cleanStrBuilder = new StringBuilder();
 		
 		str = str.trim();
@@ -1,59 +1,46 @@
 package edu.cmu.ml.rtw.generic.util;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * ThreadMapper maps a function over a collection of items in
+ * parallel, using the process-wide shared ThreadPool.
+ *
+ * @author Bill McDowell
+ *
+ * @param <S> item type
+ * @param <T> result type
+ */
 public class ThreadMapper<S, T> {
 	public static interface Fn<S, T> {
 		T apply(S item);
 	}
-	
-	private class Task implements Callable<T> {
-		private S item;
-		
-		public Task(S item) {
-			this.item = item;
-		}
 
-		@Override
-		public T call() throws Exception {
-			return fn.apply(this.item);
-		}
-	}
-	
 	private Fn<S, T> fn;
-	
+
 	public ThreadMapper(Fn<S, T> fn) {
 		this.fn = fn;
 	}
-	
+
+	/**
+	 * @param items
+	 * @param maxThreads
+	 * @return results of the function applied to each item, in the order
+	 * of the items, or null if the function failed on some item.  Use
+	 * start to find out which items failed.
+	 */
 	public List<T> run(Collection<S> items, int maxThreads) {
-		List<T> results = new ArrayList<T>(items.size());
-		ExecutorService threadPool = Executors.newFixedThreadPool(maxThreads);
-		List<Task> tasks = new ArrayList<Task>();
- 		for (S item : items) {
-			tasks.add(new Task(item));
-		}
-		
-		try {
-			List<Future<T>> futureResults = threadPool.invokeAll(tasks);
-			threadPool.shutdown();
-			threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-			for (Future<T> futureResult : futureResults) {
-				T result = futureResult.get();
-				results.add(result);
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			return null;
-		}
-		
-		return results;
+		return start(items, maxThreads).get();
+	}
+
+	/**
+	 * @param items
+	 * @param maxThreads
+	 * @return a handle to the started mapping, which can be used to wait for
+	 * the results, cancel the mapping, or retrieve per-item failures
+	 */
+	public ThreadPool.Mapping<S, T> start(Collection<S> items, int maxThreads) {
+		return ThreadPool.getShared().map(items.iterator(), items.size(), this.fn, maxThreads, 1);
 	}
 }
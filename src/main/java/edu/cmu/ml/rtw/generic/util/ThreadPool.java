@@ -0,0 +1,255 @@
+package edu.cmu.ml.rtw.generic.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ThreadPool maps functions over collections of items using a
+ * ForkJoinPool that can be shared by the whole process (see
+ * ThreadPool.getShared).  Sharing the pool means that nested parallel
+ * work (for example, DataSet.map calls made from within grid search
+ * positions that are themselves evaluated in parallel) does not create
+ * more threads than there are cores.
+ *
+ * Each mapping runs a bounded number of workers that repeatedly pull
+ * chunks of items from the source iterator.  Workers that finish their
+ * chunks early take the next chunk, so uneven item costs are balanced
+ * across threads without partitioning the items up front, and without
+ * queueing a task per item.  Results are returned in the order of the
+ * source iterator.
+ *
+ * @author Bill McDowell
+ *
+ */
+public class ThreadPool {
+	private static final int CHUNKS_PER_WORKER = 8;
+	private static ThreadPool shared;
+
+	/**
+	 * Failure describes an item for which a mapped function threw
+	 * an exception.
+	 */
+	public static class Failure {
+		private int index;
+		private Object item;
+		private Throwable error;
+
+		public Failure(int index, Object item, Throwable error) {
+			this.index = index;
+			this.item = item;
+			this.error = error;
+		}
+
+		public int getIndex() {
+			return this.index;
+		}
+
+		public Object getItem() {
+			return this.item;
+		}
+
+		public Throwable getError() {
+			return this.error;
+		}
+
+		@Override
+		public String toString() {
+			return "Failed on item " + this.index + " (" + this.item + "): " + this.error;
+		}
+	}
+
+	/**
+	 * Mapping is a handle to a function being mapped over items by
+	 * the pool.
+	 *
+	 * @param <S> item type
+	 * @param <T> result type
+	 */
+	public class Mapping<S, T> {
+		private ThreadMapper.Fn<S, T> fn;
+		private Iterator<? extends S> items;
+		private int chunkSize;
+		private int nextItemIndex;
+		private List<List<T>> chunkResults;
+		private List<Failure> failures;
+		private List<Worker> workers;
+		private volatile boolean cancelled;
+
+		private class Worker extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				List<S> chunk = new ArrayList<S>(chunkSize);
+				int[] chunkPosition = new int[2];
+				while (nextChunk(chunk, chunkPosition)) {
+					List<T> results = new ArrayList<T>(chunk.size());
+					for (int i = 0; i < chunk.size(); i++) {
+						if (cancelled)
+							return;
+
+						try {
+							results.add(fn.apply(chunk.get(i)));
+						} catch (Throwable e) {
+							fail(new Failure(chunkPosition[1] + i, chunk.get(i), e));
+							return;
+						}
+					}
+
+					setChunkResults(chunkPosition[0], results);
+				}
+			}
+		}
+
+		private Mapping(ThreadMapper.Fn<S, T> fn, Iterator<? extends S> items, int chunkSize) {
+			this.fn = fn;
+			this.items = items;
+			this.chunkSize = chunkSize;
+			this.nextItemIndex = 0;
+			this.chunkResults = new ArrayList<List<T>>();
+			this.failures = new ArrayList<Failure>();
+			this.workers = new ArrayList<Worker>();
+			this.cancelled = false;
+		}
+
+		/**
+		 * Blocks until all workers have stopped.  If this is called from
+		 * a thread in the pool, then the calling thread helps with the
+		 * remaining work instead of blocking.
+		 *
+		 * @return the results of the mapping in the order of the items,
+		 * or null if the mapping failed or was cancelled
+		 */
+		public List<T> get() {
+			for (Worker worker : this.workers)
+				worker.join();
+
+			if (this.cancelled)
+				return null;
+
+			List<T> results = new ArrayList<T>(this.nextItemIndex);
+			for (List<T> chunkResult : this.chunkResults)
+				results.addAll(chunkResult);
+			return results;
+		}
+
+		/**
+		 * Stops the workers from starting any more items.  Items that
+		 * are already being processed are allowed to finish.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		public boolean isDone() {
+			for (Worker worker : this.workers)
+				if (!worker.isDone())
+					return false;
+			return true;
+		}
+
+		/**
+		 * @return failures for items on which the function threw an
+		 * exception.  A failure cancels the rest of the mapping.
+		 */
+		public synchronized List<Failure> getFailures() {
+			return new ArrayList<Failure>(this.failures);
+		}
+
+		private synchronized boolean nextChunk(List<S> chunk, int[] chunkPosition) {
+			chunk.clear();
+			if (this.cancelled)
+				return false;
+
+			chunkPosition[0] = this.chunkResults.size();
+			chunkPosition[1] = this.nextItemIndex;
+			while (chunk.size() < this.chunkSize && this.items.hasNext())
+				chunk.add(this.items.next());
+
+			if (chunk.isEmpty())
+				return false;
+
+			this.nextItemIndex += chunk.size();
+			this.chunkResults.add(null);
+			return true;
+		}
+
+		private synchronized void setChunkResults(int chunkIndex, List<T> results) {
+			this.chunkResults.set(chunkIndex, results);
+		}
+
+		private synchronized void fail(Failure failure) {
+			this.failures.add(failure);
+			this.cancelled = true;
+			failure.getError().printStackTrace();
+		}
+
+		private Mapping<S, T> start(int workerCount) {
+			for (int i = 0; i < workerCount; i++)
+				this.workers.add(new Worker());
+
+			boolean inPool = Thread.currentThread() instanceof ForkJoinWorkerThread
+					&& ((ForkJoinWorkerThread)Thread.currentThread()).getPool() == ThreadPool.this.pool;
+
+			for (Worker worker : this.workers) {
+				if (inPool)
+					worker.fork();
+				else
+					ThreadPool.this.pool.execute(worker);
+			}
+
+			return this;
+		}
+	}
+
+	private ForkJoinPool pool;
+
+	public ThreadPool(int parallelism) {
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * @return a pool shared by the whole process, with one thread per
+	 * available core
+	 */
+	public static synchronized ThreadPool getShared() {
+		if (shared == null)
+			shared = new ThreadPool(Runtime.getRuntime().availableProcessors());
+		return shared;
+	}
+
+	public int getParallelism() {
+		return this.pool.getParallelism();
+	}
+
+	/**
+	 * @param items
+	 * @param itemCount number of items returned by the iterator (used to
+	 * choose chunk sizes)
+	 * @param fn
+	 * @param maxThreads maximum number of threads that will work on the
+	 * mapping at once
+	 * @param chunkSize number of items that a worker takes at a time.  If
+	 * this is less than 1, then a chunk size is chosen from the item count
+	 * @return a handle to the started mapping
+	 */
+	public <S, T> Mapping<S, T> map(Iterator<? extends S> items, int itemCount, ThreadMapper.Fn<S, T> fn, int maxThreads, int chunkSize) {
+		int workerCount = Math.max(1, Math.min(Math.min(maxThreads, getParallelism()), itemCount));
+		if (chunkSize < 1)
+			chunkSize = Math.max(1, itemCount / (workerCount * CHUNKS_PER_WORKER));
+
+		return new Mapping<S, T>(fn, items, chunkSize).start(workerCount);
+	}
+
+	public <S, T> Mapping<S, T> map(Iterable<? extends S> items, int itemCount, ThreadMapper.Fn<S, T> fn, int maxThreads) {
+		return map(items.iterator(), itemCount, fn, maxThreads, 0);
+	}
+}
@@ -0,0 +1,239 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Stack;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.ConstituencyParse.Constituent;
+import edu.cmu.ml.rtw.generic.data.annotation.nlp.ConstituencyParse.ConstituentPath;
+
+public class ConstituencyParseTest {
+	// 'New York' is a single leaf, so token 6 ('York') has no constituent
+	private static final String PARSE =
+			"(ROOT (S (NP (NNP Jim)) (VP (VBD learned) (S (VP (TO to) (VP (VB read) (PP (IN in) (NP (NNP New York))))))) (Other .)))";
+	private static final int PARSE_TOKEN_COUNT = 8;
+	
+	@Test
+	public void testIndexMatchesWalk() {
+		ConstituencyParse parse = ConstituencyParse.fromString(PARSE, null, 0);
+		assertIndexMatchesWalk(parse, PARSE_TOKEN_COUNT);
+		
+		Assert.assertEquals("NNP", parse.getTokenConstituent(0).getLabel());
+		Assert.assertEquals("NNP", parse.getTokenConstituent(5).getLabel());
+		Assert.assertEquals(5, parse.getPath(0, 1).getLength());
+		Assert.assertEquals(0, parse.getDepth(parse.getRoot()));
+	}
+	
+	@Test
+	public void testUnmatchedTokens() {
+		ConstituencyParse parse = ConstituencyParse.fromString(PARSE, null, 0);
+		
+		Assert.assertNull(parse.getTokenConstituent(6));
+		Assert.assertNull(parse.getTokenConstituent(-1));
+		Assert.assertNull(parse.getTokenConstituent(PARSE_TOKEN_COUNT));
+		Assert.assertNull(parse.getPath(0, 6));
+		Assert.assertNull(parse.getPath(PARSE_TOKEN_COUNT, 0));
+		Assert.assertEquals(-1, parse.getPathLength(6, 0));
+		
+		// Spans whose tokens don't start any constituent
+		Assert.assertNull(parse.getShortestPath(6, 7, 0, 2));
+		Assert.assertNull(parse.getShortestPath(0, 2, 8, 10));
+		Assert.assertNull(parse.getShortestPath(3, 3, 0, 2));
+		Assert.assertNotNull(parse.getShortestPath(5, 7, 0, 1));
+	}
+	
+	@Test
+	public void testIndexMatchesWalkInRandomParses() {
+		Random random = new Random(1);
+		for (int i = 0; i < 300; i++) {
+			int[] tokenCount = { 0 };
+			StringBuilder parseStr = new StringBuilder();
+			parseStr.append("(ROOT");
+			appendRandomConstituent(random, parseStr, 0, tokenCount);
+			parseStr.append(")");
+			
+			ConstituencyParse parse = ConstituencyParse.fromString(parseStr.toString(), null, 0);
+			assertIndexMatchesWalk(parse, tokenCount[0]);
+		}
+	}
+	
+	private void appendRandomConstituent(Random random, StringBuilder parseStr, int depth, int[] tokenCount) {
+		if (depth > 0 && (depth >= 5 || tokenCount[0] >= 12 || random.nextInt(3) == 0)) {
+			// Leaves cover one or more tokens
+			parseStr.append(" (L");
+			int leafTokenCount = (random.nextInt(4) == 0) ? 2 : 1;
+			for (int i = 0; i < leafTokenCount; i++)
+				parseStr.append(" w").append(tokenCount[0]++);
+			parseStr.append(")");
+			return;
+		}
+		
+		parseStr.append(" (C").append(depth);
+		int childCount = 1 + random.nextInt(3);
+		for (int i = 0; i < childCount; i++)
+			appendRandomConstituent(random, parseStr, depth + 1, tokenCount);
+		parseStr.append(")");
+	}
+	
+	private void assertIndexMatchesWalk(ConstituencyParse parse, int tokenCount) {
+		for (int i = -1; i <= tokenCount; i++)
+			Assert.assertSame("Token constituent mismatch for " + i, getTokenConstituentByWalk(parse, i), parse.getTokenConstituent(i));
+		
+		for (int i = -1; i <= tokenCount; i++) {
+			for (int j = -1; j <= tokenCount; j++) {
+				String message = "Path mismatch from " + i + " to " + j;
+				List<Constituent> expected = getPathByWalk(getTokenConstituentByWalk(parse, i), getTokenConstituentByWalk(parse, j));
+				assertPathEquals(message, expected, parse.getPath(i, j));
+				Assert.assertEquals(message, (expected == null) ? -1 : expected.size(), parse.getPathLength(i, j));
+			}
+		}
+		
+		List<Constituent> constituents = getConstituentsByWalk(parse);
+		for (Constituent constituent1 : constituents) {
+			List<Constituent> ancestors1 = getAncestorsByWalk(constituent1);
+			Assert.assertEquals(ancestors1.size() - 1, parse.getDepth(constituent1));
+			
+			for (Constituent constituent2 : constituents) {
+				List<Constituent> ancestors2 = getAncestorsByWalk(constituent2);
+				boolean above = constituent1 != constituent2 && ancestors2.contains(constituent1);
+				boolean below = constituent1 != constituent2 && ancestors1.contains(constituent2);
+				Assert.assertEquals(above, parse.isAbove(constituent1, constituent2));
+				Assert.assertEquals(below, parse.isBelow(constituent1, constituent2));
+				
+				Constituent ancestor = constituent2;
+				while (!ancestors1.contains(ancestor))
+					ancestor = ancestor.getParent();
+				Assert.assertSame(ancestor, parse.getLowestCommonAncestor(constituent1, constituent2));
+				
+				assertPathEquals("Path mismatch", getPathByWalk(constituent1, constituent2), parse.getPath(constituent1, constituent2));
+			}
+		}
+		
+		for (int sourceStart = 0; sourceStart <= tokenCount; sourceStart++)
+			for (int sourceEnd = sourceStart; sourceEnd <= Math.min(tokenCount + 1, sourceStart + 3); sourceEnd++)
+				for (int targetStart = 0; targetStart <= tokenCount; targetStart++)
+					for (int targetEnd = targetStart; targetEnd <= Math.min(tokenCount + 1, targetStart + 3); targetEnd++)
+						assertShortestPathMatchesWalk(parse, sourceStart, sourceEnd, targetStart, targetEnd);
+	}
+	
+	/**
+	 * The loop over token pairs that FeatureConstituencyPath ran before
+	 * constituents were indexed
+	 */
+	private void assertShortestPathMatchesWalk(ConstituencyParse parse, int sourceStart, int sourceEnd, int targetStart, int targetEnd) {
+		List<Constituent> expected = null;
+		for (int i = sourceStart; i < sourceEnd; i++) {
+			for (int j = targetStart; j < targetEnd; j++) {
+				List<Constituent> path = getPathByWalk(getTokenConstituentByWalk(parse, i), getTokenConstituentByWalk(parse, j));
+				if (expected == null || (path != null && path.size() < expected.size()))
+					expected = path;
+			}
+		}
+		
+		assertPathEquals("Shortest path mismatch from [" + sourceStart + ", " + sourceEnd + ") to [" + targetStart + ", " + targetEnd + ")",
+				expected, parse.getShortestPath(sourceStart, sourceEnd, targetStart, targetEnd));
+	}
+	
+	private void assertPathEquals(String message, List<Constituent> expected, ConstituentPath path) {
+		if (expected == null) {
+			Assert.assertNull(message, path);
+			return;
+		}
+		
+		Assert.assertNotNull(message, path);
+		Assert.assertEquals(message, expected.size(), path.getLength());
+		for (int i = 0; i < expected.size(); i++)
+			Assert.assertSame(message, expected.get(i), path.getConstituent(i));
+	}
+	
+	/**
+	 * The tree walk that getTokenConstituent ran before constituents were
+	 * indexed
+	 */
+	private Constituent getTokenConstituentByWalk(ConstituencyParse parse, int tokenIndex) {
+		Stack<Constituent> toVisit = new Stack<Constituent>();
+		toVisit.add(parse.getRoot());
+		while (!toVisit.isEmpty()) {
+			Constituent current = toVisit.pop();
+			if (current.isLeaf()) {
+				TokenSpan tokenSpan = current.getTokenSpan();
+				if (tokenSpan.getStartTokenIndex() == tokenIndex)
+					return current;
+			} else {
+				Constituent[] children = current.getChildren();
+				for (Constituent child : children)
+					toVisit.push(child);
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * The search through parents and children that getPath ran before
+	 * constituents were indexed
+	 */
+	private List<Constituent> getPathByWalk(Constituent source, Constituent target) {
+		if (source == null || target == null)
+			return null;
+		
+		Stack<Constituent> toVisit = new Stack<Constituent>();
+		toVisit.push(target);
+		Map<Constituent, Constituent> paths = new HashMap<Constituent, Constituent>();
+		paths.put(target, null);
+		while (!toVisit.isEmpty()) {
+			Constituent current = toVisit.pop();
+			if (current.equals(source)) {
+				List<Constituent> path = new ArrayList<Constituent>();
+				Constituent pathCurrent = current;
+				while (pathCurrent != null) {
+					path.add(pathCurrent);
+					pathCurrent = paths.get(pathCurrent);
+				}
+				return path;
+			}
+			
+			if (current.getParent() != null && !paths.containsKey(current.getParent())) {
+				toVisit.push(current.getParent());
+				paths.put(current.getParent(), current);
+			}
+			if (!current.isLeaf()) {
+				for (Constituent child : current.getChildren()) {
+					if (paths.containsKey(child))
+						continue;
+					toVisit.push(child);
+					paths.put(child, current);
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	private List<Constituent> getConstituentsByWalk(ConstituencyParse parse) {
+		List<Constituent> constituents = new ArrayList<Constituent>();
+		Stack<Constituent> toVisit = new Stack<Constituent>();
+		toVisit.push(parse.getRoot());
+		while (!toVisit.isEmpty()) {
+			Constituent current = toVisit.pop();
+			constituents.add(current);
+			if (!current.isLeaf())
+				for (Constituent child : current.getChildren())
+					toVisit.push(child);
+		}
+		return constituents;
+	}
+	
+	private List<Constituent> getAncestorsByWalk(Constituent constituent) {
+		List<Constituent> ancestors = new ArrayList<Constituent>();
+		for (Constituent current = constituent; current != null; current = current.getParent())
+			ancestors.add(current);
+		return ancestors;
+	}
+}
@@ -1,6 +1,13 @@
 package edu.cmu.ml.rtw.generic.data.annotation.nlp;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.Stack;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -50,4 +57,236 @@ public class DependencyParseTest {
 		Assert.assertEquals("mark", deps.get(0).getType());
 		Assert.assertEquals("nmod", deps.get(1).getType());
 	}
+	
+	private static final String TREE_PARSE =
+			"root(ROOT-0, learned-2)\n" +
+			"nsubj(learned-2, Jim-1)\n" +
+			"xcomp(learned-2, read-4)\n" +
+			"mark(read-4, to-3)\n" +
+			"nmod(read-4, school-7)\n" +
+			"case(school-7, at-5)\n" +
+			"det(school-7, the-6)\n" +
+			"punct(learned-2, .-8)\n";
+	
+	// Collapsed dependencies where 'Jim' and 'read' have several governors
+	private static final String MULTI_HEAD_PARSE =
+			TREE_PARSE +
+			"nsubj:xsubj(read-4, Jim-1)\n" +
+			"dep(school-7, read-4)\n";
+	
+	// Tokens 9 and 10 only govern each other and token 12, so they aren't
+	// connected to the rest of the parse, and token 11 has no node
+	private static final String DISCONNECTED_PARSE =
+			TREE_PARSE +
+			"dep(a-9, b-10)\n" +
+			"dep(b-10, a-9)\n" +
+			"dep(b-10, c-12)\n";
+	
+	@Test
+	public void testIndexedPathInTree() {
+		DependencyParse parse = DependencyParse.fromString(TREE_PARSE, null, 0);
+		Assert.assertTrue(parse.isTree());
+		assertPathsMatchSearch(parse);
+		
+		Assert.assertEquals(1, parse.getLowestCommonAncestor(0, 6));
+		Assert.assertEquals(3, parse.getLowestCommonAncestor(2, 5));
+		Assert.assertEquals(-1, parse.getLowestCommonAncestor(-1, 4));
+		for (int i = -1; i < 8; i++)
+			for (int j = -1; j < 8; j++)
+				Assert.assertEquals(getLowestCommonAncestorBySearch(parse, i, j), parse.getLowestCommonAncestor(i, j));
+	}
+	
+	@Test
+	public void testIndexedPathToRoot() {
+		DependencyParse parse = DependencyParse.fromString(TREE_PARSE, null, 0);
+		DependencyParse.DependencyPath path = parse.getPath(5, -1);
+		Assert.assertEquals(5, path.getTokenLength());
+		Assert.assertEquals(5, path.getTokenIndex(0));
+		Assert.assertEquals(-1, path.getTokenIndex(4));
+		Assert.assertEquals("root", path.getDependencyType(3));
+		
+		path = parse.getPath(-1, -1);
+		Assert.assertEquals(1, path.getTokenLength());
+		Assert.assertEquals(-1, path.getTokenIndex(0));
+	}
+	
+	@Test
+	public void testIndexedPathInMultiHeadGraph() {
+		DependencyParse parse = DependencyParse.fromString(MULTI_HEAD_PARSE, null, 0);
+		Assert.assertFalse(parse.isTree());
+		Assert.assertEquals(-2, parse.getLowestCommonAncestor(0, 6));
+		assertPathsMatchSearch(parse);
+	}
+	
+	@Test
+	public void testIndexedPathMissing() {
+		DependencyParse parse = DependencyParse.fromString(DISCONNECTED_PARSE, null, 0);
+		Assert.assertFalse(parse.isTree());
+		assertPathsMatchSearch(parse);
+		
+		Assert.assertNull(parse.getPath(0, 8));
+		Assert.assertNull(parse.getPath(-1, 9));
+		Assert.assertNotNull(parse.getPath(8, 11));
+		Assert.assertEquals(-1, parse.getPathTokenLength(0, 8));
+		
+		// Tokens without nodes
+		Assert.assertNull(parse.getPath(0, 10));
+		Assert.assertNull(parse.getPath(12, 0));
+		Assert.assertNull(parse.getPathTokenIndices(10, 11));
+		Assert.assertEquals(-1, parse.getPathTokenLength(0, 12));
+	}
+	
+	@Test
+	public void testIndexedPathInRandomGraphs() {
+		Random random = new Random(1);
+		for (int i = 0; i < 500; i++) {
+			int tokenCount = 1 + random.nextInt(12);
+			StringBuilder parseStr = new StringBuilder();
+			parseStr.append("root(ROOT-0, w-1)\n");
+			for (int j = 1; j < tokenCount; j++) {
+				int governorCount = (random.nextInt(4) == 0) ? 2 : 1;
+				for (int k = 0; k < governorCount; k++) {
+					int governor = random.nextInt(tokenCount + 1) - 1;
+					if (governor == j)
+						governor = -1;
+					parseStr.append("d" + k + "(w-" + (governor + 1) + ", w-" + (j + 1) + ")\n");
+				}
+			}
+			
+			assertPathsMatchSearch(DependencyParse.fromString(parseStr.toString(), null, 0));
+		}
+	}
+	
+	@Test
+	public void testShortestPath() {
+		// FeatureDependencyPath takes the shortest path between the tokens of two spans
+		DependencyParse parse = DependencyParse.fromString(MULTI_HEAD_PARSE, null, 0);
+		DependencyParse.DependencyPath path = parse.getShortestPath(0, 2, 5, 7);
+		Assert.assertEquals(3, path.getTokenLength());
+		Assert.assertEquals(0, path.getTokenIndex(0));
+		Assert.assertEquals(6, path.getTokenIndex(2));
+		
+		String[] parseStrs = { TREE_PARSE, MULTI_HEAD_PARSE, DISCONNECTED_PARSE };
+		for (String parseStr : parseStrs) {
+			parse = DependencyParse.fromString(parseStr, null, 0);
+			int tokenCount = parse.getTokenNodes().length + 1;
+			for (int sourceStart = 0; sourceStart < tokenCount; sourceStart++)
+				for (int sourceEnd = sourceStart; sourceEnd <= tokenCount; sourceEnd++)
+					for (int targetStart = 0; targetStart < tokenCount; targetStart++)
+						for (int targetEnd = targetStart; targetEnd <= tokenCount; targetEnd++)
+							assertShortestPathMatchesSearch(parse, sourceStart, sourceEnd, targetStart, targetEnd);
+		}
+	}
+	
+	private void assertPathsMatchSearch(DependencyParse parse) {
+		int tokenCount = parse.getTokenNodes().length;
+		for (int i = -1; i <= tokenCount; i++) {
+			for (int j = -1; j <= tokenCount; j++) {
+				List<Integer> expected = getPathBySearch(parse, i, j);
+				DependencyParse.DependencyPath path = parse.getPath(i, j);
+				String message = "Path mismatch from " + i + " to " + j;
+				if (expected == null) {
+					Assert.assertNull(message, path);
+					Assert.assertEquals(message, -1, parse.getPathTokenLength(i, j));
+					continue;
+				}
+				
+				Assert.assertNotNull(message, path);
+				Assert.assertEquals(message, expected.size(), path.getTokenLength());
+				Assert.assertEquals(message, expected.size(), parse.getPathTokenLength(i, j));
+				int[] pathTokenIndices = parse.getPathTokenIndices(i, j);
+				for (int k = 0; k < expected.size(); k++) {
+					Assert.assertEquals(message, expected.get(k).intValue(), path.getTokenIndex(k));
+					Assert.assertEquals(message, expected.get(k).intValue(), pathTokenIndices[k]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The loop over token pairs that FeatureDependencyPath ran before paths 
+	 * were indexed
+	 */
+	private void assertShortestPathMatchesSearch(DependencyParse parse, int sourceStart, int sourceEnd, int targetStart, int targetEnd) {
+		List<Integer> expected = null;
+		for (int i = sourceStart; i < sourceEnd; i++) {
+			for (int j = targetStart; j < targetEnd; j++) {
+				List<Integer> path = getPathBySearch(parse, i, j);
+				if (expected == null || (path != null && path.size() < expected.size()))
+					expected = path;
+			}
+		}
+		
+		DependencyParse.DependencyPath path = parse.getShortestPath(sourceStart, sourceEnd, targetStart, targetEnd);
+		String message = "Shortest path mismatch from [" + sourceStart + ", " + sourceEnd + ") to [" + targetStart + ", " + targetEnd + ")";
+		if (expected == null) {
+			Assert.assertNull(message, path);
+			return;
+		}
+		
+		Assert.assertNotNull(message, path);
+		Assert.assertEquals(message, expected.size(), path.getTokenLength());
+		for (int k = 0; k < expected.size(); k++)
+			Assert.assertEquals(message, expected.get(k).intValue(), path.getTokenIndex(k));
+	}
+	
+	/**
+	 * The depth-first search that getPath ran for each pair of tokens before
+	 * paths were indexed
+	 */
+	private List<Integer> getPathBySearch(DependencyParse parse, int sourceTokenIndex, int targetTokenIndex) {
+		// Tokens without nodes have no paths
+		if (!hasNode(parse, sourceTokenIndex) || !hasNode(parse, targetTokenIndex))
+			return null;
+		
+		Stack<Integer> toVisit = new Stack<Integer>();
+		Map<Integer, Integer> paths = new HashMap<Integer, Integer>();
+		
+		toVisit.push(targetTokenIndex);
+		paths.put(targetTokenIndex, null);
+		while (!toVisit.isEmpty()) {
+			int current = toVisit.pop();
+			if (current == sourceTokenIndex) {
+				List<Integer> path = new ArrayList<Integer>();
+				Integer pathCurrent = current;
+				while (pathCurrent != null) {
+					path.add(pathCurrent);
+					pathCurrent = paths.get(pathCurrent);
+				}
+				return path;
+			}
+			
+			for (Dependency governor : parse.getGoverningDependencies(current)) {
+				if (paths.containsKey(governor.getGoverningTokenIndex()))
+					continue;
+				toVisit.push(governor.getGoverningTokenIndex());
+				paths.put(governor.getGoverningTokenIndex(), current);
+			}
+			
+			for (Dependency dependent : parse.getGovernedDependencies(current)) {
+				if (paths.containsKey(dependent.getDependentTokenIndex()))
+					continue;
+				toVisit.push(dependent.getDependentTokenIndex());
+				paths.put(dependent.getDependentTokenIndex(), current);
+			}
+		}
+		
+		return null;
+	}
+	
+	private boolean hasNode(DependencyParse parse, int tokenIndex) {
+		return tokenIndex < 0 || (tokenIndex < parse.getTokenNodes().length && parse.getTokenNodes()[tokenIndex] != null);
+	}
+	
+	private int getLowestCommonAncestorBySearch(DependencyParse parse, int tokenIndex1, int tokenIndex2) {
+		Set<Integer> ancestors1 = new HashSet<Integer>();
+		for (int i = tokenIndex1; i != -1; i = parse.getGoverningDependencies(i).get(0).getGoverningTokenIndex())
+			ancestors1.add(i);
+		ancestors1.add(-1);
+		
+		int ancestor = tokenIndex2;
+		while (!ancestors1.contains(ancestor))
+			ancestor = parse.getGoverningDependencies(ancestor).get(0).getGoverningTokenIndex();
+		return ancestor;
+	}
 }
@@ -0,0 +1,74 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
+
+public class DocumentNLPBinaryFileTest {
+	private static final String DOCUMENT_JSON =
+			"{'name':'theDocument',"
+			+ "'text':'Jim learned to read . It was horrible .',"
+			+ "'language':'English',"
+			+ "'sentences':["
+			+ "{'tokens':['Jim','learned','to','read','.'],"
+			+ "'posTags':['NNP','VBD','TO','VB','Other'],"
+			+ "'dependencyParse':'nsubj(learned-2, Jim-1)\\nroot(ROOT-0, learned-2)\\nmark(read-4, to-3)\\nxcomp(learned-2, read-4)\\npunct(learned-2, .-5)\\n',"
+			+ "'constituencyParse':'(ROOT (S (NP (NNP Jim)) (VP (VBD learned) (S (VP (TO to) (VP (VB read))))) (Other .)))'},"
+			+ "{'tokens':['It','was','horrible','.'],"
+			+ "'posTags':['PRP','VBD','JJ','Other'],"
+			+ "'dependencyParse':'nsubj(horrible-3, It-1)\\ncop(horrible-3, was-2)\\nroot(ROOT-0, horrible-3)\\npunct(horrible-3, .-4)\\n',"
+			+ "'constituencyParse':'(ROOT (S (NP (PRP It)) (VP (VBD was) (ADJP (JJ horrible))) (Other .)))'}"
+			+ "],"
+			+ "'ner':[{'sentence':0,'nerSpans':[{'tokenSpan':{'startTokenIndex':0,'endTokenIndex':1},'type':'PERSON'}]}]}";
+	
+	@Test
+	public void testJSONBinaryRoundTrip() throws JSONException, IOException {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		DocumentNLPInMemory document = new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON));
+		DocumentNLPInMemory documentCopy = writeAndRead(document, dataTools, null);
+		
+		Assert.assertNotNull(documentCopy);
+		Assert.assertEquals(document.toJSON().toString(), documentCopy.toJSON().toString());
+		Assert.assertEquals(PoSTag.NNP, documentCopy.getPoSTag(0, 0));
+		Assert.assertEquals(PoSTag.Other, documentCopy.getPoSTag(1, 3));
+	}
+	
+	@Test
+	public void testSelectedAnnotationTypes() throws JSONException, IOException {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		DocumentNLPInMemory document = new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON));
+		DocumentNLPInMemory documentCopy = writeAndRead(document, dataTools, Arrays.asList(new AnnotationTypeNLP<?>[] { AnnotationTypeNLP.POS }));
+		
+		Assert.assertNotNull(documentCopy);
+		Assert.assertEquals(document.getSentenceCount(), documentCopy.getSentenceCount());
+		Assert.assertEquals(document.getTokenStr(1, 2), documentCopy.getTokenStr(1, 2));
+		Assert.assertEquals(document.getPoSTag(1, 2), documentCopy.getPoSTag(1, 2));
+		Assert.assertFalse(documentCopy.hasAnnotationType(AnnotationTypeNLP.DEPENDENCY_PARSE));
+		Assert.assertFalse(documentCopy.hasAnnotationType(AnnotationTypeNLP.CONSTITUENCY_PARSE));
+		Assert.assertFalse(documentCopy.hasAnnotationType(AnnotationTypeNLP.NER));
+	}
+	
+	private DocumentNLPInMemory writeAndRead(DocumentNLPInMemory document, DataTools dataTools, Collection<AnnotationTypeNLP<?>> annotationTypes) throws IOException {
+		File file = File.createTempFile("documents", ".bin");
+		file.deleteOnExit();
+		
+		DocumentNLPBinaryFile.Writer writer = new DocumentNLPBinaryFile.Writer(file.getAbsolutePath());
+		Assert.assertTrue(writer.write(document));
+		Assert.assertTrue(writer.close());
+		
+		DocumentNLPBinaryFile binaryFile = DocumentNLPBinaryFile.open(file.getAbsolutePath());
+		Assert.assertNotNull(binaryFile);
+		DocumentNLPInMemory documentCopy = binaryFile.readDocument(document.getName(), dataTools, annotationTypes);
+		Assert.assertTrue(binaryFile.close());
+		return documentCopy;
+	}
+}
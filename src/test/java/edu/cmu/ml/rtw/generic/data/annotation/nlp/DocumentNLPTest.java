@@ -14,6 +14,110 @@ import edu.cmu.ml.rtw.generic.model.annotator.nlp.PipelineNLPStanford;
 import edu.cmu.ml.rtw.generic.util.OutputWriter;
 
 public class DocumentNLPTest {	
+	// The second sentence has tokens with explicit character offsets
+	private static final String DOCUMENT_JSON =
+			"{'name':'theDocument',"
+			+ "'language':'English',"
+			+ "'sentences':["
+			+ "{'tokens':['Jim','learned','to','read','at','school','.'],"
+			+ "'posTags':['NNP','VBD','TO','VB','IN','NN','Other']},"
+			+ "{'tokens':[{'str':'It','s':38,'e':40},{'str':'was','s':41,'e':44},{'str':'school','s':46,'e':52},{'str':'.','s':52,'e':53}],"
+			+ "'posTags':['PRP','VBD','NN','Other']},"
+			+ "{'tokens':['He','read','.'],"
+			+ "'posTags':['PRP','VBD','Other']}"
+			+ "]}";
+	
+	@Test
+	public void testCompactTokens() throws JSONException {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		DocumentNLPInMemory document = new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON));
+		DocumentNLPInMemory compactDocument = new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON));
+		
+		Assert.assertFalse(compactDocument.isCompact());
+		Assert.assertTrue(compactDocument.compact());
+		Assert.assertTrue(compactDocument.isCompact());
+		Assert.assertTrue(compactDocument.compact());
+		
+		Assert.assertEquals(document.getSentenceCount(), compactDocument.getSentenceCount());
+		for (int i = 0; i < document.getSentenceCount(); i++) {
+			Assert.assertEquals(document.getSentenceTokenCount(i), compactDocument.getSentenceTokenCount(i));
+			Assert.assertEquals(document.getSentence(i), compactDocument.getSentence(i));
+			for (int j = 0; j < document.getSentenceTokenCount(i); j++) {
+				Token token = document.getToken(i, j);
+				Token compactToken = compactDocument.getToken(i, j);
+				Assert.assertEquals(token.getStr(), compactDocument.getTokenStr(i, j));
+				Assert.assertEquals(token.getStr(), compactToken.getStr());
+				Assert.assertEquals(token.getCharSpanStart(), compactToken.getCharSpanStart());
+				Assert.assertEquals(token.getCharSpanEnd(), compactToken.getCharSpanEnd());
+				Assert.assertSame(compactDocument, compactToken.getDocument());
+				Assert.assertEquals(document.getPoSTag(i, j), compactDocument.getPoSTag(i, j));
+			}
+		}
+		
+		Assert.assertEquals(38, compactDocument.getToken(1, 0).getCharSpanStart());
+		Assert.assertEquals(PoSTag.Other, compactDocument.getPoSTag(2, 2));
+	}
+	
+	@Test
+	public void testCompactDocumentsSetting() throws JSONException {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		DataTools compactDataTools = new DataTools(new OutputWriter());
+		Assert.assertTrue(compactDataTools.setCompactDocuments(true));
+		
+		// The setting only applies to documents constructed with its tools
+		Assert.assertTrue(new DocumentNLPInMemory(compactDataTools, new JSONObject(DOCUMENT_JSON)).isCompact());
+		Assert.assertFalse(new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON)).isCompact());
+	}
+	
+	@Test
+	public void testSentenceView() throws JSONException {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		DocumentNLPInMemory document = new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON));
+		DocumentNLPInMemory compactDocument = new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON));
+		Assert.assertTrue(compactDocument.compact());
+		
+		for (int i = 0; i < document.getSentenceCount(); i++) {
+			DocumentNLP.SentenceView sentenceView = document.getSentenceView(i);
+			Assert.assertEquals(document.getSentence(i), sentenceView.toString());
+			Assert.assertEquals(document.getSentence(i).length(), sentenceView.length());
+			Assert.assertEquals(document.getSentence(i), compactDocument.getSentenceView(i).toString());
+			Assert.assertSame(sentenceView, document.getSentenceView(i));
+			
+			for (int j = 0; j < document.getSentenceTokenCount(i); j++) {
+				int tokenStart = sentenceView.getTokenStart(j);
+				int tokenEnd = sentenceView.getTokenEnd(j);
+				Assert.assertEquals(document.getTokenStr(i, j), sentenceView.subSequence(tokenStart, tokenEnd).toString());
+				Assert.assertEquals(j, sentenceView.getTokenIndex(tokenStart));
+				Assert.assertEquals(j, sentenceView.getTokenIndex(tokenEnd - 1));
+				
+				// The space after a token is assigned to that token
+				if (tokenEnd < sentenceView.length()) {
+					Assert.assertEquals(' ', sentenceView.charAt(tokenEnd));
+					Assert.assertEquals(j, sentenceView.getTokenIndex(tokenEnd));
+					Assert.assertEquals(j + 1, sentenceView.getTokenIndex(tokenEnd + 1));
+				}
+			}
+		}
+		
+		Assert.assertEquals("learned to read", new TokenSpan(document, 0, 1, 4).toString());
+		Assert.assertEquals("It was school .", new TokenSpan(document, 1, 0, 4).toString());
+		Assert.assertEquals("read", new TokenSpan(compactDocument, 2, 1, 2).toString());
+		Assert.assertEquals("", new TokenSpan(document, 0, 2, 2).toString());
+	}
+	
+	@Test
+	public void testRootToken() throws JSONException {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		DocumentNLPInMemory document = new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON));
+		
+		Token rootToken = document.getToken(0, -1);
+		Assert.assertEquals("ROOT", rootToken.getStr());
+		for (int i = 0; i < document.getSentenceCount(); i++)
+			Assert.assertSame(rootToken, document.getToken(i, -1));
+		
+		Assert.assertEquals("ROOT Jim", new TokenSpan(document, 0, -1, 1).toString());
+	}
+	
 	@Test
 	public void testNLPAnnotationAndMicroSerialization() {
 		/*testNLPAnnotationAndMicroSerializationDisabledFrom(AnnotationTypeNLP.POS);
@@ -0,0 +1,112 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
+import edu.cmu.ml.rtw.generic.util.Triple;
+
+public class TokenSpanIndexTest {
+	private static final int TOKEN_COUNT = 12;
+	private static final String DOCUMENT_JSON =
+			"{'name':'theDocument',"
+			+ "'language':'English',"
+			+ "'sentences':["
+			+ "{'tokens':['Jim','learned','to','read','at','school','in','New','York','last','year','.']}"
+			+ "]}";
+	
+	@Test
+	public void testCollectMatchesScan() throws JSONException {
+		DataTools dataTools = new DataTools(new OutputWriter());
+		DocumentNLP document = new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON));
+		DocumentNLP otherDocument = new DocumentNLPInMemory(dataTools, new JSONObject(DOCUMENT_JSON.replace("theDocument", "theOtherDocument")));
+		TokenSpan.Relation[] allRelations = TokenSpan.Relation.values();
+		
+		Random random = new Random(1);
+		for (int i = 0; i < 200; i++) {
+			List<Triple<TokenSpan, String, Double>> annotations = new ArrayList<Triple<TokenSpan, String, Double>>();
+			int annotationCount = random.nextInt(20);
+			for (int j = 0; j < annotationCount; j++)
+				annotations.add(new Triple<TokenSpan, String, Double>(makeRandomTokenSpan(random, document), "annotation" + j, null));
+			TokenSpanIndex<Triple<TokenSpan, String, Double>> index = new TokenSpanIndex<Triple<TokenSpan, String, Double>>(annotations);
+			
+			for (int j = 0; j < 50; j++) {
+				TokenSpan tokenSpan = makeRandomTokenSpan(random, (j % 10 == 0) ? otherDocument : document);
+				
+				List<TokenSpan.Relation> relations = new ArrayList<TokenSpan.Relation>();
+				for (TokenSpan.Relation relation : allRelations)
+					if (random.nextBoolean())
+						relations.add(relation);
+				// Most queries use the relations that are indexed
+				if (j % 2 == 0)
+					relations.retainAll(Arrays.asList(TokenSpan.Relation.EQUAL, TokenSpan.Relation.CONTAINS, TokenSpan.Relation.CONTAINED_BY));
+				TokenSpan.Relation[] relationArray = relations.toArray(new TokenSpan.Relation[relations.size()]);
+				
+				List<Triple<TokenSpan, String, Double>> results = new ArrayList<Triple<TokenSpan, String, Double>>();
+				Assert.assertTrue(index.collect(tokenSpan, relationArray, results));
+				assertSameElements(getByScan(annotations, tokenSpan, relationArray), results);
+			}
+			
+			for (TokenSpan.Relation[] relations : new TokenSpan.Relation[][] { TokenSpan.ANY_SHARING_RELATION, TokenSpan.ANY_CLOSE_RELATION, new TokenSpan.Relation[] { TokenSpan.Relation.CONTAINED_BY } }) {
+				for (int start = 0; start <= TOKEN_COUNT; start++) {
+					for (int end = start; end <= TOKEN_COUNT; end++) {
+						TokenSpan tokenSpan = new TokenSpan(document, 0, start, end);
+						List<Triple<TokenSpan, String, Double>> results = new ArrayList<Triple<TokenSpan, String, Double>>();
+						index.collect(tokenSpan, relations, results);
+						assertSameElements(getByScan(annotations, tokenSpan, relations), results);
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testIsIndexOf() throws JSONException {
+		DocumentNLP document = new DocumentNLPInMemory(new DataTools(new OutputWriter()), new JSONObject(DOCUMENT_JSON));
+		List<Triple<TokenSpan, String, Double>> annotations = new ArrayList<Triple<TokenSpan, String, Double>>();
+		annotations.add(new Triple<TokenSpan, String, Double>(new TokenSpan(document, 0, 7, 9), "LOCATION", null));
+		TokenSpanIndex<Triple<TokenSpan, String, Double>> index = new TokenSpanIndex<Triple<TokenSpan, String, Double>>(annotations);
+		
+		Assert.assertTrue(index.isIndexOf(annotations));
+		Assert.assertFalse(index.isIndexOf(new ArrayList<Triple<TokenSpan, String, Double>>(annotations)));
+		
+		// Appending to the list makes the index stale
+		annotations.add(new Triple<TokenSpan, String, Double>(new TokenSpan(document, 0, 0, 1), "PERSON", null));
+		Assert.assertFalse(index.isIndexOf(annotations));
+		Assert.assertEquals(1, index.size());
+	}
+	
+	private TokenSpan makeRandomTokenSpan(Random random, DocumentNLP document) {
+		int start = random.nextInt(TOKEN_COUNT);
+		int end = Math.min(TOKEN_COUNT, start + random.nextInt(4));
+		return new TokenSpan(document, 0, start, end);
+	}
+	
+	/**
+	 * The scan that DocumentNLPInMemory.getNer ran before annotations
+	 * were indexed
+	 */
+	private List<Triple<TokenSpan, String, Double>> getByScan(List<Triple<TokenSpan, String, Double>> annotations, TokenSpan tokenSpan, TokenSpan.Relation[] relations) {
+		List<Triple<TokenSpan, String, Double>> results = new ArrayList<Triple<TokenSpan, String, Double>>();
+		for (Triple<TokenSpan, String, Double> annotation : annotations) {
+			TokenSpan.Relation relation = tokenSpan.getRelationTo(annotation.getFirst());
+			if (Arrays.asList(relations).contains(relation))
+				results.add(annotation);
+		}
+		return results;
+	}
+	
+	private void assertSameElements(List<Triple<TokenSpan, String, Double>> expected, List<Triple<TokenSpan, String, Double>> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			Assert.assertSame(expected.get(i), actual.get(i));
+	}
+}
@@ -0,0 +1,118 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp.micro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class DocumentAnnotationReaderTest {
+  private static final String[] SLOTS = { "nlp_annotation_ner", "nlp_annotation_coref", "nlp_annotation_language" };
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<DocumentAnnotation> documentAnnotations = makeRandomDocumentAnnotations(new Random(1), 50);
+    File file = File.createTempFile("micro", ".json");
+    file.deleteOnExit();
+
+    DocumentAnnotationWriter writer = new DocumentAnnotationWriter(file.getAbsolutePath(), 4, 7);
+    for (DocumentAnnotation documentAnnotation : documentAnnotations) {
+      Assert.assertTrue(writer.write(documentAnnotation));
+    }
+    Assert.assertTrue(writer.close());
+    Assert.assertEquals(documentAnnotations.size(), writer.getDocumentCount());
+
+    long annotationCount = 0;
+    for (DocumentAnnotation documentAnnotation : documentAnnotations) {
+      annotationCount += documentAnnotation.getAllAnnotations().size();
+    }
+    Assert.assertEquals(annotationCount, writer.getAnnotationCount());
+
+    // Streaming in batches smaller than a document, and reading the whole file
+    for (boolean contiguousDocuments : new boolean[] { true, false }) {
+      DocumentAnnotationReader reader = new DocumentAnnotationReader(file.getAbsolutePath(), 4, 5, contiguousDocuments);
+      assertDocumentAnnotationsEqual(documentAnnotations, Lists.newArrayList(reader));
+      Assert.assertFalse(reader.hasFailed());
+      Assert.assertEquals(0, reader.getInvalidLineCount());
+    }
+
+    assertDocumentAnnotationsEqual(documentAnnotations, DocumentAnnotationReader.readAll(file.getAbsolutePath(), 4));
+  }
+
+  @Test
+  public void testSplitDocuments() throws IOException {
+    List<DocumentAnnotation> documentAnnotations = makeRandomDocumentAnnotations(new Random(2), 2);
+    File file = File.createTempFile("micro", ".json");
+    file.deleteOnExit();
+
+    // The documents' annotations alternate, with a line that isn't an annotation
+    PrintWriter writer = new PrintWriter(file, "UTF-8");
+    List<Annotation> annotations1 = documentAnnotations.get(0).getAllAnnotations();
+    List<Annotation> annotations2 = documentAnnotations.get(1).getAllAnnotations();
+    for (int i = 0; i < Math.max(annotations1.size(), annotations2.size()); i++) {
+      if (i < annotations1.size()) {
+        writer.println(annotations1.get(i).toJsonString());
+      }
+      if (i < annotations2.size()) {
+        writer.println(annotations2.get(i).toJsonString());
+      }
+    }
+    writer.println("not an annotation");
+    writer.close();
+
+    DocumentAnnotationReader reader = new DocumentAnnotationReader(file.getAbsolutePath(), 2, 3, false);
+    assertDocumentAnnotationsEqual(documentAnnotations, Lists.newArrayList(reader));
+    Assert.assertEquals(1, reader.getInvalidLineCount());
+
+    // Documents whose lines aren't consecutive are returned in pieces
+    reader = new DocumentAnnotationReader(file.getAbsolutePath(), 2, 3, true);
+    Assert.assertTrue(Lists.newArrayList(reader).size() > 2);
+  }
+
+  @Test
+  public void testMissingFile() {
+    Assert.assertNull(DocumentAnnotationReader.readAll(new File("missing", "missing.json").getAbsolutePath(), 2));
+  }
+
+  /**
+   * Makes documents whose annotations are grouped by slot, as the reader
+   * returns them
+   */
+  private List<DocumentAnnotation> makeRandomDocumentAnnotations(Random random, int documentCount) {
+    DateTime annotationTime = new DateTime(0L);
+    List<DocumentAnnotation> documentAnnotations = Lists.newArrayList();
+    for (int i = 0; i < documentCount; i++) {
+      String documentId = "doc" + i;
+      List<Annotation> annotations = Lists.newArrayList();
+      for (String slot : SLOTS) {
+        int count = random.nextInt(12);
+        for (int j = 0; j < count; j++) {
+          int spanStart = random.nextInt(100);
+          annotations.add(new Annotation(spanStart, spanStart + random.nextInt(10), slot, "test", documentId, slot + j, annotationTime));
+        }
+      }
+      annotations.add(new Annotation(0, 100, "nlp_annotation_original_text", "test", documentId, "text " + i, annotationTime));
+      documentAnnotations.add(new DocumentAnnotation(documentId, annotations));
+    }
+    return documentAnnotations;
+  }
+
+  private void assertDocumentAnnotationsEqual(List<DocumentAnnotation> expected, List<DocumentAnnotation> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).getDocumentId(), actual.get(i).getDocumentId());
+      List<Annotation> expectedAnnotations = expected.get(i).getAllAnnotations();
+      List<Annotation> actualAnnotations = actual.get(i).getAllAnnotations();
+      Assert.assertEquals(expectedAnnotations.size(), actualAnnotations.size());
+      for (int j = 0; j < expectedAnnotations.size(); j++) {
+        Assert.assertEquals(expectedAnnotations.get(j).toJsonString(), actualAnnotations.get(j).toJsonString());
+      }
+    }
+  }
+}
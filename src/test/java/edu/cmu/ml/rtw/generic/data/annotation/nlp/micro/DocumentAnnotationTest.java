@@ -0,0 +1,108 @@
+package edu.cmu.ml.rtw.generic.data.annotation.nlp.micro;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class DocumentAnnotationTest {
+  private static final String[] SLOTS = { "nlp_annotation_ner", "nlp_annotation_coref", "nlp_annotation_language" };
+
+  @Test
+  public void testQueriesMatchLinearFilter() {
+    Random random = new Random(1);
+    for (int i = 0; i < 200; i++) {
+      int textLength = 1 + random.nextInt(200);
+      List<Annotation> annotations = makeRandomAnnotations(random, textLength, random.nextInt(60));
+      DocumentAnnotation documentAnnotation = new DocumentAnnotation("doc", annotations);
+
+      for (int spanStart = -1; spanStart <= textLength + 1; spanStart++) {
+        for (int spanEnd = spanStart - 1; spanEnd <= Math.min(textLength + 1, spanStart + 30); spanEnd++) {
+          Assert.assertEquals(getOverlappingByFilter(annotations, spanStart, spanEnd),
+              documentAnnotation.getAnnotationsOverlappingSpan(spanStart, spanEnd));
+          Assert.assertEquals(getForSpanByFilter(annotations, spanStart, spanEnd),
+              documentAnnotation.getAnnotationsForSpan(spanStart, spanEnd));
+        }
+      }
+
+      // Queries over the whole document
+      Assert.assertEquals(annotations, documentAnnotation.getAnnotationsOverlappingSpan(-1, textLength + 1));
+
+      for (String slot : SLOTS) {
+        Assert.assertEquals(getWithSlotByFilter(annotations, slot), documentAnnotation.getAnnotationsWithSlot(slot));
+      }
+    }
+  }
+
+  @Test
+  public void testDocumentLevelAnnotations() {
+    List<Annotation> annotations = Lists.newArrayList();
+    annotations.add(new Annotation(0, 1000, "nlp_annotation_original_text", "test", "doc", "text", null));
+    annotations.add(new Annotation(10, 15, "nlp_annotation_ner", "test", "doc", "PERSON", null));
+    annotations.add(new Annotation(0, 1000, "nlp_annotation_language", "test", "doc", "English", null));
+    annotations.add(new Annotation(3, 5, "nlp_annotation_ner", "test", "doc", "LOCATION", null));
+    annotations.add(new Annotation(12, 12, "nlp_annotation_ner", "test", "doc", "O", null));
+    DocumentAnnotation documentAnnotation = new DocumentAnnotation("doc", annotations);
+
+    Assert.assertEquals(Lists.newArrayList(annotations.get(0), annotations.get(1), annotations.get(2), annotations.get(4)),
+        documentAnnotation.getAnnotationsOverlappingSpan(11, 13));
+    Assert.assertEquals(Lists.newArrayList(annotations.get(0), annotations.get(2), annotations.get(3)),
+        documentAnnotation.getAnnotationsOverlappingSpan(4, 4));
+    Assert.assertEquals(Lists.newArrayList(annotations.get(0), annotations.get(2)),
+        documentAnnotation.getAnnotationsOverlappingSpan(500, 600));
+    Assert.assertEquals(0, documentAnnotation.getAnnotationsOverlappingSpan(1000, 1010).size());
+    Assert.assertEquals(0, new DocumentAnnotation("doc", Lists.<Annotation>newArrayList()).getAnnotationsOverlappingSpan(0, 10).size());
+  }
+
+  private List<Annotation> makeRandomAnnotations(Random random, int textLength, int count) {
+    List<Annotation> annotations = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      int spanStart;
+      int spanEnd;
+      if (random.nextInt(10) == 0) {
+        // Document level annotations cover the whole text
+        spanStart = 0;
+        spanEnd = textLength;
+      } else {
+        spanStart = random.nextInt(textLength + 1);
+        spanEnd = Math.min(textLength, spanStart + random.nextInt(random.nextBoolean() ? 5 : 50));
+      }
+
+      annotations.add(new Annotation(spanStart, spanEnd, SLOTS[random.nextInt(SLOTS.length)], "test", "doc", String.valueOf(i), null));
+    }
+    return annotations;
+  }
+
+  private List<Annotation> getOverlappingByFilter(List<Annotation> annotations, int spanStart, int spanEnd) {
+    List<Annotation> result = Lists.newArrayList();
+    for (Annotation annotation : annotations) {
+      if (annotation.getSpanStart() < spanEnd && annotation.getSpanEnd() > spanStart) {
+        result.add(annotation);
+      }
+    }
+    return result;
+  }
+
+  private List<Annotation> getForSpanByFilter(List<Annotation> annotations, int spanStart, int spanEnd) {
+    List<Annotation> result = Lists.newArrayList();
+    for (Annotation annotation : annotations) {
+      if (annotation.getSpanStart() == spanStart && annotation.getSpanEnd() == spanEnd) {
+        result.add(annotation);
+      }
+    }
+    return result;
+  }
+
+  private List<Annotation> getWithSlotByFilter(List<Annotation> annotations, String slot) {
+    List<Annotation> result = Lists.newArrayList();
+    for (Annotation annotation : annotations) {
+      if (annotation.getSlot().equals(slot)) {
+        result.add(annotation);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,92 @@
+package edu.cmu.ml.rtw.generic.data.feature;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platanios.learn.math.matrix.Vector;
+
+import edu.cmu.ml.rtw.generic.data.Context;
+import edu.cmu.ml.rtw.generic.data.DataTools;
+import edu.cmu.ml.rtw.generic.data.annotation.TestDatum;
+import edu.cmu.ml.rtw.generic.data.annotation.DataSet.DataFilter;
+import edu.cmu.ml.rtw.generic.data.annotation.Datum;
+import edu.cmu.ml.rtw.generic.util.OutputWriter;
+
+public class FeaturizedDataSetTest {
+	@Test
+	public void testSubsetWithNewFeaturesGetsOwnVectors() {
+		TestDatum.Tools<String> datumTools = TestDatum.getStringTools(new DataTools(new OutputWriter()));
+		Context<TestDatum<String>, String> context = new Context<TestDatum<String>, String>(datumTools);
+		FeaturizedDataSet<TestDatum<String>, String> data = makeDataSet(datumTools, context);
+		
+		FeaturizedDataSet<TestDatum<String>, String> subset = (FeaturizedDataSet<TestDatum<String>, String>)data.getSubset(DataFilter.All);
+		Assert.assertSame(data.getVectorStore(), subset.getVectorStore());
+		assertVectorsEqual(data, subset);
+		
+		Assert.assertTrue(subset.addFeature(makeFeature(context, 10.0), true));
+		Assert.assertNotSame(data.getVectorStore(), subset.getVectorStore());
+		for (TestDatum<String> datum : subset) {
+			Vector vector = subset.getFeatureVocabularyValues(datum);
+			Assert.assertEquals(2, vector.size());
+			Assert.assertEquals(datum.getId(), vector.get(0), 0.0);
+			Assert.assertEquals(datum.getId() * 10.0, vector.get(1), 0.0);
+			Assert.assertEquals(1, data.getFeatureVocabularyValues(data.getDatumById(datum.getId())).size());
+		}
+	}
+	
+	@Test
+	public void testParentWithNewFeaturesLeavesSampleVectors() {
+		TestDatum.Tools<String> datumTools = TestDatum.getStringTools(new DataTools(new OutputWriter()));
+		Context<TestDatum<String>, String> context = new Context<TestDatum<String>, String>(datumTools);
+		FeaturizedDataSet<TestDatum<String>, String> data = makeDataSet(datumTools, context);
+		
+		FeaturizedDataSet<TestDatum<String>, String> sample = data.getSample(0.5, new Random(1));
+		Assert.assertSame(data.getVectorStore(), sample.getVectorStore());
+		
+		Assert.assertTrue(data.addFeature(makeFeature(context, 10.0), true));
+		Assert.assertNotSame(data.getVectorStore(), sample.getVectorStore());
+		for (TestDatum<String> datum : sample) {
+			Assert.assertEquals(1, sample.getFeatureVocabularyValues(datum).size());
+			Assert.assertEquals(2, data.getFeatureVocabularyValues(data.getDatumById(datum.getId())).size());
+		}
+	}
+	
+	private FeaturizedDataSet<TestDatum<String>, String> makeDataSet(TestDatum.Tools<String> datumTools, Context<TestDatum<String>, String> context) {
+		FeaturizedDataSet<TestDatum<String>, String> data = new FeaturizedDataSet<TestDatum<String>, String>("test", 1, datumTools, null);
+		for (int i = 0; i < 10; i++)
+			data.add(new TestDatum<String>(i, null, "label"));
+		
+		Assert.assertTrue(data.addFeature(makeFeature(context, 1.0), true));
+		for (TestDatum<String> datum : data)
+			data.getFeatureVocabularyValues(datum); // Cache the vectors
+		
+		return data;
+	}
+	
+	private Feature<TestDatum<String>, String> makeFeature(Context<TestDatum<String>, String> context, final double scale) {
+		FeatureIdentity<TestDatum<String>, String> feature = new FeatureIdentity<TestDatum<String>, String>(context);
+		feature.doubleExtractor = new Datum.Tools.DoubleExtractor<TestDatum<String>, String>() {
+			@Override
+			public String toString() {
+				return "Id" + scale;
+			}
+			
+			@Override
+			public double[] extract(TestDatum<String> datum) {
+				return new double[] { datum.getId() * scale };
+			}
+		};
+		
+		return feature;
+	}
+	
+	private void assertVectorsEqual(FeaturizedDataSet<TestDatum<String>, String> data, FeaturizedDataSet<TestDatum<String>, String> subset) {
+		for (TestDatum<String> datum : subset) {
+			Vector vector = subset.getFeatureVocabularyValues(datum);
+			Vector parentVector = data.getFeatureVocabularyValues(data.getDatumById(datum.getId()));
+			Assert.assertEquals(parentVector.size(), vector.size());
+			Assert.assertEquals(parentVector.get(0), vector.get(0), 0.0);
+		}
+	}
+}
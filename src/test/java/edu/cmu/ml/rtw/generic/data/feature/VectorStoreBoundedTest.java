@@ -0,0 +1,75 @@
+package edu.cmu.ml.rtw.generic.data.feature;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.platanios.learn.math.matrix.SparseVector;
+import org.platanios.learn.math.matrix.Vector;
+
+public class VectorStoreBoundedTest {
+	@Test
+	public void testModifyingReturnedVectorKeepsStoredVector() {
+		VectorStoreBounded store = new VectorStoreBounded(1024*1024);
+		Assert.assertTrue(store.put(1, makeVector(1.0, 2.0)));
+		
+		Vector vector = store.get(1);
+		vector.set(0, 100.0);
+		vector.set(2, 200.0);
+		
+		assertVectorEquals(store.get(1), 1.0, 2.0);
+	}
+	
+	@Test
+	public void testModifyingSpilledVectorKeepsStoredVector() throws IOException {
+		File spillFile = File.createTempFile("VectorStoreBoundedTest", ".spill");
+		spillFile.deleteOnExit();
+		
+		// Bound holds only one vector, so every put evicts the previous one
+		VectorStoreBounded store = new VectorStoreBounded(1, spillFile);
+		Assert.assertTrue(store.put(1, makeVector(1.0, 2.0)));
+		Assert.assertTrue(store.put(2, makeVector(3.0, 4.0)));
+		Assert.assertEquals(1, store.getSpillCount());
+		
+		Vector vector = store.get(1);
+		vector.set(0, 100.0);
+		Assert.assertTrue(store.put(3, makeVector(5.0, 6.0)));
+		
+		assertVectorEquals(store.get(1), 1.0, 2.0);
+		assertVectorEquals(store.get(2), 3.0, 4.0);
+		assertVectorEquals(store.get(3), 5.0, 6.0);
+		
+		store.clear();
+	}
+	
+	@Test
+	public void testMakeInstanceIsEmpty() {
+		VectorStoreBounded store = new VectorStoreBounded(1024*1024);
+		Assert.assertTrue(store.put(1, makeVector(1.0, 2.0)));
+		
+		VectorStore instance = store.makeInstance();
+		Assert.assertFalse(instance.contains(1));
+		Assert.assertNull(instance.get(1));
+		Assert.assertTrue(instance.put(1, makeVector(3.0, 4.0)));
+		
+		assertVectorEquals(store.get(1), 1.0, 2.0);
+		assertVectorEquals(instance.get(1), 3.0, 4.0);
+	}
+	
+	private Vector makeVector(double value0, double value1) {
+		Map<Integer, Double> values = new HashMap<Integer, Double>();
+		values.put(0, value0);
+		values.put(1, value1);
+		return new SparseVector(3, values);
+	}
+	
+	private void assertVectorEquals(Vector vector, double value0, double value1) {
+		Assert.assertEquals(3, vector.size());
+		Assert.assertEquals(value0, vector.get(0), 0.0);
+		Assert.assertEquals(value1, vector.get(1), 0.0);
+		Assert.assertEquals(0.0, vector.get(2), 0.0);
+	}
+}
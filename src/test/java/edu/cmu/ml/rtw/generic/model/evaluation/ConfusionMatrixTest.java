@@ -0,0 +1,134 @@
+package edu.cmu.ml.rtw.generic.model.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cmu.ml.rtw.generic.data.annotation.TestDatum;
+
+public class ConfusionMatrixTest {
+	private static final Set<String> VALID_LABELS = new HashSet<String>(Arrays.asList("a", "b", "c"));
+	
+	@Test
+	public void testShardsMatchSequentialCounts() {
+		Random random = new Random(1);
+		String[] labels = { "a", "b", "c", "invalid", null };
+		Map<TestDatum<String>, String> classifiedData = new HashMap<TestDatum<String>, String>();
+		for (int i = 0; i < 1000; i++)
+			classifiedData.put(new TestDatum<String>(i, null, labels[random.nextInt(labels.length)]), labels[random.nextInt(labels.length)]);
+		
+		ConfusionMatrix<TestDatum<String>, String> sequential = new ConfusionMatrix<TestDatum<String>, String>(VALID_LABELS);
+		Assert.assertTrue(sequential.addData(classifiedData));
+		
+		ConfusionMatrix<TestDatum<String>, String> threaded = new ConfusionMatrix<TestDatum<String>, String>(VALID_LABELS);
+		Assert.assertTrue(threaded.addData(classifiedData, 4));
+		assertCountsEqual(sequential, threaded);
+		
+		// Shards counted separately and merged in either order
+		ConfusionMatrix<TestDatum<String>, String> merged = new ConfusionMatrix<TestDatum<String>, String>(VALID_LABELS);
+		ConfusionMatrix<TestDatum<String>, String> shard1 = merged.makeShard();
+		ConfusionMatrix<TestDatum<String>, String> shard2 = merged.makeShard();
+		int i = 0;
+		for (Map.Entry<TestDatum<String>, String> entry : classifiedData.entrySet()) {
+			((i % 3 == 0) ? shard1 : shard2).addDatum(entry.getKey(), entry.getValue());
+			i++;
+		}
+		Assert.assertTrue(merged.add(shard2));
+		Assert.assertTrue(merged.add(shard1));
+		assertCountsEqual(sequential, merged);
+		
+		// Entries for labels that aren't valid in the merged matrix are ignored
+		ConfusionMatrix<TestDatum<String>, String> subset = new ConfusionMatrix<TestDatum<String>, String>(new HashSet<String>(Arrays.asList("a", "b")));
+		Assert.assertTrue(subset.add(sequential));
+		Assert.assertEquals(sequential.getCount("a", "b"), subset.getCount("a", "b"));
+		Assert.assertEquals(sequential.getCount("b", "b"), subset.getCount("b", "b"));
+		Assert.assertEquals(0, subset.getCount("a", "c"));
+		Assert.assertEquals(sequential.getTotalCount() - countWithLabel(sequential, "c"), subset.getTotalCount());
+	}
+	
+	@Test
+	public void testExampleCapacity() {
+		ConfusionMatrix<TestDatum<String>, String> matrix = new ConfusionMatrix<TestDatum<String>, String>(VALID_LABELS, null, 5);
+		Assert.assertTrue(matrix.keepsExamples());
+		Assert.assertFalse(new ConfusionMatrix<TestDatum<String>, String>(VALID_LABELS).keepsExamples());
+		
+		Map<TestDatum<String>, String> classifiedData = new HashMap<TestDatum<String>, String>();
+		for (int i = 0; i < 1000; i++)
+			classifiedData.put(new TestDatum<String>(i, null, (i % 2 == 0) ? "a" : "b"), "b");
+		Assert.assertTrue(matrix.addData(classifiedData, 4));
+		
+		Assert.assertEquals(500, matrix.getCount("a", "b"));
+		Assert.assertEquals(500, matrix.getCount("b", "b"));
+		Assert.assertEquals(0, matrix.getActualPredicted("a", "a").size());
+		
+		List<TestDatum<String>> examples = matrix.getActualPredicted("a", "b");
+		Assert.assertEquals(5, examples.size());
+		Assert.assertEquals(5, new HashSet<TestDatum<String>>(examples).size());
+		for (TestDatum<String> example : examples)
+			Assert.assertEquals("a", example.getLabel());
+	}
+	
+	@Test
+	public void testExamplesAreUniformSamples() {
+		int datumCount = 20;
+		int capacity = 5;
+		int trials = 4000;
+		ConfusionMatrix<TestDatum<String>, String> parent = new ConfusionMatrix<TestDatum<String>, String>(VALID_LABELS, null, capacity);
+		
+		List<TestDatum<String>> data = new ArrayList<TestDatum<String>>();
+		for (int i = 0; i < datumCount; i++)
+			data.add(new TestDatum<String>(i, null, "a"));
+		
+		int[] sampledCounts = new int[datumCount];
+		int[] mergedSampledCounts = new int[datumCount];
+		for (int trial = 0; trial < trials; trial++) {
+			ConfusionMatrix<TestDatum<String>, String> matrix = parent.makeShard();
+			for (TestDatum<String> datum : data)
+				matrix.addDatum(datum, "c");
+			for (TestDatum<String> example : matrix.getActualPredicted("a", "c"))
+				sampledCounts[example.getId()]++;
+			
+			// Shards with unequal counts merge into a sample of all of the data
+			ConfusionMatrix<TestDatum<String>, String> merged = parent.makeShard();
+			ConfusionMatrix<TestDatum<String>, String> shard = parent.makeShard();
+			for (int i = 0; i < datumCount; i++)
+				((i < 4) ? merged : shard).addDatum(data.get(i), "c");
+			merged.add(shard);
+			Assert.assertEquals(datumCount, merged.getCount("a", "c"));
+			Assert.assertEquals(capacity, merged.getActualPredicted("a", "c").size());
+			for (TestDatum<String> example : merged.getActualPredicted("a", "c"))
+				mergedSampledCounts[example.getId()]++;
+		}
+		
+		double expected = trials*capacity/(double)datumCount;
+		for (int i = 0; i < datumCount; i++) {
+			Assert.assertTrue("Datum " + i + " sampled " + sampledCounts[i] + " times", Math.abs(sampledCounts[i] - expected) < 0.2*expected);
+			Assert.assertTrue("Datum " + i + " sampled " + mergedSampledCounts[i] + " times after merge", Math.abs(mergedSampledCounts[i] - expected) < 0.2*expected);
+		}
+	}
+	
+	private void assertCountsEqual(ConfusionMatrix<TestDatum<String>, String> expected, ConfusionMatrix<TestDatum<String>, String> actual) {
+		for (String actualLabel : VALID_LABELS)
+			for (String predictedLabel : VALID_LABELS)
+				Assert.assertEquals(expected.getCount(actualLabel, predictedLabel), actual.getCount(actualLabel, predictedLabel));
+		Assert.assertEquals(expected.getTotalCount(), actual.getTotalCount());
+	}
+	
+	private long countWithLabel(ConfusionMatrix<TestDatum<String>, String> matrix, String label) {
+		long count = 0;
+		for (String other : VALID_LABELS) {
+			count += matrix.getCount(label, other);
+			if (!other.equals(label))
+				count += matrix.getCount(other, label);
+		}
+		return count;
+	}
+}
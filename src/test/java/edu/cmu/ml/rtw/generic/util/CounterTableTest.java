@@ -0,0 +1,62 @@
+package edu.cmu.ml.rtw.generic.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CounterTableTest {
+	@Test
+	public void testConcurrentCountsMatchSequential() {
+		List<String> items = makeItems(10000);
+		CounterTable<String> sequential = new CounterTable<String>();
+		for (String item : items)
+			sequential.incrementCount(item);
+		
+		CounterTable<String> concurrent = new CounterTable<String>(true);
+		incrementCounts(new ThreadPool(4), concurrent, items);
+		
+		Assert.assertEquals(sequential.getCounts(), concurrent.getCounts());
+	}
+	
+	@Test
+	public void testIncrementsAfterMerge() {
+		// The same pool threads increment before and after the counts are merged
+		ThreadPool pool = new ThreadPool(4);
+		List<String> items = makeItems(10000);
+		CounterTable<String> sequential = new CounterTable<String>();
+		CounterTable<String> concurrent = new CounterTable<String>(true);
+		for (int i = 0; i < 3; i++) {
+			for (String item : items)
+				sequential.incrementCount(item);
+			incrementCounts(pool, concurrent, items);
+			
+			Assert.assertEquals(sequential.getCounts(), concurrent.getCounts());
+		}
+		
+		concurrent.removeCountsLessThan(Integer.MAX_VALUE);
+		Assert.assertEquals(0, concurrent.getSize());
+		incrementCounts(pool, concurrent, items);
+		Assert.assertEquals(97, concurrent.getSize());
+	}
+	
+	private List<String> makeItems(int size) {
+		List<String> items = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++)
+			items.add("w" + (i % 97));
+		return items;
+	}
+	
+	private void incrementCounts(ThreadPool pool, final CounterTable<String> counter, List<String> items) {
+		List<Boolean> results = pool.map(items, items.size(), new ThreadMapper.Fn<String, Boolean>() {
+			@Override
+			public Boolean apply(String item) {
+				counter.incrementCount(item);
+				return true;
+			}
+		}, 4).get();
+		
+		Assert.assertEquals(items.size(), results.size());
+	}
+}
@@ -0,0 +1,124 @@
+package edu.cmu.ml.rtw.generic.util;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EditDistanceTest {
+	private static final String[] PIECES = {
+		"a", "b", "c", "ab", "ba", "abc", "Z", " ", "-", "0",
+		// Non-ASCII, non-BMP and unpaired surrogate characters
+		"\u00E9", "\u00DF", "\u03C3", "\u4E2D", "\u0100", "\u0101",
+		"\uD801\uDC00", "\uD835\uDC00", "\uD83D\uDE00", "\uD800", "\uDC00"
+	};
+
+	@Test
+	public void testEdgeCases() {
+		String longStr = makeRepeatedString("abcdefghij", 13);
+		String[][] cases = {
+			{ "", "" },
+			{ "", "a" },
+			{ "abc", "" },
+			{ "kitten", "sitting" },
+			{ "flaw", "lawn" },
+			{ "\uD83D\uDE00", "\uD83D\uDE01" },
+			{ "\uD801\uDC00x", "x\uD801\uDC00" },
+			{ makeRepeatedString("a", 64), makeRepeatedString("a", 63) + "b" },
+			{ makeRepeatedString("a", 64), makeRepeatedString("b", 64) },
+			{ makeRepeatedString("a", 65), makeRepeatedString("a", 66) },
+			{ longStr, "" },
+			{ longStr, longStr.substring(1) + "z" },
+			{ longStr, new StringBuilder(longStr).reverse().toString() },
+			{ makeRepeatedString("\uD83D\uDE00", 40), makeRepeatedString("\uD83D\uDE01", 40) }
+		};
+
+		for (String[] pair : cases)
+			assertMatchesReference(pair[0], pair[1]);
+	}
+
+	@Test
+	public void testShortStrings() {
+		// Strings of at most 64 characters use the bit-parallel kernel
+		Random random = new Random(1);
+		for (int i = 0; i < 20000; i++)
+			assertMatchesReference(makeTestString(random, 40), makeTestString(random, 40));
+	}
+
+	@Test
+	public void testLongStrings() {
+		// Strings of over 64 characters use the two-row and banded kernels
+		Random random = new Random(2);
+		for (int i = 0; i < 2000; i++) {
+			String str1 = makeTestString(random, 120);
+			String str2 = (random.nextBoolean()) ? mutate(random, str1) : makeTestString(random, 120);
+			assertMatchesReference(str1, str2);
+		}
+	}
+
+	private void assertMatchesReference(String str1, String str2) {
+		int distance = levenshteinReference(str1, str2);
+		String message = "Distance mismatch for '" + str1 + "', '" + str2 + "'";
+
+		Assert.assertEquals(message, distance, EditDistance.levenshtein(str1, str2));
+		Assert.assertEquals(message, distance, EditDistance.levenshtein(str2, str1));
+		Assert.assertEquals(message, distance, StringUtil.levenshteinDistance(str1, str2));
+
+		int[] maxDistances = { 0, 1, 2, 3, distance - 1, distance, distance + 1, Math.max(str1.length(), str2.length()) };
+		for (int maxDistance : maxDistances) {
+			if (maxDistance < 0)
+				continue;
+			int expected = (distance > maxDistance) ? maxDistance + 1 : distance;
+			Assert.assertEquals(message + " (max " + maxDistance + ")", expected, EditDistance.levenshtein(str1, str2, maxDistance));
+			Assert.assertEquals(message + " (max " + maxDistance + ")", expected, StringUtil.levenshteinDistance(str1, str2, maxDistance));
+		}
+	}
+
+	private int levenshteinReference(String str1, String str2) {
+		int[][] d = new int[str1.length() + 1][str2.length() + 1];
+		for (int i = 0; i <= str1.length(); i++)
+			d[i][0] = i;
+		for (int j = 0; j <= str2.length(); j++)
+			d[0][j] = j;
+
+		for (int i = 1; i <= str1.length(); i++) {
+			for (int j = 1; j <= str2.length(); j++) {
+				int substitution = d[i - 1][j - 1] + ((str1.charAt(i - 1) == str2.charAt(j - 1)) ? 0 : 1);
+				d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), substitution);
+			}
+		}
+
+		return d[str1.length()][str2.length()];
+	}
+
+	private String makeTestString(Random random, int maxPieces) {
+		StringBuilder str = new StringBuilder();
+		int pieces = random.nextInt(maxPieces + 1);
+		for (int i = 0; i < pieces; i++)
+			str.append(PIECES[random.nextInt(PIECES.length)]);
+		return str.toString();
+	}
+
+	private String mutate(Random random, String str) {
+		StringBuilder mutated = new StringBuilder(str);
+		int edits = random.nextInt(8);
+		for (int i = 0; i < edits; i++) {
+			int index = random.nextInt(mutated.length() + 1);
+			int edit = random.nextInt(3);
+			if (edit == 0 || mutated.length() == 0)
+				mutated.insert(index, PIECES[random.nextInt(PIECES.length)]);
+			else if (index < mutated.length() && edit == 1)
+				mutated.deleteCharAt(index);
+			else if (index < mutated.length())
+				mutated.setCharAt(index, PIECES[random.nextInt(PIECES.length)].charAt(0));
+		}
+		return mutated.toString();
+	}
+
+	private String makeRepeatedString(String piece, int count) {
+		StringBuilder str = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			str.append(piece);
+		return str.toString();
+	}
+}
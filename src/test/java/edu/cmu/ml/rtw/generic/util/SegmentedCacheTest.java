@@ -0,0 +1,137 @@
+package edu.cmu.ml.rtw.generic.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SegmentedCacheTest {
+	private static final SegmentedCache.Weigher<String, String> LENGTH_WEIGHER = new SegmentedCache.Weigher<String, String>() {
+		@Override
+		public int weigh(String key, String value) {
+			return value.length();
+		}
+	};
+	
+	@Test
+	public void testSizeEviction() {
+		SegmentedCache<String, String> cache = new SegmentedCache<String, String>(4, Long.MAX_VALUE, null, 1);
+		for (String key : new String[] { "a", "b", "c", "d" })
+			Assert.assertTrue(cache.put(key, key));
+		Assert.assertEquals(4, cache.size());
+		
+		// 'a' becomes the most recently used entry, so 'b' is evicted
+		Assert.assertEquals("a", cache.get("a"));
+		cache.get("e");
+		cache.get("e");
+		Assert.assertTrue(cache.put("e", "e"));
+		
+		Assert.assertEquals(4, cache.size());
+		Assert.assertEquals(1, cache.getEvictionCount());
+		Assert.assertNull(cache.get("b"));
+		for (String key : new String[] { "a", "c", "d", "e" })
+			Assert.assertEquals(key, cache.get(key));
+	}
+	
+	@Test
+	public void testAdmission() {
+		SegmentedCache<String, String> cache = new SegmentedCache<String, String>(4, Long.MAX_VALUE, null, 1);
+		for (String key : new String[] { "a", "b", "c", "d" }) {
+			cache.put(key, key);
+			for (int i = 0; i < 3; i++)
+				cache.get(key);
+		}
+		
+		// A key that is requested once is less frequent than the entry it
+		// would evict, so it is rejected
+		cache.get("e");
+		Assert.assertFalse(cache.put("e", "e"));
+		Assert.assertEquals(1, cache.getRejectionCount());
+		Assert.assertEquals(0, cache.getEvictionCount());
+		Assert.assertNull(cache.get("e"));
+		Assert.assertEquals(4, cache.size());
+		
+		// Once it is requested more often, it is admitted
+		for (int i = 0; i < 5; i++)
+			cache.get("e");
+		Assert.assertTrue(cache.put("e", "e"));
+		Assert.assertEquals("e", cache.get("e"));
+		Assert.assertEquals(1, cache.getEvictionCount());
+		Assert.assertEquals(4, cache.size());
+		
+		// Replacing the value of a cached key is never rejected
+		Assert.assertTrue(cache.put("e", "f"));
+		Assert.assertEquals("f", cache.get("e"));
+	}
+	
+	@Test
+	public void testFrequentKeysSurviveScan() {
+		SegmentedCache<String, String> cache = new SegmentedCache<String, String>(100, Long.MAX_VALUE, null, 1);
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 50; j++) {
+				String key = "hot" + j;
+				if (cache.get(key) == null)
+					cache.put(key, key);
+			}
+		}
+		
+		// Keys that are requested once are computed and offered to the cache,
+		// as in Fn.listCachedCompute, between requests for the hot keys
+		int hotMisses = 0;
+		for (int i = 0; i < 10000; i++) {
+			String key = "cold" + i;
+			if (cache.get(key) == null)
+				cache.put(key, key);
+			
+			String hotKey = "hot" + (i % 50);
+			if (cache.get(hotKey) == null) {
+				hotMisses++;
+				cache.put(hotKey, hotKey);
+			}
+		}
+		
+		Assert.assertEquals(0, hotMisses);
+		for (int j = 0; j < 50; j++)
+			Assert.assertEquals("hot" + j, cache.get("hot" + j));
+		Assert.assertTrue(cache.size() <= 100);
+		Assert.assertTrue(cache.getRejectionCount() > 0);
+	}
+	
+	@Test
+	public void testWeightEviction() {
+		SegmentedCache<String, String> cache = new SegmentedCache<String, String>(100, 10, LENGTH_WEIGHER, 1);
+		Assert.assertFalse(cache.put("heavy", "abcdefghijk"));
+		Assert.assertEquals(0, cache.size());
+		
+		Assert.assertTrue(cache.put("a", "aaaa"));
+		Assert.assertTrue(cache.put("b", "bbbb"));
+		Assert.assertEquals(8, cache.getWeight());
+		
+		cache.get("c");
+		cache.get("c");
+		Assert.assertTrue(cache.put("c", "cccc"));
+		Assert.assertEquals(8, cache.getWeight());
+		Assert.assertNull(cache.get("a"));
+		Assert.assertEquals("cccc", cache.get("c"));
+		
+		// Growing a cached value evicts other entries to stay under the weight limit
+		Assert.assertTrue(cache.put("c", "cccccccc"));
+		Assert.assertTrue(cache.getWeight() <= 10);
+		Assert.assertNull(cache.get("b"));
+		Assert.assertEquals("cccccccc", cache.get("c"));
+	}
+	
+	@Test
+	public void testClear() {
+		SegmentedCache<String, String> cache = new SegmentedCache<String, String>(1000, 10000, LENGTH_WEIGHER);
+		for (int i = 0; i < 500; i++)
+			cache.put("key" + i, "value" + i);
+		Assert.assertEquals(500, cache.size());
+		
+		cache.clear();
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.getWeight());
+		Assert.assertNull(cache.get("key0"));
+		
+		Assert.assertTrue(cache.put("key0", "value0"));
+		Assert.assertEquals("value0", cache.get("key0"));
+	}
+}
@@ -0,0 +1,60 @@
+package edu.cmu.ml.rtw.generic.util;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringUtilTest {
+	private static final String[] CLEAN_PIECES = {
+		"a", "Z", "q", "0", "9", "_", "The", "NEW", "york", "42", "e.g.",
+		" ", "  ", "\t", "\n", "\r\n", "\u000B", "\f", "\u0000", "\u001C", "\u00A0", "\u2003",
+		"/", "\\", "-", "--", "/usr", "\\n", "-LRB-", "$", "&", "+", "@", "#", "%", "'s", "\"", ".", ",", "!", "(", ")",
+		"\u00E9", "\u00C9", "\u00DF", "\u0130", "\u0131", "\u212A", "\u212B", "\u03A3", "\u03C3", "\u0149", "\uFB01",
+		"\uD801\uDC00", "\uD835\uDC00", "\uD800", "\uDC00", "\u4E2D"
+	};
+
+	@Test
+	public void testCleanMatchesRegex() {
+		Random random = new Random(1);
+		for (int i = 0; i < 200000; i++) {
+			String str = makeCleanTestString(random);
+			Assert.assertEquals("Clean mismatch for '" + str + "'", StringUtil.cleanRegex(str), StringUtil.clean(str));
+		}
+
+		String[] specialCases = { "", " ", "$", " $ ", "&", "+", "@", "@@", " - ", "/", "a/b", "A -b c", "\u0130stanbul" };
+		for (String str : specialCases)
+			Assert.assertEquals("Clean mismatch for '" + str + "'", StringUtil.cleanRegex(str), StringUtil.clean(str));
+	}
+
+	@Test
+	public void testCleanCache() {
+		StringUtil.setCleanCacheSize(1000);
+		try {
+			String clean1 = StringUtil.clean("New  York!");
+			String clean2 = StringUtil.clean(" new YORK ");
+			Assert.assertEquals("new york", clean1);
+			Assert.assertSame(clean1, clean2);
+			Assert.assertTrue(StringUtil.getCleanCache().getHitCount() > 0);
+
+			Random random = new Random(2);
+			for (int i = 0; i < 20000; i++) {
+				String str = makeCleanTestString(random);
+				Assert.assertEquals(StringUtil.cleanRegex(str), StringUtil.clean(str));
+				Assert.assertEquals(StringUtil.cleanRegex(str), StringUtil.clean(str));
+			}
+		} finally {
+			StringUtil.setCleanCacheSize(0);
+		}
+
+		Assert.assertNull(StringUtil.getCleanCache());
+	}
+
+	private String makeCleanTestString(Random random) {
+		StringBuilder str = new StringBuilder();
+		int pieces = random.nextInt(12);
+		for (int i = 0; i < pieces; i++)
+			str.append(CLEAN_PIECES[random.nextInt(CLEAN_PIECES.length)]);
+		return str.toString();
+	}
+}